@@ -1,21 +1,29 @@
 package fr.unistra.pelican;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.junit.Assert;
 
+import fr.unistra.pelican.util.PelicanImageFile;
+
 /**
  * 
  * @author sollier,lefevre
@@ -63,14 +71,10 @@ public abstract class Algorithm {
 	private ArrayList<Object> output = new ArrayList<Object>();
 
 	/**
-	 * List containing the input objects
+	 * Accessors of the input, option and output attributes of each algorithm
+	 * class, resolved once for all its instances
 	 */
-	private ArrayList<Object> input = new ArrayList<Object>();
-
-	/**
-	 * List containing the option objects
-	 */
-	private ArrayList<Object> option = new ArrayList<Object>();
+	private final static ConcurrentHashMap<Class<?>, Binding> bindings = new ConcurrentHashMap<Class<?>, Binding>();
 
 	/**
 	 * String containing the description of the extended algorithm
@@ -124,7 +128,7 @@ public abstract class Algorithm {
 	/**
 	 * 
 	 * Grab the input attributes of the inherited algorithms and set them into
-	 * the input ArrayList
+	 * its attributes
 	 * 
 	 * @param inputList
 	 *            list of the input attributes
@@ -134,100 +138,62 @@ public abstract class Algorithm {
 	public void setInput(ArrayList<Object> inputList)
 			throws InvalidNumberOfParametersException,
 			InvalidTypeOfParameterException {
-		// Cleaning input and output parameters
-		input.clear();
-		option.clear();
+		bind(inputList.toArray());
+	}
 
-		// parsing
-		ArrayList<String> inputResult = parser(inputs);
-		ArrayList<String> optionResult = parser(options);
+	/**
+	 * Sets the input and option attributes of the inherited algorithm from the
+	 * given parameters, through the accessors of its class.
+	 * 
+	 * @param parameters
+	 *            values of the inputs followed by values of some options
+	 * @throws InvalidNumberOfParametersException
+	 * @throws InvalidTypeOfParameterException
+	 */
+	private void bind(Object[] parameters)
+			throws InvalidNumberOfParametersException,
+			InvalidTypeOfParameterException {
+		Binding binding = getBinding();
+		int nbInputs = binding.inputNames.length;
+		int nbOptions = binding.optionNames.length;
 
 		// Checking if the number of given parameters is at least
 		// the number of mandatory parameters and less than the full set of
 		// parameters
-		if (inputList.size() < inputResult.size()
-				|| inputList.size() > inputResult.size() + optionResult.size())
+		if (parameters.length < nbInputs
+				|| parameters.length > nbInputs + nbOptions)
 			throw new InvalidNumberOfParametersException(
-					"Number of parameters is incorrect : " + inputList.size()
-							+ " instead of [" + inputResult.size() + ","
-							+ (inputResult.size() + optionResult.size()) + "]");
-
-		Class c = this.getClass();
-		Field f = null;
-		Object o;
+					"Number of parameters is incorrect : " + parameters.length
+							+ " instead of [" + nbInputs + ","
+							+ (nbInputs + nbOptions) + "]");
 
 		// Mandatory input parameters
-		for (int i = 0; i < inputResult.size(); i++) {
-
-			o = inputList.get(i);
-			try {
-				f = c.getDeclaredField(inputResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				System.out.println("Input #" + i + " " + inputResult.get(i)
-						+ " does not exist in " + c);
-				e.printStackTrace();
-			}
-			Class t = f.getType();
-
-			/*
-			 * Class oc = o.getClass(); if (t.isPrimitive()) t =
-			 * primitiveToObject(t);
-			 */
-
-			input.add(o);
-			try {
-				f.set(this, input.get(i));// Set the attributes of the
-				// inherited algorithm
-			} catch (IllegalArgumentException e) {
-				// If the type is incorrect
-				throw new InvalidTypeOfParameterException("Input type #" + i
-						+ " is not correct : " + o.getClass().getName()
-						+ " instead of " + t.getName());
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-		}
-
-		// Optional input parameters
-		int nbOptions = Math.min(inputList.size() - inputResult.size(),
-				optionResult.size());
-		int indOptions = inputResult.size();
-		for (int i = 0; i < nbOptions; i++) {
-
-			o = inputList.get(i + indOptions);
-
-			// If null option, skip it
-			if (o == null) {
-				option.add(o);
-				continue;
-			}
-
-			try {
-				f = c.getDeclaredField(optionResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				System.out.println("Option #" + i + " " + optionResult.get(i)
-						+ " does not exist in " + c);
-				e.printStackTrace();
-			}
-			Class t = f.getType();
+		for (int i = 0; i < nbInputs; i++)
+			binding.set(this, "Input", i, binding.inputNames[i],
+					binding.inputSetters[i], parameters[i]);
+
+		// Optional input parameters, null options being skipped
+		for (int i = nbInputs; i < parameters.length; i++)
+			if (parameters[i] != null)
+				binding.set(this, "Option", i - nbInputs,
+						binding.optionNames[i - nbInputs],
+						binding.optionSetters[i - nbInputs], parameters[i]);
+	}
 
-			option.add(o);
-			try {
-				f.set(this, option.get(i)); // Set the attributes of the
-				// inherited algorithm
-			} catch (IllegalArgumentException e) {
-				throw new InvalidTypeOfParameterException("Option type #" + i
-						+ " is not correct : " + o.getClass() + " instead of "
-						+ t);
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
+	/**
+	 * Gets the accessors of the attributes of the inherited algorithm, which
+	 * are resolved on the first call for its class.
+	 * 
+	 * @return the accessors
+	 */
+	private Binding getBinding() {
+		Class<?> c = this.getClass();
+		Binding binding = bindings.get(c);
+		if (binding == null || !binding.matches(this)) {
+			binding = new Binding(c, inputs, options, outputs);
+			bindings.put(c, binding);
 		}
-
+		return binding;
 	}
 
 	/**
@@ -235,43 +201,13 @@ public abstract class Algorithm {
 	 * 
 	 * @return the list containing the outputs
 	 */
-
-
 	public ArrayList getOutput() {
-
-
-
-		// parsing
-		ArrayList<String> parserResult = parser(outputs);
+		Binding binding = getBinding();
 
 		// clear output
 		output.clear();
-
-		Class c = this.getClass();
-		Field f = null;
-		Object o = null;
-
-		for (int i = 0; i < parserResult.size(); i++) {
-
-			try {
-				f = c.getDeclaredField(parserResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				System.out.println("Output #" + i + " " + parserResult.get(i)
-						+ " does not exist in " + c);
-				e.printStackTrace();
-			}
-			try {
-				o = f.get(this);
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-			output.add(o);
-
-		}
+		for (int i = 0; i < binding.outputNames.length; i++)
+			output.add(binding.get(this, i));
 		return output;
 	}
 
@@ -640,16 +576,14 @@ public abstract class Algorithm {
 			throws InvalidTypeOfParameterException, AlgorithmException,
 			InvalidNumberOfParametersException {
 
-		ArrayList<Object> inputs = new ArrayList<Object>();
-		for (int i = 0; i < parameters.length; i++) {
-			inputs.add(parameters[i]);
-		}
-		this.setInput(inputs);
+		this.bind(parameters);
 		this.launch();
-		if (this.getOutput() == null || this.getOutput().isEmpty()) {
+		// only the first output is read
+		Binding binding = getBinding();
+		if (binding.outputNames.length == 0) {
 			return null;
 		} else {
-			return (Object) this.getOutput().get(0);
+			return binding.get(this, 0);
 		}
 	}
 
@@ -670,17 +604,9 @@ public abstract class Algorithm {
 			throws InvalidTypeOfParameterException, AlgorithmException,
 			InvalidNumberOfParametersException {
 
-		ArrayList<Object> inputs = new ArrayList<Object>();
-		for (int i = 0; i < parameters.length; i++) {
-			inputs.add(parameters[i]);
-		}
-		this.setInput(inputs);
+		this.bind(parameters);
 		this.launch();
-		if (this.getOutput() == null) {
-			return null;
-		} else {
-			return this.getOutput();
-		}
+		return this.getOutput();
 	}
 
 	/**
@@ -701,16 +627,13 @@ public abstract class Algorithm {
 			throws InvalidTypeOfParameterException, AlgorithmException,
 			InvalidNumberOfParametersException {
 
-		ArrayList<Object> inputs = new ArrayList<Object>();
-		for (int i = 0; i < parameters.length; i++) {
-			inputs.add(parameters[i]);
-		}
-		this.setInput(inputs);
+		this.bind(parameters);
 		this.launch();
-		if (this.getOutput() == null || x < 0 || x >= this.getOutput().size())
+		Binding binding = getBinding();
+		if (x < 0 || x >= binding.outputNames.length)
 			throw new InvalidNumberOfParametersException("output " + x
 					+ " does not exist");
-		return this.getOutput().get(x);
+		return binding.get(this, x);
 
 	}
 
@@ -753,15 +676,14 @@ public abstract class Algorithm {
 		String algoName = "tests/"+this.getAlgorithmName() + "." + testID;
 		String inputFile = algoName + INPUT_SUFFIX;
 		String outputFile = algoName + OUTPUT_SUFFIX;
-		// Sauvegarde des entrées et sorties
+		// Sauvegarde des entrées et sorties, les images au format binaire PELICAN
 		try {
 			ObjectOutputStream f = null;
-			// f = new ObjectOutputStream(new FileOutputStream(inputFile));
-			f = new ObjectOutputStream(new GZIPOutputStream(
+			f = new PelicanImageFile.ImageOutputStream(new BufferedOutputStream(
 					new FileOutputStream(inputFile)));
 			f.writeObject(inputs);
 			f.close();
-			f = new ObjectOutputStream(new GZIPOutputStream(
+			f = new PelicanImageFile.ImageOutputStream(new BufferedOutputStream(
 					new FileOutputStream(outputFile)));
 			f.writeObject(outputs);
 			f.close();
@@ -837,10 +759,7 @@ public abstract class Algorithm {
 		String algoName =  "tests/"+this.getAlgorithmName() + "." + testID;
 		String inputFile = algoName + INPUT_SUFFIX;
 		try {
-			ObjectInputStream f = null;
-			// f = new ObjectOutputStream(new FileOutputStream(inputFile));
-			f = new ObjectInputStream(new GZIPInputStream(new FileInputStream(
-					inputFile)));
+			ObjectInputStream f = openTestCase(inputFile);
 			result = (ArrayList<Object>) f.readObject();
 			f.close();
 		} catch (IOException ex) {
@@ -866,10 +785,7 @@ public abstract class Algorithm {
 		String algoName =  "tests/"+this.getAlgorithmName() + "." + testID;
 		String inputFile = algoName + OUTPUT_SUFFIX;
 		try {
-			ObjectInputStream f = null;
-			// f = new ObjectOutputStream(new FileOutputStream(inputFile));
-			f = new ObjectInputStream(new GZIPInputStream(new FileInputStream(
-					inputFile)));
+			ObjectInputStream f = openTestCase(inputFile);
 			result = (ArrayList<Object>) f.readObject();
 			f.close();
 		} catch (IOException ex) {
@@ -882,6 +798,27 @@ public abstract class Algorithm {
 		return result;
 	}
 
+	/**
+	 * Opens a test case file, written in the current format or compressed with
+	 * gzip by the previous versions.
+	 * 
+	 * @param file
+	 *            the test case file
+	 * @return the stream of the stored parameters
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	private static ObjectInputStream openTestCase(String file)
+			throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		in.mark(2);
+		int magic = in.read() | (in.read() << 8);
+		in.reset();
+		if (magic == GZIPInputStream.GZIP_MAGIC)
+			in = new GZIPInputStream(in);
+		return new ObjectInputStream(in);
+	}
+
 	/**
 	 * Removes all test cases, i.e. files
 	 * algorithmName.testCaseID.inputs and
@@ -997,4 +934,162 @@ public abstract class Algorithm {
 		}
 		return exists;
 	}
+
+	/**
+	 * Accessors of the input, option and output attributes of an algorithm
+	 * class. The attribute names are parsed and the fields resolved once, the
+	 * attributes being then set and read through method handles.
+	 */
+	private static final class Binding {
+
+		/**
+		 * Strings the accessors were built from
+		 */
+		private final String inputs, options, outputs;
+
+		private final String[] inputNames, optionNames, outputNames;
+
+		/**
+		 * Setters of type (Algorithm, Object)void, null when the attribute
+		 * does not exist
+		 */
+		private final MethodHandle[] inputSetters, optionSetters;
+
+		/**
+		 * Getters of type (Algorithm)Object, null when the attribute does not
+		 * exist
+		 */
+		private final MethodHandle[] outputGetters;
+
+		private final Class<?> c;
+
+		Binding(Class<?> c, String inputs, String options, String outputs) {
+			this.c = c;
+			this.inputs = inputs;
+			this.options = options;
+			this.outputs = outputs;
+			inputNames = names(inputs);
+			optionNames = names(options);
+			outputNames = names(outputs);
+			inputSetters = new MethodHandle[inputNames.length];
+			for (int i = 0; i < inputNames.length; i++)
+				inputSetters[i] = setter(inputNames[i]);
+			optionSetters = new MethodHandle[optionNames.length];
+			for (int i = 0; i < optionNames.length; i++)
+				optionSetters[i] = setter(optionNames[i]);
+			outputGetters = new MethodHandle[outputNames.length];
+			for (int i = 0; i < outputNames.length; i++)
+				outputGetters[i] = getter(outputNames[i]);
+		}
+
+		/**
+		 * Checks that the attribute names of the algorithm are the ones of
+		 * this binding.
+		 */
+		boolean matches(Algorithm algorithm) {
+			return (algorithm.inputs == inputs || inputs.equals(algorithm.inputs))
+					&& (algorithm.options == options || options
+							.equals(algorithm.options))
+					&& (algorithm.outputs == outputs || outputs
+							.equals(algorithm.outputs));
+		}
+
+		/**
+		 * Sets an input or option attribute.
+		 */
+		void set(Algorithm algorithm, String kind, int i, String name,
+				MethodHandle setter, Object o)
+				throws InvalidTypeOfParameterException {
+			if (setter == null)
+				throw new PelicanException(kind + " #" + i + " " + name
+						+ " does not exist in " + c);
+			try {
+				setter.invokeExact(algorithm, o);
+			} catch (ClassCastException e) {
+				// If the type is incorrect
+				throw new InvalidTypeOfParameterException(kind + " type #" + i
+						+ " is not correct : " + o.getClass().getName()
+						+ " instead of " + field(name).getType().getName());
+			} catch (NullPointerException e) {
+				throw new InvalidTypeOfParameterException(kind + " type #" + i
+						+ " is not correct : null instead of "
+						+ field(name).getType().getName());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new PelicanException(t.getMessage());
+			}
+		}
+
+		/**
+		 * Gets an output attribute.
+		 */
+		Object get(Algorithm algorithm, int i) {
+			if (outputGetters[i] == null)
+				throw new PelicanException("Output #" + i + " " + outputNames[i]
+						+ " does not exist in " + c);
+			try {
+				return (Object) outputGetters[i].invokeExact(algorithm);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new PelicanException(t.getMessage());
+			}
+		}
+
+		private MethodHandle setter(String name) {
+			Field f = field(name);
+			if (f == null)
+				return null;
+			try {
+				return MethodHandles.lookup().unreflectSetter(f).asType(
+						MethodType.methodType(void.class, Algorithm.class,
+								Object.class));
+			} catch (IllegalAccessException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		private MethodHandle getter(String name) {
+			Field f = field(name);
+			if (f == null)
+				return null;
+			try {
+				return MethodHandles.lookup().unreflectGetter(f).asType(
+						MethodType.methodType(Object.class, Algorithm.class));
+			} catch (IllegalAccessException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		/**
+		 * Finds an attribute in the algorithm class or its superclasses.
+		 */
+		private Field field(String name) {
+			for (Class<?> k = c; k != Algorithm.class && k != null; k = k
+					.getSuperclass())
+				try {
+					Field f = k.getDeclaredField(name);
+					f.setAccessible(true);
+					return f;
+				} catch (NoSuchFieldException e) {
+				}
+			return null;
+		}
+
+		/**
+		 * Parses a string of comma separated attribute names, as parser does.
+		 */
+		private static String[] names(String string) {
+			if (string.isEmpty())
+				return new String[0];
+			return string.split(",", -1);
+		}
+	}
 }
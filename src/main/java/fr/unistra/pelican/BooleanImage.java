@@ -189,6 +189,16 @@ public class BooleanImage extends Image implements Serializable
 		return (boolean[])pixels.clone();
 	}
 
+	/**
+	 * Gets the pixel array (not a copy !), use it at your own risk.
+	 * @return	the pixel array
+	 */
+
+	public boolean[] getPixelsUnsafe()
+	{
+		return pixels;
+	}
+
 	/**
 	 * Sets the pixels to the copy of the given array
 	 * @param	values	pixel array to copy
@@ -43,8 +43,7 @@ public class ByteImage extends Image implements Serializable {
 	 */
 
 	public ByteImage(ByteImage image) {
-		super(image);
-		this.pixels = (byte[]) image.pixels.clone();
+		this(image, true);
 	}
 
 	/**
@@ -86,11 +85,15 @@ public class ByteImage extends Image implements Serializable {
 	public ByteImage(ByteImage image, boolean copyData) {
 		super(image);
 
-		if (copyData == true)
+		if (copyData == true && image.pixels != null)
 			this.pixels = (byte[]) image.pixels.clone();
-		else
-			this.pixels = new byte[image.getXDim() * image.getYDim()
-				* image.getZDim() * image.getTDim() * image.getBDim()];
+		else {
+			// chunked images have no pixel array
+			this.pixels = new byte[image.size()];
+			if (copyData == true)
+				for (int i = 0; i < pixels.length; i++)
+					setPixelByte(i, image.getPixelByte(i));
+		}
 	}
 
 	/**
@@ -417,6 +420,18 @@ public class ByteImage extends Image implements Serializable {
 		return pixels;
 	}
 
+	/**
+	 * Gets the pixel array (not a copy !), use it at your own risk. Values are
+	 * stored shifted by Byte.MIN_VALUE, see
+	 * {@link Image#signedByteToUnsignedByte(byte)}.
+	 * 
+	 * @return the pixel array
+	 */
+
+	public byte[] getPixelsUnsafe() {
+		return pixels;
+	}
+
 	/**
 	 * Sets the pixels to the copy of the given array
 	 * 
@@ -566,7 +581,7 @@ public class ByteImage extends Image implements Serializable {
 		int[] vector = new int[bdim];
 		
 		for (int b = 0; b < bdim; b++)
-			vector[b] = pixels[index++]-Byte.MIN_VALUE;
+			vector[b] = getPixelByte(index++);
 
 		return vector;
 	}
@@ -0,0 +1,696 @@
+package fr.unistra.pelican;
+
+import java.util.Arrays;
+
+import fr.unistra.pelican.util.largeImages.ChunkedImageUtil;
+
+/**
+ * This class extends IntegerImage to hold more than 2^31 pixels in memory. The
+ * pixels are stored in chunks of ChunkedImageUtil.CHUNK_SIZE values instead
+ * of a single array, and are addressed through the long versions of
+ * getPixel and setPixel. The coordinates based accessors compute long linear
+ * indexes, so they work on the whole image.
+ * 
+ * size() throws a PelicanException when the image has more than 2^31
+ * pixels: sizeL() must be used instead. The methods giving access to the
+ * pixel array are not available.
+ * 
+ * Unlike the Large images, the pixels are never written to disk: use this
+ * class when the image fits in the memory of the JVM.
+ * 
+ * @see fr.unistra.pelican.IntegerImage
+ * @see fr.unistra.pelican.util.largeImages.ChunkedImageUtil
+ */
+public class ChunkedIntegerImage extends IntegerImage {
+
+	/**
+	 * Serial
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Pixel data chunks
+	 */
+	private int[][] chunks;
+
+	/**
+	 * Stores number of pixels in the Image
+	 */
+	private long size;
+
+	/**
+	 * Constructs a ChunkedIntegerImage identical to the given argument
+	 * 
+	 * @param image
+	 *            Image to copy
+	 */
+	public ChunkedIntegerImage(Image image) {
+		this(image, true);
+	}
+
+	/**
+	 * Constructs a ChunkedIntegerImage from the given argument. The pixels are
+	 * copied if and only if ''copyData'' is set to true.
+	 * 
+	 * @param image
+	 *            Image to copy
+	 * @param copyData
+	 *            if and only if it is set to true are the pixels copied
+	 */
+	public ChunkedIntegerImage(Image image, boolean copyData) {
+		this(image.getXDim(), image.getYDim(), image.getZDim(), image.getTDim(),
+				image.getBDim());
+		this.copyAttributes(image);
+		if (copyData) {
+			if (image instanceof ChunkedIntegerImage) {
+				ChunkedIntegerImage chunked = (ChunkedIntegerImage) image;
+				for (int c = 0; c < chunks.length; c++)
+					chunks[c] = chunked.chunks[c].clone();
+			} else {
+				for (long i = 0; i < size; i++)
+					setPixelInt(i, image.getPixelInt(i));
+			}
+		}
+	}
+
+	/**
+	 * Constructs a ChunkedIntegerImage with the given dimensions
+	 * 
+	 * @param xdim
+	 *            the horizontal dimension
+	 * @param ydim
+	 *            the vertical dimension
+	 * @param zdim
+	 *            the depth
+	 * @param tdim
+	 *            the frame number
+	 * @param bdim
+	 *            the channel number
+	 */
+	public ChunkedIntegerImage(int xdim, int ydim, int zdim, int tdim, int bdim) {
+		super();
+		this.setDim(xdim, ydim, zdim, tdim, bdim);
+		this.size = ChunkedImageUtil.size(xdim, ydim, zdim, tdim, bdim);
+		this.chunks = new int[ChunkedImageUtil.chunkDim(size)][];
+		for (int c = 0; c < chunks.length; c++)
+			chunks[c] = new int[ChunkedImageUtil.chunkLength(size, c)];
+	}
+
+	@Override
+	public ChunkedIntegerImage newInstance(int xdim, int ydim, int zdim, int tdim,
+			int bdim) {
+		return new ChunkedIntegerImage(xdim, ydim, zdim, tdim, bdim);
+	}
+
+	@Override
+	public ChunkedIntegerImage copyImage(boolean copyData) {
+		return new ChunkedIntegerImage(this, copyData);
+	}
+
+	/**
+	 * Computes the total number of pixels in all dimensions
+	 * 
+	 * @return the number of pixels
+	 */
+	@Override
+	public long sizeL() {
+		return size;
+	}
+
+	@Override
+	public int size() {
+		return ChunkedImageUtil.intSize(size);
+	}
+
+	/**
+	 * Gets the chunk which contains the given pixel
+	 * 
+	 * @param loc
+	 *            index of the pixel
+	 * @return the chunk
+	 */
+	private int[] chunk(long loc) {
+		return chunks[(int) (loc >> ChunkedImageUtil.CHUNK_BITS)];
+	}
+
+	/**
+	 * Gets the int value of the given pixel
+	 * 
+	 * @param loc
+	 *            index of the pixel
+	 * @return the stored value
+	 */
+	private int getPixel(long loc) {
+		return chunk(loc)[(int) (loc & ChunkedImageUtil.CHUNK_MASK)];
+	}
+
+	/**
+	 * Sets the int value of the given pixel
+	 * 
+	 * @param loc
+	 *            index of the pixel
+	 * @param value
+	 *            the stored value
+	 */
+	private void setPixel(long loc, int value) {
+		chunk(loc)[(int) (loc & ChunkedImageUtil.CHUNK_MASK)] = value;
+	}
+
+	@Override
+	public double getPixelDouble(long loc) {
+		return intToDouble(getPixel(loc));
+	}
+
+	@Override
+	public double getPixelDouble(int loc) {
+		return intToDouble(getPixel(loc));
+	}
+
+	@Override
+	public int getPixelInt(long loc) {
+		return getPixel(loc);
+	}
+
+	@Override
+	public int getPixelInt(int loc) {
+		return getPixel(loc);
+	}
+
+	@Override
+	public int getPixelByte(long loc) {
+		return intToUnsignedByte(getPixel(loc));
+	}
+
+	@Override
+	public int getPixelByte(int loc) {
+		return intToUnsignedByte(getPixel(loc));
+	}
+
+	@Override
+	public boolean getPixelBoolean(long loc) {
+		return intToBoolean(getPixel(loc));
+	}
+
+	@Override
+	public boolean getPixelBoolean(int loc) {
+		return intToBoolean(getPixel(loc));
+	}
+
+	@Override
+	public void setPixelDouble(long loc, double value) {
+		setPixel(loc, doubleToInt(value));
+	}
+
+	@Override
+	public void setPixelDouble(int loc, double value) {
+		setPixel(loc, doubleToInt(value));
+	}
+
+	@Override
+	public void setPixelInt(long loc, int value) {
+		setPixel(loc, value);
+	}
+
+	@Override
+	public void setPixelInt(int loc, int value) {
+		setPixel(loc, value);
+	}
+
+	@Override
+	public void setPixelByte(long loc, int value) {
+		setPixel(loc, unsignedByteToInt(value));
+	}
+
+	@Override
+	public void setPixelByte(int loc, int value) {
+		setPixel(loc, unsignedByteToInt(value));
+	}
+
+	@Override
+	public void setPixelBoolean(long loc, boolean value) {
+		setPixel(loc, booleanToInt(value));
+	}
+
+	@Override
+	public void setPixelBoolean(int loc, boolean value) {
+		setPixel(loc, booleanToInt(value));
+	}
+
+	@Override
+	public void fill(int value) {
+		for (int[] chunk : chunks)
+			Arrays.fill(chunk, value);
+	}
+
+	@Override
+	public void fill(double d) {
+		this.fill(doubleToInt(d));
+	}
+
+	@Override
+	public int[] getPixelsUnsafe() {
+		throw new PelicanException(
+				"You can not getPixelsUnsafe on a chunked Image. Please correct your algorithm to avoid this method");
+	}
+
+	@Override
+	public void setPixels(int[] values) {
+		throw new PelicanException(
+				"You can not setPixels on a chunked Image. Please correct your algorithm to avoid this method");
+	}
+
+	@Override
+	public boolean equals(Image im) {
+		if (im == null || !(im instanceof IntegerImage))
+			return false;
+
+		if (!haveSameDimensions(this, im))
+			return false;
+
+		for (long i = 0; i < size; i++)
+			if (im.getPixelInt(i) != getPixelInt(i))
+				return false;
+
+		return true;
+	}
+
+	@Override
+	public double volume() {
+		double v = 0;
+		for (long p = 0; p < size; p++)
+			if (isPresent(p))
+				v += getPixelDouble(p);
+		return v;
+	}
+
+	@Override
+	public int[] getVectorPixelInt(int index) {
+		int[] vector = new int[bdim];
+		for (int b = 0; b < bdim; b++)
+			vector[b] = getPixel((long) index + b);
+		return vector;
+	}
+
+	@Override
+	public int minimum() {
+		int val = Integer.MAX_VALUE;
+		for (int[] chunk : chunks)
+			for (int p = 0; p < chunk.length; p++)
+				if (chunk[p] < val)
+					val = chunk[p];
+		return val;
+	}
+
+	@Override
+	public int maximum() {
+		int val = Integer.MIN_VALUE;
+		for (int[] chunk : chunks)
+			for (int p = 0; p < chunk.length; p++)
+				if (chunk[p] > val)
+					val = chunk[p];
+		return val;
+	}
+
+	@Override
+	public int minimum(int band) {
+		int val = Integer.MAX_VALUE;
+		for (long p = band; p < size; p += bdim)
+			if (getPixel(p) < val)
+				val = getPixel(p);
+		return val;
+	}
+
+	@Override
+	public int maximum(int band) {
+		int val = Integer.MIN_VALUE;
+		for (long p = band; p < size; p += bdim)
+			if (getPixel(p) > val)
+				val = getPixel(p);
+		return val;
+	}
+
+	/*
+	 * Coordinates based accessors, computing long linear indexes
+	 * ************************************************
+	 */
+
+	@Override
+	public double getPixelDouble(int x, int y, int z, int t, int b) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public double getPixelXYDouble(int x, int y) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXY___(this, x, y));
+	}
+
+	@Override
+	public double getPixelXYZDouble(int x, int y, int z) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z));
+	}
+
+	@Override
+	public double getPixelXYBDouble(int x, int y, int b) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b));
+	}
+
+	@Override
+	public double getPixelXYTDouble(int x, int y, int t) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t));
+	}
+
+	@Override
+	public double getPixelXYZTDouble(int x, int y, int z, int t) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t));
+	}
+
+	@Override
+	public double getPixelXYZBDouble(int x, int y, int z, int b) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b));
+	}
+
+	@Override
+	public double getPixelXYTBDouble(int x, int y, int t, int b) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b));
+	}
+
+	@Override
+	public double getPixelXYZTBDouble(int x, int y, int z, int t, int b) {
+		return getPixelDouble(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public void setPixelDouble(int x, int y, int z, int t, int b, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYDouble(int x, int y, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXY___(this, x, y), value);
+	}
+
+	@Override
+	public void setPixelXYZDouble(int x, int y, int z, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z), value);
+	}
+
+	@Override
+	public void setPixelXYBDouble(int x, int y, int b, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b), value);
+	}
+
+	@Override
+	public void setPixelXYTDouble(int x, int y, int t, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t), value);
+	}
+
+	@Override
+	public void setPixelXYZTDouble(int x, int y, int z, int t, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t), value);
+	}
+
+	@Override
+	public void setPixelXYZBDouble(int x, int y, int z, int b, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b), value);
+	}
+
+	@Override
+	public void setPixelXYTBDouble(int x, int y, int t, int b, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYZTBDouble(int x, int y, int z, int t, int b, double value) {
+		setPixelDouble(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+
+	@Override
+	public int getPixelInt(int x, int y, int z, int t, int b) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public int getPixelXYInt(int x, int y) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXY___(this, x, y));
+	}
+
+	@Override
+	public int getPixelXYZInt(int x, int y, int z) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z));
+	}
+
+	@Override
+	public int getPixelXYBInt(int x, int y, int b) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b));
+	}
+
+	@Override
+	public int getPixelXYTInt(int x, int y, int t) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t));
+	}
+
+	@Override
+	public int getPixelXYZTInt(int x, int y, int z, int t) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t));
+	}
+
+	@Override
+	public int getPixelXYZBInt(int x, int y, int z, int b) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b));
+	}
+
+	@Override
+	public int getPixelXYTBInt(int x, int y, int t, int b) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b));
+	}
+
+	@Override
+	public int getPixelXYZTBInt(int x, int y, int z, int t, int b) {
+		return getPixelInt(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public void setPixelInt(int x, int y, int z, int t, int b, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYInt(int x, int y, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXY___(this, x, y), value);
+	}
+
+	@Override
+	public void setPixelXYZInt(int x, int y, int z, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z), value);
+	}
+
+	@Override
+	public void setPixelXYBInt(int x, int y, int b, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b), value);
+	}
+
+	@Override
+	public void setPixelXYTInt(int x, int y, int t, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t), value);
+	}
+
+	@Override
+	public void setPixelXYZTInt(int x, int y, int z, int t, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t), value);
+	}
+
+	@Override
+	public void setPixelXYZBInt(int x, int y, int z, int b, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b), value);
+	}
+
+	@Override
+	public void setPixelXYTBInt(int x, int y, int t, int b, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYZTBInt(int x, int y, int z, int t, int b, int value) {
+		setPixelInt(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+
+	@Override
+	public int getPixelByte(int x, int y, int z, int t, int b) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public int getPixelXYByte(int x, int y) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXY___(this, x, y));
+	}
+
+	@Override
+	public int getPixelXYZByte(int x, int y, int z) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z));
+	}
+
+	@Override
+	public int getPixelXYBByte(int x, int y, int b) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b));
+	}
+
+	@Override
+	public int getPixelXYTByte(int x, int y, int t) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t));
+	}
+
+	@Override
+	public int getPixelXYZTByte(int x, int y, int z, int t) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t));
+	}
+
+	@Override
+	public int getPixelXYZBByte(int x, int y, int z, int b) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b));
+	}
+
+	@Override
+	public int getPixelXYTBByte(int x, int y, int t, int b) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b));
+	}
+
+	@Override
+	public int getPixelXYZTBByte(int x, int y, int z, int t, int b) {
+		return getPixelByte(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public void setPixelByte(int x, int y, int z, int t, int b, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYByte(int x, int y, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXY___(this, x, y), value);
+	}
+
+	@Override
+	public void setPixelXYZByte(int x, int y, int z, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z), value);
+	}
+
+	@Override
+	public void setPixelXYBByte(int x, int y, int b, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b), value);
+	}
+
+	@Override
+	public void setPixelXYTByte(int x, int y, int t, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t), value);
+	}
+
+	@Override
+	public void setPixelXYZTByte(int x, int y, int z, int t, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t), value);
+	}
+
+	@Override
+	public void setPixelXYZBByte(int x, int y, int z, int b, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b), value);
+	}
+
+	@Override
+	public void setPixelXYTBByte(int x, int y, int t, int b, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYZTBByte(int x, int y, int z, int t, int b, int value) {
+		setPixelByte(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+
+	@Override
+	public boolean getPixelBoolean(int x, int y, int z, int t, int b) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public boolean getPixelXYBoolean(int x, int y) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXY___(this, x, y));
+	}
+
+	@Override
+	public boolean getPixelXYZBoolean(int x, int y, int z) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z));
+	}
+
+	@Override
+	public boolean getPixelXYBBoolean(int x, int y, int b) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b));
+	}
+
+	@Override
+	public boolean getPixelXYTBoolean(int x, int y, int t) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t));
+	}
+
+	@Override
+	public boolean getPixelXYZTBoolean(int x, int y, int z, int t) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t));
+	}
+
+	@Override
+	public boolean getPixelXYZBBoolean(int x, int y, int z, int b) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b));
+	}
+
+	@Override
+	public boolean getPixelXYTBBoolean(int x, int y, int t, int b) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b));
+	}
+
+	@Override
+	public boolean getPixelXYZTBBoolean(int x, int y, int z, int t, int b) {
+		return getPixelBoolean(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b));
+	}
+
+	@Override
+	public void setPixelBoolean(int x, int y, int z, int t, int b, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYBoolean(int x, int y, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXY___(this, x, y), value);
+	}
+
+	@Override
+	public void setPixelXYZBoolean(int x, int y, int z, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXYZ__(this, x, y, z), value);
+	}
+
+	@Override
+	public void setPixelXYBBoolean(int x, int y, int b, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXY__B(this, x, y, b), value);
+	}
+
+	@Override
+	public void setPixelXYTBoolean(int x, int y, int t, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXY_T_(this, x, y, t), value);
+	}
+
+	@Override
+	public void setPixelXYZTBoolean(int x, int y, int z, int t, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXYZT_(this, x, y, z, t), value);
+	}
+
+	@Override
+	public void setPixelXYZBBoolean(int x, int y, int z, int b, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXYZ_B(this, x, y, z, b), value);
+	}
+
+	@Override
+	public void setPixelXYTBBoolean(int x, int y, int t, int b, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXY_TB(this, x, y, t, b), value);
+	}
+
+	@Override
+	public void setPixelXYZTBBoolean(int x, int y, int z, int t, int b, boolean value) {
+		setPixelBoolean(ChunkedImageUtil.getLinearIndexXYZTB(this, x, y, z, t, b), value);
+	}
+}
@@ -39,8 +39,7 @@ public class DoubleImage extends Image implements Serializable {
 	 */
 
 	public DoubleImage(DoubleImage image) {
-		super(image);
-		this.pixels = (double[]) image.pixels.clone();
+		this(image, true);
 	}
 
 	/**
@@ -82,11 +81,15 @@ public class DoubleImage extends Image implements Serializable {
 	public DoubleImage(DoubleImage image, boolean copy) {
 		super(image);
 
-		if (copy == true)
+		if (copy == true && image.pixels != null)
 			this.pixels = (double[]) image.pixels.clone();
-		else
-			this.pixels = new double[image.getXDim() * image.getYDim()
-				* image.getZDim() * image.getTDim() * image.getBDim()];
+		else {
+			// chunked images have no pixel array
+			this.pixels = new double[image.size()];
+			if (copy == true)
+				for (int i = 0; i < pixels.length; i++)
+					setPixelDouble(i, image.getPixelDouble(i));
+		}
 	}
 
 	/**
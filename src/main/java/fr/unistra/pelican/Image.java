@@ -522,6 +522,18 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 
 	public abstract int size();
 
+	/**
+	 * Computes the total number of pixels in all dimensions, for the images
+	 * which may hold more than 2^31 pixels and are addressed through the long
+	 * versions of getPixel and setPixel.
+	 * 
+	 * @return the number of pixels
+	 */
+
+	public long sizeL() {
+		return size();
+	}
+
 	/**
 	 * Sets all the pixel values to the given value
 	 * 
@@ -879,6 +891,58 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final int getLinearIndexXYZTB(int x, int y, int z, int t, int b) {
 		return b + bdim * ( x + xdim * ( y + ydim * ( z + t * zdim)));
 	}
+
+	/**
+	 * Gets the distance between the linear indexes of two horizontally
+	 * adjacent pixels. The bands of a pixel are contiguous.
+	 * 
+	 * @return the X stride of the pixel array
+	 */
+	public final int getXStride() {
+		return bdim;
+	}
+
+	/**
+	 * Gets the distance between the linear indexes of two vertically adjacent
+	 * pixels.
+	 * 
+	 * @return the Y stride of the pixel array
+	 */
+	public final int getYStride() {
+		return bdim * xdim;
+	}
+
+	/**
+	 * Gets the distance between the linear indexes of two pixels adjacent in
+	 * depth.
+	 * 
+	 * @return the Z stride of the pixel array
+	 */
+	public final int getZStride() {
+		return bdim * xdim * ydim;
+	}
+
+	/**
+	 * Gets the distance between the linear indexes of two pixels adjacent in
+	 * time.
+	 * 
+	 * @return the T stride of the pixel array
+	 */
+	public final int getTStride() {
+		return bdim * xdim * ydim * zdim;
+	}
+
+	/**
+	 * Gets the number of values of a row, i.e. the bands of the pixels
+	 * (0,y,z,t) to (xdim-1,y,z,t), which are stored contiguously from the
+	 * linear index {@link #getLinearIndexXYZT_(int, int, int, int)} of
+	 * (0,y,z,t).
+	 * 
+	 * @return the length of a row in the pixel array
+	 */
+	public final int getRowLength() {
+		return bdim * xdim;
+	}
 	
 	/**
 	 * Gets the value of the pixel in the given location as double
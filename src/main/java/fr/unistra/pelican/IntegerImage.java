@@ -39,8 +39,7 @@ public class IntegerImage extends Image implements Serializable
 
 	public IntegerImage(IntegerImage image)
 	{
-		super(image);
-		this.pixels = (int[])image.pixels.clone();
+		this(image, true);
 	}
 	
 	/**
@@ -76,10 +75,15 @@ public class IntegerImage extends Image implements Serializable
 	{
             super(image);
 
-		if(copyData == true)
+		if(copyData == true && image.pixels != null)
 			this.pixels = (int[])image.pixels.clone();
-		else
-			this.pixels = new int[image.getXDim() * image.getYDim() * image.getZDim() * image.getTDim() * image.getBDim()];
+		else {
+			// chunked images have no pixel array
+			this.pixels = new int[image.size()];
+			if(copyData == true)
+				for(int i = 0; i < pixels.length; i++)
+					setPixelInt(i, image.getPixelInt(i));
+		}
 	}
 
 	/**
@@ -98,6 +102,17 @@ public class IntegerImage extends Image implements Serializable
 	}
 	
 	
+	/**
+	 * Gets the pixel array (not a copy !), use it at your own risk.
+	 * 
+	 * @return the pixel array
+	 */
+
+	public int[] getPixelsUnsafe()
+	{
+		return pixels;
+	}
+
 	/**
 	 * Sets the pixels to the copy of the given array
 	 * @param	values	pixel array to copy
@@ -619,7 +634,7 @@ public class IntegerImage extends Image implements Serializable
 	{
 		int[] vector = new int[bdim];		
 		for (int b = 0; b < bdim; b++)
-			vector[b] = pixels[index++];
+			vector[b] = getPixelInt(index++);
 		return vector;
 	}
 
@@ -13,6 +13,7 @@ import fr.unistra.pelican.util.largeImages.IntegerUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.MappedFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -55,6 +56,16 @@ public class LargeBooleanImage extends BooleanImage implements
 	 */
 	private int unitPowerSize = -1;
 
+	/**
+	 * Indicates how units are stored in the working file
+	 */
+	private int storageMode = LargeImageUtil.getDefaultStorageMode();
+
+	/**
+	 * Working file opened once for the mapped storage
+	 */
+	private transient MappedFile mappedFile;
+
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
@@ -140,6 +151,7 @@ public class LargeBooleanImage extends BooleanImage implements
 		this.copyAttributes(image);
 
 		this.setUnitDim(image.getUnitDim());
+		this.storageMode = image.getStorageMode();
 		this.setUnitLength(image.getUnitLength());
 
 		this.createFile();
@@ -301,7 +313,7 @@ public class LargeBooleanImage extends BooleanImage implements
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.BOOLEAN_DATALENGTH);
 	}
 
 	@Override
@@ -561,6 +573,12 @@ public class LargeBooleanImage extends BooleanImage implements
 				"You can not getPixels on a large Image. Please correct your algorithm to avoid this method");
 	}
 
+	@Override
+	public boolean[] getPixelsUnsafe() {
+		throw new PelicanException(
+				"You can not getPixelsUnsafe on a large Image. Please correct your algorithm to avoid this method");
+	}
+
 	@Override
 	public void setPixels(boolean[] values) {
 		throw new PelicanException(
@@ -713,6 +731,21 @@ public class LargeBooleanImage extends BooleanImage implements
 		return ".largebool";
 	}
 
+	@Override
+	public int getStorageMode() {
+		return this.storageMode;
+	}
+
+	@Override
+	public MappedFile getMappedFile() {
+		return this.mappedFile;
+	}
+
+	@Override
+	public void setMappedFile(MappedFile mappedFile) {
+		this.mappedFile = mappedFile;
+	}
+
 	@Override
 	public void saveData() {
 		LargeImageUtil.saveData(this);
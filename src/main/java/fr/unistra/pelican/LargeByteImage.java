@@ -11,6 +11,7 @@ import fr.unistra.pelican.util.largeImages.IntegerUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.MappedFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -53,6 +54,16 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	 */
 	private int unitPowerSize = -1;
 
+	/**
+	 * Indicates how units are stored in the working file
+	 */
+	private int storageMode = LargeImageUtil.getDefaultStorageMode();
+
+	/**
+	 * Working file opened once for the mapped storage
+	 */
+	private transient MappedFile mappedFile;
+
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
@@ -138,6 +149,7 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 		this.copyAttributes(image);
 
 		this.setUnitDim(image.getUnitDim());
+		this.storageMode = image.getStorageMode();
 		this.setUnitLength(image.getUnitLength());
 
 		this.createFile();
@@ -528,6 +540,12 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 				"You can not getPixels on a large Image. Please correct your algorithm to avoid this method");
 	}
 
+	@Override
+	public byte[] getPixelsUnsafe() {
+		throw new PelicanException(
+				"You can not getPixelsUnsafe on a large Image. Please correct your algorithm to avoid this method");
+	}
+
 	@Override
 	public void setPixels(byte[] values) {
 		throw new PelicanException(
@@ -666,7 +684,7 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.BYTE_DATALENGTH);
 	}
 
 	@Override
@@ -684,6 +702,21 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 		return ".largebyte";
 	}
 
+	@Override
+	public int getStorageMode() {
+		return this.storageMode;
+	}
+
+	@Override
+	public MappedFile getMappedFile() {
+		return this.mappedFile;
+	}
+
+	@Override
+	public void setMappedFile(MappedFile mappedFile) {
+		this.mappedFile = mappedFile;
+	}
+
 	@Override
 	public void saveData() {
 		LargeImageUtil.saveData(this);
@@ -10,6 +10,7 @@ import fr.unistra.pelican.util.largeImages.DoubleUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.MappedFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -52,6 +53,16 @@ public class LargeDoubleImage extends DoubleImage implements
 	 */
 	private int unitPowerSize = -1;
 
+	/**
+	 * Indicates how units are stored in the working file
+	 */
+	private int storageMode = LargeImageUtil.getDefaultStorageMode();
+
+	/**
+	 * Working file opened once for the mapped storage
+	 */
+	private transient MappedFile mappedFile;
+
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
@@ -137,6 +148,7 @@ public class LargeDoubleImage extends DoubleImage implements
 		this.copyAttributes(image);
 
 		this.setUnitDim(image.getUnitDim());
+		this.storageMode = image.getStorageMode();
 		this.setUnitLength(image.getUnitLength());
 
 		this.createFile();
@@ -523,6 +535,12 @@ public class LargeDoubleImage extends DoubleImage implements
 				"You can not getPixels on a large Image. Please correct your algorithm to avoid this method");
 	}
 
+	@Override
+	public double[] getPixelsUnsafe() {
+		throw new PelicanException(
+				"You can not getPixelsUnsafe on a large Image. Please correct your algorithm to avoid this method");
+	}
+
 	@Override
 	public void setPixels(double[] values) {
 		throw new PelicanException(
@@ -593,7 +611,7 @@ public class LargeDoubleImage extends DoubleImage implements
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.DOUBLE_DATALENGTH);
 	}
 
 	@Override
@@ -623,6 +641,21 @@ public class LargeDoubleImage extends DoubleImage implements
 		return ".largedouble";
 	}
 
+	@Override
+	public int getStorageMode() {
+		return this.storageMode;
+	}
+
+	@Override
+	public MappedFile getMappedFile() {
+		return this.mappedFile;
+	}
+
+	@Override
+	public void setMappedFile(MappedFile mappedFile) {
+		this.mappedFile = mappedFile;
+	}
+
 	@Override
 	public void saveData() {
 		LargeImageUtil.saveData(this);
@@ -12,6 +12,7 @@ import fr.unistra.pelican.util.largeImages.IntegerUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.MappedFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -54,6 +55,16 @@ public class LargeIntegerImage extends IntegerImage implements
 	 */
 	private int unitPowerSize = -1;
 
+	/**
+	 * Indicates how units are stored in the working file
+	 */
+	private int storageMode = LargeImageUtil.getDefaultStorageMode();
+
+	/**
+	 * Working file opened once for the mapped storage
+	 */
+	private transient MappedFile mappedFile;
+
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
@@ -139,6 +150,7 @@ public class LargeIntegerImage extends IntegerImage implements
 		this.copyAttributes(image);
 
 		this.setUnitDim(image.getUnitDim());
+		this.storageMode = image.getStorageMode();
 		this.setUnitLength(image.getUnitLength());
 
 		this.createFile();
@@ -300,7 +312,7 @@ public class LargeIntegerImage extends IntegerImage implements
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.INTEGER_DATALENGTH);
 	}
 
 	@Override
@@ -771,6 +783,21 @@ public class LargeIntegerImage extends IntegerImage implements
 		return ".largeinteger";
 	}
 
+	@Override
+	public int getStorageMode() {
+		return this.storageMode;
+	}
+
+	@Override
+	public MappedFile getMappedFile() {
+		return this.mappedFile;
+	}
+
+	@Override
+	public void setMappedFile(MappedFile mappedFile) {
+		this.mappedFile = mappedFile;
+	}
+
 	@Override
 	public void saveData() {
 		LargeImageUtil.saveData(this);
@@ -1321,6 +1348,12 @@ public class LargeIntegerImage extends IntegerImage implements
 				"You can not use setPixels(int[]) in a LargeImage");
 	}
 
+	@Override
+	public int[] getPixelsUnsafe() {
+		throw new PelicanException(
+				"You can not use getPixelsUnsafe() in a LargeImage");
+	}
+
 	@Override
 	public void setDim(int x, int y, int z, int t, int b) {
 		super.setDim(x, y, z, t, b);
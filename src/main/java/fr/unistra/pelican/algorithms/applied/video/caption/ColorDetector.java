@@ -5,6 +5,7 @@ import java.util.Arrays;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class identifies caption blocks in still images or video sequences using
@@ -95,6 +96,47 @@ public class ColorDetector extends Algorithm {
 				quantification, ratio);
 	}
 
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * color analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The color input frames
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames) {
+		ColorDetector defaults = new ColorDetector();
+		return exec(frames, defaults.width, defaults.height,
+				defaults.quantification, defaults.ratio);
+	}
+
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * color analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The color input frames
+	 * @param width
+	 *            The block width
+	 * @param height
+	 *            The block height
+	 * @param quantification
+	 *            The quantification value, i.e. number of histogram bins for
+	 *            each colour
+	 * @param ratio
+	 *            The ratio used in the labeling process
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames, final int width,
+			final int height, final int quantification, final double ratio) {
+		return new FrameStream.Filter(frames, false) {
+			protected Image process(Image frame) {
+				return ColorDetector.exec(frame, width, height,
+						quantification, ratio);
+			}
+		};
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -8,6 +8,7 @@ import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.PelicanException;
 import fr.unistra.pelican.algorithms.edge.Sobel;
 import fr.unistra.pelican.algorithms.statistics.BlockCount;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class identifies caption blocks in still images or video sequences using
@@ -97,6 +98,46 @@ public class EdgeDensityDetector extends Algorithm {
 				sobelThr, ratio);
 	}
 
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * edge density analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The input frames
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames) {
+		EdgeDensityDetector defaults = new EdgeDensityDetector();
+		return exec(frames, defaults.width, defaults.height, defaults.sobelThr,
+				defaults.ratio);
+	}
+
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * edge density analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The input frames
+	 * @param width
+	 *            The block width
+	 * @param height
+	 *            The block height
+	 * @param sobelThr
+	 *            The threshold compared to sobel values to label edge pixels
+	 * @param ratio
+	 *            The ratio used in the labeling process
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames, final int width,
+			final int height, final int sobelThr, final double ratio) {
+		return new FrameStream.Filter(frames, false) {
+			protected Image process(Image frame) {
+				return EdgeDensityDetector.exec(frame, width, height,
+						sobelThr, ratio);
+			}
+		};
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
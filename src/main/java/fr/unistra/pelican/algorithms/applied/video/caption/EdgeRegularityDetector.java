@@ -9,6 +9,7 @@ import fr.unistra.pelican.PelicanException;
 import fr.unistra.pelican.algorithms.edge.Sobel;
 import fr.unistra.pelican.algorithms.geometric.BlockResampling2D;
 import fr.unistra.pelican.algorithms.statistics.BlockCount;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class identifies caption blocks in still images or video sequences using
@@ -112,6 +113,51 @@ public class EdgeRegularityDetector extends Algorithm {
 				height, sobelThr, ratio, widthLine, ratioLine);
 	}
 
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * edge regularity analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The input frames
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames) {
+		EdgeRegularityDetector defaults = new EdgeRegularityDetector();
+		return exec(frames, defaults.width, defaults.height, defaults.sobelThr,
+				defaults.ratio, defaults.widthLine, defaults.ratioLine);
+	}
+
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * edge regularity analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The input frames
+	 * @param width
+	 *            The block width
+	 * @param height
+	 *            The block height
+	 * @param sobelThr
+	 *            The threshold compared to sobel values to label edge pixels
+	 * @param ratio
+	 *            The ratio used in the labeling process
+	 * @param widthLine
+	 *            The line width
+	 * @param ratioLine
+	 *            The ratio used in the line analysis process
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames, final int width,
+			final int height, final int sobelThr, final double ratio,
+			final int widthLine, final double ratioLine) {
+		return new FrameStream.Filter(frames, false) {
+			protected Image process(Image frame) {
+				return EdgeRegularityDetector.exec(frame, width, height,
+						sobelThr, ratio, widthLine, ratioLine);
+			}
+		};
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
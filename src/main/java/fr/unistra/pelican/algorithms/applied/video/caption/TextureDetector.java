@@ -7,6 +7,7 @@ import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.PelicanException;
 import fr.unistra.pelican.algorithms.statistics.BlockCount;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class identifies caption blocks in still images or video sequences using
@@ -96,6 +97,46 @@ public class TextureDetector extends Algorithm {
 				haarThr, ratio);
 	}
 
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * texture analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The input frames
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames) {
+		TextureDetector defaults = new TextureDetector();
+		return exec(frames, defaults.width, defaults.height, defaults.haarThr,
+				defaults.ratio);
+	}
+
+	/**
+	 * This class identifies caption blocks in each frame of a stream using
+	 * texture analysis, the frames being processed as they are read
+	 * 
+	 * @param frames
+	 *            The input frames
+	 * @param width
+	 *            The block width
+	 * @param height
+	 *            The block height
+	 * @param haarThr
+	 *            The threshold compared to haar values to label edge pixels
+	 * @param ratio
+	 *            The ratio used in the labeling process
+	 * @return The stream of the binary block images
+	 */
+	public static FrameStream exec(FrameStream frames, final int width,
+			final int height, final int haarThr, final double ratio) {
+		return new FrameStream.Filter(frames, false) {
+			protected Image process(Image frame) {
+				return TextureDetector.exec(frame, width, height,
+						haarThr, ratio);
+			}
+		};
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -3,6 +3,7 @@ package fr.unistra.pelican.algorithms.applied.video.shot;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class perform shot change detection using HSV block-based interframe
@@ -79,6 +80,32 @@ public class AdaptiveShotChangeDetection extends Algorithm {
 		return (Integer[]) new AdaptiveShotChangeDetection().process(input,
 				threshold);
 	}
+
+	/**
+	 * Performs shot change detection using HSV block-based interframe
+	 * differences in a stream of frames. The frames are read one at a time, so
+	 * only the difference measures are kept in memory.
+	 * 
+	 * @param frames
+	 *            The input frames, read to the end
+	 * @param threshold
+	 *            The threshold value used to locate shot change
+	 * @param inertia
+	 *            The temporal inertia given to the difference measures
+	 * @return The output result containing shot change positions
+	 */
+	public static Integer[] exec(FrameStream frames, double threshold,
+			double inertia) {
+		AdaptiveShotChangeDetection algo = new AdaptiveShotChangeDetection();
+		algo.threshold = threshold;
+		algo.inertia = inertia;
+		return algo.detect(HSVBasedInterframeDifference.exec(frames));
+	}
+
+	public static Integer[] exec(FrameStream frames, double threshold) {
+		return exec(frames, threshold, new AdaptiveShotChangeDetection().inertia);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -89,15 +116,20 @@ public class AdaptiveShotChangeDetection extends Algorithm {
 		if (input.tdim < 2)
 			throw new AlgorithmException(
 					"The input image is not a video sequence");
-		int duration = input.getTDim();
+		// Compute HSV interframe difference
+		output = detect(HSVBasedInterframeDifference.exec(input));
+	}
+
+	/**
+	 * Locates the shot changes from the interframe differences.
+	 */
+	private Integer[] detect(Double measures[]) {
+		int duration = measures.length;
 		Integer tmp[] = new Integer[duration];
-		Double measures[] = new Double[duration];
 		Double thresholds[] = new Double[duration];
 		Double derivative[] = new Double[duration];
 		Double integral[] = new Double[duration];
 
-		// Compute HSV interframe difference
-		measures = HSVBasedInterframeDifference.exec(input);
 		// Compute threshold values
 		thresholds[0] = measures[0];
 		for (int t = 1; t < duration; t++)
@@ -146,12 +178,12 @@ public class AdaptiveShotChangeDetection extends Algorithm {
 						tmp[t2] = 0;
 				tmp[t] = 2;
 			}
-		output = tmp;
 		/*
 		 * if (DEBUG) for (int t = 0; t < duration; t++) System.out.println(t +
 		 * "\t" + measures[t] + "\t" + thresholds[t] + "\t" + derivative[t] +
-		 * "\t" + integral[t] + "\t" + output[t]);
+		 * "\t" + integral[t] + "\t" + tmp[t]);
 		 */
+		return tmp;
 	}
 
 }
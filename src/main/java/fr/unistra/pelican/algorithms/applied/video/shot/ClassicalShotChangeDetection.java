@@ -3,6 +3,7 @@ package fr.unistra.pelican.algorithms.applied.video.shot;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class perform shot change detection using classical interframe
@@ -85,6 +86,27 @@ public class ClassicalShotChangeDetection extends Algorithm {
 				method, threshold);
 	}
 
+	/**
+	 * Performs shot change detection using classical interframe differences
+	 * in a stream of frames. The frames are read one at a time, so only the
+	 * difference measures are kept in memory.
+	 * 
+	 * @param frames
+	 *            The input frames, read to the end
+	 * @param method
+	 *            The method to be used : either PIXEL or HISTOGRAM
+	 * @param threshold
+	 *            The threshold value used to locate shot change
+	 * @return The output result containing shot change positions
+	 */
+	public static Integer[] exec(FrameStream frames, int method,
+			double threshold) {
+		ClassicalShotChangeDetection algo = new ClassicalShotChangeDetection();
+		algo.method = method;
+		algo.threshold = threshold;
+		return algo.detect(algo.measures(frames));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -95,17 +117,24 @@ public class ClassicalShotChangeDetection extends Algorithm {
 		if (input.tdim < 2)
 			throw new AlgorithmException(
 					"The input image is not a video sequence");
-		int duration = input.getTDim();
-		Integer tmp[] = new Integer[duration];
-		Double measures[] = null;
+		output = detect(measures(FrameStream.of(input)));
+	}
+
+	private Double[] measures(FrameStream frames) {
 		// compute measures
 		if (method == PIXEL)
-			measures = (Double[]) new PixelBasedInterframeDifference()
-					.process(input);
+			return PixelBasedInterframeDifference.exec(frames);
 		else if (method == HISTOGRAM)
-			measures = (Double[]) new HistogramBasedInterframeDifference()
-					.process(input);
+			return HistogramBasedInterframeDifference.exec(frames);
+		throw new AlgorithmException("Unknown method: " + method);
+	}
 
+	/**
+	 * Locates the shot changes from the interframe differences.
+	 */
+	private Integer[] detect(Double measures[]) {
+		int duration = measures.length;
+		Integer tmp[] = new Integer[duration];
 		java.util.Arrays.fill(tmp, 0);
 		for (int t = 0; t < duration - 1; t++)
 			if (measures[t] > threshold) {
@@ -121,7 +150,7 @@ public class ClassicalShotChangeDetection extends Algorithm {
 					tmp[t] = 2;
 				t = t2;
 			}
-		output = tmp;
+		return tmp;
 	}
 
 }
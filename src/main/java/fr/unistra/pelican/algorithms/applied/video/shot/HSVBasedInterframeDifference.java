@@ -1,10 +1,13 @@
 package fr.unistra.pelican.algorithms.applied.video.shot;
 
+import java.util.ArrayList;
+
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.algorithms.conversion.RGBToHSV;
 import fr.unistra.pelican.algorithms.geometric.BlockResampling2D;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class computes HSV block-based interframe differences in image sequences
@@ -86,6 +89,41 @@ public class HSVBasedInterframeDifference extends Algorithm {
 				saturationThr, hueWeight, subsampling);
 	}
 
+	/**
+	 * Computes HSV block-based interframe differences in a stream of frames,
+	 * keeping only the previous subsampled frame in memory
+	 * 
+	 * @param frames
+	 *            The input frames, read to the end
+	 * @return The array of difference values
+	 */
+	public static Double[] exec(FrameStream frames) {
+		return new HSVBasedInterframeDifference().differences(frames);
+	}
+
+	/**
+	 * Computes HSV block-based interframe differences in a stream of frames,
+	 * keeping only the previous subsampled frame in memory
+	 * 
+	 * @param frames
+	 *            The input frames, read to the end
+	 * @param saturationThr
+	 *            The saturation threshold
+	 * @param hueWeight
+	 *            The weight of hue versus saturation
+	 * @param subsampling
+	 *            The subsampling level used to analyse the image sequence
+	 * @return The array of difference values
+	 */
+	public static Double[] exec(FrameStream frames, double saturationThr,
+			double hueWeight, int subsampling) {
+		HSVBasedInterframeDifference algo = new HSVBasedInterframeDifference();
+		algo.saturationThr = saturationThr;
+		algo.hueWeight = hueWeight;
+		algo.subsampling = subsampling;
+		return algo.differences(frames);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -96,29 +134,28 @@ public class HSVBasedInterframeDifference extends Algorithm {
 		if (input.tdim < 2)
 			throw new AlgorithmException(
 					"The input image is not a video sequence");
-		int duration = input.getTDim();
-		output = new Double[duration];
-		Image img1;
+		output = differences(FrameStream.of(input));
+	}
+
+	private Double[] differences(FrameStream frames) {
+		ArrayList<Double> values = new ArrayList<Double>();
+		Image img1 = null;
 		Image img2;
 		double alpha;
 		double diff;
 		double hue, sat;
 		double sat1, sat2;
 		double sum;
-		// Sequence scanning
-		for (int t = 1; t < duration; t++) {
-			img1 = input.getImage4D(t - 1, Image.T);// getColorByteChannelZT(0,t-1);
-			img2 = input.getImage4D(t, Image.T);// getColorByteChannelZT(0,t);
-			if (subsampling > 1) {
-				img1 = (Image) new BlockResampling2D().process(img1, subsampling,
-						subsampling,false);
+		// Sequence scanning, each frame being converted once
+		for (; frames.hasNext(); img1 = img2) {
+			img2 = frames.next();
+			if (subsampling > 1)
 				img2 = (Image) new BlockResampling2D().process(img2, subsampling,
 						subsampling,false);
-			}
-			if (input.isColor()) {
-				img1 = (Image) new RGBToHSV().process(img1);
+			if (frames.isColor())
 				img2 = (Image) new RGBToHSV().process(img2);
-			}
+			if (img1 == null)
+				continue;
 			sum = 0;
 			for (int x = 0; x < img1.getXDim(); x++)
 				for (int y = 0; y < img1.getYDim(); y++) {
@@ -142,9 +179,13 @@ public class HSVBasedInterframeDifference extends Algorithm {
 					sum += diff;
 				}
 			sum /= (img1.getXDim() * img1.getYDim());
-			output[t - 1] = sum * 100;
+			values.add(sum * 100);
 		}
-		output[duration - 1] = 0.0;
+		if (values.isEmpty())
+			throw new AlgorithmException(
+					"The input image is not a video sequence");
+		values.add(0.0);
+		return values.toArray(new Double[values.size()]);
 	}
 
 }
@@ -1,10 +1,13 @@
 package fr.unistra.pelican.algorithms.applied.video.shot;
 
+import java.util.ArrayList;
+
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.algorithms.conversion.RGBToGray;
 import fr.unistra.pelican.algorithms.histogram.Histogram;
+import fr.unistra.pelican.util.video.FrameStream;
 
 
 /**
@@ -49,6 +52,18 @@ public class HistogramBasedInterframeDifference extends Algorithm {
 	public static Double[] exec(Image input) {
 		return (Double[]) new HistogramBasedInterframeDifference().process(input);
 	}
+
+	/**
+	 * Computes histogram-based interframe differences in a stream of frames,
+	 * keeping only the histogram of the previous frame in memory
+	 * 
+	 * @param frames
+	 *            The input frames, read to the end
+	 * @return The array of difference values
+	 */
+	public static Double[] exec(FrameStream frames) {
+		return new HistogramBasedInterframeDifference().differences(frames);
+	}
 	
 	/* (non-Javadoc)
 	 * @see fr.unistra.pelican.Algorithm#launch()
@@ -57,30 +72,34 @@ public class HistogramBasedInterframeDifference extends Algorithm {
 		// check if the image is a video sequence
 		if (input.tdim < 2)
 	    	throw new AlgorithmException("The input image is not a video sequence");
-		int duration=input.getTDim();
-		output=new Double[duration];
-		double hist1[];
+		output=differences(FrameStream.of(input));
+	}
+
+	private Double[] differences(FrameStream frames) {
+		ArrayList<Double> values=new ArrayList<Double>();
+		double hist1[]=null;
 		double hist2[];
-		Image img1;
 		Image img2;
 		double diff;
-			// Sequence scanning
-			for(int t=1;t<duration;t++) {
-				img1=input.getImage4D(t-1,Image.T);
-				img2=input.getImage4D(t,Image.T);
-				if (input.isColor()) {
-					img1=(Image) new RGBToGray().process(img1);
+			// Sequence scanning, each histogram being computed once
+			while(frames.hasNext()) {
+				img2=frames.next();
+				if (frames.isColor())
 					img2=(Image) new RGBToGray().process(img2);
-				}
-				hist1=Histogram.exec(img1,true);
 				hist2=Histogram.exec(img2,true);
-				diff=0;
-				for(int v=0;v<hist1.length;v++)
-					diff+=Math.abs(hist1[v]-hist2[v]);
-				// diff is in [0,2] so output is in [0,100]
-				output[t-1]=diff*100/2;
+				if (hist1!=null) {
+					diff=0;
+					for(int v=0;v<hist1.length;v++)
+						diff+=Math.abs(hist1[v]-hist2[v]);
+					// diff is in [0,2] so output is in [0,100]
+					values.add(diff*100/2);
+				}
+				hist1=hist2;
 			}
-			output[duration-1]=0.0;
+			if (values.isEmpty())
+				throw new AlgorithmException("The input image is not a video sequence");
+			values.add(0.0);
+			return values.toArray(new Double[values.size()]);
 	}
 
 
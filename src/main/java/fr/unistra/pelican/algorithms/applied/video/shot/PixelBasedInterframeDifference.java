@@ -1,10 +1,13 @@
 package fr.unistra.pelican.algorithms.applied.video.shot;
 
+import java.util.ArrayList;
+
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.algorithms.conversion.RGBToGray;
+import fr.unistra.pelican.util.video.FrameStream;
 
 /**
  * This class computes pixel-based interframe differences in image sequences for
@@ -49,6 +52,18 @@ public class PixelBasedInterframeDifference extends Algorithm {
 		return (Double[]) new PixelBasedInterframeDifference().process(input);
 	}
 
+	/**
+	 * Computes pixel-based interframe differences in a stream of frames,
+	 * keeping only the previous frame in memory
+	 * 
+	 * @param frames
+	 *            The input frames, read to the end
+	 * @return The array of difference values
+	 */
+	public static Double[] exec(FrameStream frames) {
+		return new PixelBasedInterframeDifference().differences(frames);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -59,21 +74,27 @@ public class PixelBasedInterframeDifference extends Algorithm {
 		if (input.tdim < 2)
 			throw new AlgorithmException(
 					"The input image is not a video sequence");
-		int duration = input.getTDim();
-		ByteImage img1;
+		output = differences(FrameStream.of(input));
+	}
+
+	private Double[] differences(FrameStream frames) {
+		ArrayList<Double> values = new ArrayList<Double>();
+		ByteImage img1 = null;
 		ByteImage img2;
-		output = new Double[duration];
-		// Sequence scanning
-		for (int t = 1; t < duration; t++) {
-			img1 = (ByteImage) input.getImage4D(t - 1, Image.T);
-			img2 = (ByteImage) input.getImage4D(t, Image.T);
-			if (input.isColor()) {
-				img1 = (ByteImage) new RGBToGray().process(img1);
+		// Sequence scanning, each frame being converted once
+		while (frames.hasNext()) {
+			img2 = (ByteImage) frames.next();
+			if (frames.isColor())
 				img2 = (ByteImage) new RGBToGray().process(img2);
-			}
-			output[t - 1] = img1.differenceRatio(img2);
+			if (img1 != null)
+				values.add(img1.differenceRatio(img2));
+			img1 = img2;
 		}
-		output[duration - 1] = 0.0;
+		if (values.isEmpty())
+			throw new AlgorithmException(
+					"The input image is not a video sequence");
+		values.add(0.0);
+		return values.toArray(new Double[values.size()]);
 	}
 
 }
@@ -2,9 +2,12 @@ package fr.unistra.pelican.algorithms.arithmetic;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.InvalidParameterException;
 import fr.unistra.pelican.util.mask.MaskStack;
+import fr.unistra.pelican.util.RawPixels;
 
 /**
  * Compute the absolute difference between two images
@@ -62,6 +65,41 @@ public class AbsoluteDifference extends Algorithm {
 		outputImage.setMask( mask );
 
 		int size = inputImage1.size();
+		if ( RawPixels.isRawAndUnmasked( inputImage1,inputImage2 ) ) { 
+
+			// no pixel is masked, work on the pixel arrays
+			if ( inputImage1 instanceof ByteImage && inputImage2 instanceof ByteImage ) { 
+
+				// exact difference of the unsigned values
+				byte[] pixels1 = ((ByteImage) inputImage1).getPixelsUnsafe();
+				byte[] pixels2 = ((ByteImage) inputImage2).getPixelsUnsafe();
+				byte[] result = ((ByteImage) outputImage).getPixelsUnsafe();
+				for ( int i = 0 ; i < size ; ++i ) 
+					result[i] = (byte) ( Math.abs( pixels1[i] - pixels2[i] ) + Byte.MIN_VALUE );
+				return;
+			}
+			if ( inputImage1 instanceof IntegerImage && inputImage2 instanceof IntegerImage ) { 
+
+				// same conversions as the per-pixel accessors
+				int[] pixels1 = ((IntegerImage) inputImage1).getPixelsUnsafe();
+				int[] pixels2 = ((IntegerImage) inputImage2).getPixelsUnsafe();
+				int[] result = ((IntegerImage) outputImage).getPixelsUnsafe();
+				for ( int i = 0 ; i < size ; ++i ) 
+					result[i] = Image.doubleToInt( Math.abs( Image.intToDouble( pixels1[i] )
+							- Image.intToDouble( pixels2[i] ) ) );
+				return;
+			}
+
+			// double or mixed images
+			double[] pixels1 = RawPixels.getDoubles( inputImage1 );
+			double[] pixels2 = RawPixels.getDoubles( inputImage2 );
+			double[] result = RawPixels.getDoubleBuffer( outputImage );
+			for ( int i = 0 ; i < size ; ++i ) 
+				result[i] = Math.abs( pixels1[i] - pixels2[i] );
+			RawPixels.setDoubles( outputImage,result );
+			return;
+		}
+
 		boolean isHere1, isHere2;
 		double pixel1, pixel2;
 		for ( int i = 0 ; i < size ; ++i ) {  
@@ -2,8 +2,11 @@ package fr.unistra.pelican.algorithms.arithmetic;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.util.mask.MaskStack;
+import fr.unistra.pelican.util.RawPixels;
 
 /**
  * Compute the difference beetwen two image, inputImage1 - inputImage2. The
@@ -71,6 +74,49 @@ public class Difference extends Algorithm {
 		outputImage.setMask( mask );
 
 		int size = inputImage1.size();
+		if ( RawPixels.isRawAndUnmasked( inputImage1,inputImage2 ) ) { 
+
+			// no pixel is masked, work on the pixel arrays
+			if ( inputImage1 instanceof ByteImage && inputImage2 instanceof ByteImage ) { 
+
+				// the difference of the unsigned values wraps around as with setPixelDouble
+				byte[] pixels1 = ((ByteImage) inputImage1).getPixelsUnsafe();
+				byte[] pixels2 = ((ByteImage) inputImage2).getPixelsUnsafe();
+				byte[] result = ((ByteImage) outputImage).getPixelsUnsafe();
+				for ( int i = 0 ; i < size ; ++i ) 
+					result[i] = safe ? (byte) ( Math.max( 0,pixels1[i] - pixels2[i] ) + Byte.MIN_VALUE )
+							: (byte) ( pixels1[i] - pixels2[i] + Byte.MIN_VALUE );
+				return;
+			}
+			if ( inputImage1 instanceof IntegerImage && inputImage2 instanceof IntegerImage ) { 
+
+				// same conversions as the per-pixel accessors
+				int[] pixels1 = ((IntegerImage) inputImage1).getPixelsUnsafe();
+				int[] pixels2 = ((IntegerImage) inputImage2).getPixelsUnsafe();
+				int[] result = ((IntegerImage) outputImage).getPixelsUnsafe();
+				for ( int i = 0 ; i < size ; ++i ) { 
+
+					double val = Image.intToDouble( pixels1[i] ) - Image.intToDouble( pixels2[i] );
+					if (Math.abs(val) < 0.0000001) val = 0;
+					result[i] = Image.doubleToInt( safe ? Math.min( 1.0, Math.max(0.0,val)) : val );
+				}
+				return;
+			}
+
+			// double or mixed images
+			double[] pixels1 = RawPixels.getDoubles( inputImage1 );
+			double[] pixels2 = RawPixels.getDoubles( inputImage2 );
+			double[] result = RawPixels.getDoubleBuffer( outputImage );
+			for ( int i = 0 ; i < size ; ++i ) { 
+
+				double val = pixels1[i] - pixels2[i];
+				if (Math.abs(val) < 0.0000001) val = 0;
+				result[i] = safe ? Math.min( 1.0, Math.max(0.0,val)) : val;
+			}
+			RawPixels.setDoubles( outputImage,result );
+			return;
+		}
+
 		boolean isHere1, isHere2;
 		double val1, val2;
 		for (int i = 0; i < size; ++i) { 
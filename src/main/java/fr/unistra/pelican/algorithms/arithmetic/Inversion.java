@@ -5,6 +5,7 @@ import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.RawPixels;
 
 /**
  * Invert an image (default complement function). 
@@ -46,7 +47,13 @@ public class Inversion extends Algorithm {
 	 */
 	public void launch() throws AlgorithmException {
 		outputImage = inputImage.copyImage(false);
-		if (inputImage instanceof ByteImage) {
+		if (inputImage instanceof ByteImage && RawPixels.hasRawPixels(inputImage)) {
+			byte[] in = ((ByteImage) inputImage).getPixelsUnsafe();
+			byte[] out = ((ByteImage) outputImage).getPixelsUnsafe();
+			// 255 - v on the values shifted by Byte.MIN_VALUE
+			for (int i = 0; i < in.length; i++)
+				out[i] = (byte) ~in[i];
+		} else if (inputImage instanceof ByteImage) {
 			for (int i = 0; i < inputImage.size(); i++)
 				outputImage.setPixelByte(i,255 - inputImage.getPixelByte(i));
 
@@ -54,6 +61,12 @@ public class Inversion extends Algorithm {
 			BooleanImage inputBool = (BooleanImage) inputImage;
 			BooleanImage outputBool = inputBool.getComplement();
 			outputImage = outputBool;
+		} else if (RawPixels.hasRawPixels(inputImage)) {
+			double[] in = RawPixels.getDoubles(inputImage);
+			double[] out = RawPixels.getDoubleBuffer(outputImage);
+			for (int i = 0; i < in.length; i++)
+				out[i] = 1.0 - in[i];
+			RawPixels.setDoubles(outputImage, out);
 		} else {
 			for (int i = 0; i < inputImage.size(); i++)
 				outputImage.setPixelDouble(i,1.0 - inputImage.getPixelDouble(i));
@@ -5,6 +5,7 @@ import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.util.mask.MaskStack;
+import fr.unistra.pelican.util.RawPixels;
 
 /**
  * Combine many images with weighting coefficients. 
@@ -61,12 +62,23 @@ public class LinearCombination extends Algorithm {
 		int size = inputImage[0].size();
 		int nb = inputImage.length;
 		double val;
-		for (int i = 0; i < size; ++i) {
-			val = 0;
-			for (int k = 0; k < nb; k++)
-				if ( inputImage[k].isPresent(i) )
-				val += inputImage[k].getPixelDouble(i) * coef[k];
-			outputImage.setPixelDouble(i, val);
+		if (RawPixels.isRawAndUnmasked(inputImage)) {
+			// no pixel is masked, accumulate each image on the pixel array
+			double[] result = ((DoubleImage) outputImage).getPixelsUnsafe();
+			for (int k = 0; k < nb; k++) {
+				double[] pixels = RawPixels.getDoubles(inputImage[k]);
+				double c = coef[k];
+				for (int i = 0; i < size; ++i)
+					result[i] += pixels[i] * c;
+			}
+		} else {
+			for (int i = 0; i < size; ++i) {
+				val = 0;
+				for (int k = 0; k < nb; k++)
+					if ( inputImage[k].isPresent(i) )
+					val += inputImage[k].getPixelDouble(i) * coef[k];
+				outputImage.setPixelDouble(i, val);
+			}
 		}
 
 		MaskStack mask = new MaskStack( MaskStack.AND );
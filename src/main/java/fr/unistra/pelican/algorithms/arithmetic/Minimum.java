@@ -2,8 +2,11 @@ package fr.unistra.pelican.algorithms.arithmetic;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.util.mask.MaskStack;
+import fr.unistra.pelican.util.RawPixels;
 
 /**
  * Compute the infimum of two images, for each pixel max(inputImage1,
@@ -58,6 +61,41 @@ public class Minimum extends Algorithm {
 		mask.push( inputImage2.getMask() );
 		outputImage.setMask( mask );
 
+		if ( RawPixels.isRawAndUnmasked( inputImage1,inputImage2 ) ) { 
+
+			// no pixel is masked, work on the pixel arrays
+			if ( inputImage1 instanceof ByteImage && inputImage2 instanceof ByteImage ) { 
+
+				// the byte values are ordered as the double values
+				byte[] pixels1 = ((ByteImage) inputImage1).getPixelsUnsafe();
+				byte[] pixels2 = ((ByteImage) inputImage2).getPixelsUnsafe();
+				byte[] result = ((ByteImage) outputImage).getPixelsUnsafe();
+				for ( int i = 0 ; i < size ; ++i ) 
+					result[i] = pixels1[i] < pixels2[i] ? pixels1[i] : pixels2[i];
+				return;
+			}
+			if ( inputImage1 instanceof IntegerImage && inputImage2 instanceof IntegerImage ) { 
+
+				// same conversions as the per-pixel accessors
+				int[] pixels1 = ((IntegerImage) inputImage1).getPixelsUnsafe();
+				int[] pixels2 = ((IntegerImage) inputImage2).getPixelsUnsafe();
+				int[] result = ((IntegerImage) outputImage).getPixelsUnsafe();
+				for ( int i = 0 ; i < size ; ++i ) 
+					result[i] = Image.doubleToInt( Image.intToDouble(
+							pixels1[i] < pixels2[i] ? pixels1[i] : pixels2[i] ) );
+				return;
+			}
+
+			// double or mixed images
+			double[] pixels1 = RawPixels.getDoubles( inputImage1 );
+			double[] pixels2 = RawPixels.getDoubles( inputImage2 );
+			double[] result = RawPixels.getDoubleBuffer( outputImage );
+			for ( int i = 0 ; i < size ; ++i ) 
+				result[i] = pixels1[i] < pixels2[i] ? pixels1[i] : pixels2[i];
+			RawPixels.setDoubles( outputImage,result );
+			return;
+		}
+
 		boolean isHere1, isHere2;
 		for ( int i = 0 ; i < size ; ++i ) {  
 
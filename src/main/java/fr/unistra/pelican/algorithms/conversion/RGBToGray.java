@@ -4,6 +4,7 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.RawPixels;
 
 /**
  * This class realizes the transformation of a tristumulus RGB image into a
@@ -60,6 +61,26 @@ public class RGBToGray extends Algorithm {
 		this.output.setMask( this.input.getMask() );
 		output.setColor(false);
 
+		// the three bands of a pixel are contiguous in the pixel arrays
+		if (input instanceof ByteImage && RawPixels.hasRawPixels(input)) {
+			byte[] rgb = ((ByteImage) input).getPixelsUnsafe();
+			byte[] gray = ((ByteImage) output).getPixelsUnsafe();
+			for (int i = 0, j = 0; i < gray.length; i++, j += 3)
+				gray[i] = Image.doubleToSignedByte(0.299
+						* Image.signedByteToDouble(rgb[j]) + 0.587
+						* Image.signedByteToDouble(rgb[j + 1]) + 0.114
+						* Image.signedByteToDouble(rgb[j + 2]));
+			return;
+		}
+		if (RawPixels.hasRawPixels(input)) {
+			double[] rgb = RawPixels.getDoubles(input);
+			byte[] gray = ((ByteImage) output).getPixelsUnsafe();
+			for (int i = 0, j = 0; i < gray.length; i++, j += 3)
+				gray[i] = Image.doubleToSignedByte(0.299 * rgb[j] + 0.587
+						* rgb[j + 1] + 0.114 * rgb[j + 2]);
+			return;
+		}
+
 		for (int x = 0; x < xdim; x++) {
 			for (int y = 0; y < ydim; y++) {
 				for (int z = 0; z < zdim; z++) {
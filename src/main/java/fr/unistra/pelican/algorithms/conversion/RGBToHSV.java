@@ -3,7 +3,9 @@ package fr.unistra.pelican.algorithms.conversion;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.RawPixels;
 
 /**
  * This class realizes the transformation of a tristumulus RGB image into a
@@ -61,10 +63,23 @@ public class RGBToHSV extends Algorithm {
 		this.output.setMask( this.input.getMask() );
 		output.setColor(true);
 
+		// work on the pixel arrays when a byte image is kept in memory
+		boolean raw = input instanceof ByteImage && RawPixels.hasRawPixels(input)
+				&& RawPixels.hasRawPixels(output);
+		byte[] rgb = raw ? ((ByteImage) input).getPixelsUnsafe() : null;
+		double[] hsv = raw ? ((DoubleImage) output).getPixelsUnsafe() : null;
+
 		for (int i = 0; i < size; i=i+3) {			
-			int R = input.getPixelByte(i);
-			int G = input.getPixelByte(i+1);
-			int B = input.getPixelByte(i+2);
+			int R, G, B;
+			if (raw) {
+				R = rgb[i] - Byte.MIN_VALUE;
+				G = rgb[i+1] - Byte.MIN_VALUE;
+				B = rgb[i+2] - Byte.MIN_VALUE;
+			} else {
+				R = input.getPixelByte(i);
+				G = input.getPixelByte(i+1);
+				B = input.getPixelByte(i+2);
+			}
 
 			// normalise to [0,1]
 			double rN = R * 0.003921;
@@ -110,9 +125,15 @@ public class RGBToHSV extends Algorithm {
 					H = H / 360.0;
 			}
 
-			output.setPixelDouble(i, H);
-			output.setPixelDouble(i+1, S);
-			output.setPixelDouble(i+2, V);
+			if (raw) {
+				hsv[i] = H;
+				hsv[i+1] = S;
+				hsv[i+2] = V;
+			} else {
+				output.setPixelDouble(i, H);
+				output.setPixelDouble(i+1, S);
+				output.setPixelDouble(i+2, V);
+			}
 		}
 		if (scaleToByte)
 			output=scaleToByte(output);
@@ -159,6 +180,14 @@ public class RGBToHSV extends Algorithm {
 		ByteImage bimg = new ByteImage(hsv, false);
 		int size = bimg.size();
 
+		if (RawPixels.hasRawPixels(hsv)) {
+			double[] values = RawPixels.getDoubles(hsv);
+			byte[] pixels = bimg.getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				pixels[i] = Image.unsignedByteToSignedByte((int) Math.round(values[i] * 255));
+			return bimg;
+		}
+
 		for(int i=0;i<size;i=i+3)
 		{
 			double d = hsv.getPixelDouble(i);
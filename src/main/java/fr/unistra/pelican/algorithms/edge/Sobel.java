@@ -5,6 +5,7 @@ import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.parallel.LocalOperator;
 
 /**
  * This class represents the Sobel edge detector scheme applied in 2-D or 3-D as norm,
@@ -12,7 +13,7 @@ import fr.unistra.pelican.Image;
  * 
  * @author Aptoula, Lefèvre
  */
-public class Sobel extends Algorithm {
+public class Sobel extends Algorithm implements LocalOperator {
 
 	/**
 	 * Input image
@@ -210,6 +211,15 @@ public class Sobel extends Algorithm {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.unistra.pelican.util.parallel.LocalOperator#getNeighbourhoodRadius()
+	 */
+	public int[] getNeighbourhoodRadius() {
+		return new int[] { 1, 1 };
+	}
+
 	Image convolve2D(int dx, int dy, int dz, int dt, int db, int tab[][]) {
 		Image result = new DoubleImage(xdim, ydim, zdim, tdim, bdim);
 		result.copyAttributes(input);
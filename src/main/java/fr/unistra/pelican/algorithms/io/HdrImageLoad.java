@@ -7,6 +7,10 @@ import fr.unistra.pelican.util.remotesensing.HdrReader;
 /**
  * Loads hdr images used in remote sensing (ByteImage).
  * 
+ * A window of the image, a subset of its bands and a decimation factor may be
+ * given: only the corresponding parts of the binary file are then read, for
+ * the BSQ, BIL and BIP formats.
+ * 
  * @author
  */
 
@@ -17,6 +21,36 @@ public class HdrImageLoad extends Algorithm {
 	 */
 	public String filename;
 
+	/**
+	 * First column of the window to read
+	 */
+	public int x = 0;
+
+	/**
+	 * First line of the window to read
+	 */
+	public int y = 0;
+
+	/**
+	 * Width of the window to read, -1 to read up to the last column
+	 */
+	public int width = -1;
+
+	/**
+	 * Height of the window to read, -1 to read up to the last line
+	 */
+	public int height = -1;
+
+	/**
+	 * Bands to read, null to read all of them
+	 */
+	public int[] bands = null;
+
+	/**
+	 * Decimation factor: one column and one line out of step are read
+	 */
+	public int step = 1;
+
 	/**
 	 * Output parameter
 	 */
@@ -30,6 +64,7 @@ public class HdrImageLoad extends Algorithm {
 
 		super();
 		super.inputs = "filename";
+		super.options = "x,y,width,height,bands,step";
 		super.outputs = "output";
 		
 	}
@@ -39,9 +74,8 @@ public class HdrImageLoad extends Algorithm {
 		// RawImage source = PicTool.load(filename);
 
 		// output = source.getPelicanImage();
-		output = new HdrReader().getPelicanImage(filename); // TODO utiliser
-															// plus tard une
-															// méthode statique
+		output = new HdrReader().getPelicanImage(filename, x, y, width, height,
+				bands, step); // TODO utiliser plus tard une méthode statique
 
 	}
 	/**
@@ -53,4 +87,38 @@ public class HdrImageLoad extends Algorithm {
 	public static Image exec(String filename) {
 		return (Image) new HdrImageLoad().process(filename);
 	}
+
+	/**
+	 * Loads a window of a hdr image used in remote sensing.
+	 * 
+	 * @param filename Filename of the hrd image.
+	 * @param x First column of the window.
+	 * @param y First line of the window.
+	 * @param width Width of the window.
+	 * @param height Height of the window.
+	 * @return The window of the hdr image.
+	 */
+	public static Image exec(String filename, int x, int y, int width,
+			int height) {
+		return (Image) new HdrImageLoad().process(filename, x, y, width, height);
+	}
+
+	/**
+	 * Loads some bands of a window of a hdr image used in remote sensing,
+	 * keeping one pixel out of step in each direction.
+	 * 
+	 * @param filename Filename of the hrd image.
+	 * @param x First column of the window.
+	 * @param y First line of the window.
+	 * @param width Width of the window, -1 up to the last column.
+	 * @param height Height of the window, -1 up to the last line.
+	 * @param bands Bands to read, null to read all of them.
+	 * @param step Decimation factor.
+	 * @return The decimated window of the hdr image.
+	 */
+	public static Image exec(String filename, int x, int y, int width,
+			int height, int[] bands, int step) {
+		return (Image) new HdrImageLoad().process(filename, x, y, width,
+				height, bands, step);
+	}
 }
\ No newline at end of file
@@ -25,6 +25,9 @@ import fr.unistra.pelican.util.jFits.FitsMatrix;
  * 
  * Result is always in double precision
  * 
+ * A region of the images may be given with options x, y, width and height, in
+ * the coordinates of the resulting image: only this region is then decoded.
+ * 
  * @author Benjamin Perret
  *
  */
@@ -37,6 +40,26 @@ public class LoadFitsWithExtensions extends Algorithm {
 	 */
 	public String filename;
 	
+	/**
+	 * First column of the region to read
+	 */
+	public int x = 0;
+	
+	/**
+	 * First line of the region to read
+	 */
+	public int y = 0;
+	
+	/**
+	 * Width of the region to read, -1 to read up to the last column
+	 */
+	public int width = -1;
+	
+	/**
+	 * Height of the region to read, -1 to read up to the last line
+	 */
+	public int height = -1;
+	
 	/**
 	 * Result
 	 */
@@ -46,6 +69,7 @@ public class LoadFitsWithExtensions extends Algorithm {
 	
 	public LoadFitsWithExtensions(){
 		super.inputs="filename";
+		super.options="x,y,width,height";
 		super.outputs="outputImage";
 	}
 	
@@ -74,6 +98,8 @@ public class LoadFitsWithExtensions extends Algorithm {
 			
 			int dimx=0;
 			int dimy=0;
+			int w=0;
+			int h=0;
 			int b=0;
 			for(int i=0;i<ff.getNoHDUnits();i++)
 				if(ff.getHDUnit(i).getType() == Fits.IMAGE)
@@ -95,7 +121,11 @@ public class LoadFitsWithExtensions extends Algorithm {
 						}
 						dimx=naxis[0];
 						dimy=naxis[1];
-						outputImage=new DoubleImage(dimx,dimy,1,1,nbHdu);
+						w = width < 0 ? dimx - x : width;
+						h = height < 0 ? dimy - y : height;
+						if(x < 0 || y < 0 || w < 1 || h < 1 || x + w > dimx || y + h > dimy)
+							throw new AlgorithmException("Fits reading exception, region outside of the " + dimx + "x" + dimy + " image " + filename);
+						outputImage=new DoubleImage(w,h,1,1,nbHdu);
 					} else {
 						int [] naxis =matrix.getNaxis();
 						if(naxis.length != 2)
@@ -112,17 +142,9 @@ public class LoadFitsWithExtensions extends Algorithm {
 							//throw new AlgorithmException("Fits reading excpetion, all image extensions must have same dimensions! " +filename);
 					}
 					
-					double [] tmp = new double[dimx];
 					outputImage.properties.put(HEADER_KEYWORD + b, header);
-					for(int y=0;y<dimy;y++)
-					{
-						tmp = matrix.getDoubleValues(y*dimx, dimx, tmp);
-						for(int x=0;x<dimx;x++)
-						{
-							
-							outputImage.setPixelXYBDouble(x, dimy-y-1, b, tmp[x]);
-						}
-					}
+					// fits lines go upward: line dimy-y-h of the matrix is the last line of the image
+					matrix.getDoubleRegion(x, dimy - y - h, w, h, outputImage.getPixelsUnsafe(), b + nbHdu * w * (h - 1), nbHdu, -nbHdu * w);
 					b++;
 				}
 			ff.closeFile();
@@ -140,6 +162,21 @@ public class LoadFitsWithExtensions extends Algorithm {
 	{
 		return (DoubleImage)(new LoadFitsWithExtensions()).process(filename);
 	}
+	
+	/**
+	 * Reads a region of the images of a fits file.
+	 * 
+	 * @param filename path to fits file
+	 * @param x first column of the region
+	 * @param y first line of the region
+	 * @param width width of the region
+	 * @param height height of the region
+	 * @return the region, with a band for each image extension
+	 */
+	public static DoubleImage exec(String filename, int x, int y, int width, int height)  throws AlgorithmException
+	{
+		return (DoubleImage)(new LoadFitsWithExtensions()).process(filename, x, y, width, height);
+	}
 	/*
 	public static void main(String [] args)
 	{
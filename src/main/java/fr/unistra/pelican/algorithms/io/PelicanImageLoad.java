@@ -1,5 +1,6 @@
 package fr.unistra.pelican.algorithms.io;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -8,10 +9,12 @@ import java.util.zip.GZIPInputStream;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.PelicanImageFile;
 
 /**
- * Loads images in PELICAN binary format (with serialization and optionally
- * compression).
+ * Loads images in PELICAN binary format (see {@link PelicanImageFile}), or
+ * saved with Java serialization by the previous versions. A single frame or
+ * band is read with PelicanImageFile.readFrame() or readBand().
  * 
  * @author Lefevre
  */
@@ -23,7 +26,8 @@ public class PelicanImageLoad extends Algorithm {
 	public String filename;
 
 	/**
-	 * (optional) compression flag
+	 * (optional) compression flag, only used for the serialized images, the
+	 * compression of the others being given by their header
 	 */
 	public boolean compression = true;
 
@@ -45,6 +49,11 @@ public class PelicanImageLoad extends Algorithm {
 	public void launch() throws AlgorithmException {
 		// Load the image.
 		try {
+			File file = new File(filename);
+			if (PelicanImageFile.isPelicanImageFile(file)) {
+				output = PelicanImageFile.read(file);
+				return;
+			}
 			ObjectInputStream f = null;
 			if (compression)
 				f = new ObjectInputStream(new GZIPInputStream(new FileInputStream(
@@ -62,7 +71,7 @@ public class PelicanImageLoad extends Algorithm {
 	}
 
 	/**
-	 * Loads images in PELICAN binary format (with serialization and compression).
+	 * Loads images in PELICAN binary format.
 	 * 
 	 * @param path
 	 *          Directory of the image to be loaded.
@@ -73,8 +82,8 @@ public class PelicanImageLoad extends Algorithm {
 	}
 
 	/**
-	 * Loads images in PELICAN binary format (with serialization and optionally
-	 * compression).
+	 * Loads images in PELICAN binary format (serialized images optionally
+	 * compressed).
 	 * 
 	 * @param path
 	 *          Directory of the image to be loaded.
@@ -1,5 +1,6 @@
 package fr.unistra.pelican.algorithms.io;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
@@ -8,10 +9,14 @@ import java.util.zip.GZIPOutputStream;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.PelicanImageFile;
 
 /**
- * Saves images in PELICAN binary format (with serialization and optionally
- * compression).
+ * Saves images in PELICAN binary format: a header followed by the raw pixel
+ * values, optionally compressed by blocks (see {@link PelicanImageFile}).
+ * Images of other types than boolean, byte, integer and double, or all
+ * images when the serialization flag is set, are saved with Java
+ * serialization as in the previous versions.
  * 
  * @author Lefevre
  */
@@ -32,13 +37,18 @@ public class PelicanImageSave extends Algorithm {
 	 */
 	public boolean compression = true;
 
+	/**
+	 * (optional) serialization flag, to write the former serialized format
+	 */
+	public boolean serialization = false;
+
 	/**
 	 * Constructor
 	 * 
 	 */
 	public PelicanImageSave() {
 		super.inputs = "input,filename";
-		super.options = "compression";
+		super.options = "compression,serialization";
 		super.outputs = "";
 
 	}
@@ -46,6 +56,11 @@ public class PelicanImageSave extends Algorithm {
 	public void launch() throws AlgorithmException {
 		// Save the image.
 		try {
+			if (!serialization && PelicanImageFile.isSupported(input)) {
+				PelicanImageFile.write(input, new File(filename),
+					compression ? PelicanImageFile.DEFLATE : PelicanImageFile.NONE);
+				return;
+			}
 			ObjectOutputStream f = null;
 			if (compression)
 				f = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(
@@ -62,7 +77,7 @@ public class PelicanImageSave extends Algorithm {
 	}
 
 	/**
-	 * Saves images in PELICAN binary format (with serialization and compression)
+	 * Saves images in PELICAN binary format (with compression)
 	 * 
 	 * @param input
 	 *          Image to be saved
@@ -74,8 +89,7 @@ public class PelicanImageSave extends Algorithm {
 	}
 
 	/**
-	 * Saves images in PELICAN binary format (with serialization and optionally
-	 * compression).
+	 * Saves images in PELICAN binary format (optionally with compression).
 	 * 
 	 * @param input
 	 *          Image to be saved
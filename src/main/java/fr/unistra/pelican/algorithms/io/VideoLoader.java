@@ -20,11 +20,15 @@ import fr.unistra.pelican.Image;
 import fr.unistra.pelican.PelicanException;
 import fr.unistra.pelican.algorithms.io.ImageLoader;
 import fr.unistra.pelican.algorithms.visualisation.ViewerVideo;
+import fr.unistra.pelican.util.video.BufferedFrameStream;
+import fr.unistra.pelican.util.video.FrameStream;
 
 
 /**
  * Video loader using Xuggle library 
  * It load the whole video uncompressed, it isn't memory-wise.
+ * Use {@link #stream(String, int, int, Integer, int)} to read long videos
+ * frame by frame instead.
  * 
  * Possibility to reduce frame number by selecting one frame every ratio frames.
  * 
@@ -206,4 +210,71 @@ public class VideoLoader extends Algorithm {
 		return (ByteImage) new VideoLoader().process(filename,ratio,firstFrame,lastFrame);
 	}
 	
+	/**
+	 * Opens a video as a stream of frames, decoded by a background thread a
+	 * few frames in advance. Unlike exec(), the memory used does not depend on
+	 * the length of the video.
+	 * 
+	 * @param filename
+	 *            Directory of the video
+	 * @param ratio
+	 *            number of frames divided by the number of selected frames
+	 * @param firstFrame
+	 *            number of the first frame which will be selected
+	 * @param lastFrame
+	 *            number of the last frame of the selection, null for the end
+	 *            of the video
+	 * @param capacity
+	 *            number of frames decoded in advance
+	 * @return the stream of the selected frames, to be closed if it is not
+	 *         read to the end
+	 */
+	public static FrameStream stream(final String filename, final int ratio,
+			final int firstFrame, final Integer lastFrame, int capacity) {
+		return new BufferedFrameStream(true, capacity) {
+			private boolean stopped = false;
+
+			protected void decode() {
+				final int last = lastFrame == null ? Integer.MAX_VALUE : lastFrame;
+				IMediaReader reader = ToolFactory.makeReader(filename);
+				reader.setBufferedImageTypeToGenerate(BufferedImage.TYPE_3BYTE_BGR);
+				reader.addListener(new MediaListenerAdapter() {
+					int currentInputFrame = 0;
+
+					public void onVideoPicture(IVideoPictureEvent event) {
+						if (currentInputFrame > last)
+							stopped = true;
+						else if (currentInputFrame >= firstFrame
+								&& (currentInputFrame - firstFrame) % ratio == 0) {
+							Image frame = ImageLoader.convertFromJAI(event.getImage(), false);
+							frame.setColor(true);
+							if (!push(frame))
+								stopped = true;
+						}
+						currentInputFrame++;
+					}
+				});
+				try {
+					while (!stopped && reader.readPacket() == null)
+						do {} while(false);
+				} finally {
+					reader.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Opens a video as a stream of frames, decoded by a background thread a
+	 * few frames in advance.
+	 * 
+	 * @param filename
+	 *            Directory of the video
+	 * @return the stream of the frames, to be closed if it is not read to the
+	 *         end
+	 */
+	public static FrameStream stream(String filename) {
+		return stream(filename, 1, 0, null, BufferedFrameStream.DEFAULT_CAPACITY);
+	}
+
 }
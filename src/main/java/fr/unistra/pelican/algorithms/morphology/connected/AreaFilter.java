@@ -11,6 +11,7 @@ import fr.unistra.pelican.algorithms.morphology.connected.FilterComponentTree.Fi
 import fr.unistra.pelican.algorithms.visualisation.MViewer;
 import fr.unistra.pelican.gui.MultiViews.MultiView;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
 import fr.unistra.pelican.util.connectivityTrees.attributes.AreaAttributFilter;
 import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
@@ -24,6 +25,9 @@ import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivit
  * 
  * Assumed connectivity is 8 neighborhood, option is here to modify it.
  * 
+ * With a TrivialConnectivity, the tree is computed by {@link MaxTree}, other connectivities use BuildComponentTree.
+ * See {@link AttributeOpening} to filter all bands with other attributes.
+ * 
  * @author Benjamin Perret
  *
  */
@@ -72,12 +76,25 @@ public class AreaFilter extends Algorithm {
 	public void launch() throws AlgorithmException {
 		if (size<1)
 			throw new AlgorithmException("Size filter must be greater or equal to one.");
+		if (MaxTree.isSupported(con)) {
+			filterMaxTree();
+			return;
+		}
 		AreaAttributFilter filter = new AreaAttributFilter(size);
 		ComponentTree root = BuildComponentTree.exec(inputImage, con,treeType);
 				root = FilterComponentTree.exec(root, new AttributeFilter[]{filter}, FilterStrategy.Min);	
 		outputImage=ReconstructImageFromTree.exec(root);
 	}
 	
+	/**
+	 * Same filter as the component tree, computed by MaxTree on the first band and frame.
+	 */
+	private void filterMaxTree() {
+		MaxTree tree = new MaxTree(inputImage, con, treeType);
+		tree.filter(MaxTree.Attribute.AREA, size + 1);
+		outputImage = tree.reconstructLevels();
+	}
+	
 	public static <T extends Image> T exec(T inputImage, int size)
 	{
 		return (T)new AreaFilter().process(inputImage,size);
@@ -0,0 +1,104 @@
+package fr.unistra.pelican.algorithms.morphology.connected;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree.Attribute;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.Connectivity3D;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivity;
+
+/**
+ * Connected attribute filter: removes all connected components of the level
+ * sets whose attribute (area, volume, height, bounding box extent) is lower
+ * than a threshold.
+ *
+ * It is an attribute opening with the usual ordering, an attribute closing
+ * when the ordering is inverted using treetype option.
+ *
+ * Each band and frame is filtered separately with a max-tree computed by
+ * {@link MaxTree}, for images of any type (bytes, 16-bit integers stored in an
+ * IntegerImage, doubles...). The result has the type of the input.
+ *
+ * Assumed connectivity is 8 neighborhood, option is here to modify it: it
+ * must be a {@link TrivialConnectivity}.
+ *
+ * @author PELICAN team
+ *
+ */
+public class AttributeOpening extends Algorithm {
+
+	/**
+	 * Input image
+	 */
+	public Image inputImage;
+
+	/**
+	 * Attribute of the connected components
+	 */
+	public Attribute attribute;
+
+	/**
+	 * Smallest value of the attribute of the kept connected components
+	 */
+	public double threshold;
+
+	/**
+	 * Result
+	 */
+	public Image outputImage;
+
+	/**
+	 * Connectivity (default = TrivialConnectivity.getHeightNeighbourhood())
+	 */
+	public Connectivity3D con = TrivialConnectivity.getHeightNeighbourhood();
+
+	/**
+	 * Default is usual ordering (treeType=TreeType.Max)
+	 */
+	public TreeType treeType = TreeType.Max;
+
+	public AttributeOpening() {
+		super.inputs = "inputImage,attribute,threshold";
+		super.options = "treeType,con";
+		super.outputs = "outputImage";
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	@Override
+	public void launch() throws AlgorithmException {
+		if (!MaxTree.isSupported(con))
+			throw new AlgorithmException("Connectivity must be a TrivialConnectivity.");
+		int[][] offsets = MaxTree.offsets(con);
+		outputImage = inputImage.copyImage(false);
+		for (int t = 0; t < inputImage.getTDim(); t++)
+			for (int b = 0; b < inputImage.getBDim(); b++) {
+				MaxTree tree = new MaxTree(inputImage, t, b, offsets, treeType);
+				tree.filter(attribute, threshold);
+				tree.restore(outputImage, t, b);
+			}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T inputImage, Attribute attribute,
+			double threshold) {
+		return (T) new AttributeOpening().process(inputImage, attribute, threshold);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T inputImage, Attribute attribute,
+			double threshold, TreeType treeType) {
+		return (T) new AttributeOpening().process(inputImage, attribute,
+				threshold, treeType);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T inputImage, Attribute attribute,
+			double threshold, TreeType treeType, Connectivity3D con) {
+		return (T) new AttributeOpening().process(inputImage, attribute,
+				threshold, treeType, con);
+	}
+}
@@ -30,6 +30,9 @@ import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivit
  * 
  * Build component tree from a monoband image
  * 
+ * For large images and a TrivialConnectivity, {@link fr.unistra.pelican.util.connectivityTrees.MaxTree} 
+ * builds the same tree in a few arrays.
+ * 
  * @author Benjamin Perret
  * @deprectaed use BuildComponentTreeVectorial even on monoband image!
  */
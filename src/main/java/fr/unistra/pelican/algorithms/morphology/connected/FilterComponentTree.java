@@ -10,6 +10,7 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree;
 import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
 
 /**
@@ -21,6 +22,8 @@ import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
  * - max : a node is deleted if it and its children do not fulfill filter rules
  * 
  * Combination rule of filters is AND, 
+ * 
+ * Compact trees ({@link MaxTree}) are filtered in place by the same rules with exec(MaxTree,...).
  * @TODO add more combination rules
  * 
  * @author Benjamin Perret
@@ -184,6 +187,24 @@ public class FilterComponentTree extends Algorithm {
 		return (ComponentTree<T>)(new FilterComponentTree()).process(tree,new AttributeFilter[]{filter},strategy);
 	}
 	
+	/**
+	 * Apply attribute filters on a compact tree, the deleted nodes being marked in the tree
+	 * @param tree the tree to filter
+	 * @param filters the rules
+	 * @param strategy the strategy
+	 * @return the tree
+	 */
+	public static MaxTree exec(MaxTree tree, AttributeFilter [] filters, FilterStrategy strategy)
+	{
+		tree.filter(filters, strategy);
+		return tree;
+	}
+	
+	public static MaxTree exec(MaxTree tree, AttributeFilter filter, FilterStrategy strategy)
+	{
+		return exec(tree,new AttributeFilter[]{filter},strategy);
+	}
+	
 	
 
 }
@@ -14,6 +14,8 @@ import fr.unistra.pelican.gui.MultiViews.MultiView;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree;
+import fr.unistra.pelican.algorithms.morphology.connected.FilterComponentTree.FilterStrategy;
 
 /**
  * Extract all monomodal hyper-connected components of a tree marked by the masked.
@@ -91,6 +93,18 @@ public class OpeningByReconstruction<T> extends Algorithm {
 	{
 		return (ComponentTree<T>)(new OpeningByReconstruction<T>()).process(tree,mask);
 	}
+	
+	/**
+	 * Deletes all nodes of a compact tree having an empty intersection with the mask
+	 * @param tree the tree to filter
+	 * @param mask the mask
+	 * @return the tree
+	 */
+	public static MaxTree exec (MaxTree tree, Image mask)
+	{
+		tree.filter(tree.getMarkedNodes(mask), FilterStrategy.Direct);
+		return tree;
+	}
 
 	
 	public static void main(String [] args)
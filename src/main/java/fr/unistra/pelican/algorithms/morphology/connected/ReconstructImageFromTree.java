@@ -11,6 +11,7 @@ import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree;
 import fr.unistra.pelican.util.connectivityTrees.attributes.ComponentAttribute;
 import fr.unistra.pelican.util.connectivityTrees.attributes.UnsupportedDataTypeException;
 import fr.unistra.pelican.util.vectorial.ordering.VectorialBasedComponentOrdering;
@@ -19,6 +20,8 @@ import fr.unistra.pelican.util.vectorial.ordering.VectorialOrdering;
 /**
  * Reconstruct an image from a connected component tree
  * 
+ * Compact trees ({@link MaxTree}) are reconstructed with exec(MaxTree,...), for levels and areas.
+ * 
  * @author Benjamin Perret
  *
  */
@@ -295,4 +298,22 @@ public class ReconstructImageFromTree extends Algorithm {
 	{
 		return (Image)(new ReconstructImageFromTree()).process(tree,onlyLeaves,data,clazz);
 	}
+	
+	public static Image exec(MaxTree tree)
+	{
+		return exec(tree,Data.Level);
+	}
+	
+	public static Image exec(MaxTree tree, Data data)
+	{
+		switch (data)
+		{
+		case Level:
+			return tree.reconstructLevels();
+		case Area:
+			return tree.reconstructAreas();
+		default:
+			throw new AlgorithmException("Only levels and areas can be drawn from a MaxTree.");
+		}
+	}
 }
@@ -12,6 +12,8 @@ import fr.unistra.pelican.gui.MultiViews.MultiView;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree;
+import fr.unistra.pelican.algorithms.morphology.connected.FilterComponentTree.FilterStrategy;
 
 /**
  * @author Benjamin Perret
@@ -71,6 +73,21 @@ public class TopHatConnected<T> extends Algorithm {
 	{
 		return (ComponentTree<T>)(new TopHatConnected<T>()).process(tree,mask);
 	}
+	
+	/**
+	 * Deletes all nodes containing a pixel of the mask, except the roots, in a compact tree
+	 * @param tree the tree to filter
+	 * @param mask the mask
+	 * @return the tree
+	 */
+	public static MaxTree exec (MaxTree tree, Image mask)
+	{
+		boolean [] marked=tree.getMarkedNodes(mask);
+		for(int n=0;n<marked.length;n++)
+			marked[n]=!marked[n];
+		tree.filter(marked, FilterStrategy.Direct);
+		return tree;
+	}
 
 	
 	public static void main(String [] args)
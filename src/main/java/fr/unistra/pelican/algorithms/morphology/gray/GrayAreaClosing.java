@@ -4,9 +4,18 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.algorithms.arithmetic.Inversion;
+import fr.unistra.pelican.algorithms.morphology.connected.AttributeOpening;
+import fr.unistra.pelican.util.RawPixels;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree.Attribute;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
 
 /**
- * Perform an area closing on grayscale images by stack decomposition
+ * Perform an area closing on grayscale images: fills the 8-connected
+ * components of the lower level sets whose area is lower than the threshold.
+ * 
+ * Each XY plane of each band is filtered with a min-tree, for images of any
+ * type. Images with a mask are processed as the dual of
+ * {@link GrayAreaOpening}.
  * 
  * @author Lefevre
  * 
@@ -43,11 +52,15 @@ public class GrayAreaClosing extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
-		outputImage=Inversion.exec(GrayAreaOpening.exec(Inversion.exec(inputImage),thresh));
+		if (RawPixels.isUnmasked(inputImage))
+			outputImage = AttributeOpening.exec(inputImage, Attribute.AREA, thresh,
+					TreeType.Min);
+		else
+			outputImage=Inversion.exec(GrayAreaOpening.exec(Inversion.exec(inputImage),thresh));
 	}
 
 	/**
-	 * Perform an area closing on grayscale images by stack decomposition
+	 * Perform an area closing on grayscale images
 	 * @param inputImage image to be processed
 	 * @param thresh Threshold for connected component size
 	 * @return filtered picture
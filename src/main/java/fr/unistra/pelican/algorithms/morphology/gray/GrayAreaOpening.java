@@ -5,10 +5,20 @@ import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.algorithms.morphology.binary.BinaryAreaOpening;
+import fr.unistra.pelican.algorithms.morphology.connected.AttributeOpening;
 import fr.unistra.pelican.algorithms.segmentation.ManualThresholding;
+import fr.unistra.pelican.util.RawPixels;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree.Attribute;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
 
 /**
- * Perform an area opening on grayscale images by stack decomposition
+ * Perform an area opening on grayscale images: keeps the 8-connected
+ * components of the level sets whose area is at least the threshold.
+ * 
+ * Each XY plane of each band is filtered with a max-tree, for images of any
+ * type. Images with a mask are processed by stack decomposition of their 256
+ * byte levels. If a plane is smaller than the threshold, it receives its
+ * minimum value.
  * 
  * @author Lefevre
  * 
@@ -45,6 +55,17 @@ public class GrayAreaOpening extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
+		if (RawPixels.isUnmasked(inputImage))
+			outputImage = AttributeOpening.exec(inputImage, Attribute.AREA, thresh,
+					TreeType.Max);
+		else
+			stackDecomposition();
+	}
+
+	/**
+	 * Performs the opening on the 256 thresholds of the image.
+	 */
+	private void stackDecomposition() {
 		outputImage = inputImage.copyImage(false);
 		for (int t=0;t<256;t++) {
 			BooleanImage stack=ManualThresholding.exec(inputImage,t/255.);
@@ -56,7 +77,7 @@ public class GrayAreaOpening extends Algorithm {
 	}
 
 	/**
-	 * Perform an area opening on grayscale images by stack decomposition
+	 * Perform an area opening on grayscale images
 	 * @param inputImage image to be processed
 	 * @param thresh Threshold for connected component size
 	 * @return filtered picture
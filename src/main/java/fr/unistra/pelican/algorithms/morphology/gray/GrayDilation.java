@@ -2,7 +2,10 @@ package fr.unistra.pelican.algorithms.morphology.gray;
 
 import fr.unistra.pelican.*;
 import fr.unistra.pelican.util.Point4D;
+import fr.unistra.pelican.util.RawPixels;
 import fr.unistra.pelican.util.buffers.DoubleBuffers;
+import fr.unistra.pelican.util.morphology.RunningMinMax;
+import fr.unistra.pelican.util.parallel.LocalOperator;
 
 
 
@@ -13,7 +16,7 @@ import fr.unistra.pelican.util.buffers.DoubleBuffers;
  * 
  *	@author PELICAN team.
  */
-public class GrayDilation extends Algorithm {
+public class GrayDilation extends Algorithm implements LocalOperator {
 
 
 
@@ -116,7 +119,15 @@ public class GrayDilation extends Algorithm {
 			case GrayErosion.VANHERK_VLINE_OPTIMIZATION: 
 				this.verticalDilation();
 				break;
+			case GrayErosion.VANHERK_BOX_OPTIMIZATION: 
+				this.boxDilation();
+				break;
 			default : // try to find a possible optimization ...
+				if ( GrayErosion.isBox( this.se ) ) { 
+
+					this.boxDilation();
+					break;
+				}
 				int opt = GrayErosion.wichOptimization( this.se, this.inputImage );
 				if ( opt == GrayErosion.NO_OPTIMIZATION ) 
 					this.standardDilation();
@@ -128,6 +139,17 @@ public class GrayDilation extends Algorithm {
 	 // OTHER METHODS //
 	///////////////////
 
+	/**	Returns the extent of {@link #se} around its center, so that the dilation 
+	 *	can be computed on overlapping tiles.
+	 *	@see fr.unistra.pelican.util.parallel.LocalOperator#getNeighbourhoodRadius()
+	 */
+	public int[] getNeighbourhoodRadius() { 
+
+		Point4D c = this.se.getCenter();
+		return new int[] { Math.max( c.x,this.se.getXDim()-1-c.x ),
+						   Math.max( c.y,this.se.getYDim()-1-c.y ) };
+	} // endfunc
+
 	/**	Returns the max value under a flat structuring element.
 	 *	@param x X coordinate.
 	 *	@param y Y coordinate.
@@ -177,6 +199,11 @@ public class GrayDilation extends Algorithm {
 		int bDim = this.inputImage.getBDim();
 		int zDim = this.inputImage.getZDim();
 		Point4D[] points = se.foreground();
+		if ( this.mask == null && RawPixels.isRawAndUnmasked( this.inputImage ) ) { 
+
+			this.rawStandardDilation( points );
+			return;
+		}
 		boolean isHere;
 		for ( int t = 0 ; t < tDim ; t++ )
 		for ( int z = 0 ; z < zDim ; z++ )
@@ -194,6 +221,69 @@ public class GrayDilation extends Algorithm {
 	} // endfunc
 
 
+	/**	Performs the "naive" dilation on the pixel arrays, the points of {@link #se} being 
+	 *	converted to offsets. Pixels whose neighbourhood lies in the image skip the bound checks.
+	 *	@param points Present points of {@link #se}.
+	 */
+	private void rawStandardDilation( Point4D[] points ) { 
+
+		int xDim = this.inputImage.getXDim();
+		int yDim = this.inputImage.getYDim();
+		int zDim = this.inputImage.getZDim();
+		int tDim = this.inputImage.getTDim();
+		int bDim = this.inputImage.getBDim();
+		Point4D c = this.se.getCenter();
+		int n = points.length;
+		int[][] d = new int[n][4];
+		int[] offsets = new int[n];
+		int[] min = new int[4];
+		int[] max = new int[4];
+		for ( int i = 0 ; i < n ; i++ ) { 
+
+			d[i][0] = points[i].x - c.x;
+			d[i][1] = points[i].y - c.y;
+			d[i][2] = points[i].z - c.z;
+			d[i][3] = points[i].t - c.t;
+			offsets[i] = d[i][0] * this.inputImage.getXStride() 
+					   + d[i][1] * this.inputImage.getYStride() 
+					   + d[i][2] * this.inputImage.getZStride() 
+					   + d[i][3] * this.inputImage.getTStride();
+			for ( int k = 0 ; k < 4 ; k++ ) { 
+
+				min[k] = Math.min( min[k],d[i][k] );
+				max[k] = Math.max( max[k],d[i][k] );
+			}
+		} // rof i
+
+		double[] in = RawPixels.getDoubles( this.inputImage );
+		double[] out = RawPixels.getDoubleBuffer( this.outputImage );
+		for ( int t = 0 ; t < tDim ; t++ )
+		for ( int z = 0 ; z < zDim ; z++ )
+		for ( int y = 0 ; y < yDim ; y++ ) 
+		for ( int x = 0 ; x < xDim ; x++ ) { 
+
+			boolean inside = x+min[0] >= 0 && x+max[0] < xDim && y+min[1] >= 0 && y+max[1] < yDim 
+						  && z+min[2] >= 0 && z+max[2] < zDim && t+min[3] >= 0 && t+max[3] < tDim;
+			int loc = this.inputImage.getLinearIndexXYZT_( x,y,z,t );
+			for ( int b = 0 ; b < bDim ; b++, loc++ ) { 
+
+				double value = Double.MIN_VALUE;
+				boolean flag = false;
+				for ( int i = 0 ; i < n ; i++ ) 
+					if ( inside 
+						 || ( x+d[i][0] >= 0 && x+d[i][0] < xDim && y+d[i][1] >= 0 && y+d[i][1] < yDim 
+							  && z+d[i][2] >= 0 && z+d[i][2] < zDim && t+d[i][3] >= 0 && t+d[i][3] < tDim ) ) { 
+
+						double v = in[ loc+offsets[i] ];
+						if ( v > value ) value = v;
+						flag = true;
+					}
+				out[loc] = ( flag ) ? value : in[loc];
+			}
+		} // rof
+		RawPixels.setDoubles( this.outputImage,out );
+	} // endfunc
+
 	 //
 	// RECTANGLE DILATION METHOD
 
@@ -215,6 +305,29 @@ public class GrayDilation extends Algorithm {
 
 
 
+	 //
+	// BOX DILATION METHOD
+
+	/**	Performs a dilation with a rectangle or box structuring element of any size, 
+	 *	in constant time per pixel.
+	 *	@see fr.unistra.pelican.util.morphology.RunningMinMax
+	 */
+	private void boxDilation() { 
+
+		if ( this.mask != null 
+			 || ( this.inputImage.getMask() != null && !this.inputImage.getMask().isEmpty() ) ) { 
+
+			this.standardDilation();
+			return;
+		}
+		Point4D c = this.se.getCenter();
+		this.outputImage = RunningMinMax.box( this.inputImage, 
+				new int[] { this.se.getXDim(),this.se.getYDim(),this.se.getZDim(),this.se.getTDim() }, 
+				new int[] { c.x,c.y,c.z,c.t }, true );
+	} // endfunc
+
+
+
 	 //
 	// LINES EROSION MATERIAL
 
@@ -2,7 +2,10 @@ package fr.unistra.pelican.algorithms.morphology.gray;
 
 import fr.unistra.pelican.*;
 import fr.unistra.pelican.util.Point4D;
+import fr.unistra.pelican.util.RawPixels;
 import fr.unistra.pelican.util.buffers.DoubleBuffers;
+import fr.unistra.pelican.util.morphology.RunningMinMax;
+import fr.unistra.pelican.util.parallel.LocalOperator;
 
 
 
@@ -13,7 +16,7 @@ import fr.unistra.pelican.util.buffers.DoubleBuffers;
  *
  *	@author PELICAN team.
  */
-public class GrayErosion extends Algorithm {
+public class GrayErosion extends Algorithm implements LocalOperator {
 
 
 
@@ -33,6 +36,11 @@ public class GrayErosion extends Algorithm {
 	public static final int VANHERK_HLINE_OPTIMIZATION = 4;
 	/**	An erosion with an vertical line se will be faster using van Herk's algorithm. */
 	public static final int VANHERK_VLINE_OPTIMIZATION = 5;
+	/**	An erosion with a rectangle or box se of any size will be computed line by line 
+	 *	along X, Y, Z and T using van Herk's algorithm, in constant time per pixel. 
+	 *	Masked images and masks fall back on the "naive" algorithm.
+	 */
+	public static final int VANHERK_BOX_OPTIMIZATION = 6;
 
 	// if you see an other way to make things faster, put the corresponding constant here
 
@@ -134,7 +142,15 @@ public class GrayErosion extends Algorithm {
 			case VANHERK_VLINE_OPTIMIZATION: 
 				this.verticalErosion();
 				break;
+			case VANHERK_BOX_OPTIMIZATION: 
+				this.boxErosion();
+				break;
 			default : // try to find a possible optimization ...
+				if ( isBox( this.se ) ) { 
+
+					this.boxErosion();
+					break;
+				}
 				int opt = wichOptimization( this.se, this.inputImage );
 				if ( opt == NO_OPTIMIZATION ) 
 					this.standardErosion();
@@ -149,6 +165,17 @@ public class GrayErosion extends Algorithm {
 	 // OTHER METHODS //
 	///////////////////
 
+	/**	Returns the extent of {@link #se} around its center, so that the erosion 
+	 *	can be computed on overlapping tiles.
+	 *	@see fr.unistra.pelican.util.parallel.LocalOperator#getNeighbourhoodRadius()
+	 */
+	public int[] getNeighbourhoodRadius() { 
+
+		Point4D c = this.se.getCenter();
+		return new int[] { Math.max( c.x,this.se.getXDim()-1-c.x ),
+						   Math.max( c.y,this.se.getYDim()-1-c.y ) };
+	} // endfunc
+
 	/**	Attempts to find wich type of optimization is the most time efficient, 
 	 *	according to the shape of a structuring element.
 	 *	@param se Structuring element.
@@ -175,6 +202,20 @@ public class GrayErosion extends Algorithm {
 		return NO_OPTIMIZATION;
 	} // endfunc
 
+	/**	Checks if a structuring element is a full rectangle or box containing its center, 
+	 *	so that gray erosions and dilations can use {@link #VANHERK_BOX_OPTIMIZATION}.
+	 *	@param se Structuring element.
+	 *	@return <tt>true</tt> if all the points of the se are set.
+	 */
+	public static boolean isBox( BooleanImage se ) {
+
+		Point4D c = se.getCenter();
+		// the center must lie in the box for the decomposition in lines to be exact
+		return se.getSum() == se.size() 
+			&& c.x >= 0 && c.x < se.getXDim() && c.y >= 0 && c.y < se.getYDim() 
+			&& c.z >= 0 && c.z < se.getZDim() && c.t >= 0 && c.t < se.getTDim();
+	} // endfunc
+
 	/**	Returns the min value under a flat structuring element.
 	 *	@param x X coordinate.
 	 *	@param y Y coordinate.
@@ -224,6 +265,11 @@ public class GrayErosion extends Algorithm {
 		int bDim = this.inputImage.getBDim();
 		int zDim = this.inputImage.getZDim();
 		Point4D[] points = this.se.foreground();
+		if ( this.mask == null && RawPixels.isRawAndUnmasked( this.inputImage ) ) { 
+
+			this.rawStandardErosion( points );
+			return;
+		}
 		boolean isHere;
 		for ( int t = 0 ; t < tDim ; t++ )
 		for ( int z = 0 ; z < zDim ; z++ )
@@ -242,6 +288,69 @@ public class GrayErosion extends Algorithm {
 
 
 
+	/**	Performs the "naive" erosion on the pixel arrays, the points of {@link #se} being 
+	 *	converted to offsets. Pixels whose neighbourhood lies in the image skip the bound checks.
+	 *	@param points Present points of {@link #se}.
+	 */
+	private void rawStandardErosion( Point4D[] points ) { 
+
+		int xDim = this.inputImage.getXDim();
+		int yDim = this.inputImage.getYDim();
+		int zDim = this.inputImage.getZDim();
+		int tDim = this.inputImage.getTDim();
+		int bDim = this.inputImage.getBDim();
+		Point4D c = this.se.getCenter();
+		int n = points.length;
+		int[][] d = new int[n][4];
+		int[] offsets = new int[n];
+		int[] min = new int[4];
+		int[] max = new int[4];
+		for ( int i = 0 ; i < n ; i++ ) { 
+
+			d[i][0] = points[i].x - c.x;
+			d[i][1] = points[i].y - c.y;
+			d[i][2] = points[i].z - c.z;
+			d[i][3] = points[i].t - c.t;
+			offsets[i] = d[i][0] * this.inputImage.getXStride() 
+					   + d[i][1] * this.inputImage.getYStride() 
+					   + d[i][2] * this.inputImage.getZStride() 
+					   + d[i][3] * this.inputImage.getTStride();
+			for ( int k = 0 ; k < 4 ; k++ ) { 
+
+				min[k] = Math.min( min[k],d[i][k] );
+				max[k] = Math.max( max[k],d[i][k] );
+			}
+		} // rof i
+
+		double[] in = RawPixels.getDoubles( this.inputImage );
+		double[] out = RawPixels.getDoubleBuffer( this.outputImage );
+		for ( int t = 0 ; t < tDim ; t++ )
+		for ( int z = 0 ; z < zDim ; z++ )
+		for ( int y = 0 ; y < yDim ; y++ ) 
+		for ( int x = 0 ; x < xDim ; x++ ) { 
+
+			boolean inside = x+min[0] >= 0 && x+max[0] < xDim && y+min[1] >= 0 && y+max[1] < yDim 
+						  && z+min[2] >= 0 && z+max[2] < zDim && t+min[3] >= 0 && t+max[3] < tDim;
+			int loc = this.inputImage.getLinearIndexXYZT_( x,y,z,t );
+			for ( int b = 0 ; b < bDim ; b++, loc++ ) { 
+
+				double value = Double.MAX_VALUE;
+				boolean flag = false;
+				for ( int i = 0 ; i < n ; i++ ) 
+					if ( inside 
+						 || ( x+d[i][0] >= 0 && x+d[i][0] < xDim && y+d[i][1] >= 0 && y+d[i][1] < yDim 
+							  && z+d[i][2] >= 0 && z+d[i][2] < zDim && t+d[i][3] >= 0 && t+d[i][3] < tDim ) ) { 
+
+						double v = in[ loc+offsets[i] ];
+						if ( v < value ) value = v;
+						flag = true;
+					}
+				out[loc] = ( flag ) ? value : in[loc];
+			}
+		} // rof
+		RawPixels.setDoubles( this.outputImage,out );
+	} // endfunc
+
 	 //
 	// RECTANGLE EROSION METHOD
 
@@ -263,6 +372,29 @@ public class GrayErosion extends Algorithm {
 
 
 
+	 //
+	// BOX EROSION METHOD
+
+	/**	Performs an erosion with a rectangle or box structuring element of any size, 
+	 *	in constant time per pixel.
+	 *	@see fr.unistra.pelican.util.morphology.RunningMinMax
+	 */
+	private void boxErosion() { 
+
+		if ( this.mask != null 
+			 || ( this.inputImage.getMask() != null && !this.inputImage.getMask().isEmpty() ) ) { 
+
+			this.standardErosion();
+			return;
+		}
+		Point4D c = this.se.getCenter();
+		this.outputImage = RunningMinMax.box( this.inputImage, 
+				new int[] { this.se.getXDim(),this.se.getYDim(),this.se.getZDim(),this.se.getTDim() }, 
+				new int[] { c.x,c.y,c.z,c.t }, false );
+	} // endfunc
+
+
+
 	 //
 	// LINES EROSION MATERIAL
 
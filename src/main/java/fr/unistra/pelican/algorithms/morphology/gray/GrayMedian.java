@@ -6,6 +6,7 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+import fr.unistra.pelican.util.morphology.SlidingHistogram;
 
 /**
  * This class applies a median filter with a given structuring element
@@ -72,6 +73,12 @@ public class GrayMedian extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() {
+		if (SlidingHistogram.canFilter(inputImage)) {
+			// the values of byte and integer images keep their order as doubles
+			outputImage = SlidingHistogram.filter(inputImage, seOffsets(),
+					SlidingHistogram.MEDIAN);
+			return;
+		}
 		outputImage = inputImage.copyImage(false);
 		int xDim = inputImage.getXDim();
 		int yDim = inputImage.getYDim();
@@ -90,6 +97,21 @@ public class GrayMedian extends Algorithm {
 		}
 	}
 
+	/*
+	 * Return the offsets of the points of the first plane of the structuring
+	 * element, the ones used by getMedianGray.
+	 */
+	private int[][] seOffsets() {
+		int[][] offsets = new int[se.getSum()][];
+		int n = 0;
+		for (int i = 0; i < se.getXDim(); i++)
+			for (int j = 0; j < se.getYDim(); j++)
+				if (se.getPixelXYBoolean(i, j))
+					offsets[n++] = new int[] { i - se.getCenter().x,
+							j - se.getCenter().y, 0, 0 };
+		return Arrays.copyOf(offsets, n);
+	}
+
 	/*
 	 * Return the max value under a flat structuring element.
 	 */
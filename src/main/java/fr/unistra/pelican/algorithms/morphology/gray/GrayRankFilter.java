@@ -8,6 +8,7 @@ import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.util.Point4D;
 import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+import fr.unistra.pelican.util.morphology.SlidingHistogram;
 
 /**
  * This class computes a gray-scale rank filter
@@ -94,6 +95,13 @@ public class GrayRankFilter extends Algorithm {
 		
 		if (rank < 1 || rank > points.length)
 			throw new AlgorithmException("Invalid rank value");
+
+		if (SlidingHistogram.canFilter(input)) {
+			// only the X and Y coordinates of the points are used, as below
+			output = SlidingHistogram.filter(input, SlidingHistogram.offsets(
+					points, se.getCenter(), true), SlidingHistogram.greatest(rank));
+			return;
+		}
 		
 		boolean isHere;
 		for ( int b = 0 ; b < bDim ; b++ )
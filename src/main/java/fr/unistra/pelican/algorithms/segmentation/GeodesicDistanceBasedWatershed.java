@@ -1,8 +1,6 @@
 package fr.unistra.pelican.algorithms.segmentation;
 
-import java.awt.Point;
 import java.util.Arrays;
-import java.util.LinkedList;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
@@ -14,15 +12,17 @@ import fr.unistra.pelican.algorithms.io.SamplesLoader;
 import fr.unistra.pelican.algorithms.segmentation.labels.DrawFrontiersOnImage;
 import fr.unistra.pelican.algorithms.segmentation.labels.FrontiersFromSegmentation;
 import fr.unistra.pelican.algorithms.visualisation.Viewer2D;
-import fr.unistra.pelican.util.HierarchicalQueue;
+import fr.unistra.pelican.util.IntHierarchicalQueue;
 import fr.unistra.pelican.util.Point4D;
 import fr.unistra.pelican.util.Tools;
+import fr.unistra.pelican.util.WatershedEngine;
 
 /**
  * This class realize a watershed segmentation using the value 0 for markers. It
  * considers an image support per marker. This class work on a byte resolution.
  * The maximum number of created segment is 2^31-1. It return an IntegerImage,
- * the first segment as label Integer.MIN_VALUE.
+ * the first segment as label 1, and the geodesic distance in a second band.
+ * The flooding is computed by {@link WatershedEngine}.
  * 
  * @author Lefevre
  */
@@ -47,13 +47,13 @@ public class GeodesicDistanceBasedWatershed extends Algorithm {
 	 */
 	public boolean hue = false;
 
-	public HierarchicalQueue queue = null;
+	/**
+	 * (optional) A queue to reuse
+	 */
+	public IntHierarchicalQueue queue = null;
 
 	private final int NULL = 0;
 
-	private boolean DEBUG = false;
-	private boolean CPU = false;
-
 	/**
 	 * Constructor
 	 * 
@@ -70,270 +70,110 @@ public class GeodesicDistanceBasedWatershed extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
-		// double TEMP=0;
-		long t1, t2;
-		t1 = System.currentTimeMillis();
-
+		final int xdim = inputImage.getXDim();
+		int ydim = inputImage.getYDim();
+		final int bdim = inputImage.getBDim();
+		WatershedEngine engine = new WatershedEngine(xdim, ydim, 1, 1,
+			WatershedEngine.neighbourhood(2, false));
+		int size = engine.getSize();
+		final int scale = Math.max(xdim, ydim);
+
+		// The distances are computed on the first frame and plane
+		final double[] values = new double[size * bdim];
+		for (int p = 0; p < size; p++)
+			for (int b = 0; b < bdim; b++)
+				values[p * bdim + b] = inputImage.getPixelDouble(p % xdim, p / xdim, 0,
+					0, b);
+
+		if (queue == null)
+			queue = new IntHierarchicalQueue(256 * scale);
+		else
+			queue.clear();
+
+		int[] labels = new int[size];
+		int[] candidates = new int[size];
+		int[] distances = new int[size];
+
+		// fill up the queue with marker pixels
 		Point4D[] centers = initialCenters.clone();
-		Image input = new IntegerImage(inputImage.getXDim(), inputImage.getYDim(),
-			1, 1, inputImage.getBDim());
-		IntegerImage output = new IntegerImage(inputImage.getXDim(), inputImage
-			.getYDim(), 1, 1, 3);// label, distance, candidate
-		outputImage = new IntegerImage(inputImage.getXDim(), inputImage.getYDim(),
-			inputImage.getZDim(), inputImage.getTDim(), 2/* inputImage.getBDim() */);
-		for (int z = 0; z < inputImage.getZDim(); z++)
-			// Temporarily disable the B dim as we may compute mutiband geodesic
-			// distance ???
-			for (int t = 0; t < inputImage.getTDim(); t++) {
-				t2 = System.currentTimeMillis();
-				if (CPU)
-					System.out.println((t2 - t1) / 1000 + " ms pour phase 0");
-				t1 = t2;
-
-				// Create a working Image.
-				for (int x = 0; x < inputImage.getXDim(); x++)
-					for (int y = 0; y < inputImage.getYDim(); y++)
-						for (int b = 0; b < inputImage.getBDim(); b++)
-							// That's a nice hack, isn't it? No Byte to Integer
-							// conversion.
-							// Work still have values from 0 to 255.
-							input.setPixelInt(x, y, 0, 0, b, inputImage.getPixelByte(x, y, z,
-								t, b));
-				input = inputImage.getImage4D(0, Image.T);
-				int scale = Math.max(inputImage.getXDim(), inputImage.getYDim());
-
-				if (queue == null)
-					queue = new HierarchicalQueue(scale * scale * 255);
-				else
-					queue.reset();
-
-				int currentLabel = 1;
-
-				output.fill(NULL);
-
-				// Initialise the workout image
-				// initialize output image and fill up the queue with marker
-				// pixels
-				/*
-				 * for (int x = 0; x < inputImage.getXDim(); x++) for (int y = 0; y <
-				 * inputImage.getYDim(); y++) { boolean ok = true; for (int b = 0; b <
-				 * inputImage.getBDim(); b++) if (input.getPixelXYBInt(x, y, b) != NULL)
-				 * ok = false; int v = output.getPixelXYBInt(x, y, 0);
-				 * 
-				 * if (ok && v == NULL) { marker(input, output, x, y, queue,
-				 * currentLabel); currentLabel++; } }
-				 */
-
-				Arrays.sort(centers);
-				for (int i = 0; i < centers.length; i++) {
-					Point4D p = centers[i];
-					int x = p.x;
-					int y = p.y;
-					int v = output.getPixelXYBInt(x, y, 0);
-					if (v == NULL) {
-						marker(input, centers, output, x, y, queue, currentLabel);
-						currentLabel++;
-					}
-				}
-
-				System.err.println("Number of markers : " + (currentLabel - 1));
-				int labeled = 0;
-
-				// Viewer2D.exec(output.scaleToVisibleRange(),"tmp");
-				int current = 0;
-				Point p = null;
-
-				t2 = System.currentTimeMillis();
-				if (CPU)
-					System.out.println((t2 - t1) / 1000 + " ms pour phase 1");
-				t1 = t2;
-
-				while (!queue.isEmpty()) {
-					current = queue.getCurrent();
-					p = queue.get();
-					if (DEBUG)
-						System.out.println("GET " + p.getX() + "," + p.getY());
-
-					// Get the label and check if it has not been labeled before
-					if (output.getPixelXYBInt(p.x, p.y, 0) != NULL)
-						continue;
-
-					if (labeled % (input.size() / input.getBDim() / 10) == 0)
-						System.out.print('.');
-					// if (labeled % (input.size() / input.getBDim() / 10) == 0) {
-					// System.out.println(labeled + " on "
-					// + (input.size() / input.getBDim()) + " "
-					// + queue.getCurrent() + " / "
-					// + queue.getNumber());
-					// }
-
-					// Definitely set the label from the candidate
-					int label = output.getPixelXYBInt(p.x, p.y, 2);
-					output.setPixelXYBInt(p.x, p.y, 0, label);
-					labeled++;
-
-					// get the non labelled 8-neighbours of (x,y)
-					Point[] neighbours = getNonLabelledNeighbours(output, p.x, p.y);
-
-					for (int i = 0; i < neighbours.length; i++) {
-
-						// get the current distance for this neighbour
-						int ndist = output.getPixelXYBInt(neighbours[i].x, neighbours[i].y,
-							1);
-
-						double val = 0;
-						if (!hue) {
-							// compute the geodesic distance between p and its
-							// neighbor IN THE APPROPRIATE BAND
-							for (int b = 0; b < input.getBDim(); b++) {
-								double val1 = input.getPixelXYBDouble(neighbours[i].x,
-									neighbours[i].y, b);
-								double val2 = input.getPixelXYBDouble(p.x, p.y, b);
-								val += (val1 - val2)*(val1-val2);
-//								int val1 = input.getPixelXYBByte(neighbours[i].x,
-//									neighbours[i].y, b);
-//								int val2 = input.getPixelXYBByte(p.x, p.y, b);
-//								val += Math.abs(val1 - val2);
-//								System.out.println(val1+" "+val2);
-							}
-//							System.out.println(val);
-//							System.out.println(input);
-							val/=input.getBDim();
-							val=Math.sqrt(val);
-							val*=255;
-						} else {
-//							System.out.println("*");
-							// compute hue-base distance
-							val = Tools.HSLDistance(input.getVectorPixelXYZDouble(
-								neighbours[i].x, neighbours[i].y, 0), input
-								.getVectorPixelXYZDouble(p.x, p.y, 0));
-							val = Math.ceil(255 * val);
-							if (val == 0
-								&& Tools.HSLDistance(inputImage.getVectorPixelXYZDouble(
-									neighbours[i].x, neighbours[i].y, 0), inputImage
-									.getVectorPixelXYZDouble(p.x, p.y, 0)) != 0)
-								System.out.println(val);
-						}
-						if (trueDistance)
-							val = scale * val + 1;// val += 1; // pour la distance
-						// topographique de Philipp
-						int pdist = (int) val + current;// queue.getCurrent();
-						// update distance and candidate if necessary
-						if (ndist == 0 || pdist < ndist) {
-							output.setPixelXYBInt(neighbours[i].x, neighbours[i].y, 1, pdist);
-							output.setPixelXYBInt(neighbours[i].x, neighbours[i].y, 2, label);
-							// add him to the appropriate queue
-							queue.add(neighbours[i], pdist);
-
-						}
-						if (DEBUG) {
-							if (ndist == 0 || pdist < ndist)
-								System.out.println("SET " + neighbours[i].getX() + ","
-									+ neighbours[i].getY() + ":" + pdist + "(" + val + "|"
-									+ current/* queue.getCurrent() */+ ")");
-							else
-								System.out.println("NOT " + neighbours[i].getX() + ","
-									+ neighbours[i].getY() + ":" + pdist + "/" + ndist + "("
-									+ val + "|" + current/* queue.getCurrent() */+ ")");
+		boolean[] isCenter = new boolean[size];
+		for (Point4D c : centers)
+			if (c.z == 0 && c.t == 0)
+				isCenter[c.x + xdim * c.y] = true;
+		Arrays.sort(centers);
+		int[] queued = new int[size];
+		int[] fifo = new int[size];
+		int currentLabel = 1;
+		for (Point4D c : centers) {
+			marker(engine, c.x + xdim * c.y, currentLabel, isCenter, queued, fifo,
+				candidates, distances);
+			currentLabel++;
+		}
+		System.err.println("Number of markers : " + (currentLabel - 1));
+
+		engine.geodesicFlood(labels, candidates, distances,
+			new WatershedEngine.Cost() {
+				public int cost(int p, int q) {
+					double val = 0;
+					if (!hue) {
+						// compute the geodesic distance between p and its
+						// neighbor
+						for (int b = 0; b < bdim; b++) {
+							double diff = values[q * bdim + b] - values[p * bdim + b];
+							val += diff * diff;
 						}
+						val /= bdim;
+						val = Math.sqrt(val);
+						val *= 255;
+					} else {
+						// compute hue-base distance
+						val = Tools.HSLDistance(Arrays.copyOfRange(values, q * bdim,
+							(q + 1) * bdim), Arrays.copyOfRange(values, p * bdim, (p + 1)
+							* bdim));
+						val = Math.ceil(255 * val);
 					}
+					if (trueDistance)
+						val = scale * val + 1;// val += 1; // pour la distance
+					// topographique de Philipp
+					return (int) val;
 				}
-				t2 = System.currentTimeMillis();
-				if (CPU)
-					System.out.println((t2 - t1) / 1000 + " ms pour phase 2");
-
-				// System.out.println();
-
-				// Copy the result to the outputImage (label + distance)
-				for (int _x = 0; _x < inputImage.getXDim(); _x++)
-					for (int _y = 0; _y < inputImage.getYDim(); _y++) {
-						outputImage.setPixelInt(_x, _y, z, t, 0, output.getPixelInt(_x, _y,
-							0, 0, 0)/*
-											 * + Integer.MIN_VALUE
-											 */);
-						outputImage.setPixelInt(_x, _y, z, t, 1, output.getPixelInt(_x, _y,
-							0, 0, 1)/*
-											 * + Integer.MIN_VALUE
-											 */);
-					}
-
-			}
-
-		// System.out.println(TEMP);
-		return;
-	}
+			}, queue);
 
-	private void marker(Image input, Point4D[] centers, IntegerImage output,
-		int x, int y, HierarchicalQueue queue, int label) {
-		LinkedList<Point> fifo = new LinkedList<Point>();
-
-		fifo.add(new Point(x, y));
-
-		while (fifo.size() > 0) {
-			Point p = (Point) fifo.removeFirst();
-
-			queue.add(p, NULL);
-			if (DEBUG)
-				System.out.println("SET " + p.getX() + "," + p.getY() + ":" + NULL);
-			// output.setPixelXYBInt(p.x,p.y,0,label);
-			output.setPixelXYBInt(p.x, p.y, 1, 1);
-			output.setPixelXYBInt(p.x, p.y, 2, label);
-
-			for (int j = p.y - 1; j <= p.y + 1; j++) {
-				for (int k = p.x - 1; k <= p.x + 1; k++) {
-					if (k < 0 || k >= input.getXDim() || j < 0 || j >= input.getYDim())
-						continue;
-
-					boolean ok = (Arrays.binarySearch(centers, new Point4D(k, j, 0, 0)) >= 0);
-					/*
-					 * boolean ok = true; for (int b = 0; b < input.getBDim(); b++) if
-					 * (input.getPixelXYBInt(k, j, 0) != NULL) ok = false;
-					 */
-					if (!(k == p.x && j == p.y) && ok
-						&& output.getPixelXYBInt(k, j, 2) == NULL) {
-						int size = fifo.size();
-						boolean b = false;
-
-						for (int i = 0; i < size; i++) {
-							Point v = (Point) fifo.get(i);
-							if (v.x == k && v.y == j)
-								b = true;
-						}
-						if (b == false)
-							fifo.add(new Point(k, j));
-					}
+		// Copy the result to the outputImage (label + distance)
+		outputImage = new IntegerImage(xdim, ydim, inputImage.getZDim(),
+			inputImage.getTDim(), 2);
+		for (int z = 0; z < inputImage.getZDim(); z++)
+			for (int t = 0; t < inputImage.getTDim(); t++)
+				for (int p = 0; p < size; p++) {
+					outputImage.setPixelInt(p % xdim, p / xdim, z, t, 0, labels[p]);
+					outputImage.setPixelInt(p % xdim, p / xdim, z, t, 1, distances[p]);
 				}
-			}
-		}
 	}
 
-	private Point[] getNonLabelledNeighbours(IntegerImage output, int x, int y) {
-		Point[] neighbours = new Point[8];
-
-		int cnt = 0;
-
-		for (int j = y - 1; j <= y + 1; j++) {
-			for (int i = x - 1; i <= x + 1; i++) {
-				if (i < 0 || i >= output.getXDim() || j < 0 || j >= output.getYDim())
-					continue;
-				int z = output.getPixelXYBInt(i, j, 0);
-
-				if (!(i == x && j == y) && z == NULL)
-					neighbours[cnt++] = new Point(i, j);
-
+	/**
+	 * Queues a marker pixel and the center pixels connected to it.
+	 */
+	private void marker(WatershedEngine engine, int p, int label,
+		boolean[] isCenter, int[] queued, int[] fifo, int[] candidates,
+		int[] distances) {
+		int[] buffer = new int[8];
+		int head = 0, tail = 0;
+		fifo[tail++] = p;
+		queued[p] = label;
+		while (head < tail) {
+			int q = fifo[head++];
+			queue.add(q, NULL);
+			distances[q] = 1;
+			candidates[q] = label;
+			int n = engine.neighbours(q, buffer);
+			for (int i = 0; i < n; i++) {
+				int r = buffer[i];
+				if (isCenter[r] && candidates[r] == NULL && queued[r] != label) {
+					queued[r] = label;
+					fifo[tail++] = r;
+				}
 			}
 		}
-
-		if (cnt < 8) {
-			Point[] tmp = new Point[cnt];
-
-			for (int i = 0; i < cnt; i++)
-				tmp[i] = neighbours[i];
-
-			neighbours = tmp;
-		}
-
-		return neighbours;
 	}
 
 	public static void main(String args[]) {
@@ -412,7 +252,7 @@ public class GeodesicDistanceBasedWatershed extends Algorithm {
 	}
 
 	public static Image exec(Image input, Point4D[] centers,
-		boolean trueDistance, boolean hue, HierarchicalQueue queue) {
+		boolean trueDistance, boolean hue, IntHierarchicalQueue queue) {
 		return (Image) new GeodesicDistanceBasedWatershed().process(input, centers,
 			trueDistance, hue, queue);
 	}
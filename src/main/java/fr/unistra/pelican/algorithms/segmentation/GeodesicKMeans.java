@@ -15,6 +15,7 @@ import fr.unistra.pelican.algorithms.segmentation.labels.LabelsToBinaryMasks;
 import fr.unistra.pelican.algorithms.spatial.TopographicTransform;
 import fr.unistra.pelican.algorithms.visualisation.Viewer2D;
 import fr.unistra.pelican.util.HierarchicalQueue;
+import fr.unistra.pelican.util.IntHierarchicalQueue;
 import fr.unistra.pelican.util.Memory;
 import fr.unistra.pelican.util.Point4D;
 
@@ -135,6 +136,7 @@ public class GeodesicKMeans extends Algorithm {
 		double mem2 = Memory.totalUsedMemoryMB();
 		System.out.println("Allocated memory for queue:" + (int) (mem2 - mem1)
 			+ " MB");
+		IntHierarchicalQueue floodingQueue = new IntHierarchicalQueue(scale * 256);
 
 		// Initialise cluster centers
 		Point4D[] centers = new Point4D[clusters];
@@ -170,7 +172,7 @@ public class GeodesicKMeans extends Algorithm {
 
 			// Perform geodesic computation
 			Image im = GeodesicDistanceBasedWatershed.exec(work, centers,
-				trueDistance, hue, queue);
+				trueDistance, hue, floodingQueue);
 			outputImage = im.getImage4D(0, Image.B);
 
 			if (DEBUG) {
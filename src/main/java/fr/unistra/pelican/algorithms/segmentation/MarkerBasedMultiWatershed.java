@@ -1,7 +1,6 @@
 package fr.unistra.pelican.algorithms.segmentation;
 
-import java.awt.Point;
-import java.util.LinkedList;
+import java.util.Arrays;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
@@ -12,6 +11,8 @@ import fr.unistra.pelican.algorithms.conversion.BinaryMasksToLabels;
 import fr.unistra.pelican.algorithms.conversion.ProcessChannels;
 import fr.unistra.pelican.algorithms.logical.CompareConstant;
 import fr.unistra.pelican.algorithms.segmentation.flatzones.BooleanConnectedComponentsLabeling;
+import fr.unistra.pelican.util.IntHierarchicalQueue;
+import fr.unistra.pelican.util.WatershedEngine;
 
 
 /**
@@ -94,10 +95,15 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 		ydim = inputImage.getYDim();
 		IntegerImage input = new IntegerImage(inputImage.getXDim(), inputImage
 			.getYDim(), 1, 1, inputImage.getBDim());
-		IntegerImage output = new IntegerImage(inputImage.getXDim(), inputImage
-			.getYDim(), 1, 1, 2);
 		outputImage = new IntegerImage(inputImage.getXDim(), inputImage.getYDim(),
 			inputImage.getZDim(), inputImage.getTDim(), 1/* inputImage.getBDim() */);
+		WatershedEngine engine = new WatershedEngine(xdim, ydim, 1, 1,
+			WatershedEngine.neighbourhood(2, connexity4));
+		int bdim = inputImage.getBDim();
+		// label and marker band of each pixel
+		int[] output = new int[xdim * ydim];
+		int[] bands = new int[xdim * ydim];
+		int[] buffer = new int[connexity4 ? 4 : 8];
 		for (int z = 0; z < inputImage.getZDim(); z++)
 			// Temporarily disable the B dim as we use it for the different
 			// markers
@@ -111,9 +117,8 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 							// Work still have values from 0 to 255.
 							input.setPixelInt(x, y, 0, 0, b, inputImage.getPixelByte(x, y, z,
 								t, b));
-				HierarchicalQueue queue = new HierarchicalQueue(GRAY_LEVELS);
-				int currentLabel = 1;
-				output.fill(NULL);
+				IntHierarchicalQueue queue = new IntHierarchicalQueue(GRAY_LEVELS);
+				Arrays.fill(output, NULL);
 
 				// Initialise the workout image
 				// initialize output image and fill up the queue with marker
@@ -128,7 +133,6 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 					ProcessChannels.MAXIMUM),
 					connexity4 ? BooleanConnectedComponentsLabeling.CONNEXITY4
 						: BooleanConnectedComponentsLabeling.CONNEXITY8);
-				currentLabel = (Integer) labels.getProperty("nbRegions");
 				if (cpu) {
 					t2 = System.currentTimeMillis();
 					System.err.println("Labeling step: " + ((t2 - t1)) + " ms");
@@ -138,13 +142,14 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 					for (int x = 0; x < xdim; x++) {
 						int p = labels.getPixelXYInt(x, y);
 						int c = classes.getPixelXYInt(x, y)-1;
+						int loc = x + xdim * y;
 						if (!mask.getPixelXYBoolean(x, y))
-							output.setPixelXYBInt(x, y, 0, IGNORE);
+							output[loc] = IGNORE;
 						else if (p != NULL) {
-							output.setPixelXYBInt(x, y, 0, p);
-							output.setPixelXYBInt(x, y, 1, c);
+							output[loc] = p;
+							bands[loc] = c;
 							if (bord(x, y, p))
-								queue.add(new Point(x, y), NULL);
+								queue.add(loc, NULL);
 						}
 					}
 				if (cpu) {
@@ -152,37 +157,24 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 					System.err.println("Marker step: " + ((t2 - t1)) + " ms");
 					t1 = System.currentTimeMillis();
 				}
-				// for (int x = 0; x < inputImage.getXDim(); x++)
-				// for (int y = 0; y < inputImage.getYDim(); y++)
-				// for (int b = 0; b < inputImage.getBDim(); b++) {
-				// int p = input.getPixelXYBInt(x, y, b);
-				// int v = output.getPixelXYBInt(x, y, 0);
-				// if (!mask.getPixelXYBoolean(x, y))
-				// output.setPixelXYBInt(x, y, 0,IGNORE);
-				// else if (p == NULL && v == NULL) {
-				// marker(input, output, x, y, b, queue, currentLabel);
-				// currentLabel++;
-				// }
-				// }
-				// System.err.println("Number of markers : " + (currentLabel - 1));
-//				Viewer2D.exec(LabelsToRandomColors.exec(output.getImage4D(0,Image.B)));
-//				Viewer2D.exec(LabelsToRandomColors.exec(output.getImage4D(1,Image.B)));
 
 				while (!queue.isEmpty()) {
-					Point p = queue.get();
-					int label = output.getPixelXYBInt(p.x, p.y, 0);
-					int band = output.getPixelXYBInt(p.x, p.y, 1);
+					int p = queue.get();
+					int label = output[p];
+					int band = bands[p];
 					// get the non labelled 8-neighbours of (x,y)
-					Point[] neighbours = getNonLabelledNeighbours(output, p.x, p.y);
-					for (int i = 0; i < neighbours.length; i++) {
+					int n = engine.neighbours(p, buffer);
+					for (int i = 0; i < n; i++) {
+						int q = buffer[i];
+						if (output[q] != NULL)
+							continue;
 						// give him the label of p
-						output.setPixelXYBInt(neighbours[i].x, neighbours[i].y, 0, label);
-						output.setPixelXYBInt(neighbours[i].x, neighbours[i].y, 1, band);
+						output[q] = label;
+						bands[q] = band;
 						// get his gray level IN THE APPROPRIATE BAND
-						int val = input.getPixelXYBInt(neighbours[i].x, neighbours[i].y,
-							band);
+						int val = input.getPixelInt(q * bdim + band);
 						// add him to the appropriate queue
-						queue.add(neighbours[i], val);
+						queue.add(q, val);
 					}
 				}
 				if (cpu) {
@@ -193,10 +185,7 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 				// Copy the result to the outputImage
 				for (int _x = 0; _x < inputImage.getXDim(); _x++)
 					for (int _y = 0; _y < inputImage.getYDim(); _y++) {
-						outputImage.setPixelInt(_x, _y, z, t, 0, output.getPixelInt(_x, _y,
-							0, 0, 0)/*
-											 * + Integer.MIN_VALUE
-											 */);
+						outputImage.setPixelInt(_x, _y, z, t, 0, output[_x + xdim * _y]);
 					}
 
 			}
@@ -238,123 +227,4 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 		// bord
 		return bord;
 	}
-
-	private void marker(IntegerImage input, IntegerImage output, int x, int y,
-		int m, HierarchicalQueue queue, int label) {
-		LinkedList<Point> fifo = new LinkedList<Point>();
-
-		fifo.add(new Point(x, y));
-
-		while (fifo.size() > 0) {
-			Point p = (Point) fifo.removeFirst();
-
-			queue.add(p, NULL);
-			output.setPixelXYBInt(p.x, p.y, 0, label);
-			output.setPixelXYBInt(p.x, p.y, 1, m);
-
-			for (int j = p.y - 1; j <= p.y + 1; j++) {
-				for (int k = p.x - 1; k <= p.x + 1; k++) {
-					if (k < 0 || k >= input.getXDim() || j < 0 || j >= input.getYDim())
-						continue;
-					if (connexity4 && j != 0 && k != 0)
-						continue;
-					if (!mask.getPixelXYBoolean(k, j))
-						continue;
-
-					if (!(k == p.x && j == p.y) && input.getPixelXYBInt(k, j, m) == NULL
-						&& output.getPixelXYBInt(k, j, 0) == NULL) {
-						int size = fifo.size();
-						boolean b = false;
-
-						for (int i = 0; i < size; i++) {
-							Point v = (Point) fifo.get(i);
-							if (v.x == k && v.y == j)
-								b = true;
-						}
-						if (b == false)
-							fifo.add(new Point(k, j));
-					}
-				}
-			}
-		}
-	}
-
-	private Point[] getNonLabelledNeighbours(IntegerImage output, int x, int y) {
-		Point[] neighbours = new Point[8];
-
-		int cnt = 0;
-
-		for (int j = y - 1; j <= y + 1; j++) {
-			for (int i = x - 1; i <= x + 1; i++) {
-				if (i < 0 || i >= output.getXDim() || j < 0 || j >= output.getYDim())
-					continue;
-				if (connexity4 && i != 0 && j != 0)
-					continue;
-				if (!mask.getPixelXYBoolean(i, j))
-					continue;
-				int z = output.getPixelXYBInt(i, j, 0);
-
-				if (!(i == x && j == y) && z == NULL)
-					neighbours[cnt++] = new Point(i, j);
-
-			}
-		}
-
-		if (cnt < 8) {
-			Point[] tmp = new Point[cnt];
-
-			for (int i = 0; i < cnt; i++)
-				tmp[i] = neighbours[i];
-
-			neighbours = tmp;
-		}
-
-		return neighbours;
-	}
-
-	private class HierarchicalQueue {
-		private LinkedList<Point>[] queue;
-
-		private int current;
-
-		HierarchicalQueue(int size) {
-			queue = new LinkedList[size];
-
-			for (int i = 0; i < size; i++)
-				queue[i] = new LinkedList<Point>();
-
-			current = 0;
-		}
-
-		void add(Point p, int val) {
-			if (val >= current)
-				queue[val].add(p);
-			else
-				queue[current].add(p);
-		}
-
-		Point get() {
-			if (queue[current].size() >= 2)
-				return (Point) queue[current].removeFirst();
-			else if (queue[current].size() == 1) {
-				Point p = (Point) queue[current].removeFirst();
-
-				while (current < 255 && queue[current].size() == 0)
-					current++;
-
-				return p;
-
-			} else
-				return null;
-		}
-
-		boolean isEmpty() {
-			int sum = 0;
-
-			for (int i = current; i < queue.length; i++)
-				sum += queue[i].size();
-
-			return (sum == 0);
-		}
-	}
 }
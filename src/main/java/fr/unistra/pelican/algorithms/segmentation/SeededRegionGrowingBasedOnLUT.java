@@ -1,8 +1,6 @@
 package fr.unistra.pelican.algorithms.segmentation;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.TreeMap;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
@@ -10,6 +8,7 @@ import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.IntDoubleHeap;
 import fr.unistra.pelican.util.Point4D;
 
 import fr.unistra.pelican.util.lut.ThreeBandByteDistanceLUT;
@@ -107,7 +106,7 @@ public class SeededRegionGrowingBasedOnLUT extends Algorithm {
 		//Init graph
 		
 		// Init SSL
-		TreeMap<Double,ArrayList<Point4D>> ssl = new TreeMap<Double,ArrayList<Point4D>>();
+		IntDoubleHeap ssl = new IntDoubleHeap();
 		for(int t=0;t<tDim;t++)
 			for(int z=0;z<zDim;z++)
 				for(int y=0;y<yDim;y++)
@@ -149,7 +148,9 @@ public class SeededRegionGrowingBasedOnLUT extends Algorithm {
 			count++;
 			/*if(count%10000==0)
 				System.out.println(count+"/"+seeds.size());*/
-			Point4D point = getFirstFromSSL(ssl);
+			Point4D point = getFirstFromSSL(ssl,pointDelta);
+			if(point==null)
+				break;
 			if(seeds.getPixelXYZTInt(point.x, point.y, point.z, point.t)==UNLABELED)
 			{
 				int currentLabel=-1;
@@ -267,49 +268,39 @@ public class SeededRegionGrowingBasedOnLUT extends Algorithm {
 		}
 	}
 	
-	private void addToSSL(Point4D point, double delta,TreeMap<Double,ArrayList<Point4D>> ssl, double[] pointDelta)
+	/**
+	 * Adds a point to the SSL, or moves it if its delta decreases: its former
+	 * entry is then skipped by getFirstFromSSL.
+	 */
+	private void addToSSL(Point4D point, double delta,IntDoubleHeap ssl, double[] pointDelta)
 	{
-		boolean addPoint=true;
-		if(pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]!=Double.MAX_VALUE)
+		int index=outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t);
+		if(delta<pointDelta[index])
 		{
-			if(delta<pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)])
-			{
-				ArrayList<Point4D> tmp = ssl.get(pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]);
-				tmp.remove(point);
-				if(tmp.isEmpty())
-				{
-					ssl.remove(pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]);
-				}
-			}
-			else
-			{
-				addPoint=false;
-			}
+			pointDelta[index]=delta;
+			ssl.add(index, delta);
 		}
-		if(addPoint)
-		{
-			pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]=delta;
-			if(ssl.containsKey(delta))
-			{
-				ssl.get(delta).add(point);
-			} else
-			{
-				ArrayList<Point4D> tmp = new ArrayList<Point4D>();
-				tmp.add(point);
-				ssl.put(delta, tmp);
-			}
-		}		
 	}
 	
-	private Point4D getFirstFromSSL(TreeMap<Double,ArrayList<Point4D>> ssl)
+	private Point4D getFirstFromSSL(IntDoubleHeap ssl, double[] pointDelta)
 	{
-		ArrayList<Point4D> tmp = ssl.get(ssl.firstKey());
-		Point4D point = tmp.remove(0);
-		if(tmp.isEmpty())
+		while(!ssl.isEmpty())
 		{
-			ssl.pollFirstEntry();
+			double delta=ssl.peekPriority();
+			int index=ssl.pop();
+			if(delta==pointDelta[index])
+			{
+				index/=outputImage.getBDim();
+				int x=index%outputImage.getXDim();
+				index/=outputImage.getXDim();
+				int y=index%outputImage.getYDim();
+				index/=outputImage.getYDim();
+				int z=index%outputImage.getZDim();
+				int t=index/outputImage.getZDim();
+				return new Point4D(x,y,z,t);
+			}
 		}
-		return point;
+		return null;
 	}
 	
 	/**
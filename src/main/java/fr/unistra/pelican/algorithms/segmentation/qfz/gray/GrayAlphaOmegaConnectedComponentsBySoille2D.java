@@ -1,9 +1,6 @@
 package fr.unistra.pelican.algorithms.segmentation.qfz.gray;
 
 import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.TreeMap;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.ByteImage;
@@ -11,6 +8,7 @@ import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.algorithms.conversion.AverageChannels;
 import fr.unistra.pelican.algorithms.conversion.RGBToGray;
+import fr.unistra.pelican.util.IntDoubleHeap;
 import fr.unistra.pelican.util.Stack;
 
 /**
@@ -92,7 +90,8 @@ public class GrayAlphaOmegaConnectedComponentsBySoille2D extends Algorithm {
 		int rlval;
 		int rcrt=0;
 		
-		TreeMap<Integer,ArrayList<Point>> pq = new TreeMap<Integer,ArrayList<Point>>();
+		// Priority queue of pixel offsets
+		IntDoubleHeap pq = new IntDoubleHeap();
 		Stack<Point> stack = new Stack<Point>();
 		
 		lbl = inputImage.newIntegerImage();
@@ -134,32 +133,20 @@ public class GrayAlphaOmegaConnectedComponentsBySoille2D extends Algorithm {
 									if(rlval<=rlcrt)
 									{
 										rl.setPixelXYByte(qX, qY, rlval);
-										if(pq.containsKey(rlval))
-										{
-											pq.get(rlval).add(new Point(qX,qY));
-										} else
-										{
-											ArrayList<Point> tmp = new ArrayList<Point>();
-											tmp.add(new Point(qX,qY));
-											pq.put(rlval, tmp);
-										}
+										pq.add(qX+xDim*qY, rlval);
 									}
 								}
 							}
 							rcrt=0;
 							if(!pq.isEmpty())
 							{
-								rcrt = pq.firstKey();
+								rcrt = (int) pq.peekPriority();
 							}
 							while(!pq.isEmpty())
 							{
-								int datumPrio = pq.firstKey();
-								ArrayList<Point> tmp = pq.get(datumPrio);
-								Point datumPoint = tmp.remove(0);
-								if(tmp.isEmpty())
-								{
-									pq.pollFirstEntry();
-								}
+								int datumPrio = (int) pq.peekPriority();
+								int offset = pq.pop();
+								Point datumPoint = new Point(offset%xDim,offset/xDim);
 								if(lbl.getPixelXYInt(datumPoint.x, datumPoint.y)>0)
 								{
 									continue;
@@ -194,13 +181,9 @@ public class GrayAlphaOmegaConnectedComponentsBySoille2D extends Algorithm {
 										rl.setPixelXYByte(pp.x, pp.y, 255);
 									}
 									stack.clear();
-									Collection<ArrayList<Point>> pointsLists = pq.values();
-									for(ArrayList<Point> pl:pointsLists)
+									for(int i=0;i<pq.size();i++)
 									{
-										for(Point p:pl)
-										{
-											rl.setPixelXYByte(p.x, p.y, 255);
-										}
+										rl.setPixelByte(pq.get(i), 255);
 									}
 									pq.clear();
 									//System.out.println("PQ clear");
@@ -225,13 +208,9 @@ public class GrayAlphaOmegaConnectedComponentsBySoille2D extends Algorithm {
 													rl.setPixelXYByte(pp.x, pp.y, 255);
 												}
 												stack.clear();
-												Collection<ArrayList<Point>> pointsLists = pq.values();
-												for(ArrayList<Point> pl:pointsLists)
+												for(int i=0;i<pq.size();i++)
 												{
-													for(Point p:pl)
-													{
-														rl.setPixelXYByte(p.x, p.y, 255);
-													}
+													rl.setPixelByte(pq.get(i), 255);
 												}
 												pq.clear();
 												//System.out.println("PQ clear");
@@ -245,15 +224,7 @@ public class GrayAlphaOmegaConnectedComponentsBySoille2D extends Algorithm {
 										} else if (rlval<rl.getPixelXYByte(qX, qY))
 										{
 											rl.setPixelXYByte(qX, qY, rlval);
-											if(pq.containsKey(rlval))
-											{
-												pq.get(rlval).add(new Point(qX,qY));
-											} else
-											{
-												ArrayList<Point> tmp2 = new ArrayList<Point>();
-												tmp2.add(new Point(qX,qY));
-												pq.put(rlval, tmp2);
-											}
+											pq.add(qX+xDim*qY, rlval);
 										}										
 									}
 								}								
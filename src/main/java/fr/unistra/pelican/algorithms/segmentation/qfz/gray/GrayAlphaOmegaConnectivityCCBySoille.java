@@ -1,9 +1,5 @@
 package fr.unistra.pelican.algorithms.segmentation.qfz.gray;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.TreeMap;
-
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.ByteImage;
@@ -11,6 +7,7 @@ import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.algorithms.conversion.AverageChannels;
 import fr.unistra.pelican.algorithms.conversion.RGBToGray;
+import fr.unistra.pelican.util.IntDoubleHeap;
 import fr.unistra.pelican.util.Point4D;
 import fr.unistra.pelican.util.Stack;
 
@@ -95,7 +92,8 @@ public class GrayAlphaOmegaConnectivityCCBySoille extends Algorithm {
 		int rlval;
 		int rcrt=0;
 		
-		TreeMap<Integer,ArrayList<Point4D>> pq = new TreeMap<Integer,ArrayList<Point4D>>();
+		// Priority queue of pixel offsets
+		IntDoubleHeap pq = new IntDoubleHeap();
 		Stack<Point4D> stack = new Stack<Point4D>();
 		
 		lbl = inputImage.newIntegerImage();
@@ -144,32 +142,21 @@ public class GrayAlphaOmegaConnectivityCCBySoille extends Algorithm {
 									if(rlval<=rlcrt)
 									{
 										rl.setPixelXYZTByte(qX, qY, qZ, qT, rlval);
-										if(pq.containsKey(rlval))
-										{
-											pq.get(rlval).add(new Point4D(qX,qY,qZ,qT));
-										} else
-										{
-											ArrayList<Point4D> tmp = new ArrayList<Point4D>();
-											tmp.add(new Point4D(qX,qY,qZ,qT));
-											pq.put(rlval, tmp);
-										}
+										pq.add(qX+xDim*(qY+yDim*(qZ+zDim*qT)), rlval);
 									}
 								}
 							}
 							rcrt=0;
 							if(!pq.isEmpty())
 							{
-								rcrt = pq.firstKey();
+								rcrt = (int) pq.peekPriority();
 							}
 							while(!pq.isEmpty())
 							{
-								int datumPrio = pq.firstKey();
-								ArrayList<Point4D> tmp = pq.get(datumPrio);
-								Point4D datumPoint = tmp.remove(0);
-								if(tmp.isEmpty())
-								{
-									pq.pollFirstEntry();
-								}
+								int datumPrio = (int) pq.peekPriority();
+								int offset = pq.pop();
+								Point4D datumPoint = new Point4D(offset%xDim,(offset/xDim)%yDim,
+									(offset/(xDim*yDim))%zDim,offset/(xDim*yDim*zDim));
 								if(lbl.getPixelXYZTInt(datumPoint.x, datumPoint.y, datumPoint.z, datumPoint.t)>0)
 								{
 									continue;
@@ -204,13 +191,9 @@ public class GrayAlphaOmegaConnectivityCCBySoille extends Algorithm {
 										rl.setPixelXYZTByte(pp.x, pp.y, pp.z, pp.t, 255);
 									}
 									stack.clear();
-									Collection<ArrayList<Point4D>> pointsLists = pq.values();
-									for(ArrayList<Point4D> pl:pointsLists)
+									for(int i=0;i<pq.size();i++)
 									{
-										for(Point4D p:pl)
-										{
-											rl.setPixelXYZTByte(p.x, p.y, p.z, p.t, 255);
-										}
+										rl.setPixelByte(pq.get(i), 255);
 									}
 									pq.clear();;
 									break;
@@ -236,13 +219,9 @@ public class GrayAlphaOmegaConnectivityCCBySoille extends Algorithm {
 													rl.setPixelXYZTByte(pp.x, pp.y, pp.z, pp.t, 255);
 												}
 												stack.clear();
-												Collection<ArrayList<Point4D>> pointsLists = pq.values();
-												for(ArrayList<Point4D> pl:pointsLists)
+												for(int i=0;i<pq.size();i++)
 												{
-													for(Point4D p:pl)
-													{
-														rl.setPixelXYZTByte(p.x, p.y, p.z, p.t, 255);
-													}
+													rl.setPixelByte(pq.get(i), 255);
 												}
 												pq.clear();
 												break;
@@ -255,15 +234,7 @@ public class GrayAlphaOmegaConnectivityCCBySoille extends Algorithm {
 										} else if (rlval<rl.getPixelXYZTByte(qX, qY, qZ, qT))
 										{
 											rl.setPixelXYZTByte(qX, qY, qZ, qT, rlval);
-											if(pq.containsKey(rlval))
-											{
-												pq.get(rlval).add(new Point4D(qX,qY,qZ,qT));
-											} else
-											{
-												ArrayList<Point4D> tmp2 = new ArrayList<Point4D>();
-												tmp2.add(new Point4D(qX,qY,qZ,qT));
-												pq.put(rlval, tmp2);
-											}
+											pq.add(qX+xDim*(qY+yDim*(qZ+zDim*qT)), rlval);
 										}										
 									}
 								}								
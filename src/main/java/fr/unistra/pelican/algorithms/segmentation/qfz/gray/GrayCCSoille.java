@@ -13,10 +13,9 @@ import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.algorithms.segmentation.labels.LabelsToColorByMeanValue;
 import fr.unistra.pelican.algorithms.visualisation.MViewer;
 import fr.unistra.pelican.gui.MultiViews.MultiView;
+import fr.unistra.pelican.util.IntDoubleHeap;
 import fr.unistra.pelican.util.Point4D;
-import fr.unistra.pelican.util.PriorityQueue;
 import fr.unistra.pelican.util.Tools;
-import fr.unistra.pelican.util.PriorityQueue.PrioritizedElement;
 import fr.unistra.pelican.util.neighbourhood.Neighbourhood4D;
 
 /**
@@ -109,9 +108,9 @@ public class GrayCCSoille extends Algorithm {
 	private DoubleImage localRange;
 	
 	/**
-	 * Priority queue for growing algo
+	 * Priority queue for growing algo, of pixel offsets
 	 */
-	private PriorityQueue<Point4D,Double> pq = new PriorityQueue<Point4D, Double>();
+	private IntDoubleHeap pq = new IntDoubleHeap();
 	
 	/**
 	 * Stack for labeling
@@ -219,36 +218,36 @@ public class GrayCCSoille extends Algorithm {
 								if(Tools.relativeDoubleCompare(rlval, rlcrt)<=0) // if local range <= current local range
 								{
 									localRange.setPixelXYZTDouble(xx, yy, zz, tt, rlval); // store neighbor local range
-									pq.add(new Point4D(xx,yy,zz,tt), rlval); // add neighbor to pq at priority local range
+									pq.add(xx+xdim*(yy+ydim*(zz+zdim*tt)), rlval); // add neighbor to pq at priority local range
 									//System.out.println("add");
 								}
 							}
 						
 							double rcrt=0.0;//range 
 							if(!pq.isEmpty())
-								rcrt = pq.peek().getPriority(); // set range to minimum of local range with previous neighbors
+								rcrt = pq.peekPriority(); // set range to minimum of local range with previous neighbors
 						
 							while (!pq.isEmpty()) //for all points with range smaller to limit
 							{
-								PrioritizedElement<Point4D, Double> datum = pq.pop();
-								Point4D p=datum.getElement();
-								int xx = p.x;
-								int yy = p.y;
-								int zz = p.z;
-								int tt = p.t;
+								double priority = pq.peekPriority();
+								int offset = pq.pop();
+								int xx = offset % xdim;
+								int yy = (offset / xdim) % ydim;
+								int zz = (offset / (xdim * ydim)) % zdim;
+								int tt = offset / (xdim * ydim * zdim);
 								//if(xx<0 || xx>=xdim || yy<0 || yy>=ydim || zz<0 || zz>=zdim || tt<0 || tt>=tdim)
 								//	continue;
 								double val2 = inputImage.getPixelXYZTDouble(xx, yy, zz, tt);
 								if (label.getPixelXYZTInt(xx, yy, zz, tt)>0) //job is done for this pixel
 									continue;
-								if (Tools.relativeDoubleCompare(datum.getPriority(), rcrt)==1 )// if local range > range (increasing of range-cc is done)
+								if (Tools.relativeDoubleCompare(priority, rcrt)==1 )// if local range > range (increasing of range-cc is done)
 								{
 									while(!st.isEmpty()) // set all points on stack to current label
 									{
 										Point4D pp=st.pop();
 										label.setPixelXYZTInt(pp.x, pp.y, pp.z, pp.t, lblval);
 									}
-									rcrt=datum.getPriority(); // set new range to local range
+									rcrt=priority; // set new range to local range
 									if (label.getPixelXYZTInt(xx, yy, zz, tt)>0) // perhaps job is finished now 
 										continue;
 								}
@@ -271,10 +270,9 @@ public class GrayCCSoille extends Algorithm {
 										localRange.setPixelXYZTDouble(pp.x, pp.y, pp.z, pp.t, Double.POSITIVE_INFINITY);
 									}
 									st.clear();
-									for(PrioritizedElement<Point4D, Double> pe:pq.descendingKeySet())
+									for(int i=0;i<pq.size();i++)
 									{
-										Point4D pp=pe.getElement();
-										localRange.setPixelXYZTDouble(pp.x, pp.y, pp.z, pp.t, Double.POSITIVE_INFINITY);
+										localRange.setPixelDouble(pq.get(i), Double.POSITIVE_INFINITY);
 									}
 									pq.clear();
 									break;
@@ -304,10 +302,9 @@ public class GrayCCSoille extends Algorithm {
 												localRange.setPixelXYZTDouble(pp.x, pp.y, pp.z, pp.t, Double.POSITIVE_INFINITY);
 											}
 											st.clear();
-											for(PrioritizedElement<Point4D, Double> pe:pq.descendingKeySet())
+											for(int i=0;i<pq.size();i++)
 											{
-												Point4D pp=pe.getElement();
-												localRange.setPixelXYZTDouble(pp.x, pp.y, pp.z, pp.t, Double.POSITIVE_INFINITY);
+												localRange.setPixelDouble(pq.get(i), Double.POSITIVE_INFINITY);
 											}
 											pq.clear();
 											break;
@@ -320,7 +317,7 @@ public class GrayCCSoille extends Algorithm {
 									else if (Tools.relativeDoubleCompare(rlval, rlq)==-1) // local range < saved range
 									{
 										localRange.setPixelXYZTDouble(xx2, yy2, zz2, tt2,rlval); // save new local range
-										pq.add(new Point4D(xx2,yy2,zz2, tt2), rlval); // insert pixel in pq
+										pq.add(xx2+xdim*(yy2+ydim*(zz2+zdim*tt2)), rlval); // insert pixel in pq
 									}
 								}
 							
@@ -5,14 +5,17 @@ import java.awt.Point;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.ConvolutionEngine;
+import fr.unistra.pelican.util.RawPixels;
 import fr.unistra.pelican.util.morphology.GrayStructuringElement;
+import fr.unistra.pelican.util.parallel.LocalOperator;
 
 /**
  * Standard convolution for linear filters
  * 
  * @author Lefevre
  */
-public class Convolution extends Algorithm {
+public class Convolution extends Algorithm implements LocalOperator {
 	
 	/**
 	 * Input image
@@ -24,11 +27,22 @@ public class Convolution extends Algorithm {
 	 */
 	public GrayStructuringElement kernel;
 
+	/**
+	 * Convolution method: AUTOMATIC, or one of the methods of
+	 * {@link ConvolutionEngine}
+	 */
+	public int method = AUTOMATIC;
+
 	/**
 	 * Output image
 	 */
 	public Image output;
 
+	/**
+	 * Lets the engine choose the cheapest method
+	 */
+	public static final int AUTOMATIC = -1;
+
 	/**
 	 * Constructor
 	 * 
@@ -37,6 +51,7 @@ public class Convolution extends Algorithm {
 
 		super();
 		super.inputs = "input,kernel";
+		super.options = "method";
 		super.outputs = "output";
 		
 	}
@@ -60,6 +75,11 @@ public class Convolution extends Algorithm {
 		//TODO: use a different SE for each band
 		Point[] points = kernel.getPoints().get(0);
 
+		if (RawPixels.hasRawPixels(input)) {
+			this.convolvePixels(points);
+			return;
+		}
+
 		// convolve and fill it up
 
 		for (int b = 0; b < bDim; b++) {
@@ -90,6 +110,47 @@ public class Convolution extends Algorithm {
 		}
 	}
 	
+	/**
+	 * Convolves the first frame (z=t=0) on a copy of its values with a
+	 * {@link ConvolutionEngine}, which applies separable kernels as two 1D
+	 * passes and large kernels in the frequency domain when it is cheaper.
+	 */
+	private void convolvePixels(Point[] points) {
+		int xDim = input.getXDim();
+		int yDim = input.getYDim();
+		int bDim = input.getBDim();
+		int n = points.length;
+		int[] dx = new int[n];
+		int[] dy = new int[n];
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			dx[i] = points[i].x - kernel.getCenter().x;
+			dy[i] = points[i].y - kernel.getCenter().y;
+			weights[i] = kernel.getValue(points[i].x, points[i].y);
+		}
+		ConvolutionEngine engine = new ConvolutionEngine(dx, dy, weights);
+		int method = this.method == AUTOMATIC ? engine.chooseMethod(xDim, yDim, bDim)
+				: this.method;
+
+		int frameSize = input.getYStride() * yDim;
+		double[] in = RawPixels.getDoubles(input, 0, frameSize,
+				new double[frameSize], 0);
+		double[] out = engine.convolve(in, xDim, yDim, bDim, method);
+		RawPixels.setDoubles(output, 0, frameSize, out, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.unistra.pelican.util.parallel.LocalOperator#getNeighbourhoodRadius()
+	 */
+	public int[] getNeighbourhoodRadius() {
+		int cx = kernel.getCenter().x;
+		int cy = kernel.getCenter().y;
+		return new int[] { Math.max(cx, kernel.getXDim() - 1 - cx),
+				Math.max(cy, kernel.getYDim() - 1 - cy) };
+	}
+
 	/**
 	 * Standard convolution for linear filters
 	 * @param input Input image
@@ -99,4 +160,16 @@ public class Convolution extends Algorithm {
 	public static <T extends Image> T exec(T input, GrayStructuringElement kernel) {
 		return (T) new Convolution().process(input,kernel);
 	}
+
+	/**
+	 * Standard convolution for linear filters with a given method
+	 * @param input Input image
+	 * @param kernel Structuring element used for the convolution
+	 * @param method AUTOMATIC, or one of the methods of ConvolutionEngine
+	 * @return Output image
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T input, GrayStructuringElement kernel, int method) {
+		return (T) new Convolution().process(input,kernel,method);
+	}
 }
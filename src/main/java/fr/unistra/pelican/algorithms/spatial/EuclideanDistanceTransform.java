@@ -0,0 +1,288 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.RawPixels;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
+
+/**
+ * Computes the exact squared Euclidean distance transform of a binary image:
+ * each pixel receives the squared distance to the nearest true pixel of the
+ * same band and frame, true pixels receiving 0. 2D images and 3D (Z) images
+ * are supported.
+ * <p>
+ * The transform is separable: the distances along X are computed first, then
+ * each pass along Y and Z takes the lower envelope of the parabolas of the
+ * previous pass, in linear time per line. Separators are computed with integer
+ * arithmetic, so the distances are exact. The lines of each pass are
+ * processed in parallel on the pool of {@link TiledExecutor}.
+ * <p>
+ * Unlike the chamfer {@link DistanceTransform}, the result is not scaled.
+ * Pixels of a band and frame without true pixel receive Integer.MAX_VALUE, as
+ * do distances exceeding it.
+ * <p>
+ * Optionally, the nearest feature map gives the linear index of the nearest
+ * true pixel of each pixel, or -1 if there is none.
+ * <p>
+ * A. Meijster, J.B.T.M. Roerdink, W.H. Hesselink, <i>A general algorithm for
+ * computing distance transforms in linear time</i> (2000).<br>
+ * P.F. Felzenszwalb, D.P. Huttenlocher, <i>Distance transforms of sampled
+ * functions</i> (2004).
+ *
+ * @author PELICAN team
+ */
+public class EuclideanDistanceTransform extends Algorithm {
+
+	/**
+	 * Input image, true pixels being the features
+	 */
+	public Image input;
+
+	/**
+	 * (optionnally) flag to compute the nearest feature map
+	 */
+	public boolean nearestFeature = false;
+
+	/**
+	 * Output image of squared distances
+	 */
+	public IntegerImage output;
+
+	/**
+	 * Nearest feature map, computed if nearestFeature is set
+	 */
+	public IntegerImage features;
+
+	/**
+	 * Number of lines processed by a single task
+	 */
+	private static final int LINES_PER_TASK = 64;
+
+	/**
+	 * Squared distance of the pixels without feature
+	 */
+	private static final long INFINITE = Long.MAX_VALUE;
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public EuclideanDistanceTransform() {
+		super.inputs = "input";
+		super.options = "nearestFeature";
+		super.outputs = "output,features";
+	}
+
+	/**
+	 * Computes the exact squared Euclidean distance transform of a binary image
+	 *
+	 * @param input
+	 *            The input image
+	 * @return The squared distances to the nearest true pixels
+	 */
+	public static IntegerImage exec(Image input) {
+		return (IntegerImage) new EuclideanDistanceTransform().process(input);
+	}
+
+	/**
+	 * Computes the nearest feature map of a binary image
+	 *
+	 * @param input
+	 *            The input image
+	 * @return The linear indexes of the nearest true pixels
+	 */
+	public static IntegerImage execNearestFeature(Image input) {
+		return (IntegerImage) new EuclideanDistanceTransform().processOne(1, input,
+				true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	public void launch() throws AlgorithmException {
+		int xDim = input.getXDim();
+		int yDim = input.getYDim();
+		int zDim = input.getZDim();
+		int tDim = input.getTDim();
+		int bDim = input.getBDim();
+		int volume = xDim * yDim * zDim;
+		output = new IntegerImage(xDim, yDim, zDim, tDim, bDim);
+		output.copyAttributes(input);
+		if (nearestFeature) {
+			features = new IntegerImage(xDim, yDim, zDim, tDim, bDim);
+			features.copyAttributes(input);
+		}
+		boolean[] pixels = input instanceof BooleanImage
+				&& RawPixels.hasRawPixels(input) ? ((BooleanImage) input)
+				.getPixelsUnsafe() : null;
+
+		long[] f = new long[volume];
+		int[] feature = new int[volume];
+		for (int t = 0; t < tDim; t++)
+			for (int b = 0; b < bDim; b++) {
+				int first = b + bDim * volume * t;
+				for (int v = 0, loc = first; v < volume; v++, loc += bDim) {
+					boolean value = pixels != null ? pixels[loc] : input
+							.getPixelBoolean(loc);
+					f[v] = value ? 0 : INFINITE;
+					feature[v] = value ? v : -1;
+				}
+				// X, Y then Z passes
+				run(f, feature, xDim, yDim * zDim, 1, 0, 0);
+				if (yDim > 1)
+					run(f, feature, yDim, xDim * zDim, xDim, xDim, xDim * yDim);
+				if (zDim > 1)
+					run(f, feature, zDim, xDim * yDim, xDim * yDim, xDim * yDim, 0);
+
+				int[] out = output.getPixelsUnsafe();
+				int[] near = nearestFeature ? features.getPixelsUnsafe() : null;
+				for (int v = 0, loc = first; v < volume; v++, loc += bDim) {
+					out[loc] = (int) Math.min(f[v], Integer.MAX_VALUE);
+					if (near != null)
+						near[loc] = feature[v] < 0 ? -1 : first + bDim * feature[v];
+				}
+			}
+	}
+
+	/**
+	 * Runs a pass on all the lines of a volume in parallel. The first value of
+	 * line l is at (l % period) + (l / period) * jump, or l * length if period
+	 * is 0.
+	 */
+	private static void run(long[] f, int[] feature, int length, int lines,
+			int stride, int period, int jump) {
+		TiledExecutor.getDefaultPool().invoke(
+				new LineTask(f, feature, length, stride, period, jump, 0, lines));
+	}
+
+	/**
+	 * Processes a range of lines, splitting it in halves down to
+	 * LINES_PER_TASK lines.
+	 */
+	private static class LineTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long[] f;
+
+		private final int[] feature;
+
+		private final int length, stride, period, jump, from, to;
+
+		LineTask(long[] f, int[] feature, int length, int stride, int period,
+				int jump, int from, int to) {
+			this.f = f;
+			this.feature = feature;
+			this.length = length;
+			this.stride = stride;
+			this.period = period;
+			this.jump = jump;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > LINES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new LineTask(f, feature, length, stride, period, jump, from,
+						middle), new LineTask(f, feature, length, stride, period, jump,
+						middle, to));
+				return;
+			}
+			long[] g = new long[length];
+			int[] index = new int[length];
+			int[] s = new int[length];
+			int[] w = new int[length];
+			long[] values = new long[length];
+			int[] indexes = new int[length];
+			for (int l = from; l < to; l++) {
+				int start = period == 0 ? l * length : l % period + l / period * jump;
+				for (int i = 0, p = start; i < length; i++, p += stride) {
+					g[i] = f[p];
+					index[i] = feature[p];
+				}
+				lowerEnvelope(g, index, s, w, values, indexes, length);
+				for (int i = length - 1, p = start + i * stride; i >= 0; i--, p -= stride) {
+					f[p] = g[i];
+					feature[p] = index[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces g(u) by min_i (u-i)^2+g(i) and index(u) by index(i) for the
+	 * minimizing i, ignoring infinite values.
+	 *
+	 * @param s
+	 *            buffer of the positions of the parabolas of the envelope
+	 * @param w
+	 *            buffer of the first coordinates where they are minimal
+	 * @param values
+	 *            buffer of the values of g at these positions
+	 * @param indexes
+	 *            buffer of the indexes at these positions
+	 */
+	private static void lowerEnvelope(long[] g, int[] index, int[] s, int[] w,
+			long[] values, int[] indexes, int n) {
+		int q = -1;
+		for (int u = 0; u < n; u++) {
+			if (g[u] == INFINITE)
+				continue;
+			while (q >= 0 && parabola(g, s[q], w[q]) > parabola(g, u, w[q]))
+				q--;
+			if (q < 0) {
+				q = 0;
+				s[0] = u;
+				w[0] = 0;
+			} else {
+				long sep = 1 + separator(g, s[q], u);
+				if (sep < n) {
+					q++;
+					s[q] = u;
+					w[q] = (int) sep;
+				}
+			}
+		}
+		if (q < 0)
+			return;
+		// parabolas and indexes of the envelope, read before being overwritten
+		for (int k = 0; k <= q; k++) {
+			values[k] = g[s[k]];
+			indexes[k] = index[s[k]];
+		}
+		for (int u = n - 1; u >= 0; u--) {
+			long d = u - s[q];
+			g[u] = d * d + values[q];
+			index[u] = indexes[q];
+			if (u == w[q])
+				q--;
+		}
+	}
+
+	/**
+	 * Value of the parabola of i at u.
+	 */
+	private static long parabola(long[] g, int i, int u) {
+		long d = u - i;
+		return d * d + g[i];
+	}
+
+	/**
+	 * Last coordinate where the parabola of i is not above the parabola of u,
+	 * for i < u.
+	 */
+	private static long separator(long[] g, int i, int u) {
+		long num = (long) u * u - (long) i * i + g[u] - g[i];
+		long den = 2L * (u - i);
+		long sep = num / den;
+		return num < 0 && sep * den != num ? sep - 1 : sep;
+	}
+}
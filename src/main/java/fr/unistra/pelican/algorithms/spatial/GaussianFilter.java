@@ -7,9 +7,8 @@ import fr.unistra.pelican.util.Tools;
 import fr.unistra.pelican.util.morphology.GrayStructuringElement;
 
 /**
- * Standard gaussian filter..applied with a 2D kernel. Not optimized.
- * 
- * TODO : use two 1D kernels.
+ * Standard gaussian filter..applied with a 2D kernel. The kernel being
+ * separable, {@link Convolution} applies it as two 1D kernels.
  * 
  * @author Abdullah
  */
@@ -6,7 +6,8 @@ import fr.unistra.pelican.Image;
 import fr.unistra.pelican.util.morphology.GrayStructuringElement;
 
 /**
- * A nice mean filter...where it all once started.
+ * A nice mean filter...where it all once started. {@link Convolution} computes
+ * it with running sums along X and Y, whatever the size.
  * 
  * @author Lefevre
  */
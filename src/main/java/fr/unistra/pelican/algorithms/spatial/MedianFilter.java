@@ -8,6 +8,8 @@ import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.util.Point4D;
+import fr.unistra.pelican.util.RawPixels;
+import fr.unistra.pelican.util.morphology.SlidingHistogram;
 
 /**
  * A median filter
@@ -58,6 +60,10 @@ public class MedianFilter extends Algorithm {
 		int tDim = inputImage.getTDim();
 		int bDim = inputImage.getBDim();
 		outputImage = inputImage.copyImage(false);
+		if (RawPixels.hasRawPixels(inputImage)) {
+			this.filterPixels(filterPoints);
+			return;
+		}
 		for (int z = 0; z < zDim; z++)
 			for (int t = 0; t < tDim; t++)
 				for (int y = 0; y < yDim; y++)
@@ -95,6 +101,17 @@ public class MedianFilter extends Algorithm {
 						}
 	}
 
+	/**
+	 * Filters the byte values of the input with a sliding histogram, whose cost
+	 * per pixel depends on the perimeter of the filter instead of its area.
+	 */
+	private void filterPixels(Point4D[] filterPoints) {
+		int[] out = SlidingHistogram.filter(inputImage, RawPixels
+				.getBytes(inputImage), 256, SlidingHistogram.offsets(filterPoints,
+				filter.getCenter(), false), SlidingHistogram.AVERAGED_MEDIAN);
+		RawPixels.setBytes(outputImage, out);
+	}
+
 	@SuppressWarnings("unchecked")
 	public static <T extends Image> T exec(T input, BooleanImage filter) {
 		return (T) new MedianFilter().process(input, filter);
@@ -63,6 +63,7 @@ import fr.unistra.pelican.gui.MultiViews.View.GammaModel;
 import fr.unistra.pelican.util.ArrayToolbox;
 import fr.unistra.pelican.util.IMath;
 import fr.unistra.pelican.util.Tools;
+import fr.unistra.pelican.util.multiscale.PyramidRenderer;
 
 /**
  * A JPanel especially designed for image display. 
@@ -401,11 +402,13 @@ public class ImagePanel extends JPanel implements ChangeListener, MouseListener,
 		if (view != null) {
 			if (lockFit.isSelected())
 				view.fitToWindow();
-			BufferedImage myimg = view.getDisplay();
-			if (myimg != null) {
+			// large images are drawn by tiles, without converting the whole image
+			PyramidRenderer renderer = view.getRenderer();
+			BufferedImage myimg = (renderer == null) ? view.getDisplay() : null;
+			if (myimg != null || renderer != null) {
 
-				int xdim = myimg.getWidth(null);
-				int ydim = myimg.getHeight(null);
+				int xdim = (renderer != null) ? view.getImage().getXDim() : myimg.getWidth(null);
+				int ydim = (renderer != null) ? view.getImage().getYDim() : myimg.getHeight(null);
 
 				int finalx = (int) (view.getZoom() * xdim);
 				int finaly = (int) (view.getZoom() * ydim);
@@ -463,7 +466,10 @@ public class ImagePanel extends JPanel implements ChangeListener, MouseListener,
 							finaly);
 
 				}*/
-				g.drawImage(myimg, view.getShiftX(), view.getShiftY(), finalx,
+				if (renderer != null)
+					renderer.paint(g, view.getZoom(), view.getShiftX(), view.getShiftY(), w, h);
+				else
+					g.drawImage(myimg, view.getShiftX(), view.getShiftY(), finalx,
 						finaly, null);
 			}
 			lastHeight = h;
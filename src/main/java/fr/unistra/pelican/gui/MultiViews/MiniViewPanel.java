@@ -66,9 +66,9 @@ public class MiniViewPanel extends JPanel implements ChangeListener, MouseMotion
 	public double getFactor(){
 		int bxO=12;
 		int byO=12;
-		java.awt.Image im=view.getDisplay();
-		int ox= im.getWidth(null);
-		int oy=im.getHeight(null);
+		Image im=view.getImage();
+		int ox= im.getXDim();
+		int oy=im.getYDim();
 		int sx=w-2*bxO;
 		int sy=h-margy-2*byO;
 		
@@ -84,9 +84,9 @@ public class MiniViewPanel extends JPanel implements ChangeListener, MouseMotion
 		int bxO=12;
 		int byO=12;
 		if (view.getViewPort() != null) {
-			java.awt.Image im=view.getDisplay();
-			int ox= im.getWidth(null);
-			int oy=im.getHeight(null);
+			Image im=view.getImage();
+			int ox= im.getXDim();
+			int oy=im.getYDim();
 			int sx=w-2*bxO;
 			int sy=h-margy-2*byO;
 			
@@ -224,10 +224,10 @@ public class MiniViewPanel extends JPanel implements ChangeListener, MouseMotion
 			h=getHeight()-((added)?sliderP.getHeight():0);
 			g.setColor((selected)?bg:bg1);
 			g.fillRoundRect(2, 2, w-4, h-4, 5, 5);
-			java.awt.Image im=view.getDisplay();
+			Image im=view.getImage();
 			
-			int ox= im.getWidth(null);
-			int oy=im.getHeight(null);
+			int ox= im.getXDim();
+			int oy=im.getYDim();
 			int sx=w-2*bxO;
 			int sy=h-margy-2*byO;
 			
@@ -246,7 +246,7 @@ public class MiniViewPanel extends JPanel implements ChangeListener, MouseMotion
 			g.setColor(Color.black);
 			g.drawRect(bx-1, by-1, sx+2, sy+2);
 			
-			g.drawImage(view.getDisplay(), bx, by, sx, sy, this);
+			g.drawImage(view.getOverview(), bx, by, sx, sy, this);
 			String name = view.getImage().getName();
 			
 			Object o=view.properties.get(ViewLocker.LOCKER_PROPERTY_NAME);
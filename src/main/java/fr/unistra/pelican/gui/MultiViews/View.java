@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -28,6 +29,7 @@ import fr.unistra.pelican.util.colour.SRGBGammaCompressionModel;
 import fr.unistra.pelican.util.colour.SimpleGammaCompressionModel;
 import fr.unistra.pelican.util.colour.GammaCompressionModel.Band;
 import fr.unistra.pelican.util.mask.MaskStack;
+import fr.unistra.pelican.util.multiscale.PyramidRenderer;
 
 /**
  * How to display an image (zoom, translation, histogram correction, pixel scaling, colour composition, ...)
@@ -98,6 +100,29 @@ public class View {
 	 * the image to display 
 	 */
 	private BufferedImage display = null;
+	
+	/**
+	 * Number of pixels above which the image is displayed by tiles
+	 */
+	private static final int TILED_DISPLAY_PIXELS = 2048*2048;
+	
+	/**
+	 * Tiles of the display of a large image, or null
+	 */
+	private PyramidRenderer renderer = null;
+	
+	/**
+	 * Notifies the listeners of the view, in the event dispatch thread, when a tile is ready
+	 */
+	private ChangeListener tileListener = new ChangeListener() {
+		public void stateChanged(ChangeEvent e) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					fireChangeEvent();
+				}
+			});
+		}
+	};
 
 	/**
 	 * Reference to the original image
@@ -406,6 +431,25 @@ public class View {
 	private void setDisplay() {
 		if(temp==null)
 			setPreProcessing();
+		if ((long) temp.xdim * temp.ydim > TILED_DISPLAY_PIXELS) {
+			// only the visible tiles are converted, see getDisplay for the whole image
+			if (renderer == null || renderer.getImage() != temp) {
+				if (renderer != null) {
+					renderer.removeChangeListener(tileListener);
+					renderer.dispose();
+				}
+				renderer = new PyramidRenderer(temp, getDisplayedBands());
+				renderer.addChangeListener(tileListener);
+			} else
+				renderer.setBands(getDisplayedBands());
+			display = null;
+			return;
+		}
+		if (renderer != null) {
+			renderer.removeChangeListener(tileListener);
+			renderer.dispose();
+			renderer = null;
+		}
 		if (coloured)
 			display = colourImg = PelicanImageToBufferedImage.exec(temp, 
 					colourBandR, colourBandG, colourBandB);
@@ -611,11 +655,34 @@ public class View {
 	 */
 	public BufferedImage getDisplay() {
 	
-		
+		if (display == null && renderer != null)
+			display = PelicanImageToBufferedImage.exec(temp, getDisplayedBands());
 		
 		
 		return display;
 	}
+	
+	/**
+	 * @return the tiled display of a large image, or null if the image is displayed by getDisplay
+	 */
+	public PyramidRenderer getRenderer() {
+		return renderer;
+	}
+	
+	/**
+	 * @return a small version of the display for a large image, or else the display
+	 */
+	public BufferedImage getOverview() {
+		if (renderer != null)
+			return renderer.getOverview();
+		return getDisplay();
+	}
+	
+	private int [] getDisplayedBands() {
+		if (coloured)
+			return new int[]{colourBandR, colourBandG, colourBandB};
+		return new int[]{displayedBand};
+	}
 
 	/**
 	 * @return the scaleResult
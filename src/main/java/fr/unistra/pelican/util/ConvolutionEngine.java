@@ -0,0 +1,467 @@
+package fr.unistra.pelican.util;
+
+import java.util.Arrays;
+
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.algorithms.frequential.FFT2;
+
+/**
+ * Normalized convolution of the frames of an image: each pixel receives the
+ * weighted mean of its neighbours lying in the image, the weights being
+ * divided by the sum of the weights of these neighbours. This is the
+ * convolution of {@link fr.unistra.pelican.algorithms.spatial.Convolution}.
+ * <p>
+ * Three methods give the same result:
+ * <ul>
+ * <li>DIRECT: the kernel points are visited for each pixel;</li>
+ * <li>SEPARABLE: a kernel of rank one, i.e. the product u(x)v(y) of two 1D
+ * kernels, is applied as a pass along X followed by a pass along Y. Since the
+ * neighbours lying in the image form a rectangle, the normalization factors
+ * in the same way. Constant 1D kernels (mean filters) use running sums;</li>
+ * <li>FFT: the frame and the indicator of the image, both padded with zeros,
+ * are convolved in the frequency domain with {@link FFT2}, and divided.</li>
+ * </ul>
+ * The last two methods need non negative weights. {@link #chooseMethod(int,
+ * int, int)} selects the cheapest method for a frame from an estimation of the
+ * number of operations.
+ *
+ * @author PELICAN team
+ */
+public class ConvolutionEngine {
+
+	/**
+	 * Visits all the kernel points for each pixel
+	 */
+	public static final int DIRECT = 0;
+
+	/**
+	 * Applies a 1D kernel along X then a 1D kernel along Y
+	 */
+	public static final int SEPARABLE = 1;
+
+	/**
+	 * Multiplies in the frequency domain
+	 */
+	public static final int FFT = 2;
+
+	/**
+	 * Relative tolerance of the rank one decomposition
+	 */
+	private static final double SEPARABILITY_TOLERANCE = 1e-10;
+
+	/**
+	 * Estimated cost of a 2D FFT of P values, divided by P*log2(P)
+	 */
+	private static final double FFT_COST = 4.0;
+
+	/**
+	 * Offsets of the kernel points from the processed pixel, and their
+	 * weights, in the order of the direct summation
+	 */
+	private final int[] dx, dy;
+
+	private final double[] w;
+
+	/**
+	 * Bounds of the offsets
+	 */
+	private int minX, maxX, minY, maxY;
+
+	/**
+	 * True if all the weights are non negative with a positive sum
+	 */
+	private boolean positive;
+
+	/**
+	 * 1D kernels along X (offsets minX..maxX) and Y (offsets minY..maxY), null
+	 * if the kernel is not separable
+	 */
+	private double[] u, v;
+
+	/**
+	 * True if the 1D kernels are constant
+	 */
+	private boolean uniformU, uniformV;
+
+	/**
+	 * Creates an engine for a kernel given by its points.
+	 *
+	 * @param dx
+	 *            X offsets of the points from the processed pixel
+	 * @param dy
+	 *            Y offsets of the points from the processed pixel
+	 * @param weights
+	 *            weights of the points
+	 */
+	public ConvolutionEngine(int[] dx, int[] dy, double[] weights) {
+		if (dx.length != dy.length || dx.length != weights.length)
+			throw new AlgorithmException("Kernel offsets and weights must have the same length");
+		this.dx = dx.clone();
+		this.dy = dy.clone();
+		this.w = weights.clone();
+		double sum = 0.0;
+		positive = true;
+		for (int i = 0; i < w.length; i++) {
+			minX = Math.min(minX, dx[i]);
+			maxX = Math.max(maxX, dx[i]);
+			minY = Math.min(minY, dy[i]);
+			maxY = Math.max(maxY, dy[i]);
+			positive &= w[i] >= 0.0;
+			sum += w[i];
+		}
+		positive &= sum > 0.0;
+		if (positive)
+			factorize();
+	}
+
+	/**
+	 * Checks if the kernel is the product of two 1D kernels.
+	 *
+	 * @return true if the SEPARABLE method can be used
+	 */
+	public boolean isSeparable() {
+		return u != null;
+	}
+
+	/**
+	 * Checks if the kernel has non negative weights.
+	 *
+	 * @return true if the FFT method can be used
+	 */
+	public boolean isPositive() {
+		return positive;
+	}
+
+	/**
+	 * Selects the method with the lowest estimated cost.
+	 *
+	 * @param xdim
+	 *            X dimension of the frame
+	 * @param ydim
+	 *            Y dimension of the frame
+	 * @param bdim
+	 *            number of bands
+	 * @return DIRECT, SEPARABLE or FFT
+	 */
+	public int chooseMethod(int xdim, int ydim, int bdim) {
+		double pixels = (double) xdim * ydim * bdim;
+		double best = pixels * w.length;
+		int method = DIRECT;
+		if (isSeparable()) {
+			double cost = pixels
+					* ((uniformU ? 3 : u.length) + (uniformV ? 3 : v.length) + 2);
+			if (cost < best) {
+				best = cost;
+				method = SEPARABLE;
+			}
+		}
+		if (positive) {
+			// kernel and indicator transforms, then two transforms per band
+			double p = (double) Tools.ceilP2(xdim + maxX - minX)
+					* Tools.ceilP2(ydim + maxY - minY);
+			double cost = FFT_COST * (2 * bdim + 3) * p * Math.log(p) / Math.log(2);
+			if (cost < best)
+				method = FFT;
+		}
+		return method;
+	}
+
+	/**
+	 * Convolves a frame.
+	 *
+	 * @param in
+	 *            values of the frame, the index of (x,y,b) being
+	 *            b+bdim*(x+xdim*y)
+	 * @param xdim
+	 *            X dimension of the frame
+	 * @param ydim
+	 *            Y dimension of the frame
+	 * @param bdim
+	 *            number of bands
+	 * @param method
+	 *            DIRECT, SEPARABLE or FFT
+	 * @return the convolved values
+	 */
+	public double[] convolve(double[] in, int xdim, int ydim, int bdim, int method) {
+		switch (method) {
+		case DIRECT:
+			return direct(in, xdim, ydim, bdim);
+		case SEPARABLE:
+			if (!isSeparable())
+				throw new AlgorithmException("The kernel is not separable");
+			return separable(in, xdim, ydim, bdim);
+		case FFT:
+			if (!positive)
+				throw new AlgorithmException("FFT convolution needs non negative weights");
+			return fft(in, xdim, ydim, bdim);
+		default:
+			throw new AlgorithmException("Unknown convolution method: " + method);
+		}
+	}
+
+	/**
+	 * Finds u and v such that w(x,y)=u(x)v(y), from the row and the column of
+	 * the greatest weight.
+	 */
+	private void factorize() {
+		int kx = maxX - minX + 1;
+		int ky = maxY - minY + 1;
+		double[] dense = new double[kx * ky];
+		int pivot = 0;
+		for (int i = 0; i < w.length; i++) {
+			int k = dx[i] - minX + kx * (dy[i] - minY);
+			dense[k] += w[i];
+			if (dense[k] > dense[pivot])
+				pivot = k;
+		}
+		int px = pivot % kx;
+		int py = pivot / kx;
+		double[] a = new double[kx];
+		double[] b = new double[ky];
+		for (int x = 0; x < kx; x++)
+			a[x] = dense[x + kx * py];
+		for (int y = 0; y < ky; y++)
+			b[y] = dense[px + kx * y] / dense[pivot];
+		double tolerance = SEPARABILITY_TOLERANCE * dense[pivot];
+		for (int y = 0; y < ky; y++)
+			for (int x = 0; x < kx; x++)
+				if (Math.abs(dense[x + kx * y] - a[x] * b[y]) > tolerance)
+					return;
+		u = a;
+		v = b;
+		uniformU = isUniform(u);
+		uniformV = isUniform(v);
+	}
+
+	private static boolean isUniform(double[] k) {
+		for (int i = 1; i < k.length; i++)
+			if (k[i] != k[0])
+				return false;
+		return k[0] > 0.0;
+	}
+
+	/**
+	 * Visits the kernel points for each pixel. Pixels whose neighbourhood lies
+	 * in the frame skip the bound checks.
+	 */
+	private double[] direct(double[] in, int xdim, int ydim, int bdim) {
+		int n = w.length;
+		int[] offsets = new int[n];
+		for (int i = 0; i < n; i++)
+			offsets[i] = bdim * (dx[i] + xdim * dy[i]);
+		// the sum of the weights is computed in the same order as the products
+		double weightSum = 0.0;
+		for (int i = 0; i < n; i++)
+			weightSum += w[i];
+
+		double[] out = new double[in.length];
+		for (int y = 0; y < ydim; y++) {
+			boolean insideY = y + minY >= 0 && y + maxY < ydim;
+			for (int x = 0; x < xdim; x++) {
+				boolean inside = insideY && x + minX >= 0 && x + maxX < xdim;
+				int loc = bdim * (x + xdim * y);
+				for (int b = 0; b < bdim; b++, loc++) {
+					double gcc = 0.0;
+					double syc;
+					if (inside) {
+						for (int i = 0; i < n; i++)
+							gcc += w[i] * in[loc + offsets[i]];
+						syc = weightSum;
+					} else {
+						syc = 0.0;
+						for (int i = 0; i < n; i++) {
+							int _x = x + dx[i];
+							int _y = y + dy[i];
+							if (_x < 0 || _x >= xdim || _y < 0 || _y >= ydim)
+								continue;
+							gcc += w[i] * in[loc + offsets[i]];
+							syc += w[i];
+						}
+					}
+					out[loc] = gcc / syc;
+				}
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Applies u along X, then v along Y on whole rows.
+	 */
+	private double[] separable(double[] in, int xdim, int ydim, int bdim) {
+		int rowLength = xdim * bdim;
+		double[] tmp = new double[in.length];
+		double[] row = new double[xdim];
+		double[] result = new double[xdim];
+		for (int y = 0; y < ydim; y++)
+			for (int b = 0; b < bdim; b++) {
+				int start = y * rowLength + b;
+				for (int x = 0; x < xdim; x++)
+					row[x] = in[start + x * bdim];
+				if (uniformU)
+					meanLine(row, result, xdim, minX, maxX);
+				else
+					convolveLine(row, result, xdim, u, minX);
+				for (int x = 0; x < xdim; x++)
+					tmp[start + x * bdim] = result[x];
+			}
+
+		double[] out = new double[in.length];
+		double[] acc = new double[rowLength];
+		if (uniformV) {
+			// running sum of the rows y+minY..y+maxY lying in the frame
+			int count = 0;
+			for (int y = minY; y < maxY; y++)
+				if (y >= 0 && y < ydim) {
+					addRow(acc, tmp, y * rowLength, 1.0);
+					count++;
+				}
+			for (int y = 0; y < ydim; y++) {
+				int enter = y + maxY;
+				int leave = y + minY - 1;
+				if (enter >= 0 && enter < ydim) {
+					addRow(acc, tmp, enter * rowLength, 1.0);
+					count++;
+				}
+				if (leave >= 0 && leave < ydim) {
+					addRow(acc, tmp, leave * rowLength, -1.0);
+					count--;
+				}
+				for (int i = 0, o = y * rowLength; i < rowLength; i++, o++)
+					out[o] = acc[i] / count;
+			}
+			return out;
+		}
+		for (int y = 0; y < ydim; y++) {
+			Arrays.fill(acc, 0.0);
+			double sum = 0.0;
+			for (int j = 0; j < v.length; j++) {
+				int yy = y + minY + j;
+				if (yy < 0 || yy >= ydim)
+					continue;
+				sum += v[j];
+				if (v[j] != 0.0)
+					addRow(acc, tmp, yy * rowLength, v[j]);
+			}
+			for (int i = 0, o = y * rowLength; i < rowLength; i++, o++)
+				out[o] = acc[i] / sum;
+		}
+		return out;
+	}
+
+	private static void addRow(double[] acc, double[] values, int offset,
+			double weight) {
+		for (int i = 0; i < acc.length; i++)
+			acc[i] += weight * values[offset + i];
+	}
+
+	/**
+	 * Normalized convolution of a line with a 1D kernel whose first value has
+	 * the offset min.
+	 */
+	private static void convolveLine(double[] in, double[] out, int n,
+			double[] k, int min) {
+		for (int x = 0; x < n; x++) {
+			double gcc = 0.0;
+			double syc = 0.0;
+			int first = Math.max(0, -(x + min));
+			int last = Math.min(k.length - 1, n - 1 - x - min);
+			for (int i = first, p = x + min + first; i <= last; i++, p++) {
+				gcc += k[i] * in[p];
+				syc += k[i];
+			}
+			out[x] = gcc / syc;
+		}
+	}
+
+	/**
+	 * Mean of a line over the window [x+min,x+max], with a running sum.
+	 */
+	private static void meanLine(double[] in, double[] out, int n, int min,
+			int max) {
+		double sum = 0.0;
+		int count = 0;
+		for (int p = min; p < max; p++)
+			if (p >= 0 && p < n) {
+				sum += in[p];
+				count++;
+			}
+		for (int x = 0; x < n; x++) {
+			int enter = x + max;
+			int leave = x + min - 1;
+			if (enter >= 0 && enter < n) {
+				sum += in[enter];
+				count++;
+			}
+			if (leave >= 0 && leave < n) {
+				sum -= in[leave];
+				count--;
+			}
+			out[x] = sum / count;
+		}
+	}
+
+	/**
+	 * Divides the convolution of the frame padded with zeros by the
+	 * convolution of the indicator of the frame, both computed with FFT2.
+	 */
+	private double[] fft(double[] in, int xdim, int ydim, int bdim) {
+		int px = Tools.ceilP2(xdim + maxX - minX);
+		int py = Tools.ceilP2(ydim + maxY - minY);
+		FFT2 fft = new FFT2();
+
+		// kernel k(-d)=w(d), so that the product gives sum_d w(d)*in(p+d)
+		DoubleImage kernel = new DoubleImage(px, py, 1, 1, 1);
+		double[] kernelPixels = kernel.getPixelsUnsafe();
+		for (int i = 0; i < w.length; i++) {
+			int x = ((-dx[i]) % px + px) % px;
+			int y = ((-dy[i]) % py + py) % py;
+			kernelPixels[x + px * y] += w[i];
+		}
+		DoubleImage[] kernelFFT = (DoubleImage[]) fft.process(kernel, null, false);
+		double[] kre = kernelFFT[0].getPixelsUnsafe();
+		double[] kim = kernelFFT[1].getPixelsUnsafe();
+
+		DoubleImage indicator = new DoubleImage(px, py, 1, 1, 1);
+		double[] indicatorPixels = indicator.getPixelsUnsafe();
+		for (int y = 0; y < ydim; y++)
+			for (int x = 0; x < xdim; x++)
+				indicatorPixels[x + px * y] = 1.0;
+		double[] weights = filter(fft, indicator, kre, kim, 1);
+
+		DoubleImage padded = new DoubleImage(px, py, 1, 1, bdim);
+		double[] paddedPixels = padded.getPixelsUnsafe();
+		for (int y = 0; y < ydim; y++)
+			System.arraycopy(in, y * xdim * bdim, paddedPixels, y * px * bdim, xdim * bdim);
+		double[] values = filter(fft, padded, kre, kim, bdim);
+
+		double[] out = new double[in.length];
+		for (int y = 0; y < ydim; y++)
+			for (int x = 0; x < xdim; x++)
+				for (int b = 0; b < bdim; b++)
+					out[b + bdim * (x + xdim * y)] = values[b + bdim * (x + px * y)]
+							/ weights[x + px * y];
+		return out;
+	}
+
+	/**
+	 * Multiplies the transform of an image by the transform of the kernel and
+	 * returns the real part of the inverse transform.
+	 */
+	private static double[] filter(FFT2 fft, DoubleImage image, double[] kre,
+			double[] kim, int bdim) {
+		DoubleImage[] f = (DoubleImage[]) fft.process(image, null, false);
+		double[] re = f[0].getPixelsUnsafe();
+		double[] im = f[1].getPixelsUnsafe();
+		for (int i = 0; i < re.length; i++) {
+			int k = i / bdim;
+			double a = re[i];
+			double b = im[i];
+			re[i] = a * kre[k] - b * kim[k];
+			im[i] = a * kim[k] + b * kre[k];
+		}
+		f = (DoubleImage[]) fft.process(f[0], f[1], true);
+		return f[0].getPixelsUnsafe();
+	}
+}
@@ -0,0 +1,175 @@
+package fr.unistra.pelican.util;
+
+import java.util.Arrays;
+
+/**
+ * Priority queue of integers, typically pixel offsets, with double
+ * priorities: the lowest priority is served first, and elements of a same
+ * priority in the order they were added, as in {@link PriorityQueue}.
+ *
+ * This is a binary heap stored in parallel arrays, without any object per
+ * element. An element may be queued several times: a caller lowering the
+ * priority of an element can add it again and ignore the outdated entry
+ * when it is taken from the queue.
+ *
+ * For integer priorities in a small range, {@link IntHierarchicalQueue} is
+ * faster.
+ *
+ * @author PELICAN team
+ *
+ */
+public class IntDoubleHeap {
+
+	private int[] element;
+	private double[] priority;
+
+	/**
+	 * Arrival number of the entries, to serve equal priorities in FIFO order
+	 */
+	private long[] order;
+
+	private int size = 0;
+	private long count = 0;
+
+	/**
+	 * Creates an empty heap.
+	 */
+	public IntDoubleHeap() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty heap.
+	 *
+	 * @param capacity
+	 *            expected number of elements, which is extended as needed
+	 */
+	public IntDoubleHeap(int capacity) {
+		capacity = Math.max(capacity, 2);
+		element = new int[capacity];
+		priority = new double[capacity];
+		order = new long[capacity];
+	}
+
+	/**
+	 * @return the number of elements in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds an element.
+	 *
+	 * @param e
+	 *            the element
+	 * @param p
+	 *            its priority, lower priorities being served first
+	 */
+	public void add(int e, double p) {
+		if (size == element.length) {
+			int capacity = size * 2;
+			element = Arrays.copyOf(element, capacity);
+			priority = Arrays.copyOf(priority, capacity);
+			order = Arrays.copyOf(order, capacity);
+		}
+		long o = count++;
+		int i = size++;
+		// sift up
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (!before(p, o, priority[parent], order[parent]))
+				break;
+			element[i] = element[parent];
+			priority[i] = priority[parent];
+			order[i] = order[parent];
+			i = parent;
+		}
+		element[i] = e;
+		priority[i] = p;
+		order[i] = o;
+	}
+
+	/**
+	 * @return the element of lowest priority, left in the heap
+	 */
+	public int peek() {
+		if (size == 0)
+			throw new IllegalStateException("empty heap");
+		return element[0];
+	}
+
+	/**
+	 * @return the lowest priority of the heap
+	 */
+	public double peekPriority() {
+		if (size == 0)
+			throw new IllegalStateException("empty heap");
+		return priority[0];
+	}
+
+	/**
+	 * Takes the element of lowest priority.
+	 *
+	 * @return the element
+	 */
+	public int pop() {
+		int e = peek();
+		size--;
+		if (size > 0) {
+			int last = element[size];
+			double p = priority[size];
+			long o = order[size];
+			// sift down the last entry from the root
+			int i = 0;
+			int child;
+			while ((child = 2 * i + 1) < size) {
+				if (child + 1 < size
+						&& before(priority[child + 1], order[child + 1],
+								priority[child], order[child]))
+					child++;
+				if (!before(priority[child], order[child], p, o))
+					break;
+				element[i] = element[child];
+				priority[i] = priority[child];
+				order[i] = order[child];
+				i = child;
+			}
+			element[i] = last;
+			priority[i] = p;
+			order[i] = o;
+		}
+		return e;
+	}
+
+	/**
+	 * Gets an element in heap order, which is not the priority order: used
+	 * to visit all the queued elements.
+	 *
+	 * @param i
+	 *            index from 0 to size()-1
+	 * @return the element
+	 */
+	public int get(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException(i + " >= " + size);
+		return element[i];
+	}
+
+	/**
+	 * Empties the heap.
+	 */
+	public void clear() {
+		size = 0;
+		count = 0;
+	}
+
+	private static boolean before(double p1, long o1, double p2, long o2) {
+		int c = Double.compare(p1, p2);
+		return c < 0 || c == 0 && o1 < o2;
+	}
+}
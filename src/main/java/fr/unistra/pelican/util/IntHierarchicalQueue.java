@@ -0,0 +1,168 @@
+package fr.unistra.pelican.util;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical queue of integers, typically pixel offsets: one FIFO per
+ * priority level, served by increasing level. An element added below the
+ * current level is queued at the current level, as in
+ * {@link HierarchicalQueue}.
+ *
+ * The levels are kept in a circular array of buckets, so only the levels
+ * between the current one and the highest queued one use memory: the array
+ * is doubled when an element is added too far above the current level.
+ * Elements are stored in linked int arrays, without any object per element.
+ *
+ * @author PELICAN team
+ *
+ */
+public class IntHierarchicalQueue {
+
+	/**
+	 * First and last entry of each bucket, -1 if the bucket is empty
+	 */
+	private int[] head;
+	private int[] tail;
+
+	/**
+	 * Entries: the element and the next entry of the same bucket
+	 */
+	private int[] element;
+	private int[] next;
+
+	/**
+	 * First free entry, and number of entries ever used
+	 */
+	private int free = -1;
+	private int used = 0;
+
+	private int current = 0;
+	private int number = 0;
+
+	/**
+	 * Creates a queue.
+	 *
+	 * @param levels
+	 *            expected span of the levels of the queued elements, which
+	 *            is extended as needed
+	 */
+	public IntHierarchicalQueue(int levels) {
+		int buckets = Integer.highestOneBit(Math.max(levels - 1, 1)) << 1;
+		head = new int[buckets];
+		tail = new int[buckets];
+		Arrays.fill(head, -1);
+		Arrays.fill(tail, -1);
+		element = new int[16];
+		next = new int[16];
+	}
+
+	/**
+	 * @return the level of the last element taken from the queue
+	 */
+	public int getCurrent() {
+		return current;
+	}
+
+	/**
+	 * @return the number of elements in the queue
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	public boolean isEmpty() {
+		return number == 0;
+	}
+
+	/**
+	 * Adds an element at the end of the FIFO of a level, or of the current
+	 * level if it is higher.
+	 *
+	 * @param e
+	 *            the element
+	 * @param level
+	 *            its priority, lower levels being served first
+	 */
+	public void add(int e, int level) {
+		if (level < current)
+			level = current;
+		if (level - current >= head.length)
+			grow(level - current + 1);
+		int entry = free;
+		if (entry >= 0)
+			free = next[entry];
+		else {
+			if (used == element.length) {
+				element = Arrays.copyOf(element, used * 2);
+				next = Arrays.copyOf(next, used * 2);
+			}
+			entry = used++;
+		}
+		element[entry] = e;
+		next[entry] = -1;
+		int bucket = level & (head.length - 1);
+		if (tail[bucket] < 0)
+			head[bucket] = entry;
+		else
+			next[tail[bucket]] = entry;
+		tail[bucket] = entry;
+		number++;
+	}
+
+	/**
+	 * Takes the first element of the lowest level.
+	 *
+	 * @return the element, or -1 if the queue is empty
+	 */
+	public int get() {
+		if (number == 0)
+			return -1;
+		int mask = head.length - 1;
+		while (head[current & mask] < 0)
+			current++;
+		int bucket = current & mask;
+		int entry = head[bucket];
+		head[bucket] = next[entry];
+		if (head[bucket] < 0)
+			tail[bucket] = -1;
+		next[entry] = free;
+		free = entry;
+		number--;
+		return element[entry];
+	}
+
+	/**
+	 * Empties the queue and resets the current level to 0.
+	 */
+	public void clear() {
+		Arrays.fill(head, -1);
+		Arrays.fill(tail, -1);
+		free = -1;
+		used = 0;
+		current = 0;
+		number = 0;
+	}
+
+	/**
+	 * Enlarges the circular array so that it holds a span of levels. Bucket
+	 * b holds the level current + ((b - current) & mask).
+	 */
+	private void grow(int span) {
+		int buckets = head.length;
+		while (buckets < span)
+			buckets <<= 1;
+		int[] newHead = new int[buckets];
+		int[] newTail = new int[buckets];
+		Arrays.fill(newHead, -1);
+		Arrays.fill(newTail, -1);
+		int mask = head.length - 1;
+		for (int b = 0; b < head.length; b++)
+			if (head[b] >= 0) {
+				int level = current + ((b - current) & mask);
+				newHead[level & (buckets - 1)] = head[b];
+				newTail[level & (buckets - 1)] = tail[b];
+			}
+		head = newHead;
+		tail = newTail;
+	}
+}
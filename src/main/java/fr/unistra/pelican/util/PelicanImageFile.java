@@ -0,0 +1,885 @@
+package fr.unistra.pelican.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.ChunkedByteImage;
+import fr.unistra.pelican.ChunkedDoubleImage;
+import fr.unistra.pelican.ChunkedIntegerImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.largeImages.ChunkedImageUtil;
+import fr.unistra.pelican.util.mask.Mask;
+import fr.unistra.pelican.util.mask.MaskStack;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
+
+/**
+ * Native binary container of the PELICAN images: a small header followed by
+ * the raw pixel values in little-endian order.
+ * <p>
+ * The file starts with:
+ * <pre>
+ * "PELICAN\0"    magic number
+ * int            version of the format
+ * byte           type of the values: 0 boolean, 1 byte, 2 integer, 3 double
+ * byte           compression: 0 none, 1 deflate
+ * byte           1 if the image is a color image
+ * byte           unused
+ * int[5]         xdim, ydim, zdim, tdim and bdim
+ * int            number of values in each block
+ * int            length of the attributes
+ * byte[]         name, type, properties and masks of the image, serialized
+ * </pre>
+ * and the payload starts at the next multiple of 8 bytes. The values are
+ * stored in the order of the linear indexes of the image, on 1 byte for the
+ * boolean (0 or 1) and byte (0 to 255) images, 4 bytes for the integer images
+ * and 8 bytes for the double images.
+ * <p>
+ * Without compression, the payload is the raw array of the values, which is
+ * memory mapped when a file is read. With compression, the values are split
+ * in blocks compressed with Deflate, each one preceded by its compressed
+ * length. The blocks are followed by their positions in the file and by the
+ * position of this index, so that a block is found without reading the
+ * previous ones. The blocks are compressed and decompressed in parallel.
+ * <p>
+ * A single frame or band can be read without loading the whole image.
+ * Images with more than 2^31 values are loaded as chunked images.
+ *
+ * @see fr.unistra.pelican.algorithms.io.PelicanImageSave
+ * @see fr.unistra.pelican.algorithms.io.PelicanImageLoad
+ * @author PELICAN team
+ */
+public class PelicanImageFile {
+
+	/**
+	 * Raw values
+	 */
+	public static final int NONE = 0;
+
+	/**
+	 * Blocks of values compressed with Deflate
+	 */
+	public static final int DEFLATE = 1;
+
+	/**
+	 * Number of values in each block
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 18;
+
+	/**
+	 * Version of the format written
+	 */
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = { 'P', 'E', 'L', 'I', 'C', 'A', 'N', 0 };
+
+	private static final int BOOLEAN = 0, BYTE = 1, INTEGER = 2, DOUBLE = 3;
+
+	/**
+	 * Number of bytes of a value of each type
+	 */
+	private static final int[] VALUE_LENGTH = { 1, 1, 4, 8 };
+
+	/**
+	 * Length of the header without the attributes
+	 */
+	private static final int FIXED_HEADER_LENGTH = 44;
+
+	/**
+	 * Number of bytes read at once when their number comes from a stream
+	 */
+	private static final int CHUNK_LENGTH = 1 << 20;
+
+	/**
+	 * Checks if an image can be written in this format.
+	 *
+	 * @param image
+	 *            an image
+	 * @return true for the boolean, byte, integer and double images
+	 */
+	public static boolean isSupported(Image image) {
+		return typeOf(image) >= 0;
+	}
+
+	/**
+	 * Checks if a file starts with the magic number of this format.
+	 *
+	 * @param file
+	 *            a file
+	 * @return true if the file is in the PELICAN binary format
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static boolean isPelicanImageFile(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			int read = 0;
+			while (read < magic.length) {
+				int n = in.read(magic, read, magic.length - read);
+				if (n < 0)
+					return false;
+				read += n;
+			}
+			return Arrays.equals(magic, MAGIC);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes an image in a file.
+	 *
+	 * @param image
+	 *            the image
+	 * @param file
+	 *            the file
+	 * @param compression
+	 *            NONE or DEFLATE
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static void write(Image image, File file, int compression)
+			throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			write(image, out.getChannel(), compression);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes an image in a stream.
+	 *
+	 * @param image
+	 *            the image
+	 * @param out
+	 *            the stream, which is not closed
+	 * @param compression
+	 *            NONE or DEFLATE
+	 * @throws IOException
+	 *             if the stream can not be written
+	 */
+	public static void write(Image image, OutputStream out, int compression)
+			throws IOException {
+		write(image, Channels.newChannel(out), compression);
+	}
+
+	private static void write(final Image image, WritableByteChannel out,
+			int compression) throws IOException {
+		final Header header = new Header(image, compression);
+		ByteBuffer head = header.encode();
+		writeFully(out, head);
+		final int blockDim = header.blockDim();
+		if (compression == NONE) {
+			ByteBuffer buffer = ByteBuffer.allocate(header.blockSize
+					* header.valueLength());
+			for (int i = 0; i < blockDim; i++) {
+				buffer.clear();
+				encode(image, header, i, buffer);
+				writeFully(out, buffer);
+			}
+			return;
+		}
+		// blocks are compressed in parallel, a batch at a time
+		ForkJoinPool pool = TiledExecutor.getDefaultPool();
+		int batch = 2 * pool.getParallelism();
+		long position = head.capacity();
+		ByteBuffer index = newBuffer(8 * (blockDim + 1));
+		for (int first = 0; first < blockDim; first += batch) {
+			List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+			for (int i = first; i < Math.min(first + batch, blockDim); i++) {
+				final int block = i;
+				tasks.add(new Callable<byte[]>() {
+					public byte[] call() {
+						ByteBuffer buffer = newBuffer(header.blockLength(block)
+								* header.valueLength());
+						encode(image, header, block, buffer);
+						return deflate(buffer.array());
+					}
+				});
+			}
+			for (byte[] compressed : run(pool, tasks)) {
+				index.putLong(position);
+				ByteBuffer length = newBuffer(4);
+				length.putInt(0, compressed.length);
+				writeFully(out, length);
+				writeFully(out, ByteBuffer.wrap(compressed));
+				position += 4 + compressed.length;
+			}
+		}
+		index.putLong(position);
+		index.flip();
+		writeFully(out, index);
+	}
+
+	/**
+	 * Reads an image from a file.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the image
+	 * @throws IOException
+	 *             if the file can not be read or is not in this format
+	 */
+	public static Image read(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			Header header = Header.read(channel);
+			Image image = header.newImage(header.tdim, header.bdim);
+			readValues(channel, header, 0, header.size(), image, 0, -1);
+			return image;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a frame of an image from a file, without reading the others.
+	 *
+	 * @param file
+	 *            the file
+	 * @param t
+	 *            the index of the frame
+	 * @return the frame, whose T dimension is 1
+	 * @throws IOException
+	 *             if the file can not be read or is not in this format
+	 */
+	public static Image readFrame(File file, int t) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			Header header = Header.read(channel);
+			if (t < 0 || t >= header.tdim)
+				throw new PelicanException("No frame " + t + " in " + file);
+			Image image = header.newImage(1, header.bdim);
+			long frame = header.size() / header.tdim;
+			readValues(channel, header, t * frame, frame, image, t * frame, -1);
+			return image;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a band of an image from a file, without loading the others in
+	 * memory.
+	 *
+	 * @param file
+	 *            the file
+	 * @param b
+	 *            the index of the band
+	 * @return the band, whose B dimension is 1
+	 * @throws IOException
+	 *             if the file can not be read or is not in this format
+	 */
+	public static Image readBand(File file, int b) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			Header header = Header.read(channel);
+			if (b < 0 || b >= header.bdim)
+				throw new PelicanException("No band " + b + " in " + file);
+			Image image = header.newImage(header.tdim, 1);
+			image.color = false;
+			readValues(channel, header, 0, header.size(), image, 0, b);
+			return image;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads an image from a stream, sequentially.
+	 *
+	 * @param in
+	 *            the stream, which is left after the image
+	 * @return the image
+	 * @throws IOException
+	 *             if the stream can not be read or is not in this format
+	 */
+	public static Image read(InputStream in) throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(in);
+		Header header = Header.read(channel);
+		Image image = header.newImage(header.tdim, header.bdim);
+		int blockDim = header.blockDim();
+		for (int i = 0; i < blockDim; i++) {
+			ByteBuffer buffer = newBuffer(header.blockLength(i)
+					* header.valueLength());
+			if (header.compression == NONE) {
+				readFully(channel, buffer);
+				buffer.clear();
+			} else {
+				ByteBuffer length = newBuffer(4);
+				readFully(channel, length);
+				if (length.getInt(0) < 0)
+					throw new PelicanException("Corrupted block length: "
+							+ length.getInt(0));
+				inflate(readBytes(channel, length.getInt(0)), buffer.array());
+			}
+			decode(buffer, header, (long) i * header.blockSize, header
+					.blockLength(i), image, 0, -1);
+		}
+		if (header.compression != NONE)
+			readFully(channel, newBuffer(8 * (blockDim + 1)));
+		return image;
+	}
+
+	/**
+	 * Reads the values of indexes from to from+length-1, in parallel.
+	 *
+	 * @param offset
+	 *            index in the file of the first value of the image read
+	 * @param band
+	 *            the band read, or -1 to read all of them
+	 */
+	private static void readValues(final FileChannel channel,
+			final Header header, long from, long length, final Image image,
+			final long offset, final int band) throws IOException {
+		if (length == 0)
+			return;
+		final long[] index;
+		if (header.compression == NONE)
+			index = null;
+		else {
+			ByteBuffer end = newBuffer(8);
+			readFully(channel, end, channel.size() - 8);
+			ByteBuffer positions = newBuffer(8 * header.blockDim());
+			readFully(channel, positions, end.getLong(0));
+			positions.clear();
+			index = new long[header.blockDim()];
+			positions.asLongBuffer().get(index);
+		}
+		int firstBlock = (int) (from / header.blockSize);
+		int lastBlock = (int) ((from + length - 1) / header.blockSize);
+		List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+		for (int i = firstBlock; i <= lastBlock; i++) {
+			final int block = i;
+			final long start = Math.max(from, (long) block * header.blockSize);
+			final int count = (int) (Math.min(from + length, (long) block
+					* header.blockSize + header.blockLength(block)) - start);
+			tasks.add(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					ByteBuffer values;
+					if (index == null)
+						values = channel.map(FileChannel.MapMode.READ_ONLY,
+								header.payload + start * header.valueLength(),
+								(long) count * header.valueLength());
+					else {
+						ByteBuffer length = newBuffer(4);
+						readFully(channel, length, index[block]);
+						if (length.getInt(0) < 0
+								|| index[block] + 4 + length.getInt(0) > channel.size())
+							throw new PelicanException("Corrupted block length: "
+									+ length.getInt(0));
+						ByteBuffer compressed = ByteBuffer.allocate(length.getInt(0));
+						readFully(channel, compressed, index[block] + 4);
+						values = newBuffer(header.blockLength(block)
+								* header.valueLength());
+						inflate(compressed.array(), values.array());
+						values.position((int) (start - (long) block
+								* header.blockSize)
+								* header.valueLength());
+						values = values.slice();
+					}
+					decode(values, header, start, count, image, offset, band);
+					return null;
+				}
+			});
+		}
+		run(TiledExecutor.getDefaultPool(), tasks);
+	}
+
+	/**
+	 * Copies the values of a block of an image in a buffer.
+	 */
+	private static void encode(Image image, Header header, int block,
+			ByteBuffer buffer) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		long first = (long) block * header.blockSize;
+		int count = header.blockLength(block);
+		if (RawPixels.hasRawPixels(image)) {
+			int o = (int) first;
+			switch (header.type) {
+			case DOUBLE:
+				buffer.asDoubleBuffer().put(((DoubleImage) image).getPixelsUnsafe(),
+						o, count);
+				break;
+			case INTEGER:
+				buffer.asIntBuffer().put(((IntegerImage) image).getPixelsUnsafe(),
+						o, count);
+				break;
+			case BYTE:
+				byte[] bytes = ((ByteImage) image).getPixelsUnsafe();
+				for (int i = 0; i < count; i++)
+					buffer.put(i, (byte) (bytes[o + i] ^ 0x80));
+				break;
+			default:
+				boolean[] booleans = ((BooleanImage) image).getPixelsUnsafe();
+				for (int i = 0; i < count; i++)
+					buffer.put(i, booleans[o + i] ? (byte) 1 : 0);
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				long loc = first + i;
+				switch (header.type) {
+				case DOUBLE:
+					buffer.putDouble(8 * i, image.getPixelDouble(loc));
+					break;
+				case INTEGER:
+					buffer.putInt(4 * i, image.getPixelInt(loc));
+					break;
+				case BYTE:
+					buffer.put(i, (byte) image.getPixelByte(loc));
+					break;
+				default:
+					buffer.put(i, image.getPixelBoolean(loc) ? (byte) 1 : 0);
+				}
+			}
+		}
+		buffer.limit(count * header.valueLength());
+	}
+
+	/**
+	 * Copies values read from a file in an image.
+	 *
+	 * @param values
+	 *            the values of indexes first to first+count-1 in the file
+	 * @param offset
+	 *            index in the file of the first value of the image
+	 * @param band
+	 *            the band copied, or -1 to copy all of them
+	 */
+	private static void decode(ByteBuffer values, Header header, long first,
+			int count, Image image, long offset, int band) {
+		values.order(ByteOrder.LITTLE_ENDIAN);
+		if (band < 0 && RawPixels.hasRawPixels(image)) {
+			int o = (int) (first - offset);
+			switch (header.type) {
+			case DOUBLE:
+				values.asDoubleBuffer().get(((DoubleImage) image).getPixelsUnsafe(),
+						o, count);
+				break;
+			case INTEGER:
+				values.asIntBuffer().get(((IntegerImage) image).getPixelsUnsafe(),
+						o, count);
+				break;
+			case BYTE:
+				byte[] bytes = ((ByteImage) image).getPixelsUnsafe();
+				for (int i = 0; i < count; i++)
+					bytes[o + i] = (byte) (values.get(i) ^ 0x80);
+				break;
+			default:
+				boolean[] booleans = ((BooleanImage) image).getPixelsUnsafe();
+				for (int i = 0; i < count; i++)
+					booleans[o + i] = values.get(i) != 0;
+			}
+			return;
+		}
+		int step = 1;
+		int i = 0;
+		if (band >= 0) {
+			step = header.bdim;
+			i = (int) ((band - first % step + step) % step);
+		}
+		for (; i < count; i += step) {
+			long loc = (first + i) / step - offset;
+			switch (header.type) {
+			case DOUBLE:
+				image.setPixelDouble(loc, values.getDouble(8 * i));
+				break;
+			case INTEGER:
+				image.setPixelInt(loc, values.getInt(4 * i));
+				break;
+			case BYTE:
+				image.setPixelByte(loc, values.get(i) & 0xff);
+				break;
+			default:
+				image.setPixelBoolean(loc, values.get(i) != 0);
+			}
+		}
+	}
+
+	private static byte[] deflate(byte[] values) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(values);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					values.length / 2 + 64);
+			byte[] buffer = new byte[64 * 1024];
+			while (!deflater.finished())
+				out.write(buffer, 0, deflater.deflate(buffer));
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void inflate(byte[] compressed, byte[] values)
+			throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int length = 0;
+			while (length < values.length && !inflater.finished()) {
+				int n = inflater.inflate(values, length, values.length - length);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				length += n;
+			}
+			if (length != values.length)
+				throw new IOException("Corrupted block: " + length + " bytes instead of "
+						+ values.length);
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupted block", ex);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Runs tasks in a pool, or in the current thread if there is only one.
+	 *
+	 * @return the results of the tasks, in order
+	 */
+	private static <T> List<T> run(ForkJoinPool pool, List<Callable<T>> tasks)
+			throws IOException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			if (tasks.size() == 1) {
+				results.add(tasks.get(0).call());
+				return results;
+			}
+			for (Future<T> future : pool.invokeAll(tasks))
+				results.add(future.get());
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			throw new PelicanException(ex.getCause().getMessage(), ex.getCause());
+		} catch (IOException ex) {
+			throw ex;
+		} catch (RuntimeException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new PelicanException(ex.getMessage(), ex);
+		}
+		return results;
+	}
+
+	private static int typeOf(Image image) {
+		if (image instanceof BooleanImage)
+			return BOOLEAN;
+		if (image instanceof ByteImage)
+			return BYTE;
+		if (image instanceof IntegerImage)
+			return INTEGER;
+		if (image instanceof DoubleImage)
+			return DOUBLE;
+		return -1;
+	}
+
+	private static ByteBuffer newBuffer(int length) {
+		return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void writeFully(WritableByteChannel out, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining())
+			out.write(buffer);
+	}
+
+	private static void readFully(ReadableByteChannel in, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining())
+			if (in.read(buffer) < 0)
+				throw new EOFException("Truncated PELICAN image");
+	}
+
+	/**
+	 * Reads a number of bytes given by the file. They are read by chunks from
+	 * a stream, so that a corrupted length fails at the end of the stream
+	 * instead of allocating them.
+	 */
+	private static byte[] readBytes(ReadableByteChannel in, int length)
+			throws IOException {
+		if (length <= CHUNK_LENGTH) {
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			readFully(in, buffer);
+			return buffer.array();
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK_LENGTH);
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_LENGTH);
+		while (bytes.size() < length) {
+			chunk.clear();
+			chunk.limit(Math.min(CHUNK_LENGTH, length - bytes.size()));
+			readFully(in, chunk);
+			bytes.write(chunk.array(), 0, chunk.limit());
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void readFully(FileChannel in, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = in.read(buffer, position);
+			if (n < 0)
+				throw new EOFException("Truncated PELICAN image");
+			position += n;
+		}
+	}
+
+	/**
+	 * Header of a file
+	 */
+	private static class Header {
+		int type;
+		int compression;
+		boolean color;
+		int xdim, ydim, zdim, tdim, bdim;
+		int blockSize;
+		byte[] attributes;
+
+		/**
+		 * Position of the payload in the file
+		 */
+		long payload;
+
+		private Header() {
+		}
+
+		Header(Image image, int compression) throws IOException {
+			type = typeOf(image);
+			if (type < 0)
+				throw new PelicanException("Can not write a "
+						+ image.getClass().getSimpleName() + " as a PELICAN image");
+			if (compression != NONE && compression != DEFLATE)
+				throw new PelicanException("Unknown compression: " + compression);
+			this.compression = compression;
+			color = image.isColor();
+			xdim = image.getXDim();
+			ydim = image.getYDim();
+			zdim = image.getZDim();
+			tdim = image.getTDim();
+			bdim = image.getBDim();
+			blockSize = DEFAULT_BLOCK_SIZE;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(image.getName());
+			out.writeInt(image.type);
+			out.writeObject(image.properties);
+			out.writeObject(image.getMask());
+			out.close();
+			attributes = bytes.toByteArray();
+			payload = padded(FIXED_HEADER_LENGTH + attributes.length);
+		}
+
+		static Header read(ReadableByteChannel in) throws IOException {
+			ByteBuffer buffer = newBuffer(FIXED_HEADER_LENGTH);
+			readFully(in, buffer);
+			byte[] magic = new byte[MAGIC.length];
+			buffer.position(0);
+			buffer.get(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new IOException("Not a PELICAN image");
+			int version = buffer.getInt();
+			if (version > VERSION)
+				throw new IOException("Unsupported PELICAN image version: "
+						+ version);
+			Header header = new Header();
+			header.type = buffer.get();
+			header.compression = buffer.get();
+			header.color = buffer.get() != 0;
+			buffer.get();
+			header.xdim = buffer.getInt();
+			header.ydim = buffer.getInt();
+			header.zdim = buffer.getInt();
+			header.tdim = buffer.getInt();
+			header.bdim = buffer.getInt();
+			header.blockSize = buffer.getInt();
+			int length = buffer.getInt();
+			if (header.type < BOOLEAN || header.type > DOUBLE || header.blockSize <= 0)
+				throw new IOException("Corrupted PELICAN image header");
+			// the length of the attributes is checked before allocating them
+			header.payload = padded(FIXED_HEADER_LENGTH + (long) length);
+			long rest = header.payload - FIXED_HEADER_LENGTH;
+			long available = Long.MAX_VALUE;
+			if (in instanceof FileChannel)
+				available = ((FileChannel) in).size() - ((FileChannel) in).position();
+			if (length < 0 || rest > Integer.MAX_VALUE || rest > available)
+				throw new PelicanException("Corrupted PELICAN image header: "
+						+ length + " bytes of attributes");
+			header.attributes = Arrays.copyOf(readBytes(in, (int) rest), length);
+			return header;
+		}
+
+		ByteBuffer encode() {
+			ByteBuffer buffer = newBuffer((int) payload);
+			buffer.put(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.put((byte) type);
+			buffer.put((byte) compression);
+			buffer.put(color ? (byte) 1 : 0);
+			buffer.put((byte) 0);
+			buffer.putInt(xdim).putInt(ydim).putInt(zdim).putInt(tdim).putInt(bdim);
+			buffer.putInt(blockSize);
+			buffer.putInt(attributes.length);
+			buffer.put(attributes);
+			buffer.clear();
+			return buffer;
+		}
+
+		/**
+		 * Creates the image receiving the values, with its attributes.
+		 */
+		@SuppressWarnings("unchecked")
+		Image newImage(int tdim, int bdim) throws IOException {
+			long size = ChunkedImageUtil.size(xdim, ydim, zdim, tdim, bdim);
+			boolean chunked = size > Integer.MAX_VALUE;
+			Image image;
+			switch (type) {
+			case DOUBLE:
+				image = chunked ? new ChunkedDoubleImage(xdim, ydim, zdim, tdim, bdim)
+						: new DoubleImage(xdim, ydim, zdim, tdim, bdim);
+				break;
+			case INTEGER:
+				image = chunked ? new ChunkedIntegerImage(xdim, ydim, zdim, tdim,
+						bdim) : new IntegerImage(xdim, ydim, zdim, tdim, bdim);
+				break;
+			case BYTE:
+				image = chunked ? new ChunkedByteImage(xdim, ydim, zdim, tdim, bdim)
+						: new ByteImage(xdim, ydim, zdim, tdim, bdim);
+				break;
+			default:
+				if (chunked)
+					throw new PelicanException("Too many pixels for a BooleanImage: "
+							+ size);
+				image = new BooleanImage(xdim, ydim, zdim, tdim, bdim);
+			}
+			image.setColor(color);
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+					attributes));
+			try {
+				image.setName((String) in.readObject());
+				image.type = in.readInt();
+				image.properties.putAll((Map<String, Object>) in.readObject());
+				MaskStack masks = (MaskStack) in.readObject();
+				if (masks != null)
+					for (Mask m : masks)
+						image.pushMask(m);
+			} catch (ClassNotFoundException ex) {
+				throw new IOException("Unknown class in the attributes", ex);
+			} finally {
+				in.close();
+			}
+			return image;
+		}
+
+		int valueLength() {
+			return VALUE_LENGTH[type];
+		}
+
+		long size() {
+			return ChunkedImageUtil.size(xdim, ydim, zdim, tdim, bdim);
+		}
+
+		int blockDim() {
+			return (int) ((size() + blockSize - 1) / blockSize);
+		}
+
+		int blockLength(int block) {
+			return (int) Math.min(blockSize, size() - (long) block * blockSize);
+		}
+
+		private static long padded(long length) {
+			return (length + 7) & ~7L;
+		}
+	}
+
+	/**
+	 * Object stream writing the images it meets in this format, without
+	 * compression, instead of serializing them. The stream is read by a usual
+	 * ObjectInputStream.
+	 */
+	public static class ImageOutputStream extends ObjectOutputStream {
+
+		/**
+		 * Constructor
+		 *
+		 * @param out
+		 *            the underlying stream
+		 * @throws IOException
+		 *             if the stream header can not be written
+		 */
+		public ImageOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) {
+			if (obj instanceof Image && isSupported((Image) obj))
+				return new SerializedImage((Image) obj);
+			return obj;
+		}
+	}
+
+	/**
+	 * Image written in this format inside an object stream
+	 */
+	private static class SerializedImage implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private transient Image image;
+
+		SerializedImage(Image image) {
+			this.image = image;
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			write(image, (OutputStream) out, NONE);
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException {
+			image = read((InputStream) in);
+		}
+
+		private Object readResolve() {
+			return image;
+		}
+	}
+}
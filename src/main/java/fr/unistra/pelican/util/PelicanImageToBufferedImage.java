@@ -8,6 +8,7 @@ import java.awt.Graphics2D;
 import java.awt.TexturePaint;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 
 import com.sun.org.apache.bcel.internal.generic.NEW;
 
@@ -87,45 +88,52 @@ public class PelicanImageToBufferedImage extends Algorithm {
 			if(bands[b]>=bdim || bands[b]<0)
 				throw new AlgorithmException("PelicanImageToBufferedImage: invalid band index: " + bands[b]);
 		
-		if (colour==true) {
-			bimg = new BufferedImage(xDim, yDim, BufferedImage.TYPE_4BYTE_ABGR);
-			//Graphics2D g2 =bimg.createGraphics();
-			//texture.appliquer(g2);
-			//g2.fillRect(0, 0, inputImage.xdim, inputImage.ydim);
-			for (int y = 0; y < yDim; y++)
-				for (int x = 0; x < xDim; x++) {
-					int r = inputImage.getPixelXYBByte(x, y, bands[0]);
-					int g = inputImage.getPixelXYBByte(x, y, bands[1]);
-					int b = inputImage.getPixelXYBByte(x, y, bands[2]);
-					int alpha=(inputImage.isPresentXY(x, y))?255:10;
-					int rgb = ((alpha & 0xff) << 24) |((r & 0xff) << 16) | (( g & 0xff) << 8)
-							| ((b & 0xff));
-
-					bimg.setRGB(x, y, rgb);
-					
-				}
-		} else {
-			bimg = new BufferedImage(xDim, yDim, BufferedImage.TYPE_4BYTE_ABGR);
-			//for(int b=0;b<bdim;b++)
-			for (int y = 0; y < yDim; y++)
-				for (int x = 0; x < xDim; x++) {
-					int op = (int) inputImage.getPixelXYBByte(x, y, bands[0]);
-					
-					int alpha=255;
-					if(!inputImage.isPresentXY(x, y)){
-						alpha=10;
-						//op=255; 
-					}
-					int rgb = ((alpha & 0xff) << 24) |((op & 0xff) << 16) | (( op & 0xff) << 8)
-							| ((op & 0xff));
-
-					bimg.setRGB(x, y, rgb);
-				}
-		}
+		bimg = convert(inputImage, bands, 0, 0, xDim, yDim, 1);
 		
 		outputImage=bimg;
 	}
 
+	/**
+	 * Converts a region of the first frame of an image, possibly decimated.
+	 * The values are written directly in the raster of the result: pixels
+	 * outside the mask of the image are almost transparent.
+	 * 
+	 * @param image image to convert
+	 * @param bands bands displayed, 1 for a grey level image or 3 for a colour composition
+	 * @param x abscissa of the region
+	 * @param y ordinate of the region
+	 * @param width width of the region
+	 * @param height height of the region
+	 * @param step distance between the pixels converted, 1 to convert every pixel of the region
+	 * @return the image of ceil(width/step) by ceil(height/step) pixels
+	 */
+	public static BufferedImage convert(Image image, int[] bands, int x, int y, int width, int height, int step)
+	{
+		int w = (width + step - 1) / step;
+		int h = (height + step - 1) / step;
+		BufferedImage bimg = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+		byte[] abgr = ((DataBufferByte) bimg.getRaster().getDataBuffer()).getData();
+		boolean masked = !RawPixels.isUnmasked(image);
+		int bdim = image.getBDim();
+		int xdim = image.getXDim();
+		int r = bands[0];
+		int g = bands.length == 3 ? bands[1] : r;
+		int b = bands.length == 3 ? bands[2] : r;
+		int p = 0;
+		for (int j = 0; j < h; j++) {
+			int yy = y + j * step;
+			for (int i = 0; i < w; i++, p += 4) {
+				int xx = x + i * step;
+				long index = ((long) yy * xdim + xx) * bdim;
+				abgr[p] = (byte) ((!masked || image.isPresentXY(xx, yy)) ? 255 : 10);
+				abgr[p + 1] = (byte) image.getPixelByte(index + b);
+				abgr[p + 2] = (byte) image.getPixelByte(index + g);
+				abgr[p + 3] = (byte) image.getPixelByte(index + r);
+			}
+		}
+		return bimg;
+	}
+
 	public static BufferedImage exec(Image inputImage)
 	{
 		return (BufferedImage)(new PelicanImageToBufferedImage()).process(inputImage);
@@ -3,51 +3,64 @@
  */
 package fr.unistra.pelican.util;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.TreeMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 
 /**
  * Prioritized queue.
  * 
- * Can handle any type of objects and any type of priority.
+ * Can handle any type of objects and any type of priority. Elements of a
+ * same priority are served in the order they were added with
+ * LowestHasPriority, in the reverse order with HighestHasPriority.
  * 
- * Implementation relies on SortedList
+ * Implementation relies on a binary heap stored in an array. For int
+ * elements such as pixel offsets, {@link IntDoubleHeap} and
+ * {@link IntHierarchicalQueue} avoid an object per element.
  * 
  * @author Benjamin Perret
  *
  * @param <E> element type
  * @param <T> priority type (anything implementing the interface Comparable)
  */
-public class  PriorityQueue<E,T extends Comparable<? super T>> extends TreeMap<PriorityQueue.PrioritizedElement<E,T>,PriorityQueue.PrioritizedElement<E,T>> {
+public class  PriorityQueue<E,T extends Comparable<? super T>> implements Iterable<PriorityQueue.PrioritizedElement<E,T>> {
 
 	public static enum PriorityPolicy{LowestHasPriority,HighestHasPriority  };
 	
 	private PriorityPolicy policy=PriorityPolicy.LowestHasPriority;
 	
+	/**
+	 * Heap of the elements
+	 */
+	private PrioritizedElement<E,T> [] heap;
+	
+	private int size=0;
+	
 	/**
 	 * Default constructor
 	 */
 	public PriorityQueue() {
-		super();
+		this(16);
 	}
 	
 	/**
 	 * Default constructor
 	 */
 	public PriorityQueue(PriorityPolicy policy) {
-		super((policy.equals(PriorityPolicy.HighestHasPriority)?Collections.reverseOrder():null));
+		this(16);
 		this.policy=policy;
-		
-			
 	}
 
 	/**
 	 * Construct queue with initial size n.
 	 * @param n initial size
 	 */
+	@SuppressWarnings("unchecked")
 	public PriorityQueue(int n) {
-		super();
+		heap=(PrioritizedElement<E,T>[])new PrioritizedElement<?,?>[Math.max(n,2)];
 	}
 
 
@@ -58,8 +71,7 @@ public class  PriorityQueue<E,T extends Comparable<? super T>> extends TreeMap<P
 	 */
 	public void add(E element, T priority)
 	{
-		PrioritizedElement<E,T> pe=new PrioritizedElement<E,T>(element,priority);
-		this.put(pe,pe);
+		add(new PrioritizedElement<E,T>(element,priority));
 	}
 	
 	/**
@@ -67,68 +79,43 @@ public class  PriorityQueue<E,T extends Comparable<? super T>> extends TreeMap<P
 	 */
 	public void add(PrioritizedElement<E,T> pe)
 	{
-		this.put(pe,pe);
-	}
-	
-	/**
-	 * Add an element with given priority
-	 * @param element 
-	 * @param priority
-	 */
-/*	public void insertAndReplace(E element, T priority)
-	{
-		tmp.element=element;
-		PrioritizedElement<E,T> pe=get(tmp);
-		if(pe != null && pe.priority.compareTo(priority)<0)
+		if(size==heap.length)
+			heap=Arrays.copyOf(heap,size*2);
+		int i=size++;
+		while(i>0)
 		{
-			remove(tmp);
-			pe.priority=priority;
-			put(pe,pe);
-		} else{
-			pe=new PrioritizedElement<E,T>(element,priority);
-			put(pe,pe);
+			int parent=(i-1)>>1;
+			if(compare(pe,heap[parent])>=0)
+				break;
+			heap[i]=heap[parent];
+			i=parent;
 		}
-	}*/
-	
-	/*private int whereIsNext()
-	{
-		if (policy == PriorityPolicy.LowestHasPriority)
-			return 0;
-		else return size()-1;
-	}*/
-	
-	private PrioritizedElement<E,T> tmp= new PrioritizedElement<E,T>();
+		heap[i]=pe;
+	}
 	
 	public boolean contains(E element)
 	{
-		tmp.element=element;
-		return containsValue(tmp);
+		for(int i=0;i<size;i++)
+			if(heap[i].element.equals(element))
+				return true;
+		return false;
 	}
 	
-	/*public PrioritizedElement<E,T> get(E element){
-		PrioritizedElement<E,T> res=null;
-		tmp.element=element;
-		/int i= indexOf(tmp);
-		if(i>=0)
-			res= get(i);
-		
-		return res;
-	}*/
+	public int size()
+	{
+		return size;
+	}
 	
-	/* (non-Javadoc)
-	 * @see java.util.ArrayList#remove(java.lang.Object)
-	 */
-	/*@Override
-	public boolean remove(Object o) {
-		tmp.element=o;
-		return super.remove(tmp);
-	}*/
+	public boolean isEmpty()
+	{
+		return size==0;
+	}
 	
-	/*public void remove(Object element)
+	public void clear()
 	{
-		tmp.element=element;
-		return;
-	}*/
+		Arrays.fill(heap,0,size,null);
+		size=0;
+	}
 	
 	/**
 	 * Get element of highest priority and remove it from list
@@ -136,12 +123,7 @@ public class  PriorityQueue<E,T extends Comparable<? super T>> extends TreeMap<P
 	 */
 	public E popElement()
 	{
-		/*int s=whereIsNext();//size()-1;
-		PrioritizedElement<E, T> e = this.get(s);
-		this.remove(s);
-		return e.getElement();*/
-		
-		return firstEntry().getValue().element;
+		return pop().element;
 	}
 
 	/**
@@ -150,31 +132,53 @@ public class  PriorityQueue<E,T extends Comparable<? super T>> extends TreeMap<P
 	 */
 	public E peekElement()
 	{
-		//return this.get(size()-1).getElement();
-		//return this.get(whereIsNext()).getElement();
 		return peek().element;
 	}
 	
 	/**
-	 * 
-	 * @return
+	 * Get the element of highest priority with its priority and remove it from list
+	 * @return element of highest priority
 	 */
 	public PrioritizedElement<E,T> pop()
 	{
-		/*int s=whereIsNext();//size()-1;
-		PrioritizedElement<E, T> e = this.get(s);
-		this.remove(s);
-		return e;*/
-		PrioritizedElement<E, T> e=firstKey();
-		remove(e);
+		PrioritizedElement<E, T> e=peek();
+		PrioritizedElement<E, T> last=heap[--size];
+		heap[size]=null;
+		if(size>0)
+		{
+			int i=0;
+			int child;
+			while((child=2*i+1)<size)
+			{
+				if(child+1<size && compare(heap[child+1],heap[child])<0)
+					child++;
+				if(compare(heap[child],last)>=0)
+					break;
+				heap[i]=heap[child];
+				i=child;
+			}
+			heap[i]=last;
+		}
 		return e;
 	}
 	
+	/**
+	 * Get the element of highest priority with its priority and leave it in the list
+	 * @return element of highest priority
+	 */
 	public PrioritizedElement<E,T> peek()
 	{
-		//return this.get(size()-1);
-		//return this.get(whereIsNext());
-		return firstKey();
+		if(size==0)
+			throw new NoSuchElementException();
+		return heap[0];
+	}
+	
+	/**
+	 * Iterates over the elements in no particular order
+	 */
+	public Iterator<PrioritizedElement<E,T>> iterator()
+	{
+		return Collections.unmodifiableList(Arrays.asList(heap).subList(0,size)).iterator();
 	}
 	
 	public void dropContentToOutputStream()
@@ -183,6 +187,21 @@ public class  PriorityQueue<E,T extends Comparable<? super T>> extends TreeMap<P
 		System.out.println(toString());
 	}
 	
+	public String toString()
+	{
+		PrioritizedElement<E,T> [] sorted=Arrays.copyOf(heap,size);
+		Arrays.sort(sorted,new Comparator<PrioritizedElement<E,T>>(){
+			public int compare(PrioritizedElement<E,T> a, PrioritizedElement<E,T> b) {
+				return PriorityQueue.this.compare(a,b);
+			}});
+		return Arrays.toString(sorted);
+	}
+	
+	private int compare(PrioritizedElement<E,T> a, PrioritizedElement<E,T> b)
+	{
+		return (policy==PriorityPolicy.HighestHasPriority)?b.compareTo(a):a.compareTo(b);
+	}
+	
 	/**
 	 * Small class to group element and priority
 	 * 
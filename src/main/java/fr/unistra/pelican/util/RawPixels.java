@@ -0,0 +1,259 @@
+package fr.unistra.pelican.util;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.ChunkedByteImage;
+import fr.unistra.pelican.ChunkedDoubleImage;
+import fr.unistra.pelican.ChunkedIntegerImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
+
+/**
+ * Typed access to the pixel arrays of the images kept in memory, for the inner
+ * loops of the algorithms.
+ * <p>
+ * ByteImage, IntegerImage, DoubleImage and BooleanImage give their pixel array
+ * through <code>getPixelsUnsafe()</code>. The values are stored in the
+ * b-x-y-z-t order: the linear index of (x,y,z,t,b) is
+ * <code>b + x*getXStride() + y*getYStride() + z*getZStride() + t*getTStride()</code>
+ * and each row, i.e. the bands of the pixels (0,y,z,t) to (xdim-1,y,z,t), is a
+ * contiguous block of <code>getRowLength()</code> values.
+ * <p>
+ * The methods of this class convert whole images or parts of them from and to
+ * double or unsigned byte arrays, with one monomorphic loop per image type and
+ * the same conversions as the per-pixel accessors. Other images (e.g. large
+ * or chunked images) are converted through the per-pixel accessors.
+ *
+ * @author PELICAN team
+ */
+public class RawPixels {
+
+	/**
+	 * Checks if the pixel array of an image can be accessed directly.
+	 *
+	 * @param image
+	 *            an image
+	 * @return true if the image is a ByteImage, IntegerImage, DoubleImage or
+	 *         BooleanImage kept in memory in a single array
+	 */
+	public static boolean hasRawPixels(Image image) {
+		return !(image instanceof LargeImageInterface)
+				&& !(image instanceof ChunkedByteImage
+						|| image instanceof ChunkedIntegerImage || image instanceof ChunkedDoubleImage)
+				&& (image instanceof ByteImage || image instanceof IntegerImage
+						|| image instanceof DoubleImage || image instanceof BooleanImage);
+	}
+
+	/**
+	 * Checks if an image has no mask, so that the presence of its pixels does
+	 * not need to be tested.
+	 *
+	 * @param image
+	 *            an image
+	 * @return true if all the pixels of the image are present
+	 */
+	public static boolean isUnmasked(Image image) {
+		return image.getMask() == null || image.getMask().isEmpty();
+	}
+
+	/**
+	 * Checks if the inner loops of an algorithm can work on the pixel arrays of
+	 * some images without testing the presence of their pixels.
+	 *
+	 * @param images
+	 *            some images
+	 * @return true if all the images have a raw pixel array and no mask
+	 */
+	public static boolean isRawAndUnmasked(Image... images) {
+		for (Image image : images)
+			if (!hasRawPixels(image) || !isUnmasked(image))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Gets an array receiving the double values of an image, to be given to
+	 * {@link #setDoubles(Image, double[])} once filled. The pixel array of a
+	 * DoubleImage is returned as is, so that no copy is needed.
+	 *
+	 * @param image
+	 *            an image
+	 * @return an array of the size of the image
+	 */
+	public static double[] getDoubleBuffer(Image image) {
+		if (image instanceof DoubleImage && hasRawPixels(image))
+			return ((DoubleImage) image).getPixelsUnsafe();
+		return new double[image.size()];
+	}
+
+	/**
+	 * Gets the values of an image as doubles. The pixel array of a DoubleImage
+	 * is returned as is and must not be modified.
+	 *
+	 * @param image
+	 *            an image
+	 * @return the double values of all the pixels
+	 */
+	public static double[] getDoubles(Image image) {
+		if (image instanceof DoubleImage && hasRawPixels(image))
+			return ((DoubleImage) image).getPixelsUnsafe();
+		return getDoubles(image, 0, image.size(), new double[image.size()], 0);
+	}
+
+	/**
+	 * Copies consecutive values of an image as doubles.
+	 *
+	 * @param image
+	 *            an image
+	 * @param offset
+	 *            linear index of the first value
+	 * @param length
+	 *            number of values
+	 * @param dst
+	 *            destination array
+	 * @param dstOffset
+	 *            index of the first value in the destination array
+	 * @return the destination array
+	 */
+	public static double[] getDoubles(Image image, int offset, int length,
+			double[] dst, int dstOffset) {
+		if (!hasRawPixels(image)) {
+			for (int i = 0; i < length; i++)
+				dst[dstOffset + i] = image.getPixelDouble(offset + i);
+		} else if (image instanceof ByteImage) {
+			byte[] pixels = ((ByteImage) image).getPixelsUnsafe();
+			for (int i = 0; i < length; i++)
+				dst[dstOffset + i] = Image.signedByteToDouble(pixels[offset + i]);
+		} else if (image instanceof IntegerImage) {
+			int[] pixels = ((IntegerImage) image).getPixelsUnsafe();
+			for (int i = 0; i < length; i++)
+				dst[dstOffset + i] = Image.intToDouble(pixels[offset + i]);
+		} else if (image instanceof DoubleImage) {
+			System.arraycopy(((DoubleImage) image).getPixelsUnsafe(), offset, dst,
+					dstOffset, length);
+		} else {
+			boolean[] pixels = ((BooleanImage) image).getPixelsUnsafe();
+			for (int i = 0; i < length; i++)
+				dst[dstOffset + i] = Image.booleanToDouble(pixels[offset + i]);
+		}
+		return dst;
+	}
+
+	/**
+	 * Sets all the values of an image from doubles. Nothing is done if the
+	 * array is the pixel array of the image.
+	 *
+	 * @param image
+	 *            an image
+	 * @param values
+	 *            the double values of all the pixels
+	 */
+	public static void setDoubles(Image image, double[] values) {
+		setDoubles(image, 0, image.size(), values, 0);
+	}
+
+	/**
+	 * Sets consecutive values of an image from doubles.
+	 *
+	 * @param image
+	 *            an image
+	 * @param offset
+	 *            linear index of the first value
+	 * @param length
+	 *            number of values
+	 * @param src
+	 *            source array
+	 * @param srcOffset
+	 *            index of the first value in the source array
+	 */
+	public static void setDoubles(Image image, int offset, int length,
+			double[] src, int srcOffset) {
+		if (!hasRawPixels(image)) {
+			for (int i = 0; i < length; i++)
+				image.setPixelDouble(offset + i, src[srcOffset + i]);
+		} else if (image instanceof ByteImage) {
+			byte[] pixels = ((ByteImage) image).getPixelsUnsafe();
+			for (int i = 0; i < length; i++)
+				pixels[offset + i] = Image.doubleToSignedByte(src[srcOffset + i]);
+		} else if (image instanceof IntegerImage) {
+			int[] pixels = ((IntegerImage) image).getPixelsUnsafe();
+			for (int i = 0; i < length; i++)
+				pixels[offset + i] = Image.doubleToInt(src[srcOffset + i]);
+		} else if (image instanceof DoubleImage) {
+			double[] pixels = ((DoubleImage) image).getPixelsUnsafe();
+			if (pixels != src || offset != srcOffset)
+				System.arraycopy(src, srcOffset, pixels, offset, length);
+		} else {
+			boolean[] pixels = ((BooleanImage) image).getPixelsUnsafe();
+			for (int i = 0; i < length; i++)
+				pixels[offset + i] = Image.doubleToBoolean(src[srcOffset + i]);
+		}
+	}
+
+	/**
+	 * Gets the values of an image as unsigned bytes, in [0,255].
+	 *
+	 * @param image
+	 *            an image
+	 * @return the byte values of all the pixels
+	 */
+	public static int[] getBytes(Image image) {
+		int size = image.size();
+		int[] dst = new int[size];
+		if (!hasRawPixels(image)) {
+			for (int i = 0; i < size; i++)
+				dst[i] = image.getPixelByte(i);
+		} else if (image instanceof ByteImage) {
+			byte[] pixels = ((ByteImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				dst[i] = Image.signedByteToUnsignedByte(pixels[i]);
+		} else if (image instanceof IntegerImage) {
+			int[] pixels = ((IntegerImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				dst[i] = Image.intToUnsignedByte(pixels[i]);
+		} else if (image instanceof DoubleImage) {
+			double[] pixels = ((DoubleImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				dst[i] = Image.doubleToUnsignedByte(pixels[i]);
+		} else {
+			boolean[] pixels = ((BooleanImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				dst[i] = Image.booleanToUnsignedByte(pixels[i]);
+		}
+		return dst;
+	}
+
+	/**
+	 * Sets all the values of an image from unsigned bytes, in [0,255].
+	 *
+	 * @param image
+	 *            an image
+	 * @param values
+	 *            the byte values of all the pixels
+	 */
+	public static void setBytes(Image image, int[] values) {
+		int size = image.size();
+		if (!hasRawPixels(image)) {
+			for (int i = 0; i < size; i++)
+				image.setPixelByte(i, values[i]);
+		} else if (image instanceof ByteImage) {
+			byte[] pixels = ((ByteImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				pixels[i] = Image.unsignedByteToSignedByte(values[i]);
+		} else if (image instanceof IntegerImage) {
+			int[] pixels = ((IntegerImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				pixels[i] = Image.unsignedByteToInt(values[i]);
+		} else if (image instanceof DoubleImage) {
+			double[] pixels = ((DoubleImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				pixels[i] = Image.unsignedByteToDouble(values[i]);
+		} else {
+			boolean[] pixels = ((BooleanImage) image).getPixelsUnsafe();
+			for (int i = 0; i < size; i++)
+				pixels[i] = Image.unsignedByteToBoolean(values[i]);
+		}
+	}
+}
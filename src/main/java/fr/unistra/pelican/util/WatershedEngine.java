@@ -0,0 +1,465 @@
+package fr.unistra.pelican.util;
+
+import java.util.Arrays;
+
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+
+/**
+ * Flooding engine shared by the watershed algorithms. It works on a volume
+ * of up to four dimensions (x,y,z,t) whose pixels are identified by their
+ * offset x+xdim*(y+ydim*(z+zdim*t)), with int arrays for the elevations and
+ * the labels and an {@link IntHierarchicalQueue}, and provides:
+ * <ul>
+ * <li>the watershed by immersion of Vincent and Soille,</li>
+ * <li>the flooding from markers of Meyer,</li>
+ * <li>the flooding in the order of a geodesic distance to seeds.</li>
+ * </ul>
+ *
+ * Elevations are integer levels (see {@link #levels}), read from byte,
+ * integer or double images. The neighbourhood is a table of steps
+ * {dx,dy,dz,dt} of at most one pixel, in the order in which neighbours are
+ * visited.
+ *
+ * @author PELICAN team
+ *
+ */
+public class WatershedEngine {
+
+	/**
+	 * Label of the watershed lines
+	 */
+	public static final int WSHED = 0;
+
+	private static final int INIT = -1;
+
+	private static final int MASK = -2;
+
+	private static final int FICTITIOUS = -1;
+
+	private final int xdim, ydim, zdim, tdim;
+
+	private final int size;
+
+	private final int[][] steps;
+
+	private final int[] offsets;
+
+	/**
+	 * Dimensions to check to know if all the neighbours of a pixel are inside
+	 */
+	private final boolean useZ, useT;
+
+	/**
+	 * Cost of a move between neighbours, for the geodesic flooding.
+	 */
+	public interface Cost {
+		/**
+		 * @param p
+		 *            a flooded pixel
+		 * @param q
+		 *            one of its neighbours
+		 * @return the non negative cost from p to q
+		 */
+		int cost(int p, int q);
+	}
+
+	/**
+	 * Creates an engine for a volume.
+	 *
+	 * @param xdim
+	 * @param ydim
+	 * @param zdim
+	 * @param tdim
+	 * @param steps
+	 *            the neighbourhood, steps {dx,dy,dz,dt} in -1..1
+	 */
+	public WatershedEngine(int xdim, int ydim, int zdim, int tdim, int[][] steps) {
+		this.xdim = xdim;
+		this.ydim = ydim;
+		this.zdim = zdim;
+		this.tdim = tdim;
+		this.size = xdim * ydim * zdim * tdim;
+		// steps along a dimension of size 1 always go outside
+		int n = 0;
+		int[][] kept = new int[steps.length][];
+		for (int[] s : steps) {
+			for (int d : s)
+				if (d < -1 || d > 1)
+					throw new AlgorithmException("Neighbourhood steps must be in -1..1");
+			if ((s[2] == 0 || zdim > 1) && (s[3] == 0 || tdim > 1))
+				kept[n++] = s;
+		}
+		this.steps = Arrays.copyOf(kept, n);
+		offsets = new int[n];
+		boolean z = false, t = false;
+		for (int i = 0; i < n; i++) {
+			int[] s = this.steps[i];
+			offsets[i] = s[0] + xdim * (s[1] + ydim * (s[2] + zdim * s[3]));
+			z |= s[2] != 0;
+			t |= s[3] != 0;
+		}
+		useZ = z;
+		useT = t;
+	}
+
+	/**
+	 * Gets the neighbourhood of the pixels in a space of some dimensions, in
+	 * the order of the offsets (x varying first).
+	 *
+	 * @param dims
+	 *            number of dimensions, from 1 to 4
+	 * @param connexity4
+	 *            true for the 2*dims direct neighbours, false for the 3^dims-1
+	 *            neighbours
+	 * @return the steps {dx,dy,dz,dt}
+	 */
+	public static int[][] neighbourhood(int dims, boolean connexity4) {
+		int[][] steps = new int[connexity4 ? 2 * dims : (int) Math.pow(3, dims) - 1][];
+		int n = 0;
+		for (int t = dims > 3 ? -1 : 0; t <= (dims > 3 ? 1 : 0); t++)
+			for (int z = dims > 2 ? -1 : 0; z <= (dims > 2 ? 1 : 0); z++)
+				for (int y = dims > 1 ? -1 : 0; y <= (dims > 1 ? 1 : 0); y++)
+					for (int x = -1; x <= 1; x++) {
+						int d = Math.abs(x) + Math.abs(y) + Math.abs(z) + Math.abs(t);
+						if (d != 0 && (!connexity4 || d == 1))
+							steps[n++] = new int[] { x, y, z, t };
+					}
+		return steps;
+	}
+
+	/**
+	 * @return the number of pixels of the volume
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Reads the elevations of a volume of an image as levels from 0.
+	 *
+	 * @param image
+	 *            the image
+	 * @param slice
+	 *            index of the volume in the image: the offset of its first
+	 *            pixel is slice*size
+	 * @param b
+	 *            the band
+	 * @param resolution
+	 *            number of bits (at most 8) of the levels, the values being
+	 *            read as bytes, or 0 for the exact values of the image
+	 * @return the level of each pixel
+	 */
+	public int[] levels(Image image, int slice, int b, int resolution) {
+		int[] levels = new int[size];
+		int bdim = image.getBDim();
+		int loc = b + bdim * slice * size;
+		if (resolution > 0) {
+			int shift = Math.max(0, 8 - resolution);
+			for (int p = 0; p < size; p++, loc += bdim)
+				levels[p] = image.getPixelByte(loc) >> shift;
+		} else if (image instanceof ByteImage) {
+			for (int p = 0; p < size; p++, loc += bdim)
+				levels[p] = image.getPixelByte(loc);
+		} else {
+			// ranks of the distinct values, -0.0 being equal to 0.0
+			double[] values = new double[size];
+			for (int p = 0; p < size; p++, loc += bdim)
+				values[p] = image.getPixelDouble(loc) + 0.0;
+			double[] distinct = values.clone();
+			Arrays.sort(distinct);
+			int n = 0;
+			for (int i = 0; i < size; i++)
+				if (i == 0 || distinct[i] != distinct[n - 1])
+					distinct[n++] = distinct[i];
+			for (int p = 0; p < size; p++)
+				levels[p] = Arrays.binarySearch(distinct, 0, n, values[p]);
+		}
+		return levels;
+	}
+
+	/**
+	 * Computes the watershed by immersion of Vincent and Soille.
+	 *
+	 * Basins are labelled from 1 by increasing level of their minimum, then
+	 * in the order of their first pixel when scanning the volume x first
+	 * (over y, z and t).
+	 *
+	 * @param levels
+	 *            the elevations
+	 * @return the labels of the basins, WSHED on the watershed lines
+	 */
+	public int[] immersion(int[] levels) {
+		int nLevels = max(levels) + 1;
+		int[] starts = new int[nLevels + 1];
+		for (int p = 0; p < size; p++)
+			starts[levels[p] + 1]++;
+		for (int i = 0; i < nLevels; i++)
+			starts[i + 1] += starts[i];
+		int[] sorted = new int[size];
+		int[] fill = Arrays.copyOf(starts, nLevels);
+		for (int p = 0; p < size; p++)
+			sorted[fill[levels[p]]++] = p;
+		fill = null;
+
+		int[] out = new int[size];
+		Arrays.fill(out, INIT);
+		int[] dist = new int[size];
+		IntFifo fifo = new IntFifo(size + 1);
+		int[] buffer = new int[offsets.length];
+		// first pixel of each label in the x first scan, and final labels
+		int[] first = new int[size + 1];
+		int[] rank = new int[size + 1];
+		int currentLabel = WSHED;
+
+		for (int i = 0; i < nLevels; i++) {
+			int from = starts[i], to = starts[i + 1];
+
+			// geodesic SKIZ of level i - 1 inside level i
+			for (int j = from; j < to; j++) {
+				int p = sorted[j];
+				out[p] = MASK;
+				int n = neighbours(p, buffer);
+				for (int k = 0; k < n; k++)
+					if (out[buffer[k]] >= WSHED) {
+						dist[p] = 1;
+						fifo.add(p);
+						break;
+					}
+			}
+			int curDist = 1;
+			fifo.add(FICTITIOUS);
+			while (true) {
+				int p = fifo.remove();
+				if (p == FICTITIOUS) {
+					if (fifo.isEmpty())
+						break;
+					fifo.add(FICTITIOUS);
+					curDist++;
+					p = fifo.remove();
+				}
+				// labelling p by inspecting its neighbours
+				int n = neighbours(p, buffer);
+				for (int k = 0; k < n; k++) {
+					int q = buffer[k];
+					if (dist[q] < curDist && out[q] > WSHED) {
+						if (out[p] == MASK || out[p] == WSHED)
+							out[p] = out[q];
+						else if (out[p] != out[q])
+							out[p] = WSHED;
+					} else if (out[q] == MASK && dist[q] == 0) {
+						dist[q] = curDist + 1;
+						fifo.add(q);
+					}
+				}
+			}
+
+			// detect and process new minima at level i
+			int firstLabel = currentLabel + 1;
+			for (int j = from; j < to; j++) {
+				int p = sorted[j];
+				dist[p] = 0;
+				if (out[p] == MASK) {
+					currentLabel++;
+					fifo.add(p);
+					out[p] = currentLabel;
+					first[currentLabel] = scanIndex(p);
+					while (!fifo.isEmpty()) {
+						int q = fifo.remove();
+						int n = neighbours(q, buffer);
+						for (int k = 0; k < n; k++) {
+							int r = buffer[k];
+							if (out[r] == MASK) {
+								fifo.add(r);
+								out[r] = currentLabel;
+								first[currentLabel] = Math.min(first[currentLabel],
+										scanIndex(r));
+							}
+						}
+					}
+				}
+			}
+			if (currentLabel >= firstLabel) {
+				long[] order = new long[currentLabel - firstLabel + 1];
+				for (int l = firstLabel; l <= currentLabel; l++)
+					order[l - firstLabel] = (long) first[l] << 32 | l;
+				Arrays.sort(order);
+				for (int r = 0; r < order.length; r++)
+					rank[(int) order[r]] = firstLabel + r;
+			}
+		}
+		for (int p = 0; p < size; p++)
+			if (out[p] > WSHED)
+				out[p] = rank[out[p]];
+		return out;
+	}
+
+	/**
+	 * Floods the volume from markers with the algorithm of Meyer: the
+	 * pixels are labelled when they are reached, and flooded in the order of
+	 * their levels, in the order of arrival for a same level.
+	 *
+	 * @param levels
+	 *            the elevations
+	 * @param labels
+	 *            the positive labels of the markers, 0 for the pixels to
+	 *            flood, a negative value for the pixels to ignore. The pixels
+	 *            reached are labelled on return.
+	 */
+	public void flood(int[] levels, int[] labels) {
+		IntHierarchicalQueue queue = new IntHierarchicalQueue(max(levels) + 1);
+		int[] buffer = new int[offsets.length];
+		for (int p = 0; p < size; p++)
+			if (labels[p] > 0) {
+				int n = neighbours(p, buffer);
+				for (int k = 0; k < n; k++)
+					if (labels[buffer[k]] == 0) {
+						queue.add(p, 0);
+						break;
+					}
+			}
+		while (!queue.isEmpty()) {
+			int p = queue.get();
+			int label = labels[p];
+			int n = neighbours(p, buffer);
+			for (int k = 0; k < n; k++) {
+				int q = buffer[k];
+				if (labels[q] == 0) {
+					labels[q] = label;
+					queue.add(q, levels[q]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Floods the volume in the order of the geodesic distance to seeds
+	 * (Dijkstra's algorithm on a hierarchical queue). A pixel gets the label
+	 * of the closest seed when it is taken from the queue.
+	 *
+	 * @param labels
+	 *            0 for the pixels to flood, a non zero value for the pixels
+	 *            which are never reached. The pixels are labelled on return.
+	 * @param candidates
+	 *            the label of the seeds, updated with the label of the
+	 *            closest seed met so far
+	 * @param distances
+	 *            the distances found so far, 0 if unknown
+	 * @param cost
+	 *            the cost of a move between neighbours
+	 * @param queue
+	 *            a queue holding the seeds
+	 */
+	public void geodesicFlood(int[] labels, int[] candidates, int[] distances,
+			Cost cost, IntHierarchicalQueue queue) {
+		int[] buffer = new int[offsets.length];
+		while (!queue.isEmpty()) {
+			int p = queue.get();
+			int current = queue.getCurrent();
+			if (labels[p] != 0)
+				continue;
+			int label = candidates[p];
+			labels[p] = label;
+			int n = neighbours(p, buffer);
+			for (int k = 0; k < n; k++) {
+				int q = buffer[k];
+				if (labels[q] != 0)
+					continue;
+				int d = cost.cost(p, q) + current;
+				if (distances[q] == 0 || d < distances[q]) {
+					distances[q] = d;
+					candidates[q] = label;
+					queue.add(q, d);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the neighbours of a pixel inside the volume, in the order of the
+	 * steps.
+	 *
+	 * @param p
+	 *            a pixel
+	 * @param buffer
+	 *            an array as long as the neighbourhood
+	 * @return the number of neighbours written in the buffer
+	 */
+	public int neighbours(int p, int[] buffer) {
+		int x = p % xdim;
+		int r = p / xdim;
+		int y = r % ydim;
+		r /= ydim;
+		int z = r % zdim;
+		int t = r / zdim;
+		int n = 0;
+		if (x > 0 && x < xdim - 1 && y > 0 && y < ydim - 1
+				&& (!useZ || z > 0 && z < zdim - 1) && (!useT || t > 0 && t < tdim - 1)) {
+			for (int i = 0; i < offsets.length; i++)
+				buffer[n++] = p + offsets[i];
+		} else {
+			for (int i = 0; i < offsets.length; i++) {
+				int[] s = steps[i];
+				int nx = x + s[0], ny = y + s[1], nz = z + s[2], nt = t + s[3];
+				if (nx >= 0 && nx < xdim && ny >= 0 && ny < ydim && nz >= 0
+						&& nz < zdim && nt >= 0 && nt < tdim)
+					buffer[n++] = p + offsets[i];
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Index of a pixel when scanning the volume x first, then y, z and t.
+	 */
+	private int scanIndex(int p) {
+		int x = p % xdim;
+		int r = p / xdim;
+		int y = r % ydim;
+		r /= ydim;
+		int z = r % zdim;
+		int t = r / zdim;
+		return ((x * ydim + y) * zdim + z) * tdim + t;
+	}
+
+	private static int max(int[] values) {
+		int max = 0;
+		for (int v : values)
+			if (v > max)
+				max = v;
+		return max;
+	}
+
+	/**
+	 * Circular FIFO of ints with a fixed capacity.
+	 */
+	private static final class IntFifo {
+		private final int[] items;
+		private int head = 0, count = 0;
+
+		IntFifo(int capacity) {
+			items = new int[capacity];
+		}
+
+		void add(int e) {
+			int i = head + count;
+			if (i >= items.length)
+				i -= items.length;
+			items[i] = e;
+			count++;
+		}
+
+		int remove() {
+			int e = items[head];
+			if (++head == items.length)
+				head = 0;
+			count--;
+			return e;
+		}
+
+		boolean isEmpty() {
+			return count == 0;
+		}
+	}
+}
@@ -0,0 +1,1223 @@
+package fr.unistra.pelican.util.connectivityTrees;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.algorithms.morphology.connected.FilterComponentTree.FilterStrategy;
+import fr.unistra.pelican.util.Point3D;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.Connectivity3D;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivity;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
+
+/**
+ * Max-tree (or min-tree) of one band and one frame of an image, stored in
+ * arrays and built by union-find.
+ * <p>
+ * The pixels are sorted by a radix sort on their values, then merged from the
+ * highest to the lowest (the lowest to the highest for a min-tree) with a
+ * union-find structure, with union by rank and path halving. Each node of
+ * the tree is a connected component of an upper (lower) level set. Large
+ * images are cut in bands whose trees are built in parallel, then merged
+ * along the borders of the bands. Nodes are numbered so that the parent of a node
+ * has a smaller number; the roots are their own parents, there is one root
+ * per connected component of the image (a single one for usual
+ * connectivities).
+ * <p>
+ * The area, volume, height and bounding box of all nodes are computed with
+ * the tree, in a single pass from the leaves to the roots:
+ * <ul>
+ * <li>the volume of a node is the sum over its pixels of the difference of
+ * their values with the level of its parent, as in
+ * {@link fr.unistra.pelican.util.connectivityTrees.attributes.AttributeVolume}
+ * . For a root, it is the sum of the differences with its level, plus its
+ * area times its level;</li>
+ * <li>the height of a node is the difference between the extremal value of
+ * its pixels and its level.</li>
+ * </ul>
+ * Levels are the values as stored in the image: 0 to 255 for a ByteImage, the
+ * integer values for an IntegerImage, 0 or 1 for a BooleanImage, the double
+ * values otherwise. The connectivity is translation invariant, given as
+ * neighbour offsets.
+ * <p>
+ * Unlike {@link ComponentTree}, which needs a ComponentNode and a Point3D per
+ * pixel, the tree is held in a few arrays of primitive values: the pixels in
+ * the order of the tree, the node of each pixel, the parent, level and
+ * attributes of each node. Filters mark the removed nodes, as
+ * FilterComponentTree does on a ComponentTree, and the nodes are accessed
+ * with the methods of ComponentTree (findNodeAt, iterators...) working on
+ * node numbers. FilterComponentTree and ReconstructImageFromTree accept these
+ * trees.
+ * <p>
+ * C. Berger, T. Geraud, R. Levillain, N. Widynski, A. Baillard, E. Bertin,
+ * <i>Effective component tree computation with application to pattern
+ * recognition in astronomical imaging</i> (2007).<br>
+ * L. Najman, M. Couprie, <i>Building the component tree in quasi-linear
+ * time</i> (2006).
+ *
+ * @author PELICAN team
+ */
+public class MaxTree {
+
+	/**
+	 * Attributes computed for each node
+	 */
+	public static enum Attribute {
+		/** number of pixels */
+		AREA,
+		/** sum of the pixel values above the level of the parent */
+		VOLUME,
+		/** difference between the extremal value and the level */
+		HEIGHT,
+		/** width of the bounding box */
+		X_EXTENT,
+		/** height of the bounding box */
+		Y_EXTENT,
+		/** depth of the bounding box */
+		Z_EXTENT
+	};
+
+	/**
+	 * Number of pixels below which the tree is built sequentially
+	 */
+	private static final int MIN_PARALLEL_SIZE = 1 << 16;
+
+	/**
+	 * Dimensions of the volume
+	 */
+	private final int xdim, ydim, zdim;
+
+	/**
+	 * Tree type
+	 */
+	private final TreeType treeType;
+
+	/**
+	 * Number of nodes
+	 */
+	private int count;
+
+	/**
+	 * Pixels of the volume sorted by increasing level (decreasing for a
+	 * min-tree), as indexes x+xdim*(y+ydim*z)
+	 */
+	private int[] sorted;
+
+	/**
+	 * Node of each pixel
+	 */
+	private int[] pixelNode;
+
+	/**
+	 * Parent of each node, a root being its own parent
+	 */
+	private int[] parent;
+
+	/**
+	 * One pixel of each node at its level
+	 */
+	private int[] canonical;
+
+	/**
+	 * Level of each node
+	 */
+	private double[] level;
+
+	/**
+	 * Attributes of each node
+	 */
+	private int[] area;
+
+	/**
+	 * Sum over the pixels of each node of their differences with its level
+	 */
+	private double[] volume;
+
+	/**
+	 * Descendant of each node at its extremal level
+	 */
+	private int[] top;
+
+	private int[] xmin, xmax, ymin, ymax, zmin, zmax;
+
+	/**
+	 * Image, frame and band of the tree
+	 */
+	private final Image image;
+
+	private final int t, b;
+
+	/**
+	 * Nodes removed by the filters, null if none
+	 */
+	private boolean[] deleted;
+
+	/**
+	 * Children of the nodes kept by the filters, the children of node n being
+	 * children[childStart[n]] to children[childStart[n+1]-1], null until
+	 * needed
+	 */
+	private int[] children, childStart;
+
+	/**
+	 * Builds the tree of the first band and frame of an image, as
+	 * BuildComponentTree.
+	 *
+	 * @param image
+	 *            the image
+	 * @param con
+	 *            a connectivity, see {@link #isSupported(Connectivity3D)}
+	 * @param treeType
+	 *            Max for a max-tree, Min for a min-tree
+	 */
+	public MaxTree(Image image, Connectivity3D con, TreeType treeType) {
+		this(image, 0, 0, offsets(con), treeType);
+	}
+
+	/**
+	 * Builds the tree of a band and frame of an image.
+	 *
+	 * @param image
+	 *            the image
+	 * @param t
+	 *            frame to process
+	 * @param b
+	 *            band to process
+	 * @param offsets
+	 *            neighbour offsets {dx,dy,dz}, see
+	 *            {@link #offsets(Connectivity3D)}
+	 * @param treeType
+	 *            Max for a max-tree, Min for a min-tree
+	 */
+	public MaxTree(Image image, int t, int b, int[][] offsets, TreeType treeType) {
+		this(image, t, b, offsets, treeType, defaultBands(image));
+	}
+
+	/**
+	 * Builds the tree of a band and frame of an image, the sub-trees of
+	 * horizontal bands of the image being built concurrently then merged. The
+	 * tree is the same whatever the number of bands.
+	 *
+	 * @param image
+	 *            the image
+	 * @param t
+	 *            frame to process
+	 * @param b
+	 *            band to process
+	 * @param offsets
+	 *            neighbour offsets {dx,dy,dz}, see
+	 *            {@link #offsets(Connectivity3D)}
+	 * @param treeType
+	 *            Max for a max-tree, Min for a min-tree
+	 * @param bands
+	 *            number of bands of rows (of planes for a 3D image), 1 for a
+	 *            sequential build
+	 */
+	public MaxTree(Image image, int t, int b, int[][] offsets, TreeType treeType,
+			int bands) {
+		this.xdim = image.getXDim();
+		this.ydim = image.getYDim();
+		this.zdim = image.getZDim();
+		this.treeType = treeType;
+		this.image = image;
+		this.t = t;
+		this.b = b;
+		long[] keys = keys();
+		sorted = sort(keys);
+		build(keys, offsets, bands);
+		keys = null;
+		computeNodes();
+		computeAttributes();
+	}
+
+	/**
+	 * Gets the default number of bands: one per thread of the pool of
+	 * {@link TiledExecutor}, a single one for small images.
+	 */
+	private static int defaultBands(Image image) {
+		int size = image.getXDim() * image.getYDim() * image.getZDim();
+		return size < MIN_PARALLEL_SIZE ? 1 : TiledExecutor.getDefaultPool()
+				.getParallelism();
+	}
+
+	/**
+	 * Gets the offsets of a translation invariant connectivity, made
+	 * symmetric.
+	 *
+	 * @param con
+	 *            a connectivity, an instance of {@link TrivialConnectivity}
+	 * @return the offsets {dx,dy,dz} of the neighbours of a pixel
+	 */
+	public static int[][] offsets(Connectivity3D con) {
+		if (!isSupported(con))
+			throw new AlgorithmException("Connectivity not supported by the max-tree: "
+					+ con);
+		ArrayList<int[]> list = new ArrayList<int[]>();
+		for (Point3D p : con.getConnectedNeighbours(0, 0, 0)) {
+			if (p.x == 0 && p.y == 0 && p.z == 0)
+				continue;
+			add(list, new int[] { p.x, p.y, p.z });
+			add(list, new int[] { -p.x, -p.y, -p.z });
+		}
+		return list.toArray(new int[list.size()][]);
+	}
+
+	private static void add(ArrayList<int[]> list, int[] o) {
+		for (int[] p : list)
+			if (p[0] == o[0] && p[1] == o[1] && p[2] == o[2])
+				return;
+		list.add(o);
+	}
+
+	/**
+	 * Checks if a connectivity does not depend on the pixel values, and can be
+	 * used to build a max-tree.
+	 *
+	 * @param con
+	 *            a connectivity
+	 * @return true for a {@link TrivialConnectivity}
+	 */
+	public static boolean isSupported(Connectivity3D con) {
+		return con instanceof TrivialConnectivity;
+	}
+
+	/**
+	 * Reads the values of a band and frame, and computes keys whose unsigned
+	 * order is the order of the tree.
+	 */
+	private long[] keys() {
+		int size = xdim * ydim * zdim;
+		int bdim = image.getBDim();
+		long[] keys = new long[size];
+		boolean reverse = treeType == TreeType.Min;
+		long min = -1L;
+		for (int v = 0, loc = b + bdim * size * t; v < size; v++, loc += bdim) {
+			long key;
+			if (image instanceof ByteImage) {
+				int value = image.getPixelByte(loc);
+				key = value;
+			} else if (image instanceof IntegerImage) {
+				int value = image.getPixelInt(loc);
+				key = (long) value - Integer.MIN_VALUE;
+			} else if (image instanceof BooleanImage) {
+				key = image.getPixelBoolean(loc) ? 1 : 0;
+			} else {
+				double value = image.getPixelDouble(loc);
+				// order preserving bits, -0.0 being equal to 0.0
+				long bits = Double.doubleToLongBits(value + 0.0);
+				key = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+			}
+			if (reverse)
+				key = ~key;
+			keys[v] = key;
+			if (less(key, min))
+				min = key;
+		}
+		// smallest key at 0, so that a radix sort skips the high digits
+		for (int v = 0; v < size; v++)
+			keys[v] -= min;
+		return keys;
+	}
+
+	/**
+	 * Sorts the pixels by increasing key with a LSD radix sort on bytes.
+	 */
+	private static int[] sort(long[] keys) {
+		int size = keys.length;
+		long bits = 0;
+		for (long k : keys)
+			bits |= k;
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		int[] buffer = new int[size];
+		int[] counts = new int[257];
+		for (int shift = 0; shift < 64 && (bits >>> shift) != 0; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (long k : keys)
+				counts[(int) ((k >>> shift) & 0xff) + 1]++;
+			for (int i = 0; i < 256; i++)
+				counts[i + 1] += counts[i];
+			for (int i = 0; i < size; i++) {
+				int p = order[i];
+				buffer[counts[(int) ((keys[p] >>> shift) & 0xff)]++] = p;
+			}
+			int[] tmp = order;
+			order = buffer;
+			buffer = tmp;
+		}
+		return order;
+	}
+
+	/**
+	 * Builds the parent of each pixel band by band, merges the bands, then
+	 * numbers the nodes in the sort order.
+	 */
+	private void build(long[] keys, int[][] offsets, int bands) {
+		int size = keys.length;
+		Builder builder = new Builder(keys, offsets, bands);
+		if (builder.starts.length > 2)
+			TiledExecutor.getDefaultPool().invoke(
+					builder.new BandTask(0, builder.starts.length - 1));
+		else
+			builder.buildBand(0);
+		int[] par = builder.par;
+		// pixelNode borrows the union-find array, -2 marking the node roots
+		pixelNode = builder.zpar;
+		builder = null;
+		Arrays.fill(pixelNode, -1);
+		count = 0;
+		for (int p = 0; p < size; p++) {
+			int r = levelRoot(par, keys, p);
+			if (pixelNode[r] == -1) {
+				pixelNode[r] = -2;
+				count++;
+			}
+		}
+		// a node is numbered at its first pixel in the sort order, after its
+		// parent whose level is lower
+		parent = new int[count];
+		canonical = new int[count];
+		count = 0;
+		for (int i = 0; i < size; i++) {
+			int p = sorted[i];
+			int r = levelRoot(par, keys, p);
+			if (pixelNode[r] < 0) {
+				pixelNode[r] = count;
+				parent[count] = par[r] == r ? count : pixelNode[levelRoot(par, keys,
+						par[r])];
+				canonical[count] = p;
+				count++;
+			}
+			pixelNode[p] = pixelNode[r];
+		}
+	}
+
+	/**
+	 * Finds the pixel representing the node of a pixel: the last of its
+	 * ancestors at the same level. The path is compressed.
+	 */
+	private static int levelRoot(int[] par, long[] keys, int p) {
+		int r = p;
+		while (par[r] != r && keys[par[r]] == keys[r])
+			r = par[r];
+		while (p != r) {
+			int q = par[p];
+			par[p] = r;
+			p = q;
+		}
+		return r;
+	}
+
+	/**
+	 * Finds the root of a pixel, with path halving.
+	 */
+	private static int find(int[] zpar, int p) {
+		while (zpar[p] != p) {
+			zpar[p] = zpar[zpar[p]];
+			p = zpar[p];
+		}
+		return p;
+	}
+
+	/**
+	 * Builds the parents of the pixels: each band of rows (of planes for a 3D
+	 * image) is merged from the highest key to the lowest with a union-find,
+	 * then the trees of adjacent bands are merged along their border.
+	 * <p>
+	 * M.H.F. Wilkinson, H. Gao, W.H. Hesselink, J.E. Jonker, A. Meijster,
+	 * <i>Concurrent computation of attribute filters on shared memory parallel
+	 * machines</i> (2008).
+	 */
+	private class Builder {
+
+		final long[] keys;
+
+		final int[][] offsets;
+
+		final int[] steps;
+
+		/**
+		 * Parent of each pixel, at the same or a lower level
+		 */
+		final int[] par;
+
+		/**
+		 * Union-find of each band, -1 for the pixels not processed yet
+		 */
+		final int[] zpar;
+
+		/**
+		 * First pixel of each band, and the size of the volume
+		 */
+		final int[] starts;
+
+		/**
+		 * Pixels of each band in the sort order
+		 */
+		final int[] bandSorted;
+
+		/**
+		 * Number of pixels of the rows (planes) of the border between two
+		 * bands whose neighbours are in the other band
+		 */
+		final int border;
+
+		Builder(long[] keys, int[][] offsets, int bands) {
+			int size = keys.length;
+			this.keys = keys;
+			this.offsets = offsets;
+			steps = new int[offsets.length];
+			for (int i = 0; i < offsets.length; i++)
+				steps[i] = offsets[i][0] + xdim * (offsets[i][1] + ydim * offsets[i][2]);
+			par = new int[size];
+			zpar = new int[size];
+			Arrays.fill(zpar, -1);
+
+			// bands of rows (planes) at least as high as the reach of the
+			// neighbourhood, so that borders only link adjacent bands
+			int unit = zdim > 1 ? xdim * ydim : xdim;
+			int units = zdim > 1 ? zdim : ydim;
+			int reach = 0;
+			for (int[] o : offsets)
+				reach = Math.max(reach, Math.abs(zdim > 1 ? o[2] : o[1]));
+			border = reach * unit;
+			bands = Math.max(1, Math.min(bands, units / Math.max(1, reach)));
+			starts = new int[bands + 1];
+			for (int i = 0; i <= bands; i++)
+				starts[i] = (int) ((long) units * i / bands) * unit;
+			if (bands == 1) {
+				bandSorted = sorted;
+				return;
+			}
+			bandSorted = new int[size];
+			int[] next = Arrays.copyOf(starts, bands);
+			int[] bandOfUnit = new int[units];
+			for (int i = 0; i < bands; i++)
+				Arrays.fill(bandOfUnit, starts[i] / unit, starts[i + 1] / unit, i);
+			for (int p : sorted)
+				bandSorted[next[bandOfUnit[p / unit]]++] = p;
+		}
+
+		/**
+		 * Checks if the neighbour k of pixel p is in the volume and in
+		 * [from,to[.
+		 */
+		private boolean isNeighbour(int p, int k, int from, int to) {
+			int plane = xdim * ydim;
+			int z = p / plane;
+			int y = (p - z * plane) / xdim;
+			int x = p - z * plane - y * xdim;
+			int[] o = offsets[k];
+			int nx = x + o[0], ny = y + o[1], nz = z + o[2];
+			int n = p + steps[k];
+			return nx >= 0 && nx < xdim && ny >= 0 && ny < ydim && nz >= 0
+					&& nz < zdim && n >= from && n < to;
+		}
+
+		/**
+		 * Builds the tree of a band with union by rank, repr giving the last
+		 * pixel merged in each set.
+		 */
+		void buildBand(int band) {
+			int from = starts[band];
+			int to = starts[band + 1];
+			int[] repr = new int[to - from];
+			byte[] rank = new byte[to - from];
+			for (int i = to - 1; i >= from; i--) {
+				int p = bandSorted[i];
+				par[p] = p;
+				zpar[p] = p;
+				repr[p - from] = p;
+				int zp = p;
+				for (int k = 0; k < offsets.length; k++) {
+					if (!isNeighbour(p, k, from, to))
+						continue;
+					int n = p + steps[k];
+					if (zpar[n] < 0)
+						continue;
+					int zn = find(zpar, n);
+					if (zn != zp) {
+						par[repr[zn - from]] = p;
+						if (rank[zp - from] < rank[zn - from]) {
+							int tmp = zp;
+							zp = zn;
+							zn = tmp;
+						} else if (rank[zp - from] == rank[zn - from])
+							rank[zp - from]++;
+						zpar[zn] = zp;
+						repr[zp - from] = p;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Merges the trees on both sides of the start of a band.
+		 */
+		void mergeBorder(int band, int from, int to) {
+			int start = starts[band];
+			int end = Math.min(start + border, to);
+			for (int p = start; p < end; p++)
+				for (int k = 0; k < offsets.length; k++)
+					if (isNeighbour(p, k, from, start))
+						connect(p, p + steps[k]);
+		}
+
+		/**
+		 * Merges the paths from two neighbour pixels to their roots, as two
+		 * lists sorted by decreasing levels.
+		 */
+		private void connect(int x, int y) {
+			x = levelRoot(par, keys, x);
+			y = levelRoot(par, keys, y);
+			if (less(keys[x], keys[y])) {
+				int tmp = x;
+				x = y;
+				y = tmp;
+			}
+			// the level of x is at least the level of y
+			while (x != y) {
+				int z = par[x] == x ? -1 : levelRoot(par, keys, par[x]);
+				if (z >= 0 && !less(keys[z], keys[y])) {
+					x = z;
+					continue;
+				}
+				par[x] = y;
+				if (z < 0)
+					break;
+				x = y;
+				y = z;
+			}
+		}
+
+		/**
+		 * Builds the bands of [from,to[ and merges them, in parallel.
+		 */
+		class BandTask extends RecursiveAction {
+
+			private static final long serialVersionUID = 1L;
+
+			private final int from, to;
+
+			BandTask(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			protected void compute() {
+				if (to - from == 1) {
+					buildBand(from);
+					return;
+				}
+				int middle = (from + to) >>> 1;
+				invokeAll(new BandTask(from, middle), new BandTask(middle, to));
+				mergeBorder(middle, starts[from], starts[to]);
+			}
+		}
+	}
+
+	/**
+	 * Compares two keys as unsigned values.
+	 */
+	private static boolean less(long a, long b) {
+		return a + Long.MIN_VALUE < b + Long.MIN_VALUE;
+	}
+
+	private void computeNodes() {
+		level = new double[count];
+		for (int n = 0; n < count; n++)
+			level[n] = value(canonical[n]);
+	}
+
+	/**
+	 * Location of a pixel of the volume in the image
+	 */
+	private int location(int p) {
+		return b + image.getBDim() * (p + xdim * ydim * zdim * t);
+	}
+
+	/**
+	 * Value of a pixel of the volume, as stored
+	 */
+	private double value(int p) {
+		int loc = location(p);
+		if (image instanceof ByteImage)
+			return image.getPixelByte(loc);
+		if (image instanceof IntegerImage)
+			return image.getPixelInt(loc);
+		if (image instanceof BooleanImage)
+			return image.getPixelBoolean(loc) ? 1 : 0;
+		return image.getPixelDouble(loc);
+	}
+
+	/**
+	 * Computes the attributes of the pixels of each node, then accumulates
+	 * them from the leaves to the roots.
+	 */
+	private void computeAttributes() {
+		area = new int[count];
+		volume = new double[count];
+		top = new int[count];
+		for (int n = 0; n < count; n++)
+			top[n] = n;
+		xmin = new int[count];
+		ymin = new int[count];
+		zmin = new int[count];
+		xmax = new int[count];
+		ymax = new int[count];
+		zmax = new int[count];
+		Arrays.fill(xmin, Integer.MAX_VALUE);
+		Arrays.fill(ymin, Integer.MAX_VALUE);
+		Arrays.fill(zmin, Integer.MAX_VALUE);
+		Arrays.fill(xmax, -1);
+		Arrays.fill(ymax, -1);
+		Arrays.fill(zmax, -1);
+		for (int z = 0, p = 0; z < zdim; z++)
+			for (int y = 0; y < ydim; y++)
+				for (int x = 0; x < xdim; x++, p++) {
+					int n = pixelNode[p];
+					area[n]++;
+					if (x < xmin[n])
+						xmin[n] = x;
+					if (x > xmax[n])
+						xmax[n] = x;
+					if (y < ymin[n])
+						ymin[n] = y;
+					if (y > ymax[n])
+						ymax[n] = y;
+					if (z < zmin[n])
+						zmin[n] = z;
+					if (z > zmax[n])
+						zmax[n] = z;
+				}
+		boolean max = treeType != TreeType.Min;
+		for (int n = count - 1; n >= 0; n--) {
+			int q = parent[n];
+			if (q == n)
+				continue;
+			area[q] += area[n];
+			volume[q] += volume[n] + area[n] * Math.abs(level[n] - level[q]);
+			if (max ? level[top[n]] > level[top[q]] : level[top[n]] < level[top[q]])
+				top[q] = top[n];
+			xmin[q] = Math.min(xmin[q], xmin[n]);
+			ymin[q] = Math.min(ymin[q], ymin[n]);
+			zmin[q] = Math.min(zmin[q], zmin[n]);
+			xmax[q] = Math.max(xmax[q], xmax[n]);
+			ymax[q] = Math.max(ymax[q], ymax[n]);
+			zmax[q] = Math.max(zmax[q], zmax[n]);
+		}
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int getNodeCount() {
+		return count;
+	}
+
+	/**
+	 * @param n
+	 *            a node
+	 * @return the parent of the node, the node itself for a root
+	 */
+	public int getParent(int n) {
+		return parent[n];
+	}
+
+	/**
+	 * @param n
+	 *            a node
+	 * @return true if the node is a root
+	 */
+	public boolean isRoot(int n) {
+		return parent[n] == n;
+	}
+
+	/**
+	 * @param n
+	 *            a node
+	 * @return the level of the node
+	 */
+	public double getLevel(int n) {
+		return level[n];
+	}
+
+	/**
+	 * @param n
+	 *            a node
+	 * @return one pixel of the node at its level, as an index
+	 *         x+xdim*(y+ydim*z)
+	 */
+	public int getCanonicalPixel(int n) {
+		return canonical[n];
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the smallest node containing the pixel
+	 */
+	public int getNode(int x, int y, int z) {
+		return pixelNode[x + xdim * (y + ydim * z)];
+	}
+
+	/**
+	 * @return the pixels as indexes x+xdim*(y+ydim*z), sorted from the roots
+	 *         to the leaves
+	 */
+	public int[] getSortedPixels() {
+		return sorted;
+	}
+
+	/**
+	 * @return the tree type
+	 */
+	public TreeType getTreeType() {
+		return treeType;
+	}
+
+	/**
+	 * @param n
+	 *            a node
+	 * @return the area of the node
+	 */
+	public int getArea(int n) {
+		return area[n];
+	}
+
+	/**
+	 * Gets an attribute of a node.
+	 *
+	 * @param attribute
+	 *            the attribute
+	 * @param n
+	 *            a node
+	 * @return the value of the attribute
+	 */
+	public double getAttribute(Attribute attribute, int n) {
+		switch (attribute) {
+		case AREA:
+			return area[n];
+		case VOLUME:
+			double base = parent[n] == n ? 0 : level[parent[n]];
+			return volume[n] + area[n] * Math.abs(level[n] - base);
+		case HEIGHT:
+			return Math.abs(level[top[n]] - level[n]);
+		case X_EXTENT:
+			return xmax[n] - xmin[n] + 1;
+		case Y_EXTENT:
+			return ymax[n] - ymin[n] + 1;
+		default:
+			return zmax[n] - zmin[n] + 1;
+		}
+	}
+
+	/**
+	 * @param n
+	 *            a node
+	 * @return the extremal level of the pixels of the node, the highest for a
+	 *         max-tree, the lowest for a min-tree
+	 */
+	public double getHighest(int n) {
+		return level[top[n]];
+	}
+
+	/**
+	 * @return the root of the tree, node 0, the first of the roots if the
+	 *         connectivity splits the image
+	 */
+	public int getRoot() {
+		return 0;
+	}
+
+	/**
+	 * @param n
+	 *            a node
+	 * @return true if the node has been removed by a filter
+	 */
+	public boolean isDeleted(int n) {
+		return deleted != null && deleted[n];
+	}
+
+	/**
+	 * Finds the node of a pixel in the filtered tree.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return the smallest node kept by the filters containing the pixel
+	 */
+	public int findNodeAt(int x, int y, int z) {
+		int n = getNode(x, y, z);
+		while (isDeleted(n))
+			n = parent[n];
+		return n;
+	}
+
+	/**
+	 * Gets, for each node, the node giving its level in the filtered tree.
+	 *
+	 * @return itself for a kept node, its closest kept ancestor otherwise
+	 */
+	public int[] getKeptNodes() {
+		int[] kept = new int[count];
+		for (int n = 0; n < count; n++)
+			kept[n] = isDeleted(n) ? kept[parent[n]] : n;
+		return kept;
+	}
+
+	/**
+	 * Filters the tree: a node is removed with its descendants if its
+	 * attribute is below the threshold. Roots are always kept. As the
+	 * attributes are increasing, this is an attribute opening on a max-tree
+	 * and an attribute closing on a min-tree.
+	 *
+	 * @param attribute
+	 *            the attribute
+	 * @param threshold
+	 *            smallest value of the attribute of the kept nodes
+	 */
+	public void filter(Attribute attribute, double threshold) {
+		boolean[] pass = new boolean[count];
+		for (int n = 0; n < count; n++)
+			pass[n] = getAttribute(attribute, n) >= threshold;
+		filter(pass, FilterStrategy.Min);
+	}
+
+	/**
+	 * Filters the tree with rules written for ComponentTree, as
+	 * FilterComponentTree. The rules are applied to the nodes given by
+	 * {@link #getComponentNode(int)}.
+	 *
+	 * @param filters
+	 *            the rules a node must all fulfill to be kept
+	 * @param strategy
+	 *            the strategy
+	 */
+	public void filter(AttributeFilter[] filters, FilterStrategy strategy) {
+		boolean[] pass = new boolean[count];
+		for (int n = 0; n < count; n++) {
+			if (isDeleted(n))
+				continue;
+			ComponentNode<Double> node = getComponentNode(n);
+			pass[n] = true;
+			for (AttributeFilter f : filters)
+				if (!f.filter(node)) {
+					pass[n] = false;
+					break;
+				}
+		}
+		filter(pass, strategy);
+	}
+
+	/**
+	 * Removes the nodes of the filtered tree which fail a test, as
+	 * FilterComponentTree: with all their descendants (strategy Min), alone
+	 * (Direct), or as long as they are leaves (Max). Roots are always kept.
+	 *
+	 * @param pass
+	 *            for each node, true if it passes the test
+	 * @param strategy
+	 *            the strategy
+	 */
+	public void filter(boolean[] pass, FilterStrategy strategy) {
+		boolean[] removed = new boolean[count];
+		if (deleted != null)
+			System.arraycopy(deleted, 0, removed, 0, count);
+		switch (strategy) {
+		case Min:
+			// cut: node or ancestor failing since the last filter
+			boolean[] cut = new boolean[count];
+			for (int n = 0; n < count; n++) {
+				int q = parent[n];
+				if (q == n)
+					continue;
+				cut[n] = cut[q] || !removed[n] && !pass[n];
+				removed[n] |= cut[n];
+			}
+			break;
+		case Direct:
+			for (int n = 0; n < count; n++)
+				if (parent[n] != n && !pass[n])
+					removed[n] = true;
+			break;
+		case Max:
+			int[] kept = getKeptNodes();
+			int[] alive = new int[count];
+			for (int n = count - 1; n >= 0; n--) {
+				if (removed[n])
+					continue;
+				int q = parent[n];
+				if (q != n && alive[n] == 0 && !pass[n])
+					removed[n] = true;
+				else if (q != n)
+					alive[kept[q]]++;
+			}
+			break;
+		}
+		deleted = removed;
+		children = null;
+		childStart = null;
+	}
+
+	/**
+	 * Finds the nodes of the filtered tree containing a pixel of a mask.
+	 *
+	 * @param mask
+	 *            the mask, of the dimensions of the tree, whose first band
+	 *            and frame are used
+	 * @return for each node, true if it is kept and contains a true pixel of
+	 *         the mask
+	 */
+	public boolean[] getMarkedNodes(Image mask) {
+		int[] kept = getKeptNodes();
+		boolean[] marked = new boolean[count];
+		for (int z = 0; z < zdim; z++)
+			for (int y = 0; y < ydim; y++)
+				for (int x = 0; x < xdim; x++)
+					if (mask.getPixelXYZBoolean(x, y, z))
+						marked[kept[getNode(x, y, z)]] = true;
+		for (int n = count - 1; n >= 0; n--)
+			if (marked[n] && parent[n] != n)
+				marked[kept[parent[n]]] = true;
+		return marked;
+	}
+
+	/**
+	 * Gets a node of the tree as a ComponentNode without parent nor children,
+	 * to apply the rules written for ComponentTree. Its level and highest
+	 * level are given by getPixelDouble, as in BuildComponentTree.
+	 *
+	 * @param n
+	 *            a node
+	 * @return a new ComponentNode with the location, level, highest level and
+	 *         area of the node
+	 */
+	public ComponentNode<Double> getComponentNode(int n) {
+		int c = canonical[n];
+		ComponentNode<Double> node = new ComponentNode<Double>(new Point3D(c % xdim,
+				c / xdim % ydim, c / (xdim * ydim)), image.getPixelDouble(location(c)));
+		node.setArea(area[n]);
+		node.setHighest(image.getPixelDouble(location(canonical[top[n]])));
+		return node;
+	}
+
+	/**
+	 * @return the number of nodes kept by the filters
+	 */
+	public int countNodes() {
+		int nb = 0;
+		for (int n = 0; n < count; n++)
+			if (!isDeleted(n))
+				nb++;
+		return nb;
+	}
+
+	/**
+	 * @return the number of leaves kept by the filters
+	 */
+	public int countLeaf() {
+		int nb = 0;
+		for (int n = 0; n < count; n++)
+			if (!isDeleted(n) && numberOfChildren(n) == 0)
+				nb++;
+		return nb;
+	}
+
+	/**
+	 * @param n
+	 *            a node kept by the filters
+	 * @return the number of its children kept by the filters
+	 */
+	public int numberOfChildren(int n) {
+		computeChildren();
+		return childStart[n + 1] - childStart[n];
+	}
+
+	/**
+	 * @param n
+	 *            a node kept by the filters
+	 * @return its children kept by the filters
+	 */
+	public int[] getChildren(int n) {
+		computeChildren();
+		return Arrays.copyOfRange(children, childStart[n], childStart[n + 1]);
+	}
+
+	/**
+	 * Computes the children of the kept nodes, sorted by number.
+	 */
+	private void computeChildren() {
+		if (children != null)
+			return;
+		int[] kept = getKeptNodes();
+		childStart = new int[count + 1];
+		for (int n = 0; n < count; n++)
+			if (!isDeleted(n) && parent[n] != n)
+				childStart[kept[parent[n]] + 1]++;
+		for (int n = 0; n < count; n++)
+			childStart[n + 1] += childStart[n];
+		children = new int[childStart[count]];
+		int[] next = Arrays.copyOf(childStart, count);
+		for (int n = 0; n < count; n++)
+			if (!isDeleted(n) && parent[n] != n)
+				children[next[kept[parent[n]]]++] = n;
+	}
+
+	/**
+	 * Provides an iterator over the kept nodes starting from root to leaves:
+	 * a node comes before its descendants.
+	 *
+	 * @return the nodes
+	 */
+	public Iterable<Integer> iterateFromRootToLeaf() {
+		return new NodeIterator(0, count - 1);
+	}
+
+	/**
+	 * Provides an iterator over the kept nodes starting from leaves to root:
+	 * a node comes after its descendants.
+	 *
+	 * @return the nodes
+	 */
+	public Iterable<Integer> iterateFromLeafToRoot() {
+		return new NodeIterator(count - 1, 0);
+	}
+
+	/**
+	 * Provides an iterator over a node and its kept descendants starting from
+	 * leaves to the node.
+	 *
+	 * @param n
+	 *            a node kept by the filters
+	 * @return the nodes
+	 */
+	public Iterable<Integer> iterateFromLeafToNode(final int n) {
+		boolean[] inside = new boolean[count - n];
+		inside[0] = true;
+		for (int m = n + 1; m < count; m++)
+			inside[m - n] = parent[m] >= n && parent[m] != m && inside[parent[m] - n];
+		final boolean[] subtree = inside;
+		return new NodeIterator(count - 1, n) {
+			protected boolean accept(int m) {
+				return subtree[m - n];
+			}
+		};
+	}
+
+	/**
+	 * Iterates over the kept nodes from a number to another, in increasing or
+	 * decreasing order.
+	 */
+	private class NodeIterator implements Iterator<Integer>, Iterable<Integer> {
+
+		private final int last, step;
+
+		private int next;
+
+		NodeIterator(int first, int last) {
+			this.last = last;
+			this.step = first <= last ? 1 : -1;
+			this.next = first;
+		}
+
+		/**
+		 * Checks if a kept node is part of the iteration.
+		 */
+		protected boolean accept(int m) {
+			return true;
+		}
+
+		public boolean hasNext() {
+			while (next != last + step && (isDeleted(next) || !accept(next)))
+				next += step;
+			return next != last + step;
+		}
+
+		public Integer next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			int n = next;
+			next += step;
+			return n;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public Iterator<Integer> iterator() {
+			return this;
+		}
+	}
+
+	/**
+	 * Writes the levels of the nodes of the filtered tree in a band and frame
+	 * of an image of the same dimensions.
+	 *
+	 * @param output
+	 *            the image to write
+	 * @param t
+	 *            frame to write
+	 * @param b
+	 *            band to write
+	 */
+	public void restore(Image output, int t, int b) {
+		int[] kept = getKeptNodes();
+		int size = pixelNode.length;
+		int bdim = output.getBDim();
+		for (int v = 0, loc = b + bdim * size * t; v < size; v++, loc += bdim) {
+			double value = level[kept[pixelNode[v]]];
+			if (output instanceof ByteImage)
+				output.setPixelByte(loc, (int) value);
+			else if (output instanceof IntegerImage)
+				output.setPixelInt(loc, (int) value);
+			else if (output instanceof BooleanImage)
+				output.setPixelBoolean(loc, value != 0);
+			else
+				output.setPixelDouble(loc, value);
+		}
+	}
+
+	/**
+	 * Draws the levels of the filtered tree as ReconstructImageFromTree: the
+	 * value of each pixel is the level of its node given by getPixelDouble.
+	 *
+	 * @return a DoubleImage with a single band and frame
+	 */
+	public DoubleImage reconstructLevels() {
+		int[] kept = getKeptNodes();
+		DoubleImage output = new DoubleImage(xdim, ydim, zdim, 1, 1);
+		for (int v = 0; v < pixelNode.length; v++)
+			output.setPixelDouble(v, image.getPixelDouble(location(canonical[kept[pixelNode[v]]])));
+		output.setName("Reconstruction");
+		return output;
+	}
+
+	/**
+	 * Draws the area of the node of each pixel in the filtered tree, as
+	 * ReconstructImageFromTree.
+	 *
+	 * @return an IntegerImage with a single band and frame
+	 */
+	public IntegerImage reconstructAreas() {
+		int[] kept = getKeptNodes();
+		IntegerImage output = new IntegerImage(xdim, ydim, zdim, 1, 1);
+		for (int v = 0; v < pixelNode.length; v++)
+			output.setPixelInt(v, area[kept[pixelNode[v]]]);
+		output.setName("Area map");
+		return output;
+	}
+}
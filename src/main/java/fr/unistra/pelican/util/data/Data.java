@@ -1,7 +1,9 @@
 package fr.unistra.pelican.util.data;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import fr.unistra.pelican.Descriptor;
 import fr.unistra.pelican.util.Offset;
 import fr.unistra.pelican.util.data.distances.Distance;
@@ -20,6 +22,24 @@ public abstract class Data implements Cloneable, Serializable {
 
 
 	private static final long serialVersionUID = -1244611776868304298L;
+
+	/**
+	 * Static distance method of each descriptor class, or null if the
+	 * descriptor does not define one, looked up once per class
+	 */
+	private static final ClassValue<MethodHandle> DESCRIPTOR_DISTANCES = new ClassValue<MethodHandle>() {
+		protected MethodHandle computeValue(Class<?> type) {
+			try {
+				return MethodHandles.publicLookup().findStatic(type, "distance",
+						MethodType.methodType(double.class, Data.class, Data.class));
+			} catch (NoSuchMethodException e) {
+				return null;
+			} catch (IllegalAccessException e) {
+				return null;
+			}
+		}
+	};
+
 	/**
 	 * The descriptor used to produce the data (filled automatically when
 	 * computing the descriptor). Stores the class rather than the object seems is
@@ -90,30 +110,22 @@ public abstract class Data implements Cloneable, Serializable {
 	 */
 	public double distanceTo(Data data) {
 		Class<Descriptor> descriptor = getDescriptor();
-		Method method = null;
 		double result = -1;
 		// Première recherche : dans descriptor
-		if (descriptor != null)
+		MethodHandle method = descriptor == null ? null : DESCRIPTOR_DISTANCES
+				.get(descriptor);
+		if (method != null)
 			try {
-				method = descriptor.getMethod("distance", Data.class, Data.class);
-				result = (Double) method.invoke(null, this, data);
-			} catch (Exception e) {
-				// Si une erreur lors de l'appel qui n'est pas un NoSuchMethodException
-				if (!(e instanceof NoSuchMethodException))
-					e.printStackTrace();
+				result = (double) method.invokeExact(this, data);
+			} catch (Throwable e) {
+				e.printStackTrace();
 			}
 		if (result == -1)
 			// Seconde recherche : dans data
 			try {
-				method = getClass().getMethod("distance", Data.class);
-				result = (Double) method.invoke(this, data);
+				result = distance(data);
 			} catch (Exception e) {
-				// Si une erreur lors de l'appel qui n'est pas un NoSuchMethodException
-				if (!(e instanceof NoSuchMethodException))
-					e.printStackTrace();
-				else
-					System.err.println("MÃ©thode distance absente de " + getDescriptor()
-						+ " et de " + getClass());
+				e.printStackTrace();
 			}
 		return result;
 	}
@@ -1,6 +1,7 @@
 package fr.unistra.pelican.util.data;
 
 import fr.unistra.pelican.util.Offset;
+import fr.unistra.pelican.util.data.distances.HistogramMeanAbsoluteDistance;
 
 
 
@@ -15,24 +16,7 @@ public class HistogramData extends DoubleArrayData {
 	@Override
 	public double distance( Data data ) {
 
-		Double[] h1 = this.values;
-		Double[] h2 = ( ( DoubleArrayData ) data ).values; // let's be permissive..
-
-		int bins = h1.length;
-		if ( bins != h2.length ) { 
-
-			System.err.println("Incompatible histogram bin numbers : "+bins+" vs "+h2.length +".");
-			return 1.0;
-		}
-
-		double distance = 0.0;
-		for ( int i = 0 ; i < bins ; i++ ) distance += Math.abs( h1[i]-h2[i] );
-		if ( bins > 0 ) distance /= bins;
-
-		assert 0 <= distance && distance <= 1 : 
-			this.getClass().getName() + " distance €[0;1] unverified : " + distance + ".";
-
-		return distance;
+		return new HistogramMeanAbsoluteDistance().distance( this, data );
 	}
 
 
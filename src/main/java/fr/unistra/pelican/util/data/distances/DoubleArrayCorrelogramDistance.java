@@ -9,7 +9,8 @@ import fr.unistra.pelican.util.data.Data;
  *
  *	@see fr.unistra.pelican.util.Tools#correlogramDistance(double[], double[])
  */
-public class DoubleArrayCorrelogramDistance extends CorrelogramDistance {
+public class DoubleArrayCorrelogramDistance extends CorrelogramDistance 
+		implements VectorDistance {
 
 	@Override
 	public double distance( Data data1, Data data2 ) {
@@ -31,4 +32,20 @@ public class DoubleArrayCorrelogramDistance extends CorrelogramDistance {
 		return distance;
 	}
 
+	public double distance( double[] values1, int offset1, double[] values2, 
+			int offset2, int length ) { 
+
+		double distance = 0;
+		for( int i = 0 ; i < length ; i++ ) { 
+
+			double v1 = values1[ offset1+i ], v2 = values2[ offset2+i ];
+			distance += Math.abs( v1 - v2 ) / ( 1 + v1 + v2 );
+		}
+		return distance;
+	}
+
+	public boolean accepts( int length ) { return true; }
+
+	public boolean isMetric() { return false; }
+
 }
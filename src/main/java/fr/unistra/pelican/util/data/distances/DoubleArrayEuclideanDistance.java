@@ -8,7 +8,8 @@ import fr.unistra.pelican.util.data.Data;
  * @author lefevre
  * 
  */
-public class DoubleArrayEuclideanDistance extends EuclideanDistance {
+public class DoubleArrayEuclideanDistance extends EuclideanDistance 
+		implements VectorDistance {
 
 	@Override
 	public double distance( Data data1, Data data2 ) { 
@@ -30,4 +31,20 @@ public class DoubleArrayEuclideanDistance extends EuclideanDistance {
 		return sum;
 	}
 
+	public double distance( double[] values1, int offset1, double[] values2, 
+			int offset2, int length ) { 
+
+		double sum = 0;
+		for ( int i = 0 ; i < length ; i++ ) { 
+
+			double d = values1[ offset1+i ] - values2[ offset2+i ];
+			sum += d*d;
+		}
+		return Math.sqrt( sum );
+	}
+
+	public boolean accepts( int length ) { return true; }
+
+	public boolean isMetric() { return true; }
+
 }
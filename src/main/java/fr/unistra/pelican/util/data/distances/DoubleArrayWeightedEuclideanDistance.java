@@ -1,5 +1,6 @@
 package fr.unistra.pelican.util.data.distances;
 
+import fr.unistra.pelican.PelicanException;
 import fr.unistra.pelican.util.data.Data;
 
 /**
@@ -9,7 +10,7 @@ import fr.unistra.pelican.util.data.Data;
  * 
  */
 public class DoubleArrayWeightedEuclideanDistance extends
-	WeightedEuclideanDistance {
+	WeightedEuclideanDistance implements VectorDistance {
 
 
 	public DoubleArrayWeightedEuclideanDistance(Double[] weights) {
@@ -21,9 +22,10 @@ public class DoubleArrayWeightedEuclideanDistance extends
 		// Get the values of both data
 		Double[] values=(Double[])data1.getValues();
 		Double[] values2=(Double[])data2.getValues();
-		// Check if both data and weight array have the same length  
-		if (values.length != values2.length || values.length!=weights.length)
+		// Check if both data have the same length, and the length of the weights
+		if (values.length != values2.length)
 			return -1;
+		checkLength(values.length);
 		// Compute the weighted euclidean distance
 		double sum = 0;
 		for (int i = 0; i < values.length; i++)
@@ -32,4 +34,35 @@ public class DoubleArrayWeightedEuclideanDistance extends
 		return sum;
 	}
 
+	public double distance(double[] values1, int offset1, double[] values2,
+			int offset2, int length) {
+		checkLength(length);
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			double d = values1[offset1 + i] - values2[offset2 + i];
+			sum += weights[i] * (d * d);
+		}
+		return Math.sqrt(sum);
+	}
+
+	public boolean accepts(int length) {
+		return length == weights.length;
+	}
+
+	private void checkLength(int length) {
+		if (length != weights.length)
+			throw new PelicanException("Vectors of length " + length + " for "
+					+ weights.length + " weights");
+	}
+
+	/**
+	 * @return true if no weight is negative
+	 */
+	public boolean isMetric() {
+		for (Double w : weights)
+			if (w < 0)
+				return false;
+		return true;
+	}
+
 }
@@ -0,0 +1,53 @@
+package fr.unistra.pelican.util.data.distances;
+
+import fr.unistra.pelican.util.data.Data;
+import fr.unistra.pelican.util.data.DoubleArrayData;
+
+/**
+ * Mean absolute difference between histograms, the default distance of
+ * {@link fr.unistra.pelican.util.data.HistogramData}.
+ * 
+ * @author PELICAN team
+ * 
+ */
+public class HistogramMeanAbsoluteDistance extends MeanAbsoluteDistance 
+		implements VectorDistance {
+
+	@Override
+	public double distance( Data data1, Data data2 ) { 
+
+		Double[] h1 = ( Double[] ) data1.getValues();
+		Double[] h2 = ( Double[] ) ( ( DoubleArrayData ) data2 ).getValues(); // let's be permissive..
+
+		int bins = h1.length;
+		if ( bins != h2.length ) { 
+
+			System.err.println("Incompatible histogram bin numbers : "+bins+" vs "+h2.length +".");
+			return 1.0;
+		}
+
+		double distance = 0.0;
+		for ( int i = 0 ; i < bins ; i++ ) distance += Math.abs( h1[i]-h2[i] );
+		if ( bins > 0 ) distance /= bins;
+
+		assert 0 <= distance && distance <= 1 : 
+			this.getClass().getName() + " distance €[0;1] unverified : " + distance + ".";
+
+		return distance;
+	}
+
+	public double distance( double[] values1, int offset1, double[] values2, 
+			int offset2, int length ) { 
+
+		double distance = 0.0;
+		for ( int i = 0 ; i < length ; i++ ) 
+			distance += Math.abs( values1[ offset1+i ] - values2[ offset2+i ] );
+		if ( length > 0 ) distance /= length;
+		return distance;
+	}
+
+	public boolean accepts( int length ) { return true; }
+
+	public boolean isMetric() { return true; }
+
+}
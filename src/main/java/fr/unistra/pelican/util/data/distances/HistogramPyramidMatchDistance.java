@@ -12,7 +12,8 @@ import fr.unistra.pelican.util.data.Data;
  *
  *	@see fr.unistra.pelican.util.Tools#pyramidMatchDistance(double[],double[],int,int)
  */
-public class HistogramPyramidMatchDistance extends PyramidMatchDistance { 
+public class HistogramPyramidMatchDistance extends PyramidMatchDistance 
+		implements VectorDistance { 
 
 
 
@@ -50,6 +51,29 @@ public class HistogramPyramidMatchDistance extends PyramidMatchDistance {
 		return distance;
 	}
 
+	public double distance( double[] values1, int offset1, double[] values2, 
+			int offset2, int length ) { 
+
+		// Check if the descriptors have the length of the pyramid
+		if ( length != this.scales * this.levelSize ) return -1;
+
+		double distance = 0;
+		for ( int s = 0 ; s < this.scales ; s++ )  
+		for ( int i = 0 ; i < this.levelSize ; i++ ) { 
+
+			int index = s * this.levelSize + i;
+			double v1 = values1[ offset1+index ], v2 = values2[ offset2+index ];
+			distance += ( 1 / Math.pow( 2.,s ) ) * Math.abs( v1-v2 ) / ( 1 + v1 + v2 );
+		}
+		return distance;
+	}
+
+	public boolean accepts( int length ) { 
+		return length == this.scales * this.levelSize;
+	}
+
+	public boolean isMetric() { return false; }
+
 
 
 }
@@ -33,15 +33,10 @@ public class KeypointArraySURFDistance extends SURFDistance {
 			return 1;
 		}
 
-		int matchescount = 0;	// total number of keypoints wich matched
-		int match;
-		for ( Keypoint key : values ) { 
-
-			match = KeypointArraySURFDistance.match( key, values2 );
-			if ( match > -1 ) matchescount++; // found one !
-		}
+		// total number of keypoints wich matched
+		int matchescount = new KeypointIndex( values2 ).countMatches( values );
 		double distance = 1;
-		if ( nbpoints > 0 ) distance = 1 - ( matchescount / nbpoints );
+		if ( nbpoints > 0 ) distance = 1 - ( ( double ) matchescount / nbpoints );
 
 		assert 0 <= distance && distance <= 1 : 
 			this.getClass().getName() + " ¤[0;1] unverified : " + distance + ".";
@@ -97,13 +92,27 @@ public class KeypointArraySURFDistance extends SURFDistance {
 
 		}
 
-		if ( mind < 0.5 * second ) return match;
+		if ( mind < KeypointIndex.RATIO * second ) return match;
 
 		return -1;
 	}
 
 
 
+	/**	Matches each interest point of <tt>points</tt> with a list of interest points 
+	 *	<tt>keys</tt>, which is indexed once instead of being searched for each point.
+	 *	@param points Points to match with <tt>keys</tt>. 
+	 *	@param keys Points to be matched with <tt>points</tt>. 
+	 *	@return For each point, the position in <tt>keys</tt> of the closest keypoint, 
+	 *	or -1 if there is no point wich is close enough, as {@link #match(Keypoint,ArrayList)}.
+	 */
+	public static int[] match( ArrayList<Keypoint> points, ArrayList<Keypoint> keys ) { 
+
+		return new KeypointIndex( keys ).match( points );
+	}
+
+
+
 	/**	Match a <tt>KeypointArrayData</tt> with <tt>this</tt> and get the correspondances 
 	 *	between the keypoints who matched.
 	 *	@param d1 A <tt>KeypointArrayData</tt> with wich <tt>d2</tt> must be compared.
@@ -128,12 +137,9 @@ public class KeypointArraySURFDistance extends SURFDistance {
 		if( kpsize != kpsize2 ) return null;
 
 		HashMap<Keypoint,Keypoint> map = new HashMap<Keypoint,Keypoint>();
-		int match;
-		for ( Keypoint key : values ) { 
-
-			match = KeypointArraySURFDistance.match( key, values2 );
-			if ( match > -1 ) map.put( key, values2.get( match ) );
-		}
+		int[] matches = KeypointArraySURFDistance.match( values, values2 );
+		for ( int i = 0 ; i < nbkp1 ; i++ ) 
+			if ( matches[i] > -1 ) map.put( values.get( i ), values2.get( matches[i] ) );
 
 		return map;
 	}
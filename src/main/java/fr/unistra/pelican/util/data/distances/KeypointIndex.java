@@ -0,0 +1,395 @@
+package fr.unistra.pelican.util.data.distances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.util.IntDoubleHeap;
+import fr.unistra.pelican.util.Keypoint;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
+
+/**
+ * Index of SURF keypoints answering the queries of
+ * {@link KeypointArraySURFDistance#match(Keypoint, ArrayList)} without
+ * comparing the query with every keypoint.
+ *
+ * The descriptors are unboxed once into a packed array, and the keypoints are
+ * partitioned by the sign of their Laplacian (and by the length of their
+ * descriptor) since only keypoints of a same partition can match. Each
+ * partition is a kd-tree searched best bin first for the two nearest
+ * descriptors, on which the ratio test is applied.
+ *
+ * By default the search is exact and gives the same matches as the linear
+ * search. A maximum number of descriptors compared per query can be given to
+ * get an approximate but much faster search on large sets.
+ *
+ * The index is immutable once built and can be queried concurrently.
+ *
+ * @author PELICAN team
+ */
+public class KeypointIndex {
+
+	/**
+	 * Index of the Laplacian sign in the descriptors
+	 */
+	private static final int LAPLACIAN = 1;
+
+	/**
+	 * Index of the first value of the descriptors compared by the distance
+	 */
+	private static final int FIRST = 3;
+
+	/**
+	 * Maximum number of descriptors in a leaf of the trees
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	/**
+	 * Number of queries under which a batch is not split between threads
+	 */
+	private static final int QUERIES_PER_TASK = 64;
+
+	/**
+	 * A match is kept when its squared distance is under this ratio of the
+	 * squared distance of the second nearest descriptor
+	 */
+	public static final double RATIO = 0.5;
+
+	private final List<Tree> trees = new ArrayList<Tree>();
+
+	private final int checks;
+
+	private final int size;
+
+	/**
+	 * Builds an exact index.
+	 *
+	 * @param points
+	 *            keypoints to index, their positions in this list being the
+	 *            results of the queries
+	 */
+	public KeypointIndex(List<Keypoint> points) {
+		this(points, 0);
+	}
+
+	/**
+	 * Builds an index.
+	 *
+	 * @param points
+	 *            keypoints to index, their positions in this list being the
+	 *            results of the queries
+	 * @param checks
+	 *            maximum number of descriptors compared per query, or 0 for an
+	 *            exact search
+	 */
+	public KeypointIndex(List<Keypoint> points, int checks) {
+		this.checks = checks;
+		this.size = points.size();
+
+		// partitions of the keypoints
+		List<List<Integer>> members = new ArrayList<List<Integer>>();
+		for (int i = 0; i < size; i++) {
+			Keypoint point = points.get(i);
+			int length = point.getDescLength();
+			if (length < 0)
+				continue;
+			Double laplacian = descriptor(point)[LAPLACIAN];
+			int t = 0;
+			while (t < trees.size() && !trees.get(t).accepts(laplacian, length))
+				t++;
+			if (t == trees.size()) {
+				trees.add(new Tree(laplacian, length));
+				members.add(new ArrayList<Integer>());
+			}
+			members.get(t).add(i);
+		}
+		for (int t = 0; t < trees.size(); t++)
+			trees.get(t).build(points, members.get(t));
+	}
+
+	private static Double[] descriptor(Keypoint point) {
+		return (Double[]) point.data.getValues();
+	}
+
+	/**
+	 * @return the number of keypoints given to the index
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Matches a keypoint with the indexed keypoints.
+	 *
+	 * @param point
+	 *            keypoint to match
+	 * @return the position of the closest keypoint, or -1 if no keypoint is
+	 *         close enough
+	 */
+	public int match(Keypoint point) {
+		return match(point, new IntDoubleHeap());
+	}
+
+	private int match(Keypoint point, IntDoubleHeap heap) {
+		int length = point.getDescLength();
+		if (length < 0)
+			return -1;
+		Double[] desc = descriptor(point);
+		for (Tree tree : trees)
+			if (tree.accepts(desc[LAPLACIAN], length)) {
+				double[] query = new double[tree.dim];
+				for (int i = 0; i < tree.dim; i++)
+					query[i] = desc[FIRST + i];
+				return tree.match(query, checks, heap);
+			}
+		return -1;
+	}
+
+	/**
+	 * Matches a list of keypoints with the indexed keypoints, in parallel.
+	 *
+	 * @param points
+	 *            keypoints to match
+	 * @return for each keypoint, the position of the closest indexed keypoint,
+	 *         or -1 if no keypoint is close enough
+	 */
+	public int[] match(List<Keypoint> points) {
+		int[] matches = new int[points.size()];
+		TiledExecutor.getDefaultPool().invoke(
+				new MatchTask(this, points, matches, 0, matches.length));
+		return matches;
+	}
+
+	/**
+	 * Counts the keypoints of a list having a match in the index.
+	 *
+	 * @param points
+	 *            keypoints to match
+	 * @return the number of keypoints matched
+	 */
+	public int countMatches(List<Keypoint> points) {
+		int count = 0;
+		for (int match : match(points))
+			if (match > -1)
+				count++;
+		return count;
+	}
+
+	/**
+	 * kd-tree of the descriptors of a partition, the leaves being contiguous
+	 * ranges of the packed descriptors
+	 */
+	private static class Tree {
+
+		private final Double laplacian;
+
+		private final int length, dim;
+
+		/**
+		 * Packed descriptors in the order of the leaves
+		 */
+		private double[] values;
+
+		/**
+		 * Positions of the descriptors in the indexed list
+		 */
+		private int[] positions;
+
+		/**
+		 * Nodes : split dimension, or -1 for a leaf, split value, children,
+		 * and range of the descriptors of the leaves
+		 */
+		private int[] splitDim, left, right, from, to;
+
+		private double[] split;
+
+		private int nodes;
+
+		Tree(Double laplacian, int length) {
+			this.laplacian = laplacian;
+			this.length = length;
+			this.dim = length - FIRST;
+		}
+
+		boolean accepts(Double laplacian, int length) {
+			return this.length == length && this.laplacian.equals(laplacian);
+		}
+
+		void build(List<Keypoint> points, List<Integer> members) {
+			int n = members.size();
+			double[] packed = new double[n * dim];
+			int[] order = new int[n];
+			for (int k = 0; k < n; k++) {
+				Double[] desc = descriptor(points.get(members.get(k)));
+				for (int i = 0; i < dim; i++)
+					packed[k * dim + i] = desc[FIRST + i];
+				order[k] = k;
+			}
+			// the leaves hold at least LEAF_SIZE / 2 descriptors
+			int capacity = n / 2 + 1;
+			splitDim = new int[capacity];
+			left = new int[capacity];
+			right = new int[capacity];
+			from = new int[capacity];
+			to = new int[capacity];
+			split = new double[capacity];
+			build(packed, order, 0, n);
+
+			values = new double[n * dim];
+			positions = new int[n];
+			for (int k = 0; k < n; k++) {
+				System.arraycopy(packed, order[k] * dim, values, k * dim, dim);
+				positions[k] = members.get(order[k]);
+			}
+		}
+
+		private int build(double[] packed, int[] order, int start, int end) {
+			int node = nodes++;
+			from[node] = start;
+			to[node] = end;
+			splitDim[node] = -1;
+			if (end - start <= LEAF_SIZE)
+				return node;
+
+			// dimension of largest spread
+			int best = -1;
+			double spread = 0;
+			for (int i = 0; i < dim; i++) {
+				double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+				for (int k = start; k < end; k++) {
+					double v = packed[order[k] * dim + i];
+					if (v < min)
+						min = v;
+					if (v > max)
+						max = v;
+				}
+				if (max - min > spread) {
+					spread = max - min;
+					best = i;
+				}
+			}
+			if (best < 0)
+				return node;
+
+			int middle = (start + end) >>> 1;
+			select(packed, order, best, start, end - 1, middle);
+			splitDim[node] = best;
+			split[node] = packed[order[middle] * dim + best];
+			left[node] = build(packed, order, start, middle);
+			right[node] = build(packed, order, middle, end);
+			return node;
+		}
+
+		/**
+		 * Partially sorts the descriptors along a dimension so that the
+		 * descriptor at position k is at its sorted position
+		 */
+		private void select(double[] packed, int[] order, int d, int lo,
+				int hi, int k) {
+			while (lo < hi) {
+				double pivot = packed[order[(lo + hi) >>> 1] * dim + d];
+				int i = lo, j = hi;
+				while (i <= j) {
+					while (packed[order[i] * dim + d] < pivot)
+						i++;
+					while (packed[order[j] * dim + d] > pivot)
+						j--;
+					if (i <= j) {
+						int tmp = order[i];
+						order[i++] = order[j];
+						order[j--] = tmp;
+					}
+				}
+				if (k <= j)
+					hi = j;
+				else if (k >= i)
+					lo = i;
+				else
+					return;
+			}
+		}
+
+		int match(double[] query, int checks, IntDoubleHeap heap) {
+			if (nodes == 0)
+				return -1;
+			double mind = Double.MAX_VALUE, second = Double.MAX_VALUE;
+			int match = -1, compared = 0;
+			heap.clear();
+			heap.add(0, 0);
+			while (!heap.isEmpty()) {
+				double bound = heap.peekPriority();
+				int node = heap.pop();
+				if (bound >= second)
+					break;
+				while (splitDim[node] >= 0) {
+					double diff = query[splitDim[node]] - split[node];
+					int far;
+					if (diff < 0) {
+						far = right[node];
+						node = left[node];
+					} else {
+						far = left[node];
+						node = right[node];
+					}
+					double farBound = Math.max(bound, diff * diff);
+					if (farBound < second)
+						heap.add(far, farBound);
+				}
+				for (int k = from[node]; k < to[node]; k++) {
+					// same order of summation as the linear search
+					double d = 0.;
+					for (int i = 0, o = k * dim; i < dim; i++, o++) {
+						double v = values[o] - query[i];
+						d += v * v;
+					}
+					if (d < mind) {
+						second = mind;
+						mind = d;
+						match = k;
+					} else if (d < second)
+						second = d;
+				}
+				compared += to[node] - from[node];
+				if (checks > 0 && compared >= checks)
+					break;
+			}
+			if (mind < RATIO * second)
+				return positions[match];
+			return -1;
+		}
+	}
+
+	private static class MatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final KeypointIndex index;
+
+		private final List<Keypoint> points;
+
+		private final int[] matches;
+
+		private final int start, end;
+
+		MatchTask(KeypointIndex index, List<Keypoint> points, int[] matches,
+				int start, int end) {
+			this.index = index;
+			this.points = points;
+			this.matches = matches;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute() {
+			if (end - start > QUERIES_PER_TASK) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new MatchTask(index, points, matches, start, middle),
+						new MatchTask(index, points, matches, middle, end));
+				return;
+			}
+			IntDoubleHeap heap = new IntDoubleHeap();
+			for (int p = start; p < end; p++)
+				matches[p] = index.match(points.get(p), heap);
+		}
+	}
+}
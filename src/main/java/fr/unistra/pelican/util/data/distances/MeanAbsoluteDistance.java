@@ -0,0 +1,16 @@
+package fr.unistra.pelican.util.data.distances;
+
+/**
+ * Abstract class representing the mean absolute difference, i.e. the
+ * Manhattan distance normalized by the number of values :
+ * $d(i,j)=\frac{1}{m} \sum_{k=1}^m |i_k-j_k|$
+ * 
+ * The exact implementation has to be specified in the subclasses depending on
+ * the data type.
+ * 
+ * @author PELICAN team
+ * 
+ */
+public abstract class MeanAbsoluteDistance extends Distance {
+
+}
@@ -0,0 +1,50 @@
+package fr.unistra.pelican.util.data.distances;
+
+/**
+ * Distance measure computed directly on primitive vectors, without boxing
+ * the values in {@link fr.unistra.pelican.util.data.Data} objects. It is
+ * implemented by the distances between double arrays so that large
+ * collections of descriptors can be compared packed in primitive arrays.
+ *
+ * @see fr.unistra.pelican.util.data.retrieval.DescriptorCollection
+ * @author PELICAN team
+ */
+public interface VectorDistance {
+
+	/**
+	 * Computes the distance between two vectors stored in arrays.
+	 *
+	 * @param values1
+	 *            array holding the first vector
+	 * @param offset1
+	 *            position of the first vector in its array
+	 * @param values2
+	 *            array holding the second vector
+	 * @param offset2
+	 *            position of the second vector in its array
+	 * @param length
+	 *            length of the vectors
+	 * @return the distance between the vectors, with the same value as the
+	 *         distance between the data holding them
+	 */
+	public double distance(double[] values1, int offset1, double[] values2,
+			int offset2, int length);
+
+	/**
+	 * Tells if the distance can compare vectors of a given length, so that a
+	 * search can check it once before comparing any vector.
+	 *
+	 * @param length
+	 *            length of the vectors
+	 * @return true if the vectors can be compared
+	 */
+	public boolean accepts(int length);
+
+	/**
+	 * Tells if the distance is a metric, i.e. if it satisfies the triangle
+	 * inequality, which is required to search it with a metric index.
+	 *
+	 * @return true for a metric
+	 */
+	public boolean isMetric();
+}
@@ -0,0 +1,417 @@
+package fr.unistra.pelican.util.data.retrieval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.data.Data;
+import fr.unistra.pelican.util.data.DataArrayData;
+import fr.unistra.pelican.util.data.DoubleArrayData;
+import fr.unistra.pelican.util.data.distances.VectorDistance;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
+
+/**
+ * Collection of image descriptors of a same length, for content based image
+ * retrieval.
+ * <p>
+ * The values of the descriptors are unboxed once and packed in blocks of
+ * primitive arrays, apart from their identifiers (typically the paths of the
+ * images), and compared with a {@link VectorDistance} without any reflective
+ * call. {@link #search(double[], int, VectorDistance)} compares the query with
+ * every descriptor in parallel; {@link VPTree} indexes a collection for the
+ * metric distances.
+ * <p>
+ * A {@link DoubleArrayData} (or {@link fr.unistra.pelican.util.data.HistogramData})
+ * gives its values, and a {@link DataArrayData} the concatenation of the
+ * values of its elements. For instance, the mean absolute difference of the
+ * concatenated histograms of {@link
+ * fr.unistra.pelican.algorithms.descriptors.color.AutoCorrelogram} is the
+ * distance of its data.
+ * <p>
+ * The collection is saved in a binary file starting with:
+ * <pre>
+ * "PELDESC\0"    magic number
+ * int            version of the format
+ * int            length of the descriptors
+ * int            number of descriptors
+ * int            unused
+ * </pre>
+ * followed by the values of the descriptors as little-endian doubles, one
+ * descriptor after the other, and by their identifiers in modified UTF-8. When
+ * a file is loaded, the values are copied into arrays on the heap: they are
+ * not kept memory mapped.
+ * <p>
+ * The values are stored by rows, the values of a descriptor being contiguous,
+ * and not by columns: a distance compares two descriptors in a single pass
+ * over contiguous memory, but a search cannot skip the values of the
+ * dimensions it does not use.
+ *
+ * @author PELICAN team
+ */
+public class DescriptorCollection {
+
+	/**
+	 * Version of the format written
+	 */
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = { 'P', 'E', 'L', 'D', 'E', 'S', 'C', 0 };
+
+	private static final int HEADER_LENGTH = 24;
+
+	/**
+	 * Base 2 logarithm of the number of descriptors of a block, which is also
+	 * the number of descriptors compared by a task of a search
+	 */
+	private static final int BLOCK_SHIFT = 12;
+
+	private static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+
+	private final int dimension;
+
+	private final List<double[]> blocks = new ArrayList<double[]>();
+
+	private final List<String> ids = new ArrayList<String>();
+
+	/**
+	 * Creates an empty collection.
+	 *
+	 * @param dimension
+	 *            length of the descriptors
+	 */
+	public DescriptorCollection(int dimension) {
+		if (dimension < 1)
+			throw new PelicanException("Invalid descriptor length: " + dimension);
+		this.dimension = dimension;
+	}
+
+	/**
+	 * @return the length of the descriptors
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * @return the number of descriptors
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * @param index
+	 *            position of a descriptor
+	 * @return the identifier of the descriptor
+	 */
+	public String getId(int index) {
+		return ids.get(index);
+	}
+
+	/**
+	 * @param index
+	 *            position of a descriptor
+	 * @return a copy of the values of the descriptor
+	 */
+	public double[] getValues(int index) {
+		checkIndex(index);
+		return Arrays.copyOfRange(block(index), offset(index), offset(index)
+				+ dimension);
+	}
+
+	/**
+	 * Adds a descriptor.
+	 *
+	 * @param id
+	 *            identifier of the descriptor
+	 * @param data
+	 *            data computed by a descriptor
+	 * @return the position of the descriptor
+	 */
+	public int add(String id, Data data) {
+		return add(id, toVector(data));
+	}
+
+	/**
+	 * Adds a descriptor.
+	 *
+	 * @param id
+	 *            identifier of the descriptor
+	 * @param values
+	 *            values of the descriptor, which are copied
+	 * @return the position of the descriptor
+	 */
+	public int add(String id, double[] values) {
+		checkLength(values);
+		int index = ids.size();
+		if ((index & (BLOCK_ROWS - 1)) == 0)
+			blocks.add(new double[BLOCK_ROWS * dimension]);
+		System.arraycopy(values, 0, block(index), offset(index), dimension);
+		ids.add(id);
+		return index;
+	}
+
+	/**
+	 * Gets the values of data as a vector.
+	 *
+	 * @param data
+	 *            a {@link DoubleArrayData} or a {@link DataArrayData} of such
+	 *            data
+	 * @return the values of the data
+	 */
+	public static double[] toVector(Data data) {
+		List<Double[]> parts = new ArrayList<Double[]>();
+		collect(data, parts);
+		int length = 0;
+		for (Double[] part : parts)
+			length += part.length;
+		double[] vector = new double[length];
+		int i = 0;
+		for (Double[] part : parts)
+			for (Double v : part)
+				vector[i++] = v;
+		return vector;
+	}
+
+	private static void collect(Data data, List<Double[]> parts) {
+		if (data instanceof DoubleArrayData)
+			parts.add((Double[]) data.getValues());
+		else if (data instanceof DataArrayData)
+			for (Data d : (Data[]) data.getValues())
+				collect(d, parts);
+		else
+			throw new PelicanException("Data of type "
+					+ data.getClass().getSimpleName() + " cannot be indexed");
+	}
+
+	/**
+	 * Array holding a descriptor
+	 */
+	double[] block(int index) {
+		return blocks.get(index >>> BLOCK_SHIFT);
+	}
+
+	/**
+	 * Position of a descriptor in its array
+	 */
+	int offset(int index) {
+		return (index & (BLOCK_ROWS - 1)) * dimension;
+	}
+
+	double distance(int index, double[] query, VectorDistance distance) {
+		return distance.distance(block(index), offset(index), query, 0,
+				dimension);
+	}
+
+	double distance(int index1, int index2, VectorDistance distance) {
+		return distance.distance(block(index1), offset(index1), block(index2),
+				offset(index2), dimension);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= ids.size())
+			throw new PelicanException("No descriptor " + index);
+	}
+
+	void checkLength(double[] values) {
+		if (values.length != dimension)
+			throw new PelicanException("Descriptor of length " + values.length
+					+ " instead of " + dimension);
+	}
+
+	void checkDistance(VectorDistance distance) {
+		if (!distance.accepts(dimension))
+			throw new PelicanException(distance.getClass().getSimpleName()
+					+ " cannot compare descriptors of length " + dimension);
+	}
+
+	/**
+	 * Searches the nearest descriptors of a query by comparing it with every
+	 * descriptor, in parallel.
+	 *
+	 * @param query
+	 *            values of the query
+	 * @param k
+	 *            number of neighbours
+	 * @param distance
+	 *            distance between the descriptors
+	 * @return the k nearest descriptors by increasing distance, or all the
+	 *         descriptors if there are less than k
+	 */
+	public Neighbour[] search(double[] query, int k, VectorDistance distance) {
+		checkLength(query);
+		checkDistance(distance);
+		if (k < 1)
+			throw new PelicanException("Invalid number of neighbours: " + k);
+		return TiledExecutor.getDefaultPool().invoke(
+				new SearchTask(query, k, distance, 0, size())).toNeighbours(this);
+	}
+
+	/**
+	 * Searches the nearest descriptors of a query by comparing it with every
+	 * descriptor, in parallel.
+	 *
+	 * @param query
+	 *            data computed by the descriptor
+	 * @param k
+	 *            number of neighbours
+	 * @param distance
+	 *            distance between the descriptors
+	 * @return the k nearest descriptors by increasing distance, or all the
+	 *         descriptors if there are less than k
+	 */
+	public Neighbour[] search(Data query, int k, VectorDistance distance) {
+		return search(toVector(query), k, distance);
+	}
+
+	private class SearchTask extends RecursiveTask<NeighbourQueue> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] query;
+
+		private final int k;
+
+		private final VectorDistance distance;
+
+		private final int from, to;
+
+		SearchTask(double[] query, int k, VectorDistance distance, int from,
+				int to) {
+			this.query = query;
+			this.k = k;
+			this.distance = distance;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected NeighbourQueue compute() {
+			if (to - from > BLOCK_ROWS) {
+				int middle = (from + to) >>> 1;
+				SearchTask left = new SearchTask(query, k, distance, from, middle);
+				left.fork();
+				NeighbourQueue queue = new SearchTask(query, k, distance, middle,
+						to).compute();
+				queue.addAll(left.join());
+				return queue;
+			}
+			NeighbourQueue queue = new NeighbourQueue(k);
+			for (int i = from; i < to; i++)
+				queue.offer(i, distance(i, query, distance));
+			return queue;
+		}
+	}
+
+	/**
+	 * Saves the collection.
+	 *
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(
+					ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC).putInt(VERSION).putInt(dimension).putInt(size())
+					.putInt(0).flip();
+			write(channel, header);
+			ByteBuffer buffer = null;
+			for (int b = 0; b < blocks.size(); b++) {
+				int rows = Math.min(BLOCK_ROWS, size() - (b << BLOCK_SHIFT));
+				if (buffer == null)
+					buffer = ByteBuffer.allocate(BLOCK_ROWS * dimension * 8).order(
+							ByteOrder.LITTLE_ENDIAN);
+				buffer.clear();
+				buffer.asDoubleBuffer().put(blocks.get(b), 0, rows * dimension);
+				buffer.limit(rows * dimension * 8);
+				write(channel, buffer);
+			}
+			DataOutputStream ids = new DataOutputStream(new BufferedOutputStream(
+					Channels.newOutputStream(channel)));
+			for (String id : this.ids)
+				ids.writeUTF(id);
+			ids.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Loads a collection.
+	 *
+	 * @param file
+	 *            file written by {@link #save(File)}
+	 * @return the collection
+	 * @throws IOException
+	 */
+	public static DescriptorCollection load(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(
+					ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+				if (channel.read(header) < 0)
+					throw new PelicanException(file + " is not a descriptor collection");
+			header.flip();
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new PelicanException(file + " is not a descriptor collection");
+			int version = header.getInt();
+			if (version > VERSION)
+				throw new PelicanException("Unsupported version " + version
+						+ " of descriptor collection " + file);
+			int dimension = header.getInt();
+			int size = header.getInt();
+			if (dimension < 1 || size < 0
+					|| (long) size * dimension > (channel.size() - HEADER_LENGTH) / 8)
+				throw new PelicanException("Invalid header of descriptor collection "
+						+ file + ": " + size + " descriptors of length " + dimension);
+
+			DescriptorCollection collection = new DescriptorCollection(dimension);
+			long position = HEADER_LENGTH;
+			for (int b = 0; b << BLOCK_SHIFT < size; b++) {
+				int rows = Math.min(BLOCK_ROWS, size - (b << BLOCK_SHIFT));
+				double[] block = new double[BLOCK_ROWS * dimension];
+				long length = (long) rows * dimension * 8;
+				channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(
+						ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(block, 0,
+						rows * dimension);
+				collection.blocks.add(block);
+				position += length;
+			}
+			channel.position(position);
+			DataInputStream ids = new DataInputStream(new BufferedInputStream(
+					Channels.newInputStream(channel)));
+			for (int i = 0; i < size; i++)
+				collection.ids.add(ids.readUTF());
+			return collection;
+		} finally {
+			in.close();
+		}
+	}
+}
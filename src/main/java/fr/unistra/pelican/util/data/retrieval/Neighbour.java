@@ -0,0 +1,43 @@
+package fr.unistra.pelican.util.data.retrieval;
+
+/**
+ * Result of a nearest neighbours search in a {@link DescriptorCollection}.
+ *
+ * @author PELICAN team
+ */
+public class Neighbour implements Comparable<Neighbour> {
+
+	/**
+	 * Position of the descriptor in the collection
+	 */
+	public final int index;
+
+	/**
+	 * Identifier of the descriptor, typically the path of the image
+	 */
+	public final String id;
+
+	/**
+	 * Distance between the descriptor and the query
+	 */
+	public final double distance;
+
+	public Neighbour(int index, String id, double distance) {
+		this.index = index;
+		this.id = id;
+		this.distance = distance;
+	}
+
+	/**
+	 * Orders the neighbours by increasing distance, then by position in the
+	 * collection.
+	 */
+	public int compareTo(Neighbour n) {
+		int c = Double.compare(distance, n.distance);
+		return c != 0 ? c : (index < n.index ? -1 : index == n.index ? 0 : 1);
+	}
+
+	public String toString() {
+		return id + " (" + distance + ")";
+	}
+}
@@ -0,0 +1,66 @@
+package fr.unistra.pelican.util.data.retrieval;
+
+import java.util.Arrays;
+
+import fr.unistra.pelican.util.IntDoubleHeap;
+
+/**
+ * The k nearest descriptors found so far by a search, kept in a heap whose
+ * head is the farthest one.
+ *
+ * @author PELICAN team
+ */
+class NeighbourQueue {
+
+	private final int k;
+
+	/**
+	 * Positions of the descriptors with their opposite distances as
+	 * priorities
+	 */
+	private final IntDoubleHeap heap;
+
+	NeighbourQueue(int k) {
+		this.k = k;
+		this.heap = new IntDoubleHeap(k + 1);
+	}
+
+	/**
+	 * @return the distance a descriptor must be under to be kept
+	 */
+	double threshold() {
+		return heap.size() < k ? Double.POSITIVE_INFINITY : -heap.peekPriority();
+	}
+
+	void offer(int index, double distance) {
+		if (heap.size() < k)
+			heap.add(index, -distance);
+		else if (distance < -heap.peekPriority()) {
+			heap.pop();
+			heap.add(index, -distance);
+		}
+	}
+
+	void addAll(NeighbourQueue queue) {
+		while (!queue.heap.isEmpty()) {
+			double distance = -queue.heap.peekPriority();
+			offer(queue.heap.pop(), distance);
+		}
+	}
+
+	/**
+	 * Empties the queue.
+	 *
+	 * @return the neighbours by increasing distance
+	 */
+	Neighbour[] toNeighbours(DescriptorCollection collection) {
+		Neighbour[] result = new Neighbour[heap.size()];
+		for (int i = 0; i < result.length; i++) {
+			double distance = -heap.peekPriority();
+			int index = heap.pop();
+			result[i] = new Neighbour(index, collection.getId(index), distance);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+}
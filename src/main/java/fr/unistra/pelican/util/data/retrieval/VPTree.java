@@ -0,0 +1,279 @@
+package fr.unistra.pelican.util.data.retrieval;
+
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.data.Data;
+import fr.unistra.pelican.util.data.distances.VectorDistance;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
+
+/**
+ * Vantage point tree indexing a {@link DescriptorCollection} for a metric
+ * distance, for exact k nearest neighbours searches comparing the query with
+ * a small part of the collection.
+ * <p>
+ * Each node is a descriptor, the vantage point, with the median of the
+ * distances between the vantage point and the descriptors of its subtree:
+ * the descriptors closer than this radius are in the inner subtree, the
+ * other ones in the outer subtree. The triangle inequality allows to skip a
+ * subtree when the query is far enough from the boundary. The tree is stored
+ * implicitly in two arrays, each subtree being a range of positions starting
+ * with its vantage point, and is built in parallel.
+ * <p>
+ * The tree is not updated when descriptors are added to the collection.
+ *
+ * @author PELICAN team
+ */
+public class VPTree {
+
+	/**
+	 * Number of descriptors under which a subtree is searched linearly
+	 */
+	private static final int LEAF_SIZE = 16;
+
+	/**
+	 * Number of descriptors under which a subtree is built by a single
+	 * thread
+	 */
+	private static final int DESCRIPTORS_PER_TASK = 1 << 14;
+
+	/**
+	 * Number of queries of a batch under which they are searched by a single
+	 * thread
+	 */
+	private static final int QUERIES_PER_TASK = 4;
+
+	private final DescriptorCollection collection;
+
+	private final VectorDistance distance;
+
+	/**
+	 * Positions of the descriptors in the collection, in the order of the
+	 * tree
+	 */
+	private final int[] indexes;
+
+	/**
+	 * Radius of the node whose vantage point is at each position
+	 */
+	private final double[] radius;
+
+	/**
+	 * Builds the tree of a collection.
+	 *
+	 * @param collection
+	 *            descriptors to index
+	 * @param distance
+	 *            metric distance between the descriptors
+	 */
+	public VPTree(DescriptorCollection collection, VectorDistance distance) {
+		if (!distance.isMetric())
+			throw new PelicanException(distance.getClass().getSimpleName()
+					+ " is not a metric");
+		collection.checkDistance(distance);
+		this.collection = collection;
+		this.distance = distance;
+		int size = collection.size();
+		indexes = new int[size];
+		for (int i = 0; i < size; i++)
+			indexes[i] = i;
+		radius = new double[size];
+		TiledExecutor.getDefaultPool().invoke(new BuildTask(0, size));
+	}
+
+	/**
+	 * @return the number of descriptors indexed
+	 */
+	public int size() {
+		return indexes.length;
+	}
+
+	/**
+	 * Middle of a subtree, the inner subtree ranging from the position after
+	 * the vantage point to the middle and the outer one from the middle to the
+	 * end
+	 */
+	private static int middle(int from, int to) {
+		return from + 1 + ((to - from - 1) >>> 1);
+	}
+
+	private class BuildTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+
+		BuildTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			build(from, to);
+		}
+
+		private void build(int from, int to) {
+			int n = to - from;
+			if (n <= LEAF_SIZE)
+				return;
+
+			// random vantage point, the distances to it being stored in the
+			// radius of the descriptors of the subtree until they are built
+			swap(from, from + new Random(from * 31L + to).nextInt(n));
+			for (int i = from + 1; i < to; i++)
+				radius[i] = collection.distance(indexes[i], indexes[from],
+						distance);
+			int middle = middle(from, to);
+			select(from + 1, to - 1, middle);
+			radius[from] = radius[middle];
+
+			if (n > DESCRIPTORS_PER_TASK)
+				invokeAll(new BuildTask(from + 1, middle), new BuildTask(middle,
+						to));
+			else {
+				build(from + 1, middle);
+				build(middle, to);
+			}
+		}
+
+		/**
+		 * Partially sorts the positions of a range by distance to the vantage
+		 * point so that position k is at its sorted position
+		 */
+		private void select(int lo, int hi, int k) {
+			while (lo < hi) {
+				double pivot = radius[(lo + hi) >>> 1];
+				int i = lo, j = hi;
+				while (i <= j) {
+					while (radius[i] < pivot)
+						i++;
+					while (radius[j] > pivot)
+						j--;
+					if (i <= j)
+						swap(i++, j--);
+				}
+				if (k <= j)
+					hi = j;
+				else if (k >= i)
+					lo = i;
+				else
+					return;
+			}
+		}
+
+		private void swap(int i, int j) {
+			int index = indexes[i];
+			indexes[i] = indexes[j];
+			indexes[j] = index;
+			double r = radius[i];
+			radius[i] = radius[j];
+			radius[j] = r;
+		}
+	}
+
+	/**
+	 * Searches the nearest descriptors of a query.
+	 *
+	 * @param query
+	 *            values of the query
+	 * @param k
+	 *            number of neighbours
+	 * @return the k nearest descriptors by increasing distance, or all the
+	 *         descriptors if there are less than k
+	 */
+	public Neighbour[] search(double[] query, int k) {
+		collection.checkLength(query);
+		if (k < 1)
+			throw new PelicanException("Invalid number of neighbours: " + k);
+		NeighbourQueue queue = new NeighbourQueue(k);
+		search(query, queue, 0, indexes.length);
+		return queue.toNeighbours(collection);
+	}
+
+	/**
+	 * Searches the nearest descriptors of a query.
+	 *
+	 * @param query
+	 *            data computed by the descriptor
+	 * @param k
+	 *            number of neighbours
+	 * @return the k nearest descriptors by increasing distance, or all the
+	 *         descriptors if there are less than k
+	 */
+	public Neighbour[] search(Data query, int k) {
+		return search(DescriptorCollection.toVector(query), k);
+	}
+
+	/**
+	 * Searches the nearest descriptors of several queries, in parallel.
+	 *
+	 * @param queries
+	 *            values of the queries
+	 * @param k
+	 *            number of neighbours
+	 * @return for each query, its k nearest descriptors by increasing
+	 *         distance
+	 */
+	public Neighbour[][] search(double[][] queries, int k) {
+		Neighbour[][] result = new Neighbour[queries.length][];
+		TiledExecutor.getDefaultPool().invoke(
+				new QueryTask(queries, k, result, 0, queries.length));
+		return result;
+	}
+
+	private void search(double[] query, NeighbourQueue queue, int from, int to) {
+		if (to - from <= LEAF_SIZE) {
+			for (int i = from; i < to; i++)
+				queue.offer(indexes[i], collection.distance(indexes[i], query,
+						distance));
+			return;
+		}
+		double d = collection.distance(indexes[from], query, distance);
+		queue.offer(indexes[from], d);
+		double r = radius[from];
+		int middle = middle(from, to);
+		if (d < r) {
+			search(query, queue, from + 1, middle);
+			if (d + queue.threshold() >= r)
+				search(query, queue, middle, to);
+		} else {
+			search(query, queue, middle, to);
+			if (d - queue.threshold() <= r)
+				search(query, queue, from + 1, middle);
+		}
+	}
+
+	private class QueryTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[][] queries;
+
+		private final int k;
+
+		private final Neighbour[][] result;
+
+		private final int from, to;
+
+		QueryTask(double[][] queries, int k, Neighbour[][] result, int from,
+				int to) {
+			this.queries = queries;
+			this.k = k;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > QUERIES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new QueryTask(queries, k, result, from, middle),
+						new QueryTask(queries, k, result, middle, to));
+				return;
+			}
+			for (int q = from; q < to; q++)
+				result[q] = search(queries[q], k);
+		}
+	}
+}
@@ -6,6 +6,15 @@
 package fr.unistra.pelican.util.jFits;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.util.parallel.TiledExecutor;
 
 /** FitsMatrix class represents a FITS data matrix either as a prime
  *  HD unit or as an image extension.
@@ -22,6 +31,10 @@ public class FitsMatrix extends FitsData {
     private double zero = 0.0;
     private double scale = 1.0;
     private FitsWCS wcs;
+    private ByteBuffer mappedData = null;
+
+    /** Minimum number of values decoded by a thread in getDoubleRegion. */
+    private static final int VALUES_PER_TASK = 1 << 18;
 
     /** Constructor for FitsMatrix class given a FITS prime matrix or
      *  an image extension header with associated data unit as a file.
@@ -255,36 +268,182 @@ public class FitsMatrix extends FitsData {
 	if (noValues < offset+size) size = (int) (noValues - offset);
 	if ((data == null) || (data.length<size)) data = new double[size];
 
-	int n = 0;
-	DataInputStream dis = getInStream(offset, size);
+	ByteBuffer buf = getDataBuffer((long) offset*bytesPerData,
+				       (long) size*bytesPerData);
+	new RegionTask(buf, size, size, data, 0, 1, 0, 0, 1).compute();
+
+	return data;
+    }
+
+    /** Read a region of a two dimensional data matrix as double values.
+     *  The data unit is mapped in memory and the big-endian values are
+     *  decoded directly into the array, large regions being split over
+     *  several threads.  The value of pixel (x+i, y+j) of the matrix is
+     *  stored in data[offset + i*xStride + j*yStride], scaled by BSCALE
+     *  and BZERO.
+     *
+     *  @param  x        first pixel of the region along the first axis
+     *  @param  y        first pixel of the region along the second axis
+     *  @param  w        no. of pixels of the region along the first axis
+     *  @param  h        no. of pixels of the region along the second axis
+     *  @param  data     array which will hold the values
+     *  @param  offset   index in data of pixel (x, y)
+     *  @param  xStride  step in data between two pixels of a line
+     *  @param  yStride  step in data between two lines
+     *  @exception FitsException */
+    public void getDoubleRegion(int x, int y, int w, int h, double data[],
+				int offset, int xStride, int yStride)
+	    throws FitsException {
+
+	int cols = naxis.length == 0 ? 0 : naxis[0];
+	int lines = cols == 0 ? 0 : noValues / cols;
+	if ((x<0) || (y<0) || (w<1) || (h<1) || (cols<x+w) || (lines<y+h))
+	    throw new FitsException("Invalid region", FitsException.DATA);
+
+	long rowBytes = (long) cols*bytesPerData;
+	int rowsPerBuffer = (int) Math.max(1, Math.min(h,
+					   Integer.MAX_VALUE/rowBytes));
+	for (int j=0; j<h; j+=rowsPerBuffer) {
+	    int n = Math.min(rowsPerBuffer, h-j);
+	    ByteBuffer buf = getDataBuffer(((long) (y+j)*cols + x)*bytesPerData,
+					   ((long) (n-1)*cols + w)*bytesPerData);
+	    TiledExecutor.getDefaultPool().invoke(
+		new RegionTask(buf, cols, w, data, offset + j*yStride,
+			       xStride, yStride, 0, n));
+	}
+    }
+
+    /** Read a region of a two dimensional data matrix as double values.
+     *  The value of pixel (x+i, y+j) is returned at index i + j*w.
+     *
+     *  @param  x        first pixel of the region along the first axis
+     *  @param  y        first pixel of the region along the second axis
+     *  @param  w        no. of pixels of the region along the first axis
+     *  @param  h        no. of pixels of the region along the second axis
+     *  @return          array with the pixel values
+     *  @exception FitsException */
+    public double[] getDoubleRegion(int x, int y, int w, int h)
+	    throws FitsException {
+	double[] data = new double[w*h];
+	getDoubleRegion(x, y, w, h, data, 0, 1, w);
+	return data;
+    }
+
+    /** Gets a buffer on a part of the data unit, starting at position 0.
+     *  Data units of files are mapped once in memory, unless they are
+     *  larger than 2 GB in which case only the requested part is mapped.
+     *
+     *  @param  position  byte offset within the data unit
+     *  @param  length    no. of bytes */
+    private ByteBuffer getDataBuffer(long position, long length)
+	    throws FitsException {
+	ByteBuffer buf;
 	try {
-	    switch (dataFormat) {
-	    case Fits.BYTE:
-		while (n<size) data[n++] = (double) dis.readUnsignedByte();
-		break;
-	    case Fits.SHORT:
-		while (n<size) data[n++] = (double) dis.readShort();
-		break;
-	    case Fits.INT:
-		while (n<size) data[n++] = (double) dis.readInt();
-		break;
-	    case Fits.FLOAT:
-		while (n<size) data[n++] = (double)dis.readFloat();
-		break;
-	    case Fits.DOUBLE:
-		while (n<size) data[n++] =  dis.readDouble();
-		break;
-	    default: return data;
-	    } 
+	    if (mappedData != null) {
+		buf = mappedData.duplicate();
+	    } else if (isRAFile) {
+		FileChannel channel = dataFile.getChannel();
+		if (size <= Integer.MAX_VALUE) {
+		    mappedData = channel.map(FileChannel.MapMode.READ_ONLY,
+					     dataOffset, size);
+		    buf = mappedData.duplicate();
+		} else {
+		    return channel.map(FileChannel.MapMode.READ_ONLY,
+				       dataOffset+position, length);
+		}
+	    } else {
+		buf = ByteBuffer.wrap(dataArray);
+	    }
 	} catch (IOException e) {
-	    throw new FitsException("Cannot read data", FitsException.DATA);
+	    throw new FitsException("Cannot map data", FitsException.DATA);
 	}
+	buf.position((int) position);
+	buf.limit((int) (position+length));
+	return buf.slice();
+    }
 
-	if (scaling) {
-	  for (int i=0; i<n; i++) data[i] = (float) (scale*data[i]+zero);
+    /** Decodes a range of lines of a region, splitting it in halves down
+     *  to VALUES_PER_TASK values. */
+    private class RegionTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ByteBuffer buf;
+	private final double[] data;
+	private final int cols, w, offset, xStride, yStride, from, to;
+
+	/** @param  buf      buffer starting at the first pixel of the region
+	 *  @param  cols     no. of values between two lines in buf
+	 *  @param  w        no. of values of each line of the region
+	 *  @param  data     array which will hold the values
+	 *  @param  offset   index in data of the first pixel
+	 *  @param  xStride  step in data between two pixels of a line
+	 *  @param  yStride  step in data between two lines
+	 *  @param  from     first line to decode
+	 *  @param  to       last line to decode (excluded) */
+	RegionTask(ByteBuffer buf, int cols, int w, double[] data, int offset,
+		   int xStride, int yStride, int from, int to) {
+	    this.buf = buf;
+	    this.cols = cols;
+	    this.w = w;
+	    this.data = data;
+	    this.offset = offset;
+	    this.xStride = xStride;
+	    this.yStride = yStride;
+	    this.from = from;
+	    this.to = to;
 	}
 
-	return data;
+	protected void compute() {
+	    if (to-from > 1 && (long) (to-from)*w > VALUES_PER_TASK) {
+		int middle = (from+to) >>> 1;
+		invokeAll(new RegionTask(buf, cols, w, data, offset, xStride,
+					 yStride, from, middle),
+			  new RegionTask(buf, cols, w, data, offset, xStride,
+					 yStride, middle, to));
+		return;
+	    }
+	    ByteBuffer bytes = buf.duplicate();
+	    ShortBuffer shorts = dataFormat == Fits.SHORT ?
+		bytes.asShortBuffer() : null;
+	    IntBuffer ints = dataFormat == Fits.INT ? bytes.asIntBuffer() : null;
+	    FloatBuffer floats = dataFormat == Fits.FLOAT ?
+		bytes.asFloatBuffer() : null;
+	    DoubleBuffer doubles = dataFormat == Fits.DOUBLE ?
+		bytes.asDoubleBuffer() : null;
+	    for (int j=from; j<to; j++) {
+		int p = j*cols;
+		int q = offset + j*yStride;
+		switch (dataFormat) {
+		case Fits.BYTE:
+		    for (int i=0; i<w; i++, q+=xStride)
+			data[q] = bytes.get(p+i) & 0xff;
+		    break;
+		case Fits.SHORT:
+		    for (int i=0; i<w; i++, q+=xStride)
+			data[q] = shorts.get(p+i);
+		    break;
+		case Fits.INT:
+		    for (int i=0; i<w; i++, q+=xStride)
+			data[q] = ints.get(p+i);
+		    break;
+		case Fits.FLOAT:
+		    for (int i=0; i<w; i++, q+=xStride)
+			data[q] = floats.get(p+i);
+		    break;
+		case Fits.DOUBLE:
+		    for (int i=0; i<w; i++, q+=xStride)
+			data[q] = doubles.get(p+i);
+		    break;
+		default: return;
+		}
+		if (scaling) {
+		    q = offset + j*yStride;
+		    for (int i=0; i<w; i++, q+=xStride)
+			data[q] = scale*data[q] + zero;
+		}
+	    }
+	}
     }
 
     private DataInputStream getInStream(int offset, int size)
@@ -544,6 +703,12 @@ public class FitsMatrix extends FitsData {
 	}
    }
 
+    /** Closes the associated data file */
+    public void closeFile(){
+	mappedData = null;
+	super.closeFile();
+    }
+
     /** Gets the total number of data values in the data matrix.  */
     public int getNoValues(){
 	return noValues;
@@ -1,6 +1,7 @@
 package fr.unistra.pelican.util.largeImages;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import fr.unistra.pelican.PelicanException;
@@ -190,6 +191,25 @@ public class BooleanUnit extends Unit implements Serializable {
 		}
 	}
 	
+	@Override
+	public void readRaw(ByteBuffer buffer) {
+		for (int i = 0; i < this.pixels.length; i++) {
+			this.pixels[i] = buffer.get() != 0;
+		}
+	}
+
+	@Override
+	public void writeRaw(ByteBuffer buffer) {
+		for (int i = 0; i < this.pixels.length; i++) {
+			buffer.put(this.pixels[i] ? (byte) 1 : (byte) 0);
+		}
+	}
+
+	@Override
+	public long getByteSize() {
+		return (long) this.pixels.length * LargeImageUtil.BOOLEAN_DATALENGTH;
+	}
+
 	@Override
 	public int defaultSize(){
 		return this.pixels.length;
@@ -1,6 +1,7 @@
 package fr.unistra.pelican.util.largeImages;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import fr.unistra.pelican.PelicanException;
@@ -195,6 +196,22 @@ public class ByteUnit extends Unit implements Serializable {
 		return val;
 	}
 	
+	@Override
+	public void readRaw(ByteBuffer buffer) {
+		buffer.get(this.pixels);
+	}
+
+	@Override
+	public void writeRaw(ByteBuffer buffer) {
+		buffer.put(this.pixels);
+	}
+
+	@Override
+	public long getByteSize() {
+		return (long) this.pixels.length * LargeImageUtil.BYTE_DATALENGTH;
+	}
+
+	@Override
 	public int defaultSize(){
 		return this.pixels.length;
 	}
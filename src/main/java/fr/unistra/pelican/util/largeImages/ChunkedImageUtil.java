@@ -0,0 +1,247 @@
+package fr.unistra.pelican.util.largeImages;
+
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.PelicanException;
+
+/**
+ * This Class is used to define useful methods for chunked images, which keep
+ * their pixels in memory in fixed-size arrays and are addressed through long
+ * indexes.
+ *
+ * The pixel of linear index loc is stored at position
+ * <code>loc &amp; CHUNK_MASK</code> of the chunk <code>loc &gt;&gt; CHUNK_BITS</code>.
+ *
+ * @see fr.unistra.pelican.ChunkedByteImage
+ * @see fr.unistra.pelican.ChunkedIntegerImage
+ * @see fr.unistra.pelican.ChunkedDoubleImage
+ */
+public class ChunkedImageUtil {
+
+	/**
+	 * Number of pixels in each chunk (in power of two)
+	 */
+	public static final int CHUNK_BITS = 20;
+
+	/**
+	 * Number of pixels in each chunk
+	 */
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	/**
+	 * Mask giving the position of a pixel in its chunk
+	 */
+	public static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * Computes the number of pixels of an image without overflow.
+	 *
+	 * @param x
+	 *      the horizontal dimension
+	 * @param y
+	 *      the vertical dimension
+	 * @param z
+	 *      the depth
+	 * @param t
+	 *      the frame number
+	 * @param b
+	 *      the channel number
+	 * @return the number of pixels
+	 */
+	public static final long size(int x, int y, int z, int t, int b) {
+		return (long) x * y * z * t * b;
+	}
+
+	/**
+	 * Computes the number of chunks needed to store the pixels.
+	 *
+	 * @param size
+	 *      the number of pixels
+	 * @return the number of chunks
+	 */
+	public static final int chunkDim(long size) {
+		long dim = (size + CHUNK_SIZE - 1) >> CHUNK_BITS;
+		if (dim > Integer.MAX_VALUE)
+			throw new PelicanException("Too many pixels for a chunked image: "
+					+ size);
+		return (int) dim;
+	}
+
+	/**
+	 * Computes the number of pixels in a chunk, the last one being shorter.
+	 *
+	 * @param size
+	 *      the number of pixels
+	 * @param chunk
+	 *      the index of the chunk
+	 * @return the length of the chunk
+	 */
+	public static final int chunkLength(long size, int chunk) {
+		return (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_BITS));
+	}
+
+	/**
+	 * Checks that the number of pixels can be returned by Image.size().
+	 *
+	 * @param size
+	 *      the number of pixels
+	 * @return the number of pixels
+	 */
+	public static final int intSize(long size) {
+		if (size > Integer.MAX_VALUE)
+			throw new PelicanException("The image has " + size
+					+ " pixels, use sizeL() and long indexes");
+		return (int) size;
+	}
+
+	/**
+	 * Gets the LinearIndex (z=t=b=0).
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXY___(Image im, int x, int y) {
+		return (long) im.bdim * (x + (long) im.xdim * y);
+	}
+
+	/**
+	 * Gets the linear index (t=b=0).
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @param z
+	 *      depth index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXYZ__(Image im, int x, int y, int z) {
+		return (long) im.bdim * (x + (long) im.xdim * (y + (long) im.ydim * z));
+	}
+
+	/**
+	 * Gets the linear index (z=t=0).
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @param b
+	 *      band index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXY__B(Image im, int x, int y, int b) {
+		return b + (long) im.bdim * (x + (long) im.xdim * y);
+	}
+
+	/**
+	 * Gets the linear index (z=b=0).
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @param t
+	 *      time index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXY_T_(Image im, int x, int y, int t) {
+		return (long) im.bdim
+				* (x + (long) im.xdim * (y + (long) im.ydim * im.zdim * t));
+	}
+
+	/**
+	 * Gets the linear index (b=0).
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @param z
+	 *      depth index
+	 * @param t
+	 *      time index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXYZT_(Image im, int x, int y, int z,
+			int t) {
+		return (long) im.bdim
+				* (x + (long) im.xdim * (y + (long) im.ydim * (z + (long) im.zdim * t)));
+	}
+
+	/**
+	 * Gets the linear index (t=0).
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @param z
+	 *      depth index
+	 * @param b
+	 *      band index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXYZ_B(Image im, int x, int y, int z,
+			int b) {
+		return b + (long) im.bdim * (x + (long) im.xdim * (y + (long) im.ydim * z));
+	}
+
+	/**
+	 * Gets the linear index (z=0).
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @param t
+	 *      time index
+	 * @param b
+	 *      band index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXY_TB(Image im, int x, int y, int t,
+			int b) {
+		return b + (long) im.bdim
+				* (x + (long) im.xdim * (y + (long) im.ydim * im.zdim * t));
+	}
+
+	/**
+	 * Gets the linear index.
+	 *
+	 * @param im
+	 *      Image for which the linear index must be computed
+	 * @param x
+	 *      horizontal index
+	 * @param y
+	 *      vertical index
+	 * @param z
+	 *      depth index
+	 * @param t
+	 *      time index
+	 * @param b
+	 *      band index
+	 * @return the linear index
+	 */
+	public static final long getLinearIndexXYZTB(Image im, int x, int y, int z,
+			int t, int b) {
+		return b + (long) im.bdim
+				* (x + (long) im.xdim * (y + (long) im.ydim * (z + (long) im.zdim * t)));
+	}
+}
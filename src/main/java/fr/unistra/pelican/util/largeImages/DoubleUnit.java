@@ -1,6 +1,7 @@
 package fr.unistra.pelican.util.largeImages;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import fr.unistra.pelican.PelicanException;
@@ -219,6 +220,22 @@ public class DoubleUnit extends Unit implements Serializable {
 		return val;
 	}
 	
+	@Override
+	public void readRaw(ByteBuffer buffer) {
+		buffer.asDoubleBuffer().get(this.pixels);
+	}
+
+	@Override
+	public void writeRaw(ByteBuffer buffer) {
+		buffer.asDoubleBuffer().put(this.pixels);
+	}
+
+	@Override
+	public long getByteSize() {
+		return (long) this.pixels.length * LargeImageUtil.DOUBLE_DATALENGTH;
+	}
+
+	@Override
 	public int defaultSize(){
 		return this.pixels.length;
 	}
@@ -1,6 +1,7 @@
 package fr.unistra.pelican.util.largeImages;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 import fr.unistra.pelican.PelicanException;
 
@@ -27,6 +28,21 @@ public class EmptyUnit extends Unit implements Serializable {
 		return new EmptyUnit();
 	}
 	
+	@Override
+	public void readRaw(ByteBuffer buffer) {
+		throw new PelicanException("An empty Unit can not be read from a mapped file");
+	}
+
+	@Override
+	public void writeRaw(ByteBuffer buffer) {
+		throw new PelicanException("An empty Unit can not be written in a mapped file");
+	}
+
+	@Override
+	public long getByteSize() {
+		return 0;
+	}
+
 	@Override
 	public int defaultSize(){
 		throw new PelicanException("Someone tried to call size() on an empty Unit");
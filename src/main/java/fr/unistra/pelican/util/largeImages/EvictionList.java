@@ -0,0 +1,360 @@
+package fr.unistra.pelican.util.largeImages;
+
+import java.util.Arrays;
+
+/**
+ * Least recently used ordering of the units managed by the
+ * LargeImageMemoryManager.</br> Units are identified by a long key packing the
+ * index of their image and their own index (see {@link #key(int, int)}).
+ * Recording a usage, removing an unit and polling the least recently used one
+ * take constant time and do not allocate anything once the list has reached
+ * its working size.</br> This class is not thread safe.
+ */
+public class EvictionList {
+
+	/**
+	 * Marks the absence of entry.
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * Marks a free slot in the hash table, no key can be equal to it since
+	 * image indexes are positive.
+	 */
+	public static final long NO_KEY = -1L;
+
+	/**
+	 * Key of each entry.
+	 */
+	private long[] keys;
+
+	/**
+	 * Previous (less recently used) entry of each entry.
+	 */
+	private int[] previous;
+
+	/**
+	 * Next (more recently used) entry of each entry, or next free entry.
+	 */
+	private int[] next;
+
+	/**
+	 * Least recently used entry.
+	 */
+	private int head = NONE;
+
+	/**
+	 * Most recently used entry.
+	 */
+	private int tail = NONE;
+
+	/**
+	 * First entry of the free list.
+	 */
+	private int free = NONE;
+
+	/**
+	 * Number of entries which have been used at least once.
+	 */
+	private int allocated = 0;
+
+	/**
+	 * Number of units in the list.
+	 */
+	private int size = 0;
+
+	/**
+	 * Keys of the open addressing hash table.
+	 */
+	private long[] tableKeys;
+
+	/**
+	 * Entries of the open addressing hash table.
+	 */
+	private int[] tableEntries;
+
+	/**
+	 * Mask giving the slot of a hash in the table.
+	 */
+	private int mask;
+
+	/**
+	 * Constructs an empty list.
+	 */
+	public EvictionList() {
+		this(64);
+	}
+
+	/**
+	 * Constructs an empty list.
+	 *
+	 * @param initialCapacity
+	 *            number of units the list can hold before growing
+	 */
+	public EvictionList(int initialCapacity) {
+		int capacity = 16;
+		while (capacity < initialCapacity) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+	/**
+	 * Packs an image index and an unit index into a key.
+	 *
+	 * @param imageId
+	 *            index of the image in the memory manager
+	 * @param unitId
+	 *            index of the unit in its image
+	 * @return the key of the unit
+	 */
+	public static long key(int imageId, int unitId) {
+		return ((long) imageId << 32) | (unitId & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Gets the image index packed in a key.
+	 *
+	 * @param key
+	 *            key of an unit
+	 * @return the index of its image
+	 */
+	public static int imageId(long key) {
+		return (int) (key >>> 32);
+	}
+
+	/**
+	 * Gets the unit index packed in a key.
+	 *
+	 * @param key
+	 *            key of an unit
+	 * @return the index of the unit in its image
+	 */
+	public static int unitId(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * Records a usage of an unit, which becomes the most recently used one.
+	 * The unit is added if it was not in the list.
+	 *
+	 * @param key
+	 *            key of the unit
+	 */
+	public void touch(long key) {
+		int slot = this.findSlot(key);
+		int entry;
+		if (this.tableKeys[slot] == key) {
+			entry = this.tableEntries[slot];
+			if (entry == this.tail) {
+				return;
+			}
+			this.unlink(entry);
+		} else {
+			if (this.free == NONE && this.allocated == this.keys.length) {
+				this.grow();
+				slot = this.findSlot(key);
+			}
+			entry = this.newEntry(key);
+			this.tableKeys[slot] = key;
+			this.tableEntries[slot] = entry;
+			this.size++;
+		}
+		this.linkLast(entry);
+	}
+
+	/**
+	 * Removes an unit from the list.
+	 *
+	 * @param key
+	 *            key of the unit
+	 * @return true if the unit was in the list
+	 */
+	public boolean remove(long key) {
+		int slot = this.findSlot(key);
+		if (this.tableKeys[slot] != key) {
+			return false;
+		}
+		this.removeEntry(slot);
+		return true;
+	}
+
+	/**
+	 * Removes the least recently used unit from the list.
+	 *
+	 * @return the key of this unit, NO_KEY if the list is empty
+	 */
+	public long pollFirst() {
+		if (this.head == NONE) {
+			return NO_KEY;
+		}
+		long key = this.keys[this.head];
+		this.removeEntry(this.findSlot(key));
+		return key;
+	}
+
+	/**
+	 * Checks if an unit is in the list.
+	 *
+	 * @param key
+	 *            key of the unit
+	 * @return true if the unit is in the list
+	 */
+	public boolean contains(long key) {
+		return this.tableKeys[this.findSlot(key)] == key;
+	}
+
+	/**
+	 * Gets the number of units in the list.
+	 *
+	 * @return the number of units
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Checks if the list is empty.
+	 *
+	 * @return true if there is no unit in the list
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all units from the list.
+	 */
+	public void clear() {
+		Arrays.fill(this.tableKeys, NO_KEY);
+		this.head = NONE;
+		this.tail = NONE;
+		this.free = NONE;
+		this.allocated = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Gets the slot of the table containing the key, or the free slot where it
+	 * should be inserted.
+	 */
+	private int findSlot(long key) {
+		int slot = this.hash(key);
+		while (this.tableKeys[slot] != NO_KEY && this.tableKeys[slot] != key) {
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Gets the preferred slot of a key.
+	 */
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return ((int) (h ^ (h >>> 32))) & this.mask;
+	}
+
+	/**
+	 * Removes the entry referenced by the given slot from the table and from
+	 * the list.
+	 */
+	private void removeEntry(int slot) {
+		int entry = this.tableEntries[slot];
+
+		// backward shift deletion keeps the probe sequences unbroken
+		int hole = slot;
+		int i = (slot + 1) & this.mask;
+		while (this.tableKeys[i] != NO_KEY) {
+			int ideal = this.hash(this.tableKeys[i]);
+			if (((i - ideal) & this.mask) >= ((i - hole) & this.mask)) {
+				this.tableKeys[hole] = this.tableKeys[i];
+				this.tableEntries[hole] = this.tableEntries[i];
+				hole = i;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.tableKeys[hole] = NO_KEY;
+
+		this.unlink(entry);
+		this.next[entry] = this.free;
+		this.free = entry;
+		this.size--;
+	}
+
+	/**
+	 * Takes an entry from the free list or from the unused part of the arrays.
+	 */
+	private int newEntry(long key) {
+		int entry;
+		if (this.free != NONE) {
+			entry = this.free;
+			this.free = this.next[entry];
+		} else {
+			entry = this.allocated++;
+		}
+		this.keys[entry] = key;
+		return entry;
+	}
+
+	/**
+	 * Appends an entry at the most recently used end of the list.
+	 */
+	private void linkLast(int entry) {
+		this.previous[entry] = this.tail;
+		this.next[entry] = NONE;
+		if (this.tail == NONE) {
+			this.head = entry;
+		} else {
+			this.next[this.tail] = entry;
+		}
+		this.tail = entry;
+	}
+
+	/**
+	 * Takes an entry out of the list.
+	 */
+	private void unlink(int entry) {
+		int p = this.previous[entry];
+		int n = this.next[entry];
+		if (p == NONE) {
+			this.head = n;
+		} else {
+			this.next[p] = n;
+		}
+		if (n == NONE) {
+			this.tail = p;
+		} else {
+			this.previous[n] = p;
+		}
+	}
+
+	/**
+	 * Allocates the arrays for the given number of entries. The table is twice
+	 * as large to keep the probe sequences short.
+	 */
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.previous = new int[capacity];
+		this.next = new int[capacity];
+		this.tableKeys = new long[capacity << 1];
+		this.tableEntries = new int[capacity << 1];
+		this.mask = (capacity << 1) - 1;
+		Arrays.fill(this.tableKeys, NO_KEY);
+	}
+
+	/**
+	 * Doubles the capacity of the list, keeping the order of its units.
+	 */
+	private void grow() {
+		long[] ordered = new long[this.size];
+		int i = 0;
+		for (int e = this.head; e != NONE; e = this.next[e]) {
+			ordered[i++] = this.keys[e];
+		}
+		this.allocate(this.keys.length << 1);
+		this.clear();
+		for (long key : ordered) {
+			this.touch(key);
+		}
+	}
+}
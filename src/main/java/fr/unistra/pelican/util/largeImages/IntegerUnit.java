@@ -1,6 +1,7 @@
 package fr.unistra.pelican.util.largeImages;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import fr.unistra.pelican.PelicanException;
@@ -177,6 +178,21 @@ public class IntegerUnit extends Unit implements Serializable {
 		return val;
 	}
 	
+	@Override
+	public void readRaw(ByteBuffer buffer) {
+		buffer.asIntBuffer().get(this.pixels);
+	}
+
+	@Override
+	public void writeRaw(ByteBuffer buffer) {
+		buffer.asIntBuffer().put(this.pixels);
+	}
+
+	@Override
+	public long getByteSize() {
+		return (long) this.pixels.length * LargeImageUtil.INTEGER_DATALENGTH;
+	}
+
 	@Override
 	public int defaultSize(){
 		return this.pixels.length;
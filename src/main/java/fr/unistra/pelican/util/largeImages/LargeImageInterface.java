@@ -377,6 +377,30 @@ public interface LargeImageInterface {
 	 */
 	public String getWorkingFileSuffix();
 
+	/**
+	 * Gets the way units are stored in the working file.
+	 * 
+	 * @return LargeImageUtil.SERIALIZED_STORAGE or
+	 *         LargeImageUtil.MAPPED_STORAGE
+	 */
+	public int getStorageMode();
+
+	/**
+	 * Gets the working file opened for the mapped storage.
+	 * 
+	 * @return the mapped working file, or null if the image does not use the
+	 *         mapped storage or has been closed
+	 */
+	public MappedFile getMappedFile();
+
+	/**
+	 * Sets the working file opened for the mapped storage.
+	 * 
+	 * @param mappedFile
+	 *            the mapped working file, or null once it is closed
+	 */
+	public void setMappedFile(MappedFile mappedFile);
+
 	/**
 	 * Methods inherited from Image
 	 */
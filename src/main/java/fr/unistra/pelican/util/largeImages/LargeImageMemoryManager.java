@@ -7,8 +7,8 @@ import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryType;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.Notification;
@@ -20,6 +20,10 @@ import fr.unistra.pelican.PelicanException;
  * The LargeImageMemoryManager follows the design pattern Singleton. It is used
  * to manage the available memory of the JVM. It records all LargeImages that
  * are created and choose which unit has to be discarded when memory goes low.
+ * </br>By default the memory goes low when the tenured generation of the heap is
+ * nearly full. When a memory budget is set with {@link #setMemoryBudget(long)},
+ * the bytes of the resident units are counted instead and units are discarded
+ * as soon as they exceed the budget.
  * 
  */
 public class LargeImageMemoryManager implements
@@ -27,10 +31,53 @@ public class LargeImageMemoryManager implements
 
 	private static final LargeImageMemoryManager INSTANCE = new LargeImageMemoryManager();
 
+	/**
+	 * Number of usages a stripe can buffer before they are applied to the
+	 * eviction list
+	 */
+	private static final int USAGE_BUFFER_SIZE = 64;
+
 	/**
 	 * Eviction List used to choose the next unit to be discarded
 	 */
-	private LinkedList<UnitRef> evictionList;
+	private final EvictionList evictionList;
+
+	/**
+	 * Lock protecting the evictionList
+	 */
+	private final ReentrantLock evictionLock;
+
+	/**
+	 * Buffers recording the unit usages, a thread always records in the same
+	 * stripe so that threads rarely compete for them
+	 */
+	private final UsageStripe[] usageStripes;
+
+	/**
+	 * Number of units discarded to free memory
+	 */
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Number of low memory events handled
+	 */
+	private final AtomicLong evictionRunCount = new AtomicLong();
+
+	/**
+	 * Number of units loaded from the files of their images
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Number of bytes used by the units in memory
+	 */
+	private final AtomicLong residentBytes = new AtomicLong();
+
+	/**
+	 * Maximal number of bytes used by the units in memory, the heap usage is
+	 * watched instead when it is not positive
+	 */
+	private volatile long memoryBudget = 0;
 
 	/**
 	 * Memory Threshold use to launch a cleanup
@@ -53,8 +100,8 @@ public class LargeImageMemoryManager implements
 	private MemoryPoolMXBean tenured = null;
 
 	/**
-	 * Lock used to make sure that two thread don't work in the evictionList at
-	 * the same time
+	 * Lock used to make sure that two thread don't work in the units of the
+	 * large images at the same time
 	 */
 	public ReentrantLock lock;
 	
@@ -64,7 +111,16 @@ public class LargeImageMemoryManager implements
 	 */
 	private LargeImageMemoryManager() {
 
-		evictionList = new LinkedList<UnitRef>();
+		evictionList = new EvictionList();
+		evictionLock = new ReentrantLock();
+		int stripes = 1;
+		while (stripes < 2 * Runtime.getRuntime().availableProcessors()) {
+			stripes <<= 1;
+		}
+		usageStripes = new UsageStripe[stripes];
+		for (int i = 0; i < stripes; i++) {
+			usageStripes[i] = new UsageStripe();
+		}
 		lock = new ReentrantLock();
 
 		imageIndex = new HashMap<Integer, WeakReference<LargeImageInterface>>();
@@ -110,15 +166,20 @@ public class LargeImageMemoryManager implements
 	 */
 	public void handleNotification(Notification notification, Object arg1) {
 		String notifType = notification.getType();
-		if (notifType.equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED)) {
+		if (this.memoryBudget <= 0
+				&& notifType.equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED)) {
 			this.discard();
 		}
 	}
 
 	/**
 	 * Checks if memory used has reach the second threshold and wait up to 20s if the free memory is too low.
+	 * Does nothing when a memory budget is set.
 	 */
 	public void checkMemory() {
+		if (this.memoryBudget > 0) {
+			return;
+		}
 		lock.lock();
 		try{
 			int lockCount = ((ReentrantLock)lock).getHoldCount();
@@ -156,10 +217,11 @@ public class LargeImageMemoryManager implements
 	private void discard() {
 		lock.lock();
 		try{		
-			UnitRef ref = null;
+			this.evictionRunCount.incrementAndGet();
+			this.drainUsages();
 			while (tenured.getUsage().getUsed() > this.memoryThreshold) {				
 				for (int i = 0; i < LargeImageUtil.DEFAULT_DISCARD_NUMBER; i++) {
-					if ((ref = this.evictionList.pollFirst()) == null) {
+					if (!this.evictOne(EvictionList.NO_KEY)) {
 						System.err.println("Low memory and nothing to poll, we hope this is because the GC is on strike");
 						try {
 							Thread.sleep(1000);
@@ -167,11 +229,6 @@ public class LargeImageMemoryManager implements
 							e.printStackTrace();
 						}						
 						break;
-					} else {
-						LargeImageInterface currentImage = LargeImageMemoryManager.getInstance().imageIndex.get(ref.getImageId()).get();
-						if (currentImage != null) {
-							currentImage.discardUnit(ref.getUnitId());
-						}
 					}
 				}
 				System.gc();
@@ -182,7 +239,152 @@ public class LargeImageMemoryManager implements
 	}
 
 	/**
-	 * Indicates to the MemoryManager that an unit has been modified
+	 * Discards the least recently used unit which is still in memory. The
+	 * caller must hold the lock.
+	 * 
+	 * @param protectedKey
+	 *            key of an unit which must not be discarded, NO_KEY if any unit
+	 *            can be discarded
+	 * @return false if there was no unit to discard
+	 */
+	private boolean evictOne(long protectedKey) {
+		while (true) {
+			long ref;
+			this.evictionLock.lock();
+			try {
+				ref = this.evictionList.pollFirst();
+				if (ref != EvictionList.NO_KEY && ref == protectedKey) {
+					long other = this.evictionList.pollFirst();
+					this.evictionList.touch(ref);
+					ref = other;
+				}
+			} finally {
+				this.evictionLock.unlock();
+			}
+			if (ref == EvictionList.NO_KEY) {
+				return false;
+			}
+			WeakReference<LargeImageInterface> weak;
+			synchronized (this.imageIndex) {
+				weak = this.imageIndex.get(EvictionList.imageId(ref));
+			}
+			LargeImageInterface currentImage = weak.get();
+			// a usage recorded just before an eviction may refer to an unit
+			// which is no longer in memory
+			if (currentImage != null
+					&& currentImage.getMap().containsKey(EvictionList.unitId(ref))) {
+				currentImage.discardUnit(EvictionList.unitId(ref));
+				this.evictionCount.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Discards units until the resident units fit in the memory budget. Does
+	 * nothing when no budget has been set.
+	 * 
+	 * @param protectedKey
+	 *            key of an unit which must not be discarded, NO_KEY if any unit
+	 *            can be discarded
+	 */
+	private void enforceBudget(long protectedKey) {
+		if (this.memoryBudget <= 0 || this.residentBytes.get() <= this.memoryBudget) {
+			return;
+		}
+		lock.lock();
+		try {
+			this.drainUsages();
+			boolean evicted = false;
+			while (this.residentBytes.get() > this.memoryBudget
+					&& this.evictOne(protectedKey)) {
+				evicted = true;
+			}
+			if (evicted) {
+				this.evictionRunCount.incrementAndGet();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Indicates to the MemoryManager that an unit has been put in memory, and
+	 * discards other units if the memory budget is exceeded.
+	 * 
+	 * @param memoryId
+	 *            Index of the Image
+	 * @param unitId
+	 *            Index of the Unit
+	 * @param unit
+	 *            the unit put in memory
+	 * @param replaced
+	 *            the unit it replaces in its image, null if there was none
+	 */
+	public void notifyResident(int memoryId, int unitId, Unit unit, Unit replaced) {
+		if (unit != replaced) {
+			this.residentBytes.addAndGet(unit.getByteSize()
+					- (replaced == null ? 0 : replaced.getByteSize()));
+		}
+		this.notifyUsage(memoryId, unitId);
+		this.enforceBudget(EvictionList.key(memoryId, unitId));
+	}
+
+	/**
+	 * Indicates to the MemoryManager that an unit has been removed from
+	 * memory.
+	 * 
+	 * @param unit
+	 *            the removed unit
+	 */
+	public void notifyReleased(Unit unit) {
+		this.residentBytes.addAndGet(-unit.getByteSize());
+	}
+
+	/**
+	 * Indicates to the MemoryManager that an unit had to be loaded from the
+	 * file of its image.
+	 */
+	public void notifyMiss() {
+		this.missCount.incrementAndGet();
+	}
+
+	/**
+	 * Sets a memory budget for the units of all large images. When a budget is
+	 * set, the least recently used units are discarded as soon as the resident
+	 * units exceed it, and the heap usage is no longer watched.
+	 * 
+	 * @param bytes
+	 *            maximal number of bytes used by the resident units, 0 to
+	 *            watch the heap usage instead
+	 */
+	public void setMemoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+		this.enforceBudget(EvictionList.NO_KEY);
+	}
+
+	/**
+	 * Gets the memory budget for the units of all large images.
+	 * 
+	 * @return the budget in bytes, 0 if the heap usage is watched instead
+	 */
+	public long getMemoryBudget() {
+		return this.memoryBudget > 0 ? this.memoryBudget : 0;
+	}
+
+	/**
+	 * Gets the number of bytes used by the units which are in memory.
+	 * 
+	 * @return the number of resident bytes
+	 */
+	public long getResidentBytes() {
+		return this.residentBytes.get();
+	}
+
+	/**
+	 * Indicates to the MemoryManager that an unit has been loaded or modified.
+	 * The usage is buffered in the stripe of the current thread and applied to
+	 * the eviction list when the stripe is full or before units are discarded.
 	 * 
 	 * @param memoryId
 	 *            Index of the Image
@@ -190,14 +392,140 @@ public class LargeImageMemoryManager implements
 	 *            Index of the Unit
 	 */
 	public void notifyUsage(int memoryId, int unitId) {
-		lock.lock();
-		try{
-			UnitRef currentUnit = new UnitRef(memoryId, unitId);
-			this.evictionList.remove(currentUnit);
-			this.evictionList.add(currentUnit);
-		}finally{
-			lock.unlock();
+		this.recordUsage(EvictionList.key(memoryId, unitId), false);
+	}
+
+	/**
+	 * Indicates to the MemoryManager that an unit already in memory has been
+	 * accessed. Consecutive accesses to the same unit by a thread are only
+	 * recorded once.
+	 * 
+	 * @param memoryId
+	 *            Index of the Image
+	 * @param unitId
+	 *            Index of the Unit
+	 */
+	public void notifyAccess(int memoryId, int unitId) {
+		this.recordUsage(EvictionList.key(memoryId, unitId), true);
+	}
+
+	/**
+	 * Buffers an usage in the stripe of the current thread.
+	 */
+	private void recordUsage(long key, boolean skipRepeated) {
+		UsageStripe stripe = this.usageStripes[(int) Thread.currentThread()
+				.getId()
+				& (this.usageStripes.length - 1)];
+		if (skipRepeated) {
+			stripe.hits.incrementAndGet();
+			if (stripe.lastKey == key) {
+				return;
+			}
 		}
+		synchronized (stripe) {
+			stripe.usages[stripe.count++] = key;
+			stripe.lastKey = key;
+			if (stripe.count == USAGE_BUFFER_SIZE) {
+				this.drain(stripe);
+			}
+		}
+	}
+
+	/**
+	 * Applies the usages buffered in a stripe to the eviction list. The
+	 * caller must hold the monitor of the stripe.
+	 */
+	private void drain(UsageStripe stripe) {
+		this.evictionLock.lock();
+		try {
+			for (int i = 0; i < stripe.count; i++) {
+				this.evictionList.touch(stripe.usages[i]);
+			}
+		} finally {
+			this.evictionLock.unlock();
+		}
+		stripe.count = 0;
+	}
+
+	/**
+	 * Applies the usages buffered in every stripe to the eviction list.
+	 */
+	private void drainUsages() {
+		for (UsageStripe stripe : this.usageStripes) {
+			synchronized (stripe) {
+				if (stripe.count > 0) {
+					this.drain(stripe);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of units discarded to free memory.
+	 * 
+	 * @return the number of discarded units
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.get();
+	}
+
+	/**
+	 * Gets the number of low memory events which have been handled.
+	 * 
+	 * @return the number of eviction runs
+	 */
+	public long getEvictionRunCount() {
+		return this.evictionRunCount.get();
+	}
+
+	/**
+	 * Gets the number of units which are candidates for eviction.
+	 * 
+	 * @return the number of units in the eviction list
+	 */
+	public int getEvictionListSize() {
+		this.drainUsages();
+		this.evictionLock.lock();
+		try {
+			return this.evictionList.size();
+		} finally {
+			this.evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of accesses to units which were already in memory.
+	 * 
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		long hits = 0;
+		for (UsageStripe stripe : this.usageStripes) {
+			hits += stripe.hits.get();
+		}
+		return hits;
+	}
+
+	/**
+	 * Gets the number of units which had to be loaded from the files of their
+	 * images.
+	 * 
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counters.
+	 */
+	public void resetStatistics() {
+		for (UsageStripe stripe : this.usageStripes) {
+			stripe.hits.set(0);
+		}
+		this.missCount.set(0);
+		this.evictionCount.set(0);
+		this.evictionRunCount.set(0);
 	}
 
 	/**
@@ -259,62 +587,28 @@ public class LargeImageMemoryManager implements
 	}
 
 	/**
-	 * Class used to identify an unit in the MemoryManager. It stores the index
-	 * of the Image from the imageIndex and the index of the unit in its image.
+	 * Buffer of the usages recorded by the threads of a stripe.
 	 */
-	public class UnitRef {
-
-		int imageId;
-		int unitId;
+	private static class UsageStripe {
 
 		/**
-		 * Constructor
-		 * 
-		 * @param imageId
-		 *            Image index
-		 * @param unitId
-		 *            Unit index
+		 * Keys of the used units
 		 */
-		public UnitRef(int imageId, int unitId) {
-			this.imageId = imageId;
-			this.unitId = unitId;
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			if (!(o instanceof UnitRef)) {
-				return false;
-			}
-			return (this.imageId == ((UnitRef) o).imageId)
-					&& (this.unitId == ((UnitRef) o).unitId);
-		}
-
-		@Override
-		public int hashCode() {
-			return ((Integer) this.imageId).hashCode();
-		}
+		final long[] usages = new long[USAGE_BUFFER_SIZE];
 
 		/**
-		 * Gets the Image index
-		 * 
-		 * @return the Image index
+		 * Number of buffered usages
 		 */
-		public int getImageId() {
-			return this.imageId;
-		}
+		int count = 0;
 
 		/**
-		 * Gets the unit index
-		 * 
-		 * @return the unit index
+		 * Key of the last recorded unit
 		 */
-		public int getUnitId() {
-			return this.unitId;
-		}
+		volatile long lastKey = EvictionList.NO_KEY;
 
-		@Override
-		public String toString() {
-			return ("(" + this.imageId + "," + this.unitId + ")");
-		}
+		/**
+		 * Number of hits recorded by the threads of the stripe
+		 */
+		final AtomicLong hits = new AtomicLong();
 	}
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.LargeBooleanImage;
@@ -69,6 +70,47 @@ public class LargeImageUtil {
 	 */
 	public static final int DOUBLE_DATALENGTH = 8;
 
+	/**
+	 * Storage mode where each unit is written in the working file as a
+	 * serialized java object.
+	 */
+	public static final int SERIALIZED_STORAGE = 0;
+
+	/**
+	 * Storage mode where the working file is a raw array of primitive values
+	 * which is read and written through memory mapped windows, without any
+	 * serialization.
+	 */
+	public static final int MAPPED_STORAGE = 1;
+
+	/**
+	 * Storage mode given to the large images when they are created.
+	 */
+	private static int defaultStorageMode = SERIALIZED_STORAGE;
+
+	/**
+	 * Gets the storage mode given to the large images when they are created.
+	 * 
+	 * @return SERIALIZED_STORAGE or MAPPED_STORAGE
+	 */
+	public static final int getDefaultStorageMode() {
+		return defaultStorageMode;
+	}
+
+	/**
+	 * Sets the storage mode given to the large images created afterwards.
+	 * Images which already exist keep their storage mode.
+	 * 
+	 * @param mode
+	 *      SERIALIZED_STORAGE or MAPPED_STORAGE
+	 */
+	public static final void setDefaultStorageMode(int mode) {
+		if (mode != SERIALIZED_STORAGE && mode != MAPPED_STORAGE) {
+			throw new PelicanException("Unknown storage mode : " + mode);
+		}
+		defaultStorageMode = mode;
+	}
+
 	/**
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#calculate()
 	 */
@@ -81,6 +123,9 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#computeUnitLength()
 	 */
 	public static final void computeUnitLength(LargeImageInterface largeIm) {
+		if (largeIm.getStorageMode() == MAPPED_STORAGE) {
+			throw new PelicanException("The data length is needed to compute the unit length of a mapped image");
+		}
 		ByteArrayOutputStream byteArray = null;
 		ObjectOutputStream objOut = null;
 		try {
@@ -103,6 +148,23 @@ public class LargeImageUtil {
 		}
 	}
 
+	/**
+	 * Computes the unit length of the image. With the mapped storage a unit
+	 * takes exactly dataLength bytes per pixel in the working file.
+	 * 
+	 * @param dataLength
+	 *      number of bytes used to store one pixel
+	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#computeUnitLength()
+	 */
+	public static final void computeUnitLength(LargeImageInterface largeIm,
+			int dataLength) {
+		if (largeIm.getStorageMode() == MAPPED_STORAGE) {
+			largeIm.setUnitLength((long) largeIm.getUnitSize() * (long) dataLength);
+		} else {
+			computeUnitLength(largeIm);
+		}
+	}
+
 	/**
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#computeUnitDim()
 	 */
@@ -123,6 +185,14 @@ public class LargeImageUtil {
 					LargeImageUtil.DEFAULT_DIRECTORY));
 			largeIm.getFile().deleteOnExit();
 
+			if (largeIm.getStorageMode() == MAPPED_STORAGE) {
+				// the file stays open as long as the image
+				closeMappedFile(largeIm);
+				largeIm.setMappedFile(new MappedFile(largeIm.getFile(),
+						largeIm.getUnitLength(), largeIm.getUnitDim()));
+				return;
+			}
+
 			RandomAccessFile raAccess = new RandomAccessFile(largeIm.getFile(),"rw");
 
 			try {
@@ -156,13 +226,15 @@ public class LargeImageUtil {
 			currentUnit.setParentImage(largeIm);
 			currentUnit.computeOffsets();
 			
+		Unit replaced;
 		LargeImageMemoryManager.getInstance().lock.lock();
 		try{
+			replaced = largeIm.getMap().get(currentId);
 			largeIm.putUnitIntoMap(currentId, currentUnit);
-			LargeImageMemoryManager.getInstance().notifyUsage(largeIm.getMemoryId(), currentId);
 		}finally{
 			LargeImageMemoryManager.getInstance().lock.unlock();
 		}
+		LargeImageMemoryManager.getInstance().notifyResident(largeIm.getMemoryId(), currentId, currentUnit, replaced);
 	}
 
 	/**
@@ -175,7 +247,12 @@ public class LargeImageUtil {
 			if (currentUnit == null) {
 				throw new PelicanException("It tried to discard an unit which was not in memory");
 			}
-			currentUnit.discard();
+			if (currentUnit.isModified() && UnitPrefetcher.getInstance().isWriteBehind()) {
+				UnitPrefetcher.getInstance().scheduleWrite(largeIm, currentUnit);
+			} else {
+				currentUnit.discard();
+				LargeImageMemoryManager.getInstance().notifyReleased(currentUnit);
+			}
 		}finally{
 			LargeImageMemoryManager.getInstance().lock.unlock();
 		}
@@ -185,11 +262,37 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#loadAnUnit(int)
 	 */
 	public static final Unit loadAnUnit(LargeImageInterface largeIm, int id) {
-		Unit inputUnit;
 		if (id >= largeIm.getUnitDim()) {
 			throw new PelicanException("there is no " + id
 					+ "th unit in this image");
 		}
+		// the unit may still be waiting to be written by the prefetcher
+		Unit inputUnit = UnitPrefetcher.getInstance().reclaim(largeIm, id);
+		if (inputUnit != null) {
+			largeIm.setUnit(inputUnit, id, true);
+			return inputUnit;
+		}
+		inputUnit = readAnUnit(largeIm, id);
+		largeIm.setUnit(inputUnit, id, false);
+		UnitPrefetcher.getInstance().notifyLoad(largeIm, id);
+		return inputUnit;
+	}
+
+	/**
+	 * Reads an unit from the file of its image, without putting it into
+	 * memory.
+	 * 
+	 * @param largeIm
+	 *      Image which contains the unit
+	 * @param id
+	 *      index of the unit
+	 * @return the unit read
+	 */
+	public static final Unit readAnUnit(LargeImageInterface largeIm, int id) {
+		Unit inputUnit;
+		if (largeIm.getStorageMode() == MAPPED_STORAGE) {
+			return readAMappedUnit(largeIm, id);
+		}
 		try {
 			FileInputStream fileInput = new FileInputStream(largeIm.getFile()
 					.getAbsolutePath());
@@ -200,8 +303,6 @@ public class LargeImageUtil {
 				if (inputUnit instanceof EmptyUnit) {
 					inputUnit = largeIm.newUnit();
 				}
-				largeIm.setUnit(inputUnit, id, false);
-
 			} finally {
 				if (fileInput != null) {
 					fileInput.close();
@@ -218,6 +319,59 @@ public class LargeImageUtil {
 		return inputUnit;
 	}
 
+	/**
+	 * Reads an unit of an image using the mapped storage. The raw pixels are
+	 * copied from the window of the working file which contains the unit.
+	 * 
+	 * @param largeIm
+	 *      Image which contains the unit
+	 * @param id
+	 *      index of the unit
+	 * @return the unit read
+	 */
+	private static final Unit readAMappedUnit(LargeImageInterface largeIm, int id) {
+		Unit inputUnit = largeIm.newUnit();
+		inputUnit.readRaw(getMappedUnit(largeIm, id));
+		return inputUnit;
+	}
+
+	/**
+	 * Gets the bytes of an unit in the working file of an image using the
+	 * mapped storage.
+	 * 
+	 * @param largeIm
+	 *      Image which contains the unit
+	 * @param id
+	 *      index of the unit
+	 * @return a buffer positioned on the first pixel of the unit
+	 */
+	static final ByteBuffer getMappedUnit(LargeImageInterface largeIm, int id) {
+		MappedFile mappedFile = largeIm.getMappedFile();
+		if (mappedFile == null) {
+			throw new PelicanException("The working file "
+					+ largeIm.getFile().getAbsolutePath() + " has been closed");
+		}
+		try {
+			return mappedFile.getUnit(id);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new PelicanException("Unable to work in the file "
+					+ largeIm.getFile().getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Closes the working file of an image using the mapped storage, if it is
+	 * open.
+	 */
+	private static final void closeMappedFile(LargeImageInterface largeIm) {
+		MappedFile mappedFile = largeIm.getMappedFile();
+		if (mappedFile != null) {
+			largeIm.setMappedFile(null);
+			mappedFile.close();
+		}
+	}
+
 	/**
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#getAnUnit(int)
 	 */
@@ -227,11 +381,17 @@ public class LargeImageUtil {
 		try{
 			res = largeIm.getMap().get(id);			
 			if (res == null) {
-				res = largeIm.loadAnUnit(id);
+				LargeImageMemoryManager.getInstance().notifyMiss();
+				return largeIm.loadAnUnit(id);
+			}
+			if (res.prefetched) {
+				res.prefetched = false;
+				UnitPrefetcher.getInstance().notifyPrefetchedUsage(largeIm, id);
 			}
 		}finally{
 			LargeImageMemoryManager.getInstance().lock.unlock();
 		}
+		LargeImageMemoryManager.getInstance().notifyAccess(largeIm.getMemoryId(), id);
 		return res;
 	}
 
@@ -239,6 +399,10 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#fillFile()
 	 */
 	public static final void fillFile(LargeImageInterface largeIm) {
+		// a new mapped file is already filled with zeros, as new units are
+		if (largeIm.getStorageMode() == MAPPED_STORAGE) {
+			return;
+		}
 		Unit emptyUnit = new EmptyUnit();
 		emptyUnit.setModified();
 		emptyUnit.setParentImage(largeIm);
@@ -253,6 +417,14 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#close()
 	 */
 	public static final void close(LargeImageInterface largeIm) {
+		// no lock here: close is called by finalize, while a low memory event
+		// may be holding the lock and waiting for the memory to be freed
+		for (Unit currentUnit : largeIm.getMap().values()) {
+			LargeImageMemoryManager.getInstance().notifyReleased(currentUnit);
+		}
+		largeIm.getMap().clear();
+		UnitPrefetcher.getInstance().forget(largeIm);
+		closeMappedFile(largeIm);
 		largeIm.getFile().delete();
 	}
 
@@ -264,7 +436,10 @@ public class LargeImageUtil {
 			int maxSize, int dataLength) {
 		if (maxSize <= 0) {
 			// if no argument is specified we use default settings
-			long maxMem = LargeImageMemoryManager.getInstance().getMaxTenuredMemory();
+			long maxMem = LargeImageMemoryManager.getInstance().getMemoryBudget();
+			if (maxMem <= 0) {
+				maxMem = LargeImageMemoryManager.getInstance().getMaxTenuredMemory();
+			}
 			//Runtime run = Runtime.getRuntime();
 			//long maxMem = run.maxMemory();
 			long size = maxMem / LargeImageUtil.DEFAULT_NUMBER_OF_UNITS;
@@ -286,6 +461,7 @@ public class LargeImageUtil {
 			for (Unit currentUnit : largeIm.getMap().values()) {
 				currentUnit.discard();
 			}
+			UnitPrefetcher.getInstance().flush();
 		}finally{
 			LargeImageMemoryManager.getInstance().lock.unlock();
 		}
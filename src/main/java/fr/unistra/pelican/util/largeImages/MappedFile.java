@@ -0,0 +1,123 @@
+package fr.unistra.pelican.util.largeImages;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Working file of a large image using the mapped storage.</br> The file is
+ * opened once for the life of the image and mapped by windows holding a whole
+ * number of units. The windows are mapped when one of their units is first
+ * used and kept until the image is closed, so that reading or writing an unit
+ * is a single copy between its array and the page cache.
+ *
+ * @see fr.unistra.pelican.util.largeImages.LargeImageUtil#MAPPED_STORAGE
+ */
+public class MappedFile {
+
+	/**
+	 * Maximal size of a window in bytes.
+	 */
+	private static final long WINDOW_LENGTH = 1L << 30;
+
+	/**
+	 * Access to the file, opened by the constructor.
+	 */
+	private final RandomAccessFile access;
+
+	private final FileChannel channel;
+
+	/**
+	 * Number of bytes of an unit.
+	 */
+	private final long unitLength;
+
+	/**
+	 * Number of units in a window.
+	 */
+	private final int unitsPerWindow;
+
+	/**
+	 * Windows already mapped, null for the other ones.
+	 */
+	private final MappedByteBuffer[] windows;
+
+	/**
+	 * Opens the working file of an image and sets its length.
+	 *
+	 * @param file
+	 *      working file of the image
+	 * @param unitLength
+	 *      number of bytes of an unit
+	 * @param unitDim
+	 *      number of units of the image
+	 * @throws IOException
+	 *      if the file cannot be opened
+	 */
+	public MappedFile(File file, long unitLength, int unitDim) throws IOException {
+		this.access = new RandomAccessFile(file, "rw");
+		try {
+			this.access.setLength(unitLength * unitDim);
+		} catch (IOException e) {
+			this.access.close();
+			throw e;
+		}
+		this.channel = this.access.getChannel();
+		this.unitLength = unitLength;
+		this.unitsPerWindow = (int) Math.max(1, WINDOW_LENGTH / unitLength);
+		this.windows = new MappedByteBuffer[(unitDim + this.unitsPerWindow - 1)
+				/ this.unitsPerWindow];
+	}
+
+	/**
+	 * Gets a view on the bytes of an unit in the file. The view can be read
+	 * and written independently of the views given to other threads.
+	 *
+	 * @param id
+	 *      index of the unit
+	 * @return a buffer in native order positioned on the first byte of the unit
+	 * @throws IOException
+	 *      if the window of the unit cannot be mapped
+	 */
+	public ByteBuffer getUnit(int id) throws IOException {
+		int w = id / this.unitsPerWindow;
+		MappedByteBuffer window;
+		synchronized (this.windows) {
+			window = this.windows[w];
+			if (window == null) {
+				long position = (long) w * this.unitsPerWindow * this.unitLength;
+				long length = Math.min(this.unitsPerWindow * this.unitLength,
+						this.channel.size() - position);
+				window = this.channel.map(FileChannel.MapMode.READ_WRITE,
+						position, length);
+				this.windows[w] = window;
+			}
+		}
+		// the window itself is never moved, so it can be duplicated concurrently
+		ByteBuffer buffer = window.duplicate();
+		int offset = (int) ((id - (long) w * this.unitsPerWindow) * this.unitLength);
+		buffer.position(offset);
+		buffer.limit(offset + (int) this.unitLength);
+		return buffer.slice().order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Forgets the windows and closes the file. The memory of the windows is
+	 * unmapped once they are garbage collected.
+	 */
+	public void close() {
+		synchronized (this.windows) {
+			Arrays.fill(this.windows, null);
+		}
+		try {
+			this.access.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
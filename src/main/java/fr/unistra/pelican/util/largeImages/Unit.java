@@ -5,6 +5,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 import fr.unistra.pelican.PelicanException;
 
@@ -39,6 +40,11 @@ public abstract class Unit {
 	 */
 	public transient Integer end = null;
 
+	/**
+	 * Indicates that the unit has been read in advance and not used yet.
+	 */
+	public transient boolean prefetched = false;
+
 	/**
 	 * Constructor
 	 */
@@ -100,6 +106,13 @@ public abstract class Unit {
 
 		if (this.isModified() && (this.parentImage != null)) {
 
+			if (this.parentImage.getStorageMode() == LargeImageUtil.MAPPED_STORAGE) {
+				this.writeRaw(LargeImageUtil.getMappedUnit(this.parentImage,
+						this.id));
+				this.setModified(false);
+				return;
+			}
+
 			File currentFile = this.parentImage.getFile();
 			long unitLength = this.parentImage.getUnitLength();
 
@@ -128,6 +141,31 @@ public abstract class Unit {
 		}
 	}
 
+	/**
+	 * Reads the pixels of the unit from the raw primitive values of the
+	 * given buffer, as used by the mapped storage.
+	 * 
+	 * @param buffer
+	 *            buffer positioned on the first pixel of the unit
+	 */
+	public abstract void readRaw(ByteBuffer buffer);
+
+	/**
+	 * Writes the pixels of the unit as raw primitive values in the given
+	 * buffer, as used by the mapped storage.
+	 * 
+	 * @param buffer
+	 *            buffer positioned on the first pixel of the unit
+	 */
+	public abstract void writeRaw(ByteBuffer buffer);
+
+	/**
+	 * Gets the number of bytes used by the pixels of the unit in memory.
+	 * 
+	 * @return the size of the unit array in bytes
+	 */
+	public abstract long getByteSize();
+
 	@Override
 	public abstract Unit clone();
 	
@@ -0,0 +1,426 @@
+package fr.unistra.pelican.util.largeImages;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.unistra.pelican.PelicanException;
+
+/**
+ * The UnitPrefetcher follows the design pattern Singleton. It moves the file
+ * accesses of the large images to background threads so that they overlap
+ * with the computations:
+ * <ul>
+ * <li>read-ahead: when the units of an image are loaded in sequence, the next
+ * units are read in advance. The window slides each time a prefetched unit is
+ * used for the first time.</li>
+ * <li>write-behind: modified units discarded from memory are written back to
+ * the file by a background thread. A unit reloaded before being written is
+ * taken back from the write queue instead of being read from the file.</li>
+ * </ul>
+ * Both are disabled by default, see {@link #setReadAhead(int)} and
+ * {@link #setWriteBehind(boolean)}.
+ */
+public class UnitPrefetcher {
+
+	private static final UnitPrefetcher INSTANCE = new UnitPrefetcher();
+
+	/**
+	 * Thread reading the units in advance
+	 */
+	private final ExecutorService reader;
+
+	/**
+	 * Thread writing the discarded units. Writes never wait for the lock of
+	 * the memory manager, so they can be waited for while holding it.
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * Number of units read in advance, 0 disables read-ahead
+	 */
+	private volatile int readAhead = 0;
+
+	/**
+	 * Indicates whether modified units are written by the writer thread
+	 */
+	private volatile boolean writeBehind = false;
+
+	/**
+	 * Tasks of the units waiting to be read in advance, by key. A task only
+	 * puts its unit into memory if it is still the one registered for the key.
+	 */
+	private final HashMap<Long, ReadTask> pendingReads = new HashMap<Long, ReadTask>();
+
+	/**
+	 * Units waiting to be written, by key
+	 */
+	private final HashMap<Long, Unit> pendingWrites = new HashMap<Long, Unit>();
+
+	/**
+	 * Key of the unit being written, NO_KEY if there is none
+	 */
+	private long writing = EvictionList.NO_KEY;
+
+	/**
+	 * Index of the last unit loaded or scheduled for each image
+	 */
+	private final HashMap<Integer, Integer> lastLoads = new HashMap<Integer, Integer>();
+
+	/**
+	 * Number of units put into memory by the read-ahead
+	 */
+	private final AtomicLong prefetchCount = new AtomicLong();
+
+	/**
+	 * Number of units written by the writer thread
+	 */
+	private final AtomicLong writeBehindCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 */
+	private UnitPrefetcher() {
+		ThreadFactory factory = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Pelican large image I/O");
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		reader = Executors.newSingleThreadExecutor(factory);
+		writer = Executors.newSingleThreadExecutor(factory);
+	}
+
+	/**
+	 * Singleton getter.
+	 *
+	 * @return the instance of the UnitPrefetcher
+	 */
+	public static UnitPrefetcher getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Sets the number of units read in advance when an image is scanned in
+	 * sequence.
+	 *
+	 * @param units
+	 *            number of units to read in advance, 0 to disable read-ahead
+	 */
+	public void setReadAhead(int units) {
+		this.readAhead = Math.max(0, units);
+	}
+
+	/**
+	 * Gets the number of units read in advance.
+	 *
+	 * @return the read-ahead window, 0 if read-ahead is disabled
+	 */
+	public int getReadAhead() {
+		return this.readAhead;
+	}
+
+	/**
+	 * Enables or disables the asynchronous writing of discarded units.
+	 * Disabling it waits for the pending writes.
+	 *
+	 * @param flag
+	 *            true to write discarded units in background
+	 */
+	public void setWriteBehind(boolean flag) {
+		this.writeBehind = flag;
+		if (!flag) {
+			this.flush();
+		}
+	}
+
+	/**
+	 * Indicates whether discarded units are written in background.
+	 *
+	 * @return true if write-behind is enabled
+	 */
+	public boolean isWriteBehind() {
+		return this.writeBehind;
+	}
+
+	/**
+	 * Gets the number of units put into memory by the read-ahead.
+	 *
+	 * @return the number of prefetched units
+	 */
+	public long getPrefetchCount() {
+		return this.prefetchCount.get();
+	}
+
+	/**
+	 * Gets the number of units written in background.
+	 *
+	 * @return the number of units written behind
+	 */
+	public long getWriteBehindCount() {
+		return this.writeBehindCount.get();
+	}
+
+	/**
+	 * Indicates that an unit has been read from the file of its image.
+	 * Schedules the next units if the previous one was the last loaded.
+	 *
+	 * @param largeIm
+	 *            Image which contains the unit
+	 * @param id
+	 *            index of the unit
+	 */
+	public void notifyLoad(LargeImageInterface largeIm, int id) {
+		if (this.readAhead <= 0) {
+			return;
+		}
+		LargeImageMemoryManager.getInstance().lock.lock();
+		try {
+			synchronized (this) {
+				Integer last = this.lastLoads.put(largeIm.getMemoryId(), id);
+				if (last != null && last == id - 1) {
+					this.scheduleReads(largeIm, id);
+				}
+			}
+		} finally {
+			LargeImageMemoryManager.getInstance().lock.unlock();
+		}
+	}
+
+	/**
+	 * Indicates that a prefetched unit has been used for the first time, so
+	 * the read-ahead window slides forward.
+	 *
+	 * @param largeIm
+	 *            Image which contains the unit
+	 * @param id
+	 *            index of the unit
+	 */
+	public void notifyPrefetchedUsage(LargeImageInterface largeIm, int id) {
+		if (this.readAhead <= 0) {
+			return;
+		}
+		LargeImageMemoryManager.getInstance().lock.lock();
+		try {
+			synchronized (this) {
+				this.scheduleReads(largeIm, id);
+			}
+		} finally {
+			LargeImageMemoryManager.getInstance().lock.unlock();
+		}
+	}
+
+	/**
+	 * Schedules the reading of the units following the given one. The caller
+	 * must hold the lock of the memory manager and the monitor of this.
+	 */
+	private void scheduleReads(LargeImageInterface largeIm, int id) {
+		int last = Math.min(id + this.readAhead, largeIm.getUnitDim() - 1);
+		for (int u = id + 1; u <= last; u++) {
+			long key = EvictionList.key(largeIm.getMemoryId(), u);
+			if (!largeIm.getMap().containsKey(u) && !this.pendingReads.containsKey(key)
+					&& !this.pendingWrites.containsKey(key)) {
+				ReadTask task = new ReadTask(largeIm, u, key);
+				this.pendingReads.put(key, task);
+				this.reader.execute(task);
+			}
+		}
+		if (last > id) {
+			this.lastLoads.put(largeIm.getMemoryId(), last);
+		}
+	}
+
+	/**
+	 * Queues a modified unit which has been removed from memory so that it is
+	 * written by the writer thread.
+	 *
+	 * @param largeIm
+	 *            Image which contains the unit
+	 * @param unit
+	 *            the discarded unit
+	 */
+	public synchronized void scheduleWrite(LargeImageInterface largeIm, Unit unit) {
+		final long key = EvictionList.key(largeIm.getMemoryId(), unit.id);
+		this.pendingWrites.put(key, unit);
+		this.writer.execute(new Runnable() {
+			public void run() {
+				write(key);
+			}
+		});
+	}
+
+	/**
+	 * Writes a queued unit, if it has not been taken back in the meantime.
+	 */
+	private void write(long key) {
+		Unit unit;
+		synchronized (this) {
+			unit = this.pendingWrites.get(key);
+			if (unit == null) {
+				return;
+			}
+			this.writing = key;
+		}
+		try {
+			unit.discard();
+			this.writeBehindCount.incrementAndGet();
+		} catch (PelicanException e) {
+			e.printStackTrace();
+		} finally {
+			synchronized (this) {
+				this.pendingWrites.remove(key);
+				this.writing = EvictionList.NO_KEY;
+				this.notifyAll();
+			}
+			LargeImageMemoryManager.getInstance().notifyReleased(unit);
+		}
+	}
+
+	/**
+	 * Called before an unit is read from the file of its image. Cancels its
+	 * read-ahead and takes it back if it is still waiting to be written.
+	 *
+	 * @param largeIm
+	 *            Image which contains the unit
+	 * @param id
+	 *            index of the unit
+	 * @return the unit waiting to be written, null if the unit must be read
+	 *         from the file
+	 */
+	public synchronized Unit reclaim(LargeImageInterface largeIm, int id) {
+		long key = EvictionList.key(largeIm.getMemoryId(), id);
+		this.pendingReads.remove(key);
+		while (this.writing == key) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		Unit unit = this.pendingWrites.remove(key);
+		if (unit != null) {
+			// it is counted again when put back into memory
+			LargeImageMemoryManager.getInstance().notifyReleased(unit);
+			this.notifyAll();
+		}
+		return unit;
+	}
+
+	/**
+	 * Waits until all queued units have been written. The lock of the memory
+	 * manager may be held when calling this method.
+	 */
+	public synchronized void flush() {
+		while (!this.pendingWrites.isEmpty()) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Drops the pending reads and writes of an image which is being closed.
+	 *
+	 * @param largeIm
+	 *            the closed image
+	 */
+	public synchronized void forget(LargeImageInterface largeIm) {
+		int memoryId = largeIm.getMemoryId();
+		for (Iterator<Long> it = this.pendingReads.keySet().iterator(); it.hasNext();) {
+			if (EvictionList.imageId(it.next()) == memoryId) {
+				it.remove();
+			}
+		}
+		while (this.writing != EvictionList.NO_KEY
+				&& EvictionList.imageId(this.writing) == memoryId) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		for (Iterator<Unit> it = this.pendingWrites.values().iterator(); it.hasNext();) {
+			Unit unit = it.next();
+			if (unit.parentImage == largeIm) {
+				it.remove();
+				LargeImageMemoryManager.getInstance().notifyReleased(unit);
+			}
+		}
+		this.lastLoads.remove(memoryId);
+		this.notifyAll();
+	}
+
+	/**
+	 * Reads an unit in advance and puts it into memory, unless it has been
+	 * loaded or cancelled in the meantime.
+	 */
+	private class ReadTask implements Runnable {
+
+		private final LargeImageInterface largeIm;
+
+		private final int id;
+
+		private final long key;
+
+		ReadTask(LargeImageInterface largeIm, int id, long key) {
+			this.largeIm = largeIm;
+			this.id = id;
+			this.key = key;
+		}
+
+		/**
+		 * Unregisters this task. The caller must hold the monitor of the
+		 * prefetcher.
+		 * 
+		 * @return false if the read has been cancelled, in which case the key
+		 *         may already be registered by a newer task
+		 */
+		private boolean release() {
+			if (pendingReads.get(key) != this) {
+				return false;
+			}
+			pendingReads.remove(key);
+			return true;
+		}
+
+		public void run() {
+			synchronized (UnitPrefetcher.this) {
+				if (pendingReads.get(key) != this) {
+					return;
+				}
+			}
+			Unit unit;
+			try {
+				unit = LargeImageUtil.readAnUnit(largeIm, id);
+			} catch (PelicanException e) {
+				synchronized (UnitPrefetcher.this) {
+					release();
+				}
+				e.printStackTrace();
+				return;
+			}
+			LargeImageMemoryManager.getInstance().lock.lock();
+			try {
+				// the unit read is stale if it has been reclaimed, modified and
+				// written back since this task was scheduled
+				boolean wanted;
+				synchronized (UnitPrefetcher.this) {
+					wanted = release();
+				}
+				if (wanted && !largeIm.getMap().containsKey(id)) {
+					unit.prefetched = true;
+					largeIm.setUnit(unit, id, false);
+					prefetchCount.incrementAndGet();
+				}
+			} finally {
+				LargeImageMemoryManager.getInstance().lock.unlock();
+			}
+		}
+	}
+}
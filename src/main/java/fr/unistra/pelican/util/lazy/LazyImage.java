@@ -0,0 +1,637 @@
+package fr.unistra.pelican.util.lazy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.RawPixels;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
+
+/**
+ * Image defined by a graph of operators, computed only when it is
+ * materialized.
+ * <p>
+ * The point-wise operators (arithmetic, thresholding, band selection, grey
+ * conversion, {@link #map(PointFunction)}) only record a node of the graph.
+ * When an image is materialized, all the point-wise operators leading to it
+ * are fused: the pixels are processed by blocks of {@link #BLOCK_PIXELS}
+ * pixels, each operator of the graph being applied to the block before the
+ * next block is read, so that no intermediate image is allocated. The blocks
+ * are shared by the threads of the default pool of {@link TiledExecutor}.
+ * Images used several times in the graph are computed once per block.
+ * <p>
+ * Other algorithms are recorded with {@link #apply(Algorithm, Object...)}:
+ * their input is materialized before they are processed, and their result is
+ * kept.
+ * <p>
+ * Usage, for a normalized difference of two bands:
+ *
+ * <pre>
+ * LazyImage image = LazyImage.of(input);
+ * LazyImage nir = image.band(3), red = image.band(2);
+ * Image ndvi = nir.subtract(red).divide(nir.add(red)).threshold(0.3).materialize();
+ * </pre>
+ *
+ * The values are computed in the double representation of the images and are
+ * not converted between fused operators: only the materialized image has the
+ * type of its first input (as {@link fr.unistra.pelican.algorithms.arithmetic.Addition}
+ * does), a BooleanImage for thresholds and a ByteImage for grey conversion.
+ * The masks of the images are not taken into account.
+ *
+ * @author PELICAN team
+ */
+public abstract class LazyImage {
+
+	/**
+	 * Number of pixels processed at once by the fused operators
+	 */
+	public static final int BLOCK_PIXELS = 4096;
+
+	/**
+	 * Number of blocks processed in a row by a thread
+	 */
+	private static final int BLOCKS_PER_TASK = 16;
+
+	/**
+	 * Result of the node, once materialized
+	 */
+	private Image image;
+
+	/**
+	 * Dimensions of the node, once computed
+	 */
+	private int[] dims;
+
+	/**
+	 * Gets a lazy image whose value is an existing image.
+	 *
+	 * @param image
+	 *            the image
+	 * @return the lazy image, materialized as image itself
+	 */
+	public static LazyImage of(Image image) {
+		return new Source(image);
+	}
+
+	/**
+	 * Adds the values of two images.
+	 */
+	public LazyImage add(LazyImage other) {
+		return new Binary(this, other, Binary.ADD);
+	}
+
+	/**
+	 * Subtracts the values of an image from the values of this one.
+	 */
+	public LazyImage subtract(LazyImage other) {
+		return new Binary(this, other, Binary.SUBTRACT);
+	}
+
+	/**
+	 * Multiplies the values of two images.
+	 */
+	public LazyImage multiply(LazyImage other) {
+		return new Binary(this, other, Binary.MULTIPLY);
+	}
+
+	/**
+	 * Divides the values of this image by the values of another one.
+	 */
+	public LazyImage divide(LazyImage other) {
+		return new Binary(this, other, Binary.DIVIDE);
+	}
+
+	/**
+	 * Keeps the minimum of the values of two images.
+	 */
+	public LazyImage minimum(LazyImage other) {
+		return new Binary(this, other, Binary.MINIMUM);
+	}
+
+	/**
+	 * Keeps the maximum of the values of two images.
+	 */
+	public LazyImage maximum(LazyImage other) {
+		return new Binary(this, other, Binary.MAXIMUM);
+	}
+
+	/**
+	 * Adds a constant to the values of this image.
+	 */
+	public LazyImage add(final double constant) {
+		return map(new PointFunction() {
+			public double apply(double value) {
+				return value + constant;
+			}
+		});
+	}
+
+	/**
+	 * Multiplies the values of this image by a constant.
+	 */
+	public LazyImage multiply(final double constant) {
+		return map(new PointFunction() {
+			public double apply(double value) {
+				return value * constant;
+			}
+		});
+	}
+
+	/**
+	 * Applies a function to each value of this image.
+	 *
+	 * @param function
+	 *            the function
+	 * @return the lazy image of the results
+	 */
+	public LazyImage map(PointFunction function) {
+		return new Mapping(this, function);
+	}
+
+	/**
+	 * Thresholds this image: values greater than or equal to the threshold
+	 * become true, as in
+	 * {@link fr.unistra.pelican.algorithms.segmentation.ManualThresholding}.
+	 *
+	 * @param threshold
+	 *            threshold, in the double representation of the images
+	 * @return the lazy BooleanImage
+	 */
+	public LazyImage threshold(final double threshold) {
+		return new Mapping(this, new PointFunction() {
+			public double apply(double value) {
+				return value >= threshold ? 1 : 0;
+			}
+		}) {
+			Image template() {
+				return new BooleanImage(0, 0, 0, 0, 0);
+			}
+		};
+	}
+
+	/**
+	 * Selects a band of this image.
+	 *
+	 * @param band
+	 *            the band
+	 * @return the lazy image of one band
+	 */
+	public LazyImage band(int band) {
+		return new Bands(this, new double[] { 1 }, band);
+	}
+
+	/**
+	 * Converts this RGB image into a grey level ByteImage, with the weights
+	 * of {@link fr.unistra.pelican.algorithms.conversion.RGBToGray}.
+	 *
+	 * @return the lazy grey level image
+	 */
+	public LazyImage gray() {
+		return new Bands(this, new double[] { 0.299, 0.587, 0.114 }, 0) {
+			Image template() {
+				return new ByteImage(0, 0, 0, 0, 0);
+			}
+		};
+	}
+
+	/**
+	 * Applies an algorithm to this image. The image is materialized before
+	 * the algorithm is processed, and the first output of the algorithm must
+	 * be an image.
+	 *
+	 * @param algorithm
+	 *            the algorithm
+	 * @param parameters
+	 *            the parameters of the algorithm following the image
+	 * @return the lazy image of the result
+	 */
+	public LazyImage apply(Algorithm algorithm, Object... parameters) {
+		return new Apply(this, algorithm, parameters);
+	}
+
+	/**
+	 * Computes the image. The result is kept, further calls return the same
+	 * image.
+	 *
+	 * @return the image
+	 */
+	public Image materialize() {
+		if (image == null)
+			image = compute();
+		return image;
+	}
+
+	/**
+	 * Gets the horizontal dimension of the image.
+	 */
+	public int getXDim() {
+		return dims()[0];
+	}
+
+	/**
+	 * Gets the vertical dimension of the image.
+	 */
+	public int getYDim() {
+		return dims()[1];
+	}
+
+	/**
+	 * Gets the depth of the image.
+	 */
+	public int getZDim() {
+		return dims()[2];
+	}
+
+	/**
+	 * Gets the temporal dimension of the image.
+	 */
+	public int getTDim() {
+		return dims()[3];
+	}
+
+	/**
+	 * Gets the number of bands of the image.
+	 */
+	public int getBDim() {
+		return dims()[4];
+	}
+
+	/**
+	 * Computes the image of the node.
+	 */
+	abstract Image compute();
+
+	/**
+	 * Gets the x, y, z, t and b dimensions of the image. They are computed
+	 * once per node, the array must not be modified.
+	 */
+	int[] dims() {
+		if (dims == null)
+			dims = computeDims();
+		return dims;
+	}
+
+	/**
+	 * Computes the x, y, z, t and b dimensions of the image.
+	 */
+	abstract int[] computeDims();
+
+	/**
+	 * Gets an image of the type of the result.
+	 */
+	abstract Image template();
+
+	/**
+	 * Gets the inputs of a point-wise node, null for other nodes.
+	 */
+	LazyImage[] inputs() {
+		return null;
+	}
+
+	/**
+	 * Image given by the user
+	 */
+	private static class Source extends LazyImage {
+
+		private final Image source;
+
+		Source(Image source) {
+			this.source = source;
+		}
+
+		Image compute() {
+			return source;
+		}
+
+		int[] computeDims() {
+			return new int[] { source.getXDim(), source.getYDim(),
+					source.getZDim(), source.getTDim(), source.getBDim() };
+		}
+
+		Image template() {
+			return source;
+		}
+	}
+
+	/**
+	 * Algorithm processed on a materialized image
+	 */
+	private static class Apply extends LazyImage {
+
+		private final LazyImage input;
+
+		private final Algorithm algorithm;
+
+		private final Object[] parameters;
+
+		Apply(LazyImage input, Algorithm algorithm, Object[] parameters) {
+			this.input = input;
+			this.algorithm = algorithm;
+			this.parameters = parameters;
+		}
+
+		Image compute() {
+			Object[] all = new Object[parameters.length + 1];
+			all[0] = input.materialize();
+			System.arraycopy(parameters, 0, all, 1, parameters.length);
+			Object result = algorithm.process(all);
+			if (!(result instanceof Image))
+				throw new PelicanException(algorithm.getClass().getName()
+						+ " does not give an image");
+			return (Image) result;
+		}
+
+		int[] computeDims() {
+			Image result = materialize();
+			return new int[] { result.getXDim(), result.getYDim(),
+					result.getZDim(), result.getTDim(), result.getBDim() };
+		}
+
+		Image template() {
+			return materialize();
+		}
+	}
+
+	/**
+	 * Point-wise node: the value of a pixel only depends on the values of the
+	 * same pixel in the inputs. The graph of point-wise nodes leading to it is
+	 * evaluated in a single pass.
+	 */
+	private static abstract class PointWise extends LazyImage {
+
+		/**
+		 * Computes the values of a block of pixels.
+		 *
+		 * @param in
+		 *            the values of the inputs
+		 * @param out
+		 *            the values of the node
+		 * @param pixels
+		 *            number of pixels of the block
+		 */
+		abstract void compute(double[][] in, double[] out, int pixels);
+
+		Image template() {
+			return inputs()[0].template();
+		}
+
+		Image compute() {
+			int[] dims = dims();
+			Image template = template();
+			Image output = template.newInstance(dims[0], dims[1], dims[2],
+					dims[3], dims[4]);
+			output.setColor(template.isColor() && template.getBDim() == dims[4]);
+
+			// nodes of the graph in evaluation order, the materialized ones being leaves
+			List<LazyImage> nodes = new ArrayList<LazyImage>();
+			IdentityHashMap<LazyImage, Integer> slots = new IdentityHashMap<LazyImage, Integer>();
+			sort(this, nodes, slots);
+			int[][] links = new int[nodes.size()][];
+			Image[] leaves = new Image[nodes.size()];
+			int[] bands = new int[nodes.size()];
+			for (int n = 0; n < nodes.size(); n++) {
+				LazyImage node = nodes.get(n);
+				bands[n] = node.dims()[4];
+				if (node.image != null || node.inputs() == null) {
+					leaves[n] = node.materialize();
+					if (leaves[n].getXDim() != dims[0] || leaves[n].getYDim() != dims[1]
+							|| leaves[n].getZDim() != dims[2]
+							|| leaves[n].getTDim() != dims[3])
+						throw new PelicanException(
+								"The images must have the same dimensions");
+				} else {
+					LazyImage[] inputs = node.inputs();
+					links[n] = new int[inputs.length];
+					for (int i = 0; i < inputs.length; i++)
+						links[n][i] = slots.get(inputs[i]);
+				}
+			}
+
+			int pixels = dims[0] * dims[1] * dims[2] * dims[3];
+			int blocks = (pixels + BLOCK_PIXELS - 1) / BLOCK_PIXELS;
+			TiledExecutor.getDefaultPool().invoke(
+					new BlockTask(nodes, links, leaves, bands, output, pixels, 0,
+							blocks));
+			return output;
+		}
+
+		/**
+		 * Adds the nodes needed to compute a node, then the node itself.
+		 */
+		private static void sort(LazyImage node, List<LazyImage> nodes,
+				IdentityHashMap<LazyImage, Integer> slots) {
+			if (slots.containsKey(node))
+				return;
+			if (node.image == null && node.inputs() != null)
+				for (LazyImage input : node.inputs())
+					sort(input, nodes, slots);
+			slots.put(node, nodes.size());
+			nodes.add(node);
+		}
+	}
+
+	/**
+	 * Evaluates a range of blocks of a fused graph, splitting it in halves
+	 * down to BLOCKS_PER_TASK blocks.
+	 */
+	private static class BlockTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<LazyImage> nodes;
+
+		private final int[][] links;
+
+		private final Image[] leaves;
+
+		private final int[] bands;
+
+		private final Image output;
+
+		private final int pixels, from, to;
+
+		BlockTask(List<LazyImage> nodes, int[][] links, Image[] leaves,
+				int[] bands, Image output, int pixels, int from, int to) {
+			this.nodes = nodes;
+			this.links = links;
+			this.leaves = leaves;
+			this.bands = bands;
+			this.output = output;
+			this.pixels = pixels;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > BLOCKS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BlockTask(nodes, links, leaves, bands, output,
+						pixels, from, middle), new BlockTask(nodes, links, leaves,
+						bands, output, pixels, middle, to));
+				return;
+			}
+			int last = nodes.size() - 1;
+			double[][] values = new double[nodes.size()][];
+			for (int n = 0; n <= last; n++)
+				values[n] = new double[BLOCK_PIXELS * bands[n]];
+			double[][][] in = new double[nodes.size()][][];
+			for (int n = 0; n <= last; n++)
+				if (leaves[n] == null) {
+					in[n] = new double[links[n].length][];
+					for (int i = 0; i < in[n].length; i++)
+						in[n][i] = values[links[n][i]];
+				}
+			for (int block = from; block < to; block++) {
+				int first = block * BLOCK_PIXELS;
+				int length = Math.min(BLOCK_PIXELS, pixels - first);
+				for (int n = 0; n <= last; n++)
+					if (leaves[n] != null)
+						RawPixels.getDoubles(leaves[n], first * bands[n], length
+								* bands[n], values[n], 0);
+					else
+						((PointWise) nodes.get(n)).compute(in[n], values[n], length);
+				RawPixels.setDoubles(output, first * bands[last], length
+						* bands[last], values[last], 0);
+			}
+		}
+	}
+
+	/**
+	 * Operator on the values of two images with the same number of bands
+	 */
+	private static class Binary extends PointWise {
+
+		static final int ADD = 0, SUBTRACT = 1, MULTIPLY = 2, DIVIDE = 3,
+				MINIMUM = 4, MAXIMUM = 5;
+
+		private final LazyImage[] inputs;
+
+		private final int operator;
+
+		Binary(LazyImage input1, LazyImage input2, int operator) {
+			this.inputs = new LazyImage[] { input1, input2 };
+			this.operator = operator;
+		}
+
+		LazyImage[] inputs() {
+			return inputs;
+		}
+
+		int[] computeDims() {
+			int[] dims = inputs[0].dims();
+			if (!Arrays.equals(dims, inputs[1].dims()))
+				throw new PelicanException("The images must have the same dimensions");
+			return dims;
+		}
+
+		void compute(double[][] in, double[] out, int pixels) {
+			double[] a = in[0], b = in[1];
+			int length = pixels * (out.length / BLOCK_PIXELS);
+			switch (operator) {
+			case ADD:
+				for (int i = 0; i < length; i++)
+					out[i] = a[i] + b[i];
+				break;
+			case SUBTRACT:
+				for (int i = 0; i < length; i++)
+					out[i] = a[i] - b[i];
+				break;
+			case MULTIPLY:
+				for (int i = 0; i < length; i++)
+					out[i] = a[i] * b[i];
+				break;
+			case DIVIDE:
+				for (int i = 0; i < length; i++)
+					out[i] = a[i] / b[i];
+				break;
+			case MINIMUM:
+				for (int i = 0; i < length; i++)
+					out[i] = Math.min(a[i], b[i]);
+				break;
+			default:
+				for (int i = 0; i < length; i++)
+					out[i] = Math.max(a[i], b[i]);
+			}
+		}
+	}
+
+	/**
+	 * Function applied to each value of an image
+	 */
+	private static class Mapping extends PointWise {
+
+		private final LazyImage[] inputs;
+
+		private final PointFunction function;
+
+		Mapping(LazyImage input, PointFunction function) {
+			this.inputs = new LazyImage[] { input };
+			this.function = function;
+		}
+
+		LazyImage[] inputs() {
+			return inputs;
+		}
+
+		int[] computeDims() {
+			return inputs[0].dims();
+		}
+
+		void compute(double[][] in, double[] out, int pixels) {
+			double[] a = in[0];
+			int length = pixels * (out.length / BLOCK_PIXELS);
+			for (int i = 0; i < length; i++)
+				out[i] = function.apply(a[i]);
+		}
+	}
+
+	/**
+	 * Weighted sum of consecutive bands of an image, giving a single band
+	 */
+	private static class Bands extends PointWise {
+
+		private final LazyImage[] inputs;
+
+		private final double[] weights;
+
+		private final int first;
+
+		Bands(LazyImage input, double[] weights, int first) {
+			this.inputs = new LazyImage[] { input };
+			this.weights = weights;
+			this.first = first;
+		}
+
+		LazyImage[] inputs() {
+			return inputs;
+		}
+
+		int[] computeDims() {
+			int[] dims = inputs[0].dims().clone();
+			if (first < 0 || first + weights.length > dims[4])
+				throw new PelicanException("Bands " + first + " to "
+						+ (first + weights.length - 1) + " do not exist in an image of "
+						+ dims[4] + " bands");
+			dims[4] = 1;
+			return dims;
+		}
+
+		void compute(double[][] in, double[] out, int pixels) {
+			double[] a = in[0];
+			int bdim = a.length / BLOCK_PIXELS;
+			for (int p = 0, i = first; p < pixels; p++, i += bdim) {
+				double value = 0;
+				for (int w = 0; w < weights.length; w++)
+					value += weights[w] * a[i + w];
+				out[p] = value;
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package fr.unistra.pelican.util.lazy;
+
+/**
+ * Function applied to each value of a {@link LazyImage}, see
+ * {@link LazyImage#map(PointFunction)}.
+ *
+ * @author PELICAN team
+ */
+public interface PointFunction {
+
+	/**
+	 * Computes the value of a pixel band from its input value.
+	 *
+	 * @param value
+	 *            input value, in the double representation of the images
+	 * @return the output value
+	 */
+	public double apply(double value);
+}
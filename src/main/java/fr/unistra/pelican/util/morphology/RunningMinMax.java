@@ -0,0 +1,326 @@
+package fr.unistra.pelican.util.morphology;
+
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.RawPixels;
+
+/**
+ * Running minimum and maximum along lines, in constant time per pixel whatever
+ * the length of the line (van Herk/Gil-Werman algorithm).
+ * <p>
+ * The structuring element is the segment of <code>length</code> points
+ * spaced by the step vector (dx,dy,dz,dt), the point of index
+ * <code>origin</code> lying on the processed pixel. The step may be any
+ * vector: axis aligned, diagonal, or with a norm greater than one (periodic
+ * line). Pixels out of the image are ignored, and a pixel whose window does
+ * not meet the image keeps its own value, as in the naive erosion and dilation
+ * of {@link fr.unistra.pelican.algorithms.morphology.gray.GrayErosion} and
+ * {@link fr.unistra.pelican.algorithms.morphology.gray.GrayDilation}. All
+ * bands are processed, masks are not taken into account.
+ * <p>
+ * ByteImage, IntegerImage and DoubleImage kept in memory are processed on their
+ * pixel arrays, other images through the double accessors.
+ * <p>
+ * M. van Herk, <i>A fast algorithm for local minimum and maximum filters on
+ * rectangular and octogonal kernels</i> (1992).<br>
+ * J. Gil, M. Werman, <i>Computing 2-D min, median and max filters</i> (1993).
+ *
+ * @author PELICAN team
+ */
+public class RunningMinMax {
+
+	/**
+	 * Computes the minimum or maximum along a line structuring element.
+	 *
+	 * @param input
+	 *            image to process
+	 * @param length
+	 *            number of points of the line
+	 * @param origin
+	 *            index of the point of the line lying on the processed pixel
+	 * @param dx
+	 *            X step between two points of the line
+	 * @param dy
+	 *            Y step between two points of the line
+	 * @param dz
+	 *            Z step between two points of the line
+	 * @param dt
+	 *            T step between two points of the line
+	 * @param max
+	 *            true for the maximum (dilation), false for the minimum
+	 *            (erosion)
+	 * @return a new image of the same type
+	 */
+	public static Image line(Image input, int length, int origin, int dx, int dy,
+			int dz, int dt, boolean max) {
+		Image output = input.copyImage(false);
+		line(input, output, length, origin, dx, dy, dz, dt, max);
+		return output;
+	}
+
+	/**
+	 * Computes the minimum or maximum over a rectangle or box structuring
+	 * element, as successive lines along X, Y, Z and T.
+	 *
+	 * @param input
+	 *            image to process
+	 * @param size
+	 *            X, Y, Z and T dimensions of the box
+	 * @param origin
+	 *            X, Y, Z and T coordinates of the center of the box
+	 * @param max
+	 *            true for the maximum (dilation), false for the minimum
+	 *            (erosion)
+	 * @return a new image of the same type
+	 */
+	public static Image box(Image input, int[] size, int[] origin, boolean max) {
+		if (size.length != 4 || origin.length != 4)
+			throw new AlgorithmException("Box size and origin must have 4 coordinates");
+		Image current = input;
+		for (int d = 0; d < 4; d++) {
+			if (size[d] == 1 && origin[d] == 0)
+				continue;
+			Image output = input.copyImage(false);
+			line(current, output, size[d], origin[d], d == 0 ? 1 : 0, d == 1 ? 1
+					: 0, d == 2 ? 1 : 0, d == 3 ? 1 : 0, max);
+			current = output;
+		}
+		return current == input ? input.copyImage(true) : current;
+	}
+
+	/**
+	 * Computes the minimum or maximum along a line structuring element into an
+	 * existing image of the same type and dimensions.
+	 *
+	 * @see #line(Image, int, int, int, int, int, int, boolean)
+	 */
+	public static void line(Image input, Image output, int length, int origin,
+			int dx, int dy, int dz, int dt, boolean max) {
+		if (length < 1)
+			throw new AlgorithmException("Line length must be positive: " + length);
+		if (dx == 0 && dy == 0 && dz == 0 && dt == 0)
+			throw new AlgorithmException("Line step must not be null");
+		if (output.getClass() != input.getClass() || output.size() != input.size())
+			throw new AlgorithmException("Output image must be of the same type and size");
+
+		int xdim = input.getXDim();
+		int ydim = input.getYDim();
+		int zdim = input.getZDim();
+		int tdim = input.getTDim();
+		int bdim = input.getBDim();
+		int step = bdim * (dx + xdim * (dy + ydim * (dz + zdim * dt)));
+		int maxLength = Math.min(Math.min(lineBound(xdim, dx), lineBound(ydim, dy)),
+				Math.min(lineBound(zdim, dz), lineBound(tdim, dt)));
+
+		Kernel kernel;
+		if (!RawPixels.hasRawPixels(input) || !RawPixels.hasRawPixels(output))
+			kernel = new ImageKernel(input, output, maxLength);
+		else if (input instanceof ByteImage)
+			kernel = new ByteKernel((ByteImage) input, (ByteImage) output, maxLength);
+		else if (input instanceof IntegerImage)
+			kernel = new IntegerKernel((IntegerImage) input, (IntegerImage) output,
+					maxLength);
+		else if (input instanceof DoubleImage)
+			kernel = new DoubleKernel(((DoubleImage) input).getPixelsUnsafe(),
+					((DoubleImage) output).getPixelsUnsafe(), maxLength);
+		else
+			kernel = new ImageKernel(input, output, maxLength);
+
+		for (int t = 0; t < tdim; t++)
+			for (int z = 0; z < zdim; z++)
+				for (int y = 0; y < ydim; y++)
+					for (int x = 0; x < xdim; x++) {
+						// only start from the first pixel of each line
+						if (inside(x - dx, y - dy, z - dz, t - dt, xdim, ydim, zdim, tdim))
+							continue;
+						int n = 0;
+						while (inside(x + n * dx, y + n * dy, z + n * dz, t + n * dt,
+								xdim, ydim, zdim, tdim))
+							n++;
+						int start = bdim * (x + xdim * (y + ydim * (z + zdim * t)));
+						for (int b = 0; b < bdim; b++)
+							kernel.run(start + b, step, n, length, origin, max);
+					}
+	}
+
+	/**
+	 * Gets the maximal number of pixels of a line along one dimension.
+	 */
+	private static int lineBound(int dim, int d) {
+		if (d == 0)
+			return Integer.MAX_VALUE;
+		d = Math.abs(d);
+		return (dim + d - 1) / d;
+	}
+
+	/**
+	 * Checks if the given coordinates lie in the image.
+	 */
+	private static boolean inside(int x, int y, int z, int t, int xdim, int ydim,
+			int zdim, int tdim) {
+		return x >= 0 && x < xdim && y >= 0 && y < ydim && z >= 0 && z < zdim
+				&& t >= 0 && t < tdim;
+	}
+
+	/**
+	 * Processes a single line of an image.
+	 */
+	private static abstract class Kernel {
+
+		/**
+		 * Computes the result along the line of n values starting at index
+		 * start with the given step.
+		 */
+		abstract void run(int start, int step, int n, int length, int origin,
+				boolean max);
+	}
+
+	/**
+	 * Processes the lines of a ByteImage. The stored values are shifted by
+	 * Byte.MIN_VALUE, which preserves their order.
+	 */
+	private static class ByteKernel extends Kernel {
+
+		private final byte[] in, out, g, h;
+
+		ByteKernel(ByteImage input, ByteImage output, int maxLength) {
+			this.in = input.getPixelsUnsafe();
+			this.out = output.getPixelsUnsafe();
+			this.g = new byte[maxLength];
+			this.h = new byte[maxLength];
+		}
+
+		void run(int start, int step, int n, int length, int origin, boolean max) {
+			// g: running value from the beginning of each block of length values
+			for (int i = 0, p = start; i < n; i++, p += step) {
+				byte v = in[p];
+				g[i] = (i % length == 0 || (max ? v > g[i - 1] : v < g[i - 1])) ? v
+						: g[i - 1];
+			}
+			// h: running value from the end of each block
+			for (int i = n - 1, p = start + i * step; i >= 0; i--, p -= step) {
+				byte v = in[p];
+				h[i] = (i == n - 1 || i % length == length - 1 || (max ? v > h[i + 1]
+						: v < h[i + 1])) ? v : h[i + 1];
+			}
+			for (int i = 0, p = start; i < n; i++, p += step) {
+				int s = Math.max(i - origin, 0);
+				int e = Math.min(i - origin + length - 1, n - 1);
+				if (s > e)
+					out[p] = in[p];
+				else if (s / length == e / length)
+					out[p] = (s % length == 0) ? g[e] : h[s];
+				else
+					out[p] = (max ? h[s] > g[e] : h[s] < g[e]) ? h[s] : g[e];
+			}
+		}
+	}
+
+	/**
+	 * Processes the lines of an IntegerImage.
+	 */
+	private static class IntegerKernel extends Kernel {
+
+		private final int[] in, out, g, h;
+
+		IntegerKernel(IntegerImage input, IntegerImage output, int maxLength) {
+			this.in = input.getPixelsUnsafe();
+			this.out = output.getPixelsUnsafe();
+			this.g = new int[maxLength];
+			this.h = new int[maxLength];
+		}
+
+		void run(int start, int step, int n, int length, int origin, boolean max) {
+			for (int i = 0, p = start; i < n; i++, p += step) {
+				int v = in[p];
+				g[i] = (i % length == 0 || (max ? v > g[i - 1] : v < g[i - 1])) ? v
+						: g[i - 1];
+			}
+			for (int i = n - 1, p = start + i * step; i >= 0; i--, p -= step) {
+				int v = in[p];
+				h[i] = (i == n - 1 || i % length == length - 1 || (max ? v > h[i + 1]
+						: v < h[i + 1])) ? v : h[i + 1];
+			}
+			for (int i = 0, p = start; i < n; i++, p += step) {
+				int s = Math.max(i - origin, 0);
+				int e = Math.min(i - origin + length - 1, n - 1);
+				if (s > e)
+					out[p] = in[p];
+				else if (s / length == e / length)
+					out[p] = (s % length == 0) ? g[e] : h[s];
+				else
+					out[p] = (max ? h[s] > g[e] : h[s] < g[e]) ? h[s] : g[e];
+			}
+		}
+	}
+
+	/**
+	 * Processes the lines of a double array.
+	 */
+	private static class DoubleKernel extends Kernel {
+
+		private final double[] in, out, g, h;
+
+		DoubleKernel(double[] in, double[] out, int maxLength) {
+			this.in = in;
+			this.out = out;
+			this.g = new double[maxLength];
+			this.h = new double[maxLength];
+		}
+
+		void run(int start, int step, int n, int length, int origin, boolean max) {
+			for (int i = 0, p = start; i < n; i++, p += step) {
+				double v = in[p];
+				g[i] = (i % length == 0 || (max ? v > g[i - 1] : v < g[i - 1])) ? v
+						: g[i - 1];
+			}
+			for (int i = n - 1, p = start + i * step; i >= 0; i--, p -= step) {
+				double v = in[p];
+				h[i] = (i == n - 1 || i % length == length - 1 || (max ? v > h[i + 1]
+						: v < h[i + 1])) ? v : h[i + 1];
+			}
+			for (int i = 0, p = start; i < n; i++, p += step) {
+				int s = Math.max(i - origin, 0);
+				int e = Math.min(i - origin + length - 1, n - 1);
+				if (s > e)
+					out[p] = in[p];
+				else if (s / length == e / length)
+					out[p] = (s % length == 0) ? g[e] : h[s];
+				else
+					out[p] = (max ? h[s] > g[e] : h[s] < g[e]) ? h[s] : g[e];
+			}
+		}
+	}
+
+	/**
+	 * Processes the lines of any other image, copying each line into a double
+	 * buffer.
+	 */
+	private static class ImageKernel extends Kernel {
+
+		private final Image input, output;
+
+		private final double[] in, out;
+
+		private final DoubleKernel kernel;
+
+		ImageKernel(Image input, Image output, int maxLength) {
+			this.input = input;
+			this.output = output;
+			this.in = new double[maxLength];
+			this.out = new double[maxLength];
+			this.kernel = new DoubleKernel(in, out, maxLength);
+		}
+
+		void run(int start, int step, int n, int length, int origin, boolean max) {
+			for (int i = 0, p = start; i < n; i++, p += step)
+				in[i] = input.getPixelDouble(p);
+			kernel.run(0, 1, n, length, origin, max);
+			for (int i = 0, p = start; i < n; i++, p += step)
+				output.setPixelDouble(p, out[i]);
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package fr.unistra.pelican.util.morphology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.Point4D;
+import fr.unistra.pelican.util.RawPixels;
+
+/**
+ * Rank filters (median, rank, ...) on integer values of a bounded range,
+ * computed with a histogram of the window sliding along the rows (Huang
+ * algorithm).
+ * <p>
+ * When the window moves by one pixel, only the points entering and leaving
+ * the structuring element are updated. They are found once for any flat
+ * structuring element, so the cost per pixel grows with the perimeter of the
+ * structuring element instead of its area. The values of the histogram are
+ * grouped in coarse buckets so that a rank is found by scanning at most
+ * 2*sqrt(range) counts: this handles byte values as well as 16-bit values.
+ * <p>
+ * Points out of the image are ignored. A pixel whose window does not meet the
+ * image keeps its own value.
+ * <p>
+ * T. Huang, G. Yang, G. Tang, <i>A fast two-dimensional median filtering
+ * algorithm</i> (1979).<br>
+ * M. Van Droogenbroeck, H. Talbot, <i>Fast computation of morphological
+ * operations with arbitrary structuring elements</i> (1996).
+ *
+ * @author PELICAN team
+ */
+public class SlidingHistogram {
+
+	/**
+	 * Maximal number of different values
+	 */
+	public static final int MAX_RANGE = 1 << 16;
+
+	/**
+	 * Selects the value of a window among its sorted values. The result is the
+	 * mean of the values at both indexes, rounded down.
+	 */
+	public static interface Rank {
+
+		/**
+		 * Gets the index of the first selected value.
+		 *
+		 * @param count
+		 *            number of values in the window, at least 1
+		 * @return an index in [0,count-1], the values being sorted in
+		 *         ascending order
+		 */
+		public int lowIndex(int count);
+
+		/**
+		 * Gets the index of the second selected value.
+		 *
+		 * @param count
+		 *            number of values in the window, at least 1
+		 * @return an index in [0,count-1], the values being sorted in
+		 *         ascending order
+		 */
+		public int highIndex(int count);
+	}
+
+	/**
+	 * Median, the upper one if the number of values is even
+	 */
+	public static final Rank MEDIAN = new Rank() {
+		public int lowIndex(int count) {
+			return count / 2;
+		}
+
+		public int highIndex(int count) {
+			return count / 2;
+		}
+	};
+
+	/**
+	 * Median, the mean of the two middle values if the number of values is
+	 * even
+	 */
+	public static final Rank AVERAGED_MEDIAN = new Rank() {
+		public int lowIndex(int count) {
+			return (count - 1) / 2;
+		}
+
+		public int highIndex(int count) {
+			return count / 2;
+		}
+	};
+
+	/**
+	 * Gets the selector of the rank-th greatest value. If the window contains
+	 * less values, its smallest value is selected.
+	 *
+	 * @param rank
+	 *            rank of the value, 1 for the maximum
+	 * @return the selector
+	 */
+	public static Rank greatest(final int rank) {
+		if (rank < 1)
+			throw new AlgorithmException("Invalid rank value");
+		return new Rank() {
+			public int lowIndex(int count) {
+				return count - Math.min(rank, count);
+			}
+
+			public int highIndex(int count) {
+				return count - Math.min(rank, count);
+			}
+		};
+	}
+
+	/**
+	 * Gets the offsets of the points of a structuring element from its
+	 * center.
+	 *
+	 * @param points
+	 *            points of the structuring element
+	 * @param center
+	 *            center of the structuring element
+	 * @param planar
+	 *            true to ignore the Z and T coordinates of the points
+	 * @return an array of {dx,dy,dz,dt} offsets
+	 */
+	public static int[][] offsets(Point4D[] points, Point4D center, boolean planar) {
+		int[][] offsets = new int[points.length][];
+		for (int i = 0; i < points.length; i++)
+			offsets[i] = new int[] { points[i].x - center.x, points[i].y - center.y,
+					planar ? 0 : points[i].z - center.z,
+					planar ? 0 : points[i].t - center.t };
+		return offsets;
+	}
+
+	/**
+	 * Checks if the values of an image can be filtered with
+	 * {@link #filter(Image, int[][], Rank)}.
+	 *
+	 * @param image
+	 *            an image
+	 * @return true if the image is a ByteImage, or an IntegerImage whose values
+	 *         span at most {@link #MAX_RANGE} values, kept in memory and
+	 *         without mask
+	 */
+	public static boolean canFilter(Image image) {
+		if (!RawPixels.isRawAndUnmasked(image))
+			return false;
+		if (image instanceof ByteImage)
+			return true;
+		if (!(image instanceof IntegerImage))
+			return false;
+		int[] bounds = bounds(((IntegerImage) image).getPixelsUnsafe());
+		return (long) bounds[1] - bounds[0] < MAX_RANGE;
+	}
+
+	/**
+	 * Applies a rank filter to a ByteImage or an IntegerImage whose values
+	 * span at most {@link #MAX_RANGE} values. The values are ranked as
+	 * stored, without conversion.
+	 *
+	 * @param input
+	 *            image to process, accepted by {@link #canFilter(Image)}
+	 * @param offsets
+	 *            offsets {dx,dy,dz,dt} of the points of the structuring
+	 *            element from its center
+	 * @param rank
+	 *            value selected in each window
+	 * @return a new image of the same type
+	 */
+	public static Image filter(Image input, int[][] offsets, Rank rank) {
+		if (!canFilter(input))
+			throw new AlgorithmException("Image not supported by the sliding histogram");
+		Image output = input.copyImage(false);
+		if (input instanceof ByteImage) {
+			RawPixels.setBytes(output, filter(input, RawPixels.getBytes(input), 256,
+					offsets, rank));
+			return output;
+		}
+		int[] pixels = ((IntegerImage) input).getPixelsUnsafe();
+		int[] bounds = bounds(pixels);
+		int[] values = new int[pixels.length];
+		for (int i = 0; i < pixels.length; i++)
+			values[i] = pixels[i] - bounds[0];
+		int[] result = filter(input, values, bounds[1] - bounds[0] + 1, offsets, rank);
+		int[] out = ((IntegerImage) output).getPixelsUnsafe();
+		for (int i = 0; i < out.length; i++)
+			out[i] = result[i] + bounds[0];
+		return output;
+	}
+
+	/**
+	 * Gets the minimum and maximum of some values.
+	 */
+	private static int[] bounds(int[] values) {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int v : values) {
+			if (v < min)
+				min = v;
+			if (v > max)
+				max = v;
+		}
+		return values.length == 0 ? new int[] { 0, 0 } : new int[] { min, max };
+	}
+
+	/**
+	 * Applies a rank filter to values stored in the layout of an image.
+	 *
+	 * @param layout
+	 *            image giving the dimensions of the values
+	 * @param values
+	 *            values in [0,range-1], in the b-x-y-z-t order
+	 * @param range
+	 *            number of possible values, at most {@link #MAX_RANGE}
+	 * @param offsets
+	 *            offsets {dx,dy,dz,dt} of the points of the structuring
+	 *            element from its center, a point may appear several times
+	 * @param rank
+	 *            value selected in each window
+	 * @return the filtered values
+	 */
+	public static int[] filter(Image layout, int[] values, int range,
+			int[][] offsets, Rank rank) {
+		if (range < 1 || range > MAX_RANGE)
+			throw new AlgorithmException("Invalid range of values: " + range);
+		int xdim = layout.getXDim();
+		int ydim = layout.getYDim();
+		int zdim = layout.getZDim();
+		int tdim = layout.getTDim();
+		int bdim = layout.getBDim();
+		int[] strides = { layout.getXStride(), layout.getYStride(),
+				layout.getZStride(), layout.getTStride() };
+		int[] dims = { xdim, ydim, zdim, tdim };
+
+		// points of the window at x=0 with their multiplicity, and changes
+		// of the multiplicities when moving from x-1 to x
+		HashMap<Offset, Integer> multiplicities = new HashMap<Offset, Integer>();
+		for (int[] o : offsets)
+			add(multiplicities, new Offset(o[0], o[1], o[2], o[3]), 1);
+		HashMap<Offset, Integer> deltas = new HashMap<Offset, Integer>();
+		for (Map.Entry<Offset, Integer> e : multiplicities.entrySet()) {
+			Offset o = e.getKey();
+			add(deltas, o, e.getValue());
+			add(deltas, new Offset(o.d[0] - 1, o.d[1], o.d[2], o.d[3]), -e.getValue());
+		}
+		Moves window = new Moves(multiplicities, strides);
+		Moves moves = new Moves(deltas, strides);
+
+		int shift = range <= 256 ? 4 : 8;
+		int[] fine = new int[range];
+		int[] coarse = new int[(range >> shift) + 1];
+		int[] result = new int[values.length];
+		int[] c = new int[4];
+		for (int t = 0; t < tdim; t++)
+			for (int z = 0; z < zdim; z++)
+				for (int y = 0; y < ydim; y++)
+					for (int b = 0; b < bdim; b++) {
+						c[1] = y;
+						c[2] = z;
+						c[3] = t;
+						Arrays.fill(fine, 0);
+						Arrays.fill(coarse, 0);
+						int count = 0;
+						int loc = layout.getLinearIndexXYZTB(0, y, z, t, b);
+						for (int x = 0; x < xdim; x++, loc += bdim) {
+							c[0] = x;
+							Moves m = x == 0 ? window : moves;
+							for (int i = 0; i < m.size; i++) {
+								if (!m.isInside(i, c, dims))
+									continue;
+								int v = values[loc + m.offsets[i]];
+								fine[v] += m.counts[i];
+								coarse[v >> shift] += m.counts[i];
+								count += m.counts[i];
+							}
+							if (count == 0) {
+								result[loc] = values[loc];
+								continue;
+							}
+							int low = select(fine, coarse, shift, rank.lowIndex(count));
+							int high = select(fine, coarse, shift, rank.highIndex(count));
+							result[loc] = (low + high) / 2;
+						}
+					}
+		return result;
+	}
+
+	/**
+	 * Finds the value of the given index in the sorted values of the
+	 * histogram.
+	 */
+	private static int select(int[] fine, int[] coarse, int shift, int index) {
+		int bucket = 0;
+		while (index >= coarse[bucket])
+			index -= coarse[bucket++];
+		int v = bucket << shift;
+		while (index >= fine[v])
+			index -= fine[v++];
+		return v;
+	}
+
+	private static void add(HashMap<Offset, Integer> map, Offset o, int n) {
+		Integer old = map.get(o);
+		int value = (old == null ? 0 : old) + n;
+		if (value == 0)
+			map.remove(o);
+		else
+			map.put(o, value);
+	}
+
+	/**
+	 * Offset of a point from the center of the window
+	 */
+	private static class Offset {
+
+		final int[] d;
+
+		Offset(int dx, int dy, int dz, int dt) {
+			this.d = new int[] { dx, dy, dz, dt };
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Offset && Arrays.equals(d, ((Offset) o).d);
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(d);
+		}
+	}
+
+	/**
+	 * Points to add to (positive count) or remove from (negative count) the
+	 * histogram, stored in arrays for the inner loop.
+	 */
+	private static class Moves {
+
+		final int size;
+
+		final int[][] d;
+
+		final int[] offsets;
+
+		final int[] counts;
+
+		Moves(HashMap<Offset, Integer> map, int[] strides) {
+			ArrayList<Map.Entry<Offset, Integer>> entries = new ArrayList<Map.Entry<Offset, Integer>>(
+					map.entrySet());
+			size = entries.size();
+			d = new int[size][];
+			offsets = new int[size];
+			counts = new int[size];
+			for (int i = 0; i < size; i++) {
+				d[i] = entries.get(i).getKey().d;
+				counts[i] = entries.get(i).getValue();
+				for (int k = 0; k < 4; k++)
+					offsets[i] += d[i][k] * strides[k];
+			}
+		}
+
+		boolean isInside(int i, int[] c, int[] dims) {
+			for (int k = 0; k < 4; k++) {
+				int v = c[k] + d[i][k];
+				if (v < 0 || v >= dims[k])
+					return false;
+			}
+			return true;
+		}
+	}
+}
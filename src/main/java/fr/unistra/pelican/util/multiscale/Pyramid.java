@@ -1,5 +1,7 @@
 package fr.unistra.pelican.util.multiscale;
 
+import java.util.concurrent.RecursiveAction;
+
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.DoubleImage;
@@ -8,6 +10,7 @@ import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.PelicanException;
 import fr.unistra.pelican.algorithms.io.ImageLoader;
 import fr.unistra.pelican.algorithms.visualisation.Viewer2D;
+import fr.unistra.pelican.util.parallel.TiledExecutor;
 
 /**
  * Pyramidal multiscale representation of an image
@@ -30,6 +33,18 @@ public class Pyramid {
 	 * @param computeData pyramid build
 	 */
 	public Pyramid(Image input, int size, boolean computeData)
+	{
+		this(input,size,computeData,true);
+	}
+
+	/**
+	 * Constructor
+	 * @param input base image
+	 * @param size pyramid depth
+	 * @param computeData pyramid build
+	 * @param copyInput to indicate if the base image is a copy of the input, or the input itself
+	 */
+	public Pyramid(Image input, int size, boolean computeData, boolean copyInput)
 	{
 		if (size<1) return;
 		while (input.getXDim()<Math.pow(2,size))
@@ -38,7 +53,7 @@ public class Pyramid {
 			size--;
 		this.depth=size;
 		images=new Image[depth];
-		base=input.copyImage(true);
+		base=copyInput?input.copyImage(true):input;
 		build(computeData);
 	}
 	
@@ -121,13 +136,13 @@ public class Pyramid {
 	 * build the pyramid by setting the appropriate values
 	 * double values are used during the process
 	 * implementation is dedicated to 2x2 multiscale factor and average method
+	 * the rows of each scale are computed in parallel
 	 * 
 	 * @param computeData to indicate if data are to be computed or not (initialised to 0)
 	 */
 	public void build(boolean computeData) {
 		int xdim,ydim;
 		int k=1;
-		double val;
 		if (base==null) return;
 		images[0]=base;
 		for (int d=1;d<depth;d++) {
@@ -135,32 +150,103 @@ public class Pyramid {
 			k*=2;
 			xdim=base.getXDim()/k;
 			ydim=base.getYDim()/k;
-			// check the nature of the image
-			if (base instanceof BooleanImage)
-				images[d]=new BooleanImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
-			else if (base instanceof ByteImage)
-				images[d]=new ByteImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
-			else if (base instanceof IntegerImage)
-				images[d]=new IntegerImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
-			else if (base instanceof DoubleImage)
-				images[d]=new DoubleImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
+			images[d]=newScale(base,xdim,ydim);
 			images[d].fill(0);
 			images[d].copyAttributes(base);
 			if(computeData)
 				// Compute the values at current level
-				for (int b=0;b<base.getBDim();b++)
-					for (int t=0;t<base.getTDim();t++)
-						for (int z=0;z<base.getZDim();z++)
-							for (int x=0;x<images[d].getXDim();x++)
-								for (int y=0;y<images[d].getYDim();y++) {
-									val=images[d-1].getPixelXYZTBDouble(x*2,y*2,z,t,b);
-									val+=images[d-1].getPixelXYZTBDouble(x*2+1,y*2,z,t,b);
-									val+=images[d-1].getPixelXYZTBDouble(x*2,y*2+1,z,t,b);
-									val+=images[d-1].getPixelXYZTBDouble(x*2+1,y*2+1,z,t,b);
-									images[d].setPixelXYZTBDouble(x,y,z,t,b,val/4);
-									}
+				reduce(images[d-1],images[d],null);
 			}
 		}
+
+	/**
+	 * create an empty scale of the type of the base image
+	 * 
+	 * @param base the base image
+	 * @param xdim the horizontal dimension of the scale
+	 * @param ydim the vertical dimension of the scale
+	 * @return the scale
+	 */
+	static Image newScale(Image base, int xdim, int ydim) {
+		// check the nature of the image
+		if (base instanceof BooleanImage)
+			return new BooleanImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
+		else if (base instanceof ByteImage)
+			return new ByteImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
+		else if (base instanceof IntegerImage)
+			return new IntegerImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
+		else
+			return new DoubleImage(xdim,ydim,base.getZDim(),base.getTDim(),base.getBDim());
+	}
+
+	/**
+	 * compute a scale from the previous one by averaging 2x2 pixels, the rows
+	 * being computed in parallel
+	 * 
+	 * @param previous the previous scale
+	 * @param scale the scale to compute
+	 * @param owner thread whose interruption stops the computation, or null
+	 * @return false if the computation has been stopped
+	 */
+	static boolean reduce(Image previous, Image scale, Thread owner) {
+		TiledExecutor.getDefaultPool().invoke(new ScaleTask(previous,scale,owner,0,
+			scale.getZDim()*scale.getTDim()*scale.getYDim()));
+		return owner==null || !owner.isInterrupted();
+	}
+
+	/**
+	 * Computes the rows [from,to) of a scale from the previous one, the rows
+	 * of all the frames being numbered one after the other. The pixels are
+	 * addressed by long indexes, and the rows are skipped once the owner
+	 * thread is interrupted.
+	 */
+	private static class ScaleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final int ROWS_PER_TASK = 64;
+
+		private final Image previous, scale;
+
+		private final Thread owner;
+
+		private final int from, to;
+
+		ScaleTask(Image previous, Image scale, Thread owner, int from, int to) {
+			this.previous=previous;
+			this.scale=scale;
+			this.owner=owner;
+			this.from=from;
+			this.to=to;
+		}
+
+		protected void compute() {
+			if (owner!=null && owner.isInterrupted())
+				return;
+			if (to-from>ROWS_PER_TASK) {
+				int middle=(from+to)>>>1;
+				invokeAll(new ScaleTask(previous,scale,owner,from,middle),
+					new ScaleTask(previous,scale,owner,middle,to));
+				return;
+			}
+			int xdim=scale.getXDim(), ydim=scale.getYDim(), bdim=scale.getBDim();
+			int pxdim=previous.getXDim(), pydim=previous.getYDim();
+			long row=(long)pxdim*bdim;
+			for (int r=from;r<to;r++) {
+				int frame=r/ydim, y=r%ydim;
+				long p=(((long)frame*pydim+y*2)*pxdim)*bdim;
+				long o=(((long)frame*ydim+y)*xdim)*bdim;
+				for (int x=0;x<xdim;x++,p+=bdim)
+					for (int b=0;b<bdim;b++,p++,o++) {
+						double val=previous.getPixelDouble(p);
+						val+=previous.getPixelDouble(p+bdim);
+						val+=previous.getPixelDouble(p+row);
+						val+=previous.getPixelDouble(p+row+bdim);
+						scale.setPixelDouble(o,val/4);
+					}
+			}
+		}
+	}
 	
 	/**
 	 * 
@@ -0,0 +1,495 @@
+package fr.unistra.pelican.util.multiscale;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.PelicanImageToBufferedImage;
+
+/**
+ * Displays a large image by tiles taken from a {@link Pyramid} of the image,
+ * so that only the visible part of the image is converted, at the resolution
+ * of the display.
+ * <p>
+ * The scale drawn is the coarsest one whose pixels are not smaller than the
+ * pixels of the screen. Its tiles are converted to {@link BufferedImage} by
+ * background threads and kept in a cache, from which the least recently drawn
+ * tiles are removed. A tile which is not ready yet is replaced by a coarser
+ * tile of the cache, and the listeners are notified when it is ready so that
+ * the display is painted again.
+ * <p>
+ * The pyramid itself is built in the background too, by a thread of its own
+ * and only for the bands displayed: meanwhile, the tiles of the coarse scales
+ * are decimated from the image instead of being averaged. Only the first
+ * frame of the image is displayed.
+ *
+ * @author PELICAN team
+ */
+public class PyramidRenderer {
+
+	/**
+	 * Width and height of the tiles
+	 */
+	public static final int TILE_SIZE = 256;
+
+	/**
+	 * Default number of tiles in the cache, i.e. 64 MB
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	/**
+	 * Maximal width and height of the overview of the image
+	 */
+	private static final int OVERVIEW_SIZE = 512;
+
+	/**
+	 * Threads converting the tiles of all the renderers
+	 */
+	private static final ExecutorService executor = Executors.newFixedThreadPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "PyramidRenderer");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+
+	private final Image image;
+
+	/**
+	 * Number of scales displayed
+	 */
+	private final int depth;
+
+	/**
+	 * Scales of the pyramid of the bands displayed, null while they are built
+	 */
+	private volatile Image[] scales;
+
+	/**
+	 * Thread building the pyramid, null once it is built
+	 */
+	private Thread builder;
+
+	private volatile int[] bands;
+
+	/**
+	 * Incremented when the bands change, so that the tiles converted before
+	 * are ignored
+	 */
+	private volatile int generation;
+
+	private BufferedImage overview;
+
+	/**
+	 * Tiles in the order of their last use
+	 */
+	private final LinkedHashMap<Long, BufferedImage> cache;
+
+	/**
+	 * Tiles being converted
+	 */
+	private final Set<Long> pending = new HashSet<Long>();
+
+	/**
+	 * Tiles of the last painting, the other ones being no longer converted
+	 */
+	private volatile Set<Long> wanted = new HashSet<Long>();
+
+	private final List<ChangeListener> listeners = new ArrayList<ChangeListener>();
+
+	/**
+	 * Creates a renderer with a cache of the default size.
+	 *
+	 * @param image image to display
+	 * @param bands bands displayed, 1 for a grey level image or 3 for a colour composition
+	 */
+	public PyramidRenderer(Image image, int... bands) {
+		this(image, bands, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a renderer.
+	 *
+	 * @param image image to display
+	 * @param bands bands displayed, 1 for a grey level image or 3 for a colour composition
+	 * @param cacheSize maximal number of tiles kept
+	 */
+	public PyramidRenderer(final Image image, int[] bands, final int cacheSize) {
+		this.image = image;
+		this.bands = bands.clone();
+		// the pyramid needs images of at least 2^depth pixels
+		int d = 1;
+		while ((Math.max(image.getXDim(), image.getYDim()) >> (d - 1)) > TILE_SIZE
+				&& Math.min(image.getXDim(), image.getYDim()) >> (d + 1) > 0)
+			d++;
+		this.depth = d;
+		cache = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		synchronized (cache) {
+			build();
+		}
+	}
+
+	/**
+	 * Starts the build of the pyramid of the bands displayed, cancelling the
+	 * previous one. Called with the lock of the cache.
+	 */
+	private void build() {
+		if (builder != null)
+			builder.interrupt();
+		builder = null;
+		scales = null;
+		if (depth < 2)
+			return;
+		final int[] displayed = bands;
+		builder = new Thread("PyramidRenderer build") {
+			public void run() {
+				Image[] built = reduce(restrict(image, displayed), depth);
+				if (built == null)
+					return;
+				synchronized (cache) {
+					if (builder != Thread.currentThread())
+						return;
+					builder = null;
+					scales = built;
+					// the tiles decimated from the image are converted again
+					Iterator<Long> keys = cache.keySet().iterator();
+					while (keys.hasNext())
+						if (level(keys.next()) > 0)
+							keys.remove();
+				}
+				fireChangeEvent();
+			}
+		};
+		builder.setDaemon(true);
+		builder.setPriority(Thread.NORM_PRIORITY - 1);
+		builder.start();
+	}
+
+	/**
+	 * Gets the bands displayed of the first frame of an image, the image
+	 * itself if it has no other band nor frame.
+	 *
+	 * @return the image of the bands, or null if the thread is interrupted
+	 */
+	private static Image restrict(Image image, int[] bands) {
+		int xdim = image.getXDim(), ydim = image.getYDim(), bdim = image.getBDim();
+		boolean all = image.getZDim() == 1 && image.getTDim() == 1
+				&& bands.length == bdim;
+		for (int b = 0; b < bands.length && all; b++)
+			all = bands[b] == b;
+		if (all)
+			return image;
+		Image base = image.newInstance(xdim, ydim, 1, 1, bands.length);
+		long o = 0;
+		for (int y = 0; y < ydim; y++) {
+			if (Thread.currentThread().isInterrupted())
+				return null;
+			long p = (long) y * xdim * bdim;
+			for (int x = 0; x < xdim; x++, p += bdim)
+				for (int b = 0; b < bands.length; b++)
+					base.setPixelDouble(o++, image.getPixelDouble(p + bands[b]));
+		}
+		return base;
+	}
+
+	/**
+	 * Computes the scales of a pyramid, as {@link Pyramid} does, stopping as
+	 * soon as the thread is interrupted.
+	 *
+	 * @param base first scale, or null if its computation has been stopped
+	 * @param depth number of scales
+	 * @return the scales, or null if the thread is interrupted
+	 */
+	private static Image[] reduce(Image base, int depth) {
+		if (base == null)
+			return null;
+		Thread owner = Thread.currentThread();
+		Image[] scales = new Image[depth];
+		scales[0] = base;
+		for (int d = 1; d < depth; d++) {
+			if (owner.isInterrupted())
+				return null;
+			Image previous = scales[d - 1];
+			scales[d] = Pyramid.newScale(previous, previous.getXDim() / 2, previous
+					.getYDim() / 2);
+			if (!Pyramid.reduce(previous, scales[d], owner))
+				return null;
+		}
+		return scales;
+	}
+
+	/**
+	 * @return the image displayed
+	 */
+	public Image getImage() {
+		return image;
+	}
+
+	/**
+	 * @return the number of scales displayed
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Changes the bands displayed, which empties the cache and builds the
+	 * pyramid of the new bands.
+	 *
+	 * @param bands bands displayed, 1 for a grey level image or 3 for a colour composition
+	 */
+	public void setBands(int... bands) {
+		if (Arrays.equals(bands, this.bands))
+			return;
+		synchronized (cache) {
+			this.bands = bands.clone();
+			generation++;
+			cache.clear();
+			overview = null;
+			build();
+		}
+	}
+
+	/**
+	 * Stops the build of the pyramid and the conversion of the tiles, and
+	 * empties the cache, once the image is no longer displayed.
+	 */
+	public void dispose() {
+		wanted = new HashSet<Long>();
+		synchronized (cache) {
+			if (builder != null)
+				builder.interrupt();
+			builder = null;
+			scales = null;
+			generation++;
+			cache.clear();
+			overview = null;
+		}
+	}
+
+	/**
+	 * Gets a small image of the whole image, decimated from it.
+	 *
+	 * @return an image whose width and height are at most 512 pixels
+	 */
+	public BufferedImage getOverview() {
+		synchronized (cache) {
+			if (overview == null) {
+				int step = (Math.max(image.getXDim(), image.getYDim()) + OVERVIEW_SIZE - 1)
+						/ OVERVIEW_SIZE;
+				overview = PelicanImageToBufferedImage.convert(image, bands, 0, 0,
+						image.getXDim(), image.getYDim(), step);
+			}
+			return overview;
+		}
+	}
+
+	/**
+	 * Gets the scale displayed for a zoom factor.
+	 *
+	 * @param zoom zoom factor of the display
+	 * @return the coarsest scale whose pixels are not smaller than the screen pixels
+	 */
+	public int getLevel(double zoom) {
+		int level = 0;
+		while (level + 1 < depth && zoom * (1 << (level + 1)) <= 1)
+			level++;
+		return level;
+	}
+
+	/**
+	 * Paints the visible part of the image, and requests the conversion of
+	 * the missing tiles.
+	 *
+	 * @param g graphics of the display
+	 * @param zoom zoom factor of the display
+	 * @param shiftX abscissa of the origin of the image on the display
+	 * @param shiftY ordinate of the origin of the image on the display
+	 * @param width width of the display
+	 * @param height height of the display
+	 */
+	public void paint(Graphics g, double zoom, int shiftX, int shiftY,
+			int width, int height) {
+		int level = getLevel(zoom);
+		double scale = zoom * (1 << level);
+		int xTiles = tiles(image.getXDim() >> level);
+		int yTiles = tiles(image.getYDim() >> level);
+		int tx0 = Math.max(0, (int) Math.floor(-shiftX / scale / TILE_SIZE));
+		int ty0 = Math.max(0, (int) Math.floor(-shiftY / scale / TILE_SIZE));
+		int tx1 = Math.min(xTiles - 1, (int) Math.floor((width - shiftX) / scale
+				/ TILE_SIZE));
+		int ty1 = Math.min(yTiles - 1, (int) Math.floor((height - shiftY) / scale
+				/ TILE_SIZE));
+
+		int current = generation;
+		Set<Long> visible = new HashSet<Long>();
+		List<Long> missing = new ArrayList<Long>();
+		for (int ty = ty0; ty <= ty1; ty++)
+			for (int tx = tx0; tx <= tx1; tx++) {
+				long key = key(current, level, tx, ty);
+				visible.add(key);
+				BufferedImage tile;
+				synchronized (cache) {
+					tile = cache.get(key);
+				}
+				if (tile != null) {
+					draw(g, tile, zoom, shiftX, shiftY, level, tx, ty);
+					continue;
+				}
+				missing.add(key);
+				// a coarser tile covering this one while it is converted
+				int x0 = screen(tx * TILE_SIZE, level, zoom, shiftX);
+				int y0 = screen(ty * TILE_SIZE, level, zoom, shiftY);
+				int x1 = screen((tx + 1) * TILE_SIZE, level, zoom, shiftX);
+				int y1 = screen((ty + 1) * TILE_SIZE, level, zoom, shiftY);
+				for (int l = level + 1; l < depth; l++) {
+					int ptx = tx >> (l - level), pty = ty >> (l - level);
+					synchronized (cache) {
+						tile = cache.get(key(current, l, ptx, pty));
+					}
+					if (tile != null) {
+						Graphics clip = g.create();
+						clip.clipRect(x0, y0, x1 - x0, y1 - y0);
+						draw(clip, tile, zoom, shiftX, shiftY, l, ptx, pty);
+						clip.dispose();
+						break;
+					}
+				}
+			}
+		wanted = visible;
+		for (long key : missing)
+			request(key);
+	}
+
+	private static int tiles(int size) {
+		return (size + TILE_SIZE - 1) / TILE_SIZE;
+	}
+
+	private static long key(int generation, int level, int tx, int ty) {
+		return ((long) (generation & 0xfff) << 52) | ((long) level << 44)
+				| ((long) ty << 22) | tx;
+	}
+
+	private static int level(long key) {
+		return (int) (key >>> 44) & 0xff;
+	}
+
+	/**
+	 * Position on the display of a coordinate of a scale
+	 */
+	private static int screen(int coordinate, int level, double zoom, int shift) {
+		return shift + (int) Math.round((double) coordinate * (1 << level) * zoom);
+	}
+
+	private static void draw(Graphics g, BufferedImage tile, double zoom,
+			int shiftX, int shiftY, int level, int tx, int ty) {
+		int x = tx * TILE_SIZE, y = ty * TILE_SIZE;
+		int w = tile.getWidth(), h = tile.getHeight();
+		g.drawImage(tile, screen(x, level, zoom, shiftX), screen(y, level, zoom,
+				shiftY), screen(x + w, level, zoom, shiftX), screen(y + h, level,
+				zoom, shiftY), 0, 0, w, h, null);
+	}
+
+	private void request(final long key) {
+		synchronized (pending) {
+			if (!pending.add(key))
+				return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					if (!wanted.contains(key))
+						return;
+					Image[] source = scales;
+					BufferedImage tile = getTile(source, key);
+					synchronized (cache) {
+						if ((generation & 0xfff) == (int) (key >>> 52)) {
+							// decimated tiles are not kept once the pyramid is ready
+							if (source != null || scales == null || level(key) == 0)
+								cache.put(key, tile);
+						}
+					}
+				} finally {
+					synchronized (pending) {
+						pending.remove(key);
+					}
+				}
+				fireChangeEvent();
+			}
+		});
+	}
+
+	/**
+	 * Converts a tile, from its scale of the pyramid if available or else
+	 * from the image, the scales of the pyramid having only the bands
+	 * displayed
+	 */
+	private BufferedImage getTile(Image[] source, long key) {
+		int level = level(key);
+		int tx = (int) key & 0x3fffff;
+		int ty = (int) (key >>> 22) & 0x3fffff;
+		Image scale = level == 0 ? image : source != null
+				&& level < source.length ? source[level] : null;
+		int[] displayed = bands;
+		if (level > 0 && scale != null) {
+			displayed = new int[scale.getBDim()];
+			for (int b = 0; b < displayed.length; b++)
+				displayed[b] = b;
+		}
+		int step = scale != null ? 1 : 1 << level;
+		int xdim = image.getXDim() >> level, ydim = image.getYDim() >> level;
+		int w = Math.min(TILE_SIZE, xdim - tx * TILE_SIZE);
+		int h = Math.min(TILE_SIZE, ydim - ty * TILE_SIZE);
+		return PelicanImageToBufferedImage.convert(scale != null ? scale : image,
+				displayed, tx * TILE_SIZE * step, ty * TILE_SIZE * step, w * step, h
+						* step, step);
+	}
+
+	public void addChangeListener(ChangeListener cl) {
+		synchronized (listeners) {
+			listeners.add(cl);
+		}
+	}
+
+	public void removeChangeListener(ChangeListener cl) {
+		synchronized (listeners) {
+			listeners.remove(cl);
+		}
+	}
+
+	/**
+	 * Notifies the listeners, from the thread which converted a tile
+	 */
+	private void fireChangeEvent() {
+		ChangeEvent e = new ChangeEvent(this);
+		List<ChangeListener> copy;
+		synchronized (listeners) {
+			copy = new ArrayList<ChangeListener>(listeners);
+		}
+		for (ChangeListener cl : copy)
+			cl.stateChanged(e);
+	}
+}
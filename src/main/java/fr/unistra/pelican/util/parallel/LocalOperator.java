@@ -0,0 +1,28 @@
+package fr.unistra.pelican.util.parallel;
+
+/**
+ * Interface for algorithms whose output pixel at (x,y) only depends on the
+ * input pixels lying in a bounded window around (x,y).
+ * <p>
+ * Such algorithms can be run independently on overlapping tiles of the input
+ * image by the {@link TiledExecutor}: each tile is enlarged by a halo of the
+ * declared radius so that the pixels kept from the tile see exactly the same
+ * neighbourhood as they would in the whole image.
+ * <p>
+ * The radius is queried once the parameters of the algorithm have been set
+ * (through <code>setInput</code>), so it may depend on the structuring element
+ * or kernel given as parameter.
+ *
+ * @author PELICAN team
+ */
+public interface LocalOperator {
+
+	/**
+	 * Gets the extent of the neighbourhood read around each output pixel.
+	 *
+	 * @return an array {rx,ry} giving the maximal horizontal and vertical
+	 *         distance between an output pixel and the input pixels it
+	 *         depends on
+	 */
+	public int[] getNeighbourhoodRadius();
+}
@@ -0,0 +1,359 @@
+package fr.unistra.pelican.util.parallel;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.RawPixels;
+
+/**
+ * Runs a {@link LocalOperator} algorithm in parallel on overlapping XY tiles
+ * of its input image and stitches the tile results back into a single output.
+ * <p>
+ * The first parameter given to {@link #process(Algorithm, Object...)} is the
+ * image to be split. Every other image parameter having the same X, Y, Z and T
+ * dimensions (e.g. a computation mask) is split the same way, all remaining
+ * parameters (structuring elements, kernels, options) are shared by the tiles.
+ * Each tile is enlarged by a halo of the radius declared by the algorithm and
+ * processed by a fresh instance of the algorithm class, so the result is the
+ * same as a sequential call of <code>algorithm.process(parameters)</code>.
+ * <p>
+ * Algorithms which are not {@link LocalOperator}s, masked images, and images
+ * fitting in a single tile are processed sequentially.
+ * <p>
+ * Usage: <code>Image output = (Image) TiledExecutor.exec(new GrayErosion(), input, se);</code>
+ *
+ * @author PELICAN team
+ */
+public class TiledExecutor {
+
+	/**
+	 * Default width and height of the tiles (halo excluded)
+	 */
+	public static final int DEFAULT_TILE_SIZE = 512;
+
+	/**
+	 * Pool shared by the executors built without an explicit pool
+	 */
+	private static ForkJoinPool defaultPool = null;
+
+	/**
+	 * Pool running the tiles
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Width and height of the tiles (halo excluded)
+	 */
+	private final int tileSize;
+
+	/**
+	 * Constructs an executor with the default tile size, running on a pool
+	 * with as many threads as available processors.
+	 */
+	public TiledExecutor() {
+		this(DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Constructs an executor running on a pool with as many threads as
+	 * available processors.
+	 *
+	 * @param tileSize
+	 *            width and height of the tiles (halo excluded)
+	 */
+	public TiledExecutor(int tileSize) {
+		this(tileSize, getDefaultPool());
+	}
+
+	/**
+	 * Constructs an executor
+	 *
+	 * @param tileSize
+	 *            width and height of the tiles (halo excluded)
+	 * @param pool
+	 *            pool running the tiles
+	 */
+	public TiledExecutor(int tileSize, ForkJoinPool pool) {
+		if (tileSize < 1)
+			throw new AlgorithmException("Tile size must be positive: " + tileSize);
+		this.tileSize = tileSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets the pool shared by the executors built without an explicit pool.
+	 *
+	 * @return the shared pool
+	 */
+	public static synchronized ForkJoinPool getDefaultPool() {
+		if (defaultPool == null)
+			defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return defaultPool;
+	}
+
+	/**
+	 * Runs the algorithm on tiles of its first parameter with the default
+	 * executor.
+	 *
+	 * @param algorithm
+	 *            algorithm to run, used as a prototype for the tiles
+	 * @param parameters
+	 *            parameters of the algorithm, the first one being the image to
+	 *            be split
+	 * @return the first output of the algorithm
+	 */
+	public static Object exec(Algorithm algorithm, Object... parameters) {
+		return new TiledExecutor().process(algorithm, parameters);
+	}
+
+	/**
+	 * Runs the algorithm on tiles of its first parameter.
+	 *
+	 * @param algorithm
+	 *            algorithm to run, used as a prototype for the tiles
+	 * @param parameters
+	 *            parameters of the algorithm, the first one being the image to
+	 *            be split
+	 * @return the first output of the algorithm
+	 */
+	public Object process(Algorithm algorithm, Object... parameters) {
+		if (!(algorithm instanceof LocalOperator) || parameters.length == 0
+				|| !(parameters[0] instanceof Image))
+			return algorithm.process(parameters);
+		Image input = (Image) parameters[0];
+		if (input.getMask() != null && !input.getMask().isEmpty())
+			return algorithm.process(parameters);
+		if (input.getXDim() <= tileSize && input.getYDim() <= tileSize)
+			return algorithm.process(parameters);
+
+		// the radius may depend on the parameters, so set them first
+		ArrayList<Object> inputList = new ArrayList<Object>();
+		for (Object o : parameters)
+			inputList.add(o);
+		algorithm.setInput(inputList);
+		int[] radius = ((LocalOperator) algorithm).getNeighbourhoodRadius();
+		if (2 * radius[0] >= tileSize || 2 * radius[1] >= tileSize)
+			return algorithm.process(parameters);
+
+		final Stitcher stitcher = new Stitcher(input);
+		final ArrayList<TileTask> tasks = new ArrayList<TileTask>();
+		for (int y = 0; y < input.getYDim(); y += tileSize)
+			for (int x = 0; x < input.getXDim(); x += tileSize)
+				tasks.add(new TileTask(algorithm.getClass(), parameters, stitcher,
+						x, y, Math.min(x + tileSize, input.getXDim()), Math.min(
+								y + tileSize, input.getYDim()), radius[0], radius[1]));
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return stitcher.output;
+	}
+
+	/**
+	 * Checks if two images have the same X, Y, Z and T dimensions
+	 */
+	private static boolean haveSameDimensionsXYZT(Image im1, Image im2) {
+		return im1.getXDim() == im2.getXDim() && im1.getYDim() == im2.getYDim()
+				&& im1.getZDim() == im2.getZDim() && im1.getTDim() == im2.getTDim();
+	}
+
+	/**
+	 * Extracts the given XY window of an image, over all Z, T and B.
+	 *
+	 * @param image
+	 *            image to crop
+	 * @param x
+	 *            left coordinate of the window
+	 * @param y
+	 *            top coordinate of the window
+	 * @param w
+	 *            width of the window
+	 * @param h
+	 *            height of the window
+	 * @return an image of the same type containing the window
+	 */
+	public static Image crop(Image image, int x, int y, int w, int h) {
+		Image result = image.newInstance(w, h, image.getZDim(), image.getTDim(),
+				image.getBDim());
+		result.copyAttributes(image);
+		copyRegion(image, x, y, result, 0, 0, w, h);
+		return result;
+	}
+
+	/**
+	 * Copies a XY window of an image into another image of the same type, Z, T
+	 * and B dimensions.
+	 *
+	 * @param src
+	 *            source image
+	 * @param sx
+	 *            left coordinate of the window in the source image
+	 * @param sy
+	 *            top coordinate of the window in the source image
+	 * @param dst
+	 *            destination image
+	 * @param dx
+	 *            left coordinate of the window in the destination image
+	 * @param dy
+	 *            top coordinate of the window in the destination image
+	 * @param w
+	 *            width of the window
+	 * @param h
+	 *            height of the window
+	 */
+	public static void copyRegion(Image src, int sx, int sy, Image dst, int dx,
+			int dy, int w, int h) {
+		// rows are contiguous in the b-x-y-z-t layout
+		int length = w * src.getBDim();
+		Object srcPixels = null;
+		Object dstPixels = null;
+		if (src.getClass() == dst.getClass() && RawPixels.hasRawPixels(src)) {
+			srcPixels = getPixelArray(src);
+			dstPixels = getPixelArray(dst);
+		}
+		for (int t = 0; t < src.getTDim(); t++)
+			for (int z = 0; z < src.getZDim(); z++)
+				for (int y = 0; y < h; y++) {
+					int s = src.getLinearIndexXYZT_(sx, sy + y, z, t);
+					int d = dst.getLinearIndexXYZT_(dx, dy + y, z, t);
+					if (srcPixels != null)
+						System.arraycopy(srcPixels, s, dstPixels, d, length);
+					else if (src instanceof IntegerImage)
+						for (int i = 0; i < length; i++)
+							dst.setPixelInt(d + i, src.getPixelInt(s + i));
+					else if (src instanceof BooleanImage)
+						for (int i = 0; i < length; i++)
+							dst.setPixelBoolean(d + i, src.getPixelBoolean(s + i));
+					else
+						for (int i = 0; i < length; i++)
+							dst.setPixelDouble(d + i, src.getPixelDouble(s + i));
+				}
+	}
+
+	/**
+	 * Gets the pixel array of an image kept in memory.
+	 */
+	private static Object getPixelArray(Image image) {
+		if (image instanceof ByteImage)
+			return ((ByteImage) image).getPixelsUnsafe();
+		if (image instanceof IntegerImage)
+			return ((IntegerImage) image).getPixelsUnsafe();
+		if (image instanceof DoubleImage)
+			return ((DoubleImage) image).getPixelsUnsafe();
+		return ((BooleanImage) image).getPixelsUnsafe();
+	}
+
+	/**
+	 * Holds the output image, which is only known once a first tile has been
+	 * processed.
+	 */
+	private static class Stitcher {
+
+		private final Image input;
+
+		private volatile Image output = null;
+
+		Stitcher(Image input) {
+			this.input = input;
+		}
+
+		/**
+		 * Copies the interior of a tile result into the output image.
+		 */
+		void stitch(Image tileResult, int ox, int oy, int x, int y, int w, int h) {
+			Image out = output;
+			if (out == null)
+				synchronized (this) {
+					if (output == null) {
+						Image o = tileResult.newInstance(input.getXDim(), input
+								.getYDim(), input.getZDim(), input.getTDim(),
+								tileResult.getBDim());
+						o.copyAttributes(tileResult);
+						output = o;
+					}
+					out = output;
+				}
+			if (out.getClass() != tileResult.getClass()
+					|| out.getBDim() != tileResult.getBDim())
+				throw new AlgorithmException("Tiles produced inconsistent outputs: "
+						+ tileResult.getClass().getName() + " instead of "
+						+ out.getClass().getName());
+			copyRegion(tileResult, ox, oy, out, x, y, w, h);
+		}
+	}
+
+	/**
+	 * Processes a single tile: crops it with its halo, runs a new instance of
+	 * the algorithm on it and stitches back its interior.
+	 */
+	private static class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Class<? extends Algorithm> algorithmClass;
+
+		private final Object[] parameters;
+
+		private final Stitcher stitcher;
+
+		private final int x0, y0, x1, y1, rx, ry;
+
+		TileTask(Class<? extends Algorithm> algorithmClass, Object[] parameters,
+				Stitcher stitcher, int x0, int y0, int x1, int y1, int rx, int ry) {
+			this.algorithmClass = algorithmClass;
+			this.parameters = parameters;
+			this.stitcher = stitcher;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.rx = rx;
+			this.ry = ry;
+		}
+
+		protected void compute() {
+			Image input = (Image) parameters[0];
+			int hx0 = Math.max(0, x0 - rx);
+			int hy0 = Math.max(0, y0 - ry);
+			int hx1 = Math.min(input.getXDim(), x1 + rx);
+			int hy1 = Math.min(input.getYDim(), y1 + ry);
+
+			Object[] tileParameters = parameters.clone();
+			for (int i = 0; i < parameters.length; i++)
+				if (parameters[i] instanceof Image
+						&& haveSameDimensionsXYZT(input, (Image) parameters[i]))
+					tileParameters[i] = crop((Image) parameters[i], hx0, hy0, hx1
+							- hx0, hy1 - hy0);
+
+			Algorithm algorithm;
+			try {
+				algorithm = algorithmClass.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new AlgorithmException("Unable to instantiate "
+						+ algorithmClass.getName(), e);
+			}
+			Object result = algorithm.process(tileParameters);
+			if (!(result instanceof Image))
+				throw new AlgorithmException(algorithmClass.getName()
+						+ " did not produce an image");
+			Image tileResult = (Image) result;
+			if (tileResult.getXDim() != hx1 - hx0 || tileResult.getYDim() != hy1 - hy0
+					|| tileResult.getZDim() != input.getZDim()
+					|| tileResult.getTDim() != input.getTDim())
+				throw new AlgorithmException(algorithmClass.getName()
+						+ " changed the dimensions of the tile");
+			stitcher.stitch(tileResult, x0 - hx0, y0 - hy0, x0, y0, x1 - x0, y1 - y0);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package fr.unistra.pelican.util.remotesensing;
+
+import java.io.File;
+
+import fr.unistra.pelican.Image;
+
+
+/**
+ * Loads an image (in BIP format) into an Image
+ * @author Clément Hengy
+ */
+public final class BIPReader extends BinReader {
+
+	public BIPReader(HdrReader h, String p){
+		this.hr = h;
+		this.path = new File(p).getAbsoluteFile();
+	}
+
+	protected String[] getExtensions() {
+		return new String[] { ".img", ".IMG", ".bip", ".BIP" };
+	}
+
+	public Image getPelicanImage() throws Throwable {
+		return getPelicanImage(0, 0, hr.getCols(), hr.getLines(), null, 1);
+	}
+
+	public Image getPelicanImage(int sx, int sy, int ex, int ey) throws Throwable {
+		return getPelicanImage(sx, sy, ex-sx+1, ey-sy+1, null, 1);
+	}
+
+}
@@ -1,45 +1,258 @@
 package fr.unistra.pelican.util.remotesensing;
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.PelicanException;
 
 
 /**
  * You have to extend this abstract class in order to read binary files.
  * For example, BSQReader extends BinReader and overrides getPelicanImage().
- * If you have nothing to do, you should write BIPReader.
- * 
+ *
+ * The windowed read {@link #getPelicanImage(int, int, int, int, int[], int)}
+ * works for the BSQ, BIL and BIP layouts: it reads only the byte ranges
+ * holding the requested pixels, so that a small window of a large file is
+ * loaded quickly.
+ *
  * @author Clément Hengy
  */
 public abstract class BinReader {
-	
+
 	public HdrReader hr;
 	public File path;
 	public Image img;
-	
+
 	/**
 	 * This function reads the binary file according to its construction.
 	 * After that, it call setProperties to set up all the properties.
 	 * To finish, it returns the fr.unistra.pelican.Image.
-	 * 
+	 *
 	 * @return the fr.unistra.pelican.Image, built according to the binary file or null if an error occured during the building.
 	 */
 	public abstract Image getPelicanImage()  throws Throwable;
-	
+
 	/**
 	 * This function reads a portion of the binary file according to its construction.
 	 * After that, it call setProperties to set up all the properties.
 	 * To finish, it returns the fr.unistra.pelican.Image.
-	 * 
+	 *
 	 * @return the fr.unistra.pelican.Image, built according to the binary file or null if an error occured during the building.
-	 * @throws Throwable 
+	 * @throws Throwable
 	 */
 	public abstract Image getPelicanImage(int sx, int sy, int ex, int ey) throws Throwable;
-	
+
+	/**
+	 * Gets the extensions of the binary file, after the name of the header
+	 * file without ".hdr". The name without extension is also tried.
+	 *
+	 * @return the extensions, with their dot
+	 */
+	protected String[] getExtensions() {
+		return new String[] { ".img", ".IMG" };
+	}
+
+	/**
+	 * Indicates whether the unsigned 16 bits values (data type 12) are 11 bits
+	 * fixed point values, read as doubles. Otherwise they are read as
+	 * integers.
+	 *
+	 * @return false by default
+	 */
+	protected boolean isFixedPoint11() {
+		return false;
+	}
+
+	/**
+	 * Finds the binary file associated to the header file.
+	 *
+	 * @return the binary file, or null if it is not found
+	 */
+	protected File getBinaryFile() {
+		String hdrPathRadical = this.path.getName().substring(0, this.path.getName().length()-4);
+		File[] subFiles = this.path.getParentFile().listFiles();
+		for(int i = 0; i < subFiles.length; ++i){
+			String fileName = subFiles[i].getName();
+			if(fileName.equals(hdrPathRadical))
+				return subFiles[i];
+			for(String extension : getExtensions())
+				if(fileName.endsWith(hdrPathRadical + extension))
+					return subFiles[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Computes the position in the binary file of a value.
+	 *
+	 * @param x
+	 *            column of the pixel
+	 * @param y
+	 *            line of the pixel
+	 * @param b
+	 *            band of the value
+	 * @return the position of the first byte of the value
+	 */
+	private long position(int x, int y, int b) {
+		long cols = hr.getCols();
+		long lines = hr.getLines();
+		long bands = hr.getBands();
+		long index;
+		switch(hr.getFileType()){
+			case HdrReader.FORMAT_BSQ:
+				index = (b * lines + y) * cols + x;
+				break;
+			case HdrReader.FORMAT_BIL:
+				index = (y * bands + b) * cols + x;
+				break;
+			default:
+				index = (y * cols + x) * bands + b;
+		}
+		return index * hr.getBytesNumber();
+	}
+
+	/**
+	 * Reads a window of some bands of the binary file. Only the byte ranges
+	 * holding these pixels are read, with positioned reads: a line of the
+	 * window for each band in the BSQ and BIL layouts, a line of the window
+	 * for all the bands in the BIP layout.
+	 *
+	 * @param x
+	 *            first column of the window
+	 * @param y
+	 *            first line of the window
+	 * @param w
+	 *            width of the window
+	 * @param h
+	 *            height of the window
+	 * @param bands
+	 *            bands to read, in the order of the bands of the image, or
+	 *            null to read all of them
+	 * @param step
+	 *            decimation factor: one column and one line out of step are
+	 *            read
+	 * @return the image, of size ceil(w/step) x ceil(h/step) with a band for
+	 *         each read band
+	 * @throws IOException
+	 *             if the binary file can not be read
+	 */
+	public Image getPelicanImage(int x, int y, int w, int h, int[] bands, int step) throws IOException {
+		if(bands == null){
+			bands = new int[hr.getBands()];
+			for(int b = 0; b < bands.length; ++b)
+				bands[b] = b;
+		}
+		if(x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > hr.getCols() || y + h > hr.getLines())
+			throw new PelicanException("Window (" + x + "," + y + "," + w + "," + h
+					+ ") outside of the " + hr.getCols() + "x" + hr.getLines() + " image");
+		if(step < 1)
+			throw new PelicanException("Decimation factor must be positive: " + step);
+		for(int b : bands)
+			if(b < 0 || b >= hr.getBands())
+				throw new PelicanException("No band " + b + " in the image");
+		File binaryFile = getBinaryFile();
+		if(null == binaryFile)
+			throw new PelicanException("Unable to find the binary file associated to " + path);
+
+		int ow = (w + step - 1) / step;
+		int oh = (h + step - 1) / step;
+		int ob = bands.length;
+		int bytesNumber = hr.getBytesNumber();
+		int dataType = hr.getDataType();
+		switch(dataType){
+			case 1:
+				img = new ByteImage(ow, oh, 1, 1, ob);
+				break;
+			case 2:
+			case 3:
+				img = new IntegerImage(ow, oh, 1, 1, ob);
+				break;
+			case 4:
+			case 5:
+				img = new DoubleImage(ow, oh, 1, 1, ob);
+				break;
+			case 12:
+				img = isFixedPoint11() ? new DoubleImage(ow, oh, 1, 1, ob) : new IntegerImage(ow, oh, 1, 1, ob);
+				break;
+			default:
+				throw new PelicanException("Unsupported data type: " + dataType);
+		}
+
+		boolean interleaved = hr.getFileType() == HdrReader.FORMAT_BIP;
+		// a run holds the values of a line of the window, for all the bands when interleaved
+		int runValues = interleaved ? w * hr.getBands() : w;
+		ByteBuffer run = ByteBuffer.allocate(runValues * bytesNumber);
+		run.order(hr.getByteOrder() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		FileInputStream fis = new FileInputStream(binaryFile);
+		try{
+			FileChannel channel = fis.getChannel();
+			for(int j = 0; j < oh; ++j){
+				int line = y + j * step;
+				for(int k = 0; k < (interleaved ? 1 : ob); ++k){
+					run.clear();
+					long position = position(x, line, interleaved ? 0 : bands[k]);
+					while(run.hasRemaining()){
+						int n = channel.read(run, position + run.position());
+						if(n < 0)
+							throw new EOFException("Binary file too short: " + binaryFile);
+					}
+					for(int kk = interleaved ? 0 : k; kk < (interleaved ? ob : k + 1); ++kk)
+						for(int i = 0; i < ow; ++i){
+							int value = interleaved ? i * step * hr.getBands() + bands[kk] : i * step;
+							setValue(run, value * bytesNumber, dataType, kk + ob * (i + ow * j));
+						}
+				}
+			}
+		}
+		finally{
+			fis.close();
+		}
+
+		setProperties(x, y, bands, step);
+		return img;
+	}
+
+	/**
+	 * Converts a value of the binary file into a pixel value of img.
+	 */
+	private void setValue(ByteBuffer run, int position, int dataType, int loc) {
+		switch(dataType){
+			case 1:
+				img.setPixelByte(loc, run.get(position) & 0xff);
+				break;
+			case 2:
+				img.setPixelInt(loc, run.getShort(position));
+				break;
+			case 3:
+				img.setPixelInt(loc, run.getInt(position));
+				break;
+			case 4:
+				img.setPixelDouble(loc, run.getFloat(position));
+				break;
+			case 5:
+				img.setPixelDouble(loc, run.getDouble(position));
+				break;
+			default:
+				// case 12 => pixel 16 bits mais seulement 11 bits de codé
+				if(isFixedPoint11())
+					img.setPixelDouble(loc, run.getShort(position) / 2048.);
+				else
+					img.setPixelInt(loc, run.getChar(position));
+		}
+	}
+
 	public void setProperties(){
 		int i = 0;
-		
+
 		img.setProperty(HdrReader.DESCRIPION_ENVI, hr.getDescription());
 		img.setProperty(HdrReader.SAMPLE_ENVI, hr.getCols());
 		img.setProperty(HdrReader.LINES_ENVI, hr.getLines());
@@ -52,6 +265,36 @@ public abstract class BinReader {
 		if(0 != hr.getWavelength().length)
 			for(double wave : hr.getWavelength())
 				img.setProperty(HdrReader.WAVELENGTH_ENVI+(i++), wave);
-		
+
+	}
+
+	/**
+	 * Sets up the properties of a window of the image: its size, position,
+	 * resolution and the wavelengths of its bands.
+	 *
+	 * @param x
+	 *            first column of the window
+	 * @param y
+	 *            first line of the window
+	 * @param bands
+	 *            bands of the window
+	 * @param step
+	 *            decimation factor
+	 */
+	protected void setProperties(int x, int y, int[] bands, int step){
+		img.setProperty(HdrReader.DESCRIPION_ENVI, hr.getDescription());
+		img.setProperty(HdrReader.SAMPLE_ENVI, img.getXDim());
+		img.setProperty(HdrReader.LINES_ENVI, img.getYDim());
+		img.setProperty(HdrReader.X_START_ENVI, hr.getXStart() + x);
+		img.setProperty(HdrReader.Y_START_ENVI, hr.getYStart() + y);
+		img.setProperty(HdrReader.BYTE_NUMBER, hr.getBytesNumber());
+		img.setProperty(HdrReader.HEADER_PATH, hr.getHeaderPath());
+		img.setProperty(HdrReader.RESOLUTIONX, hr.getResolutionX() * step);
+		img.setProperty(HdrReader.RESOLUTIONY, hr.getResolutionY() * step);
+		Double[] wavelength = hr.getWavelength();
+		if(0 != wavelength.length)
+			for(int i = 0; i < bands.length; ++i)
+				if(bands[i] < wavelength.length)
+					img.setProperty(HdrReader.WAVELENGTH_ENVI+i, wavelength[bands[i]]);
 	}
 }
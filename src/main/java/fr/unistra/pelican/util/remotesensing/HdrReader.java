@@ -151,7 +151,7 @@ public final class HdrReader {
 	 */
 	private int dataType;
 	
-	/** This field can take the values HdrReader.FORMAT_BSQ, HdrReader.FORMAT_BIL or HdrReader.FORMAT_BSQ. */
+	/** This field can take the values HdrReader.FORMAT_BSQ, HdrReader.FORMAT_BIL or HdrReader.FORMAT_BIP. */
 	private int fileType;
 	
 	/** True if the values are stored in big-endian (Most Significant Byte First), False otherwise. */
@@ -207,20 +207,8 @@ public final class HdrReader {
 	 * @return the fr.unistra.pelican Image generated  
 	 */
 	public Image getPelicanImage(String path){
-		this.readHeader(path);
-		switch(this.fileType){
-			case HdrReader.FORMAT_BSQ:
-				br = new BSQReader(this, path);
-				break;
-			case HdrReader.FORMAT_BIL:
-				br = new BILReader(this, path);
-				break;
-			default:
-				System.err.println("getPelicanImage(String) : the asked format is currently not supported");
-				return null;
-		}
-		
-		headerPath = path;
+		if(!this.openBinReader(path))
+			return null;
 		try{
 			return br.getPelicanImage();
 		}catch(Throwable t) {
@@ -234,6 +222,49 @@ public final class HdrReader {
 	 * @return the fr.unistra.pelican Image generated  
 	 */
 	public Image getPelicanImage(String path, int sx, int sy, int ex, int ey){
+		if(!this.openBinReader(path))
+			return null;
+		try{
+			return br.getPelicanImage(sx, sy, ex, ey);
+		}catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+	
+	/**
+	 * Reads a window of some bands of the image, subsampled by a decimation
+	 * factor. Only the needed parts of the binary file are read.
+	 * 
+	 * @param path	path of the header file
+	 * @param x	first column of the window
+	 * @param y	first line of the window
+	 * @param w	width of the window, or -1 to read up to the last column
+	 * @param h	height of the window, or -1 to read up to the last line
+	 * @param bands	bands to read, or null to read all of them
+	 * @param step	decimation factor, 1 to read every pixel of the window
+	 * @return the fr.unistra.pelican Image generated  
+	 */
+	public Image getPelicanImage(String path, int x, int y, int w, int h, int[] bands, int step){
+		if(!this.openBinReader(path))
+			return null;
+		if(w < 0)
+			w = this.cols - x;
+		if(h < 0)
+			h = this.lines - y;
+		try{
+			return br.getPelicanImage(x, y, w, h, bands, step);
+		}catch(IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Reads the header file and creates the BinReader suited to its format.
+	 * 
+	 * @param path	path of the header file
+	 * @return false if the format is not supported
+	 */
+	private boolean openBinReader(String path){
 		this.readHeader(path);
 		switch(this.fileType){
 			case HdrReader.FORMAT_BSQ:
@@ -242,17 +273,16 @@ public final class HdrReader {
 			case HdrReader.FORMAT_BIL:
 				br = new BILReader(this, path);
 				break;
+			case HdrReader.FORMAT_BIP:
+				br = new BIPReader(this, path);
+				break;
 			default:
 				System.err.println("getPelicanImage(String) : the asked format is currently not supported");
-				return null;
+				return false;
 		}
 		
 		headerPath = path;
-		try{
-			return br.getPelicanImage(sx, sy, ex, ey);
-		}catch(Throwable t) {
-			throw new RuntimeException(t);
-		}
+		return true;
 	}
 	
 	/**
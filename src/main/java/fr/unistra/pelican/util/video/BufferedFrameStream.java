@@ -0,0 +1,153 @@
+package fr.unistra.pelican.util.video;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.PelicanException;
+
+/**
+ * Stream of frames decoded by a background thread. The decoded frames wait
+ * in a bounded ring buffer: the decoder is blocked when the buffer is full,
+ * so the memory used does not depend on the length of the video, and the
+ * decoding overlaps with the processing of the frames.
+ *
+ * Subclasses implement {@link #decode()}, which hands each frame to
+ * {@link #push(Image)}. The decoder is started by the first call to
+ * hasNext(). An exception thrown by the decoder is rethrown to the consumer
+ * after the frames decoded before it.
+ *
+ * @author PELICAN team
+ */
+public abstract class BufferedFrameStream extends FrameStream {
+
+	/**
+	 * Default number of frames decoded in advance
+	 */
+	public static final int DEFAULT_CAPACITY = 8;
+
+	/**
+	 * Marks the end of the frames in the buffer
+	 */
+	private static final Object END = new Object();
+
+	private final ArrayBlockingQueue<Object> buffer;
+
+	private Thread decoder = null;
+
+	private volatile boolean closed = false;
+
+	private volatile Throwable error = null;
+
+	/**
+	 * Element taken from the buffer and not returned yet
+	 */
+	private Object head = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param color
+	 *            true if the frames are color images
+	 * @param capacity
+	 *            number of frames decoded in advance
+	 */
+	protected BufferedFrameStream(boolean color, int capacity) {
+		super(color);
+		buffer = new ArrayBlockingQueue<Object>(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Decodes the frames and hands them to push(), in the decoding thread.
+	 * Should return as soon as push() returns false.
+	 */
+	protected abstract void decode() throws Exception;
+
+	/**
+	 * Adds a decoded frame to the buffer, waiting while it is full.
+	 *
+	 * @param frame
+	 *            the frame
+	 * @return false if the stream was closed or the decoding thread
+	 *         interrupted, and the decoding should stop
+	 */
+	protected final boolean push(Image frame) {
+		try {
+			while (!closed)
+				if (buffer.offer(frame, 100, TimeUnit.MILLISECONDS))
+					return true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	private synchronized void start() {
+		if (decoder != null)
+			return;
+		decoder = new Thread(new Runnable() {
+			public void run() {
+				try {
+					decode();
+				} catch (Throwable ex) {
+					error = ex;
+				}
+				// an interrupted decoder still ends the stream for the consumer,
+				// which gets the interruption as an error
+				boolean interrupted = Thread.interrupted();
+				if (interrupted && !closed && error == null)
+					error = new InterruptedException("Frame decoder interrupted");
+				try {
+					while (!closed)
+						if (buffer.offer(END, 100, TimeUnit.MILLISECONDS))
+							break;
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+				if (interrupted)
+					Thread.currentThread().interrupt();
+			}
+		}, "Pelican frame decoder");
+		decoder.setDaemon(true);
+		decoder.start();
+	}
+
+	public boolean hasNext() {
+		if (closed)
+			return false;
+		if (head == null) {
+			start();
+			try {
+				head = buffer.take();
+			} catch (InterruptedException ex) {
+				throw new PelicanException("Interrupted while waiting for a frame",
+						ex);
+			}
+		}
+		if (head != END)
+			return true;
+		if (error != null)
+			throw new PelicanException("Error while decoding the frames: "
+					+ error.getMessage(), error);
+		return false;
+	}
+
+	protected Image nextFrame() {
+		Image frame = (Image) head;
+		head = null;
+		return frame;
+	}
+
+	/**
+	 * Stops the decoder and drops the frames in the buffer.
+	 */
+	public void close() {
+		closed = true;
+		synchronized (this) {
+			if (decoder != null)
+				decoder.interrupt();
+		}
+		buffer.clear();
+		head = null;
+	}
+}
@@ -0,0 +1,152 @@
+package fr.unistra.pelican.util.video;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import fr.unistra.pelican.Image;
+
+/**
+ * Sequence of frames read one at a time, so that a video is processed
+ * without holding all its frames in memory. Each frame is a 4-D image with
+ * a T dimension of 1.
+ *
+ * A stream is read once, by a single consumer, and should be closed when it
+ * is not read to the end.
+ *
+ * @see BufferedFrameStream
+ * @author PELICAN team
+ */
+public abstract class FrameStream implements Iterator<Image>, Closeable {
+
+	/**
+	 * Indicates whether the frames are color images
+	 */
+	private final boolean color;
+
+	/**
+	 * Index of the last frame returned, -1 before the first one
+	 */
+	private int index = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param color
+	 *            true if the frames are color images
+	 */
+	protected FrameStream(boolean color) {
+		this.color = color;
+	}
+
+	/**
+	 * @return true if the frames are color images
+	 */
+	public boolean isColor() {
+		return color;
+	}
+
+	/**
+	 * @return the index of the last frame returned by next(), -1 before the
+	 *         first one
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Indicates whether another frame can be read, waiting for it if needed.
+	 */
+	public abstract boolean hasNext();
+
+	/**
+	 * Gets the next frame.
+	 *
+	 * @return the frame
+	 */
+	public final Image next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Image frame = nextFrame();
+		index++;
+		return frame;
+	}
+
+	/**
+	 * Gets the next frame, once hasNext() has returned true.
+	 */
+	protected abstract Image nextFrame();
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Releases the resources of the stream. Frames can no longer be read.
+	 */
+	public void close() {
+	}
+
+	/**
+	 * Gets the frames of a sequence held in memory.
+	 *
+	 * @param sequence
+	 *            the sequence, whose frames are along the T dimension
+	 * @return a stream of the frames, copied when they are read
+	 */
+	public static FrameStream of(final Image sequence) {
+		return new FrameStream(sequence.isColor()) {
+			private int t = 0;
+
+			public boolean hasNext() {
+				return t < sequence.getTDim();
+			}
+
+			protected Image nextFrame() {
+				return sequence.getImage4D(t++, Image.T);
+			}
+		};
+	}
+
+	/**
+	 * Stream of the frames of another stream, processed as they are read.
+	 */
+	public static abstract class Filter extends FrameStream {
+
+		private final FrameStream source;
+
+		/**
+		 * Constructor
+		 *
+		 * @param source
+		 *            the frames to process
+		 * @param color
+		 *            true if the processed frames are color images
+		 */
+		public Filter(FrameStream source, boolean color) {
+			super(color);
+			this.source = source;
+		}
+
+		/**
+		 * Processes a frame of the source.
+		 *
+		 * @param frame
+		 *            the frame of the source
+		 * @return the processed frame
+		 */
+		protected abstract Image process(Image frame);
+
+		public boolean hasNext() {
+			return source.hasNext();
+		}
+
+		protected Image nextFrame() {
+			return process(source.next());
+		}
+
+		public void close() {
+			source.close();
+		}
+	}
+}
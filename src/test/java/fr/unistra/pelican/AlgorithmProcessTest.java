@@ -0,0 +1,115 @@
+package fr.unistra.pelican;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class AlgorithmProcessTest {
+
+	public static class Scale extends Algorithm {
+
+		public Image input;
+
+		public double factor;
+
+		public long offset = 3;
+
+		public String label = "none";
+
+		public Image output;
+
+		public String description;
+
+		public Scale() {
+			super.inputs = "input,factor";
+			super.options = "offset,label";
+			super.outputs = "output,description";
+		}
+
+		public void launch() throws AlgorithmException {
+			output = input.copyImage(false);
+			for (int p = 0; p < input.size(); p++)
+				output.setPixelDouble(p, input.getPixelDouble(p) * factor + offset);
+			description = label + offset;
+		}
+	}
+
+	/**
+	 * Subclass relying on the attributes of its superclass
+	 */
+	public static class ScaleTwice extends Scale {
+
+		public void launch() throws AlgorithmException {
+			factor *= 2;
+			super.launch();
+		}
+	}
+
+	@Test
+	public void processTest() {
+		DoubleImage image = new DoubleImage(3, 2, 1, 1, 1);
+		image.fill(1);
+		Image output = (Image) new Scale().process(image, 2.0);
+		assertEquals(5, output.getPixelDouble(4), 0);
+
+		// the option given as an Integer is widened to long
+		ArrayList<Object> all = new Scale().processAll(image, 2.0, 10, "x");
+		assertEquals(12, ((Image) all.get(0)).getPixelDouble(0), 0);
+		assertEquals("x10", all.get(1));
+
+		// null options are skipped
+		assertEquals("none1", new Scale().processOne(1, image, 2.0, 1L, null));
+		assertEquals(7, ((Image) new ScaleTwice().process(image, 2.0))
+				.getPixelDouble(0), 0);
+	}
+
+	@Test
+	public void errorTest() {
+		DoubleImage image = new DoubleImage(3, 2, 1, 1, 1);
+		try {
+			new Scale().process(image);
+			fail();
+		} catch (InvalidNumberOfParametersException e) {
+		}
+		try {
+			new Scale().process(image, "2");
+			fail();
+		} catch (InvalidTypeOfParameterException e) {
+		}
+		try {
+			new Scale().process(image, null);
+			fail();
+		} catch (InvalidTypeOfParameterException e) {
+		}
+		try {
+			new Scale().process(image, 2.0, 1.5);
+			fail();
+		} catch (InvalidTypeOfParameterException e) {
+		}
+		try {
+			new Scale().processOne(2, image, 2.0);
+			fail();
+		} catch (InvalidNumberOfParametersException e) {
+		}
+	}
+
+	@Test
+	public void setInputTest() {
+		DoubleImage image = new DoubleImage(3, 2, 1, 1, 1);
+		Scale scale = new Scale();
+		ArrayList<Object> parameters = new ArrayList<Object>();
+		parameters.add(image);
+		parameters.add(0.0);
+		scale.setInput(parameters);
+		assertSame(image, scale.input);
+		assertNull(scale.getOutput().get(0));
+		scale.launch();
+		assertEquals(2, scale.getOutput().size());
+		assertEquals("none3", scale.getOutput().get(1));
+	}
+}
@@ -0,0 +1,163 @@
+package fr.unistra.pelican;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.util.RawPixels;
+import fr.unistra.pelican.util.largeImages.ChunkedImageUtil;
+
+public class ChunkedImageTest {
+
+	/**
+	 * Dimensions spanning several chunks, the last one being incomplete
+	 */
+	private static final int X = 700, Y = 500, Z = 2, T = 1, B = 3;
+
+	@Test
+	public void indexTest() {
+		// 3 * 10^10 pixels
+		ByteImage dims = new ByteImage(0, 0, 0, 0, 0);
+		dims.setDim(100000, 50000, 2, 1, 3);
+		long expected = 2 + 3 * (99999 + 100000 * (49999 + 50000L * 1));
+		assertEquals(expected, ChunkedImageUtil.getLinearIndexXYZTB(dims,
+				99999, 49999, 1, 0, 2));
+		assertEquals(expected, ChunkedImageUtil.getLinearIndexXYZ_B(dims,
+				99999, 49999, 1, 2));
+		assertEquals(expected - 2, ChunkedImageUtil.getLinearIndexXYZT_(dims,
+				99999, 49999, 1, 0));
+		assertEquals(3 * 100000L * 50000L * 2, ChunkedImageUtil.size(100000,
+				50000, 2, 1, 3));
+		assertEquals(28611, ChunkedImageUtil.chunkDim(30000000000L));
+		assertEquals(30000000000L - 28610L * ChunkedImageUtil.CHUNK_SIZE,
+				ChunkedImageUtil.chunkLength(30000000000L, 28610));
+		try {
+			ChunkedImageUtil.intSize(30000000000L);
+			fail();
+		} catch (PelicanException ex) {
+		}
+	}
+
+	@Test
+	public void chunkedByteImageTest() {
+		Random random = new Random(1);
+		ByteImage image = new ByteImage(X, Y, Z, T, B);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, random.nextInt(256));
+		ChunkedByteImage chunked = new ChunkedByteImage(image);
+		assertEquals(image.size(), chunked.sizeL());
+		assertTrue(chunked.equals(image));
+		assertTrue(image.equals(chunked));
+		assertEquals(image.maximum(), chunked.maximum());
+		assertEquals(image.minimum(2), chunked.minimum(2));
+		for (int y = 0; y < Y; y += 7)
+			for (int x = 0; x < X; x += 3) {
+				assertEquals(image.getPixelXYZTBByte(x, y, 1, 0, 2), chunked
+						.getPixelXYZTBByte(x, y, 1, 0, 2));
+				assertEquals(image.getPixelXYBByte(x, y, 1), chunked
+						.getPixelXYBByte(x, y, 1));
+			}
+		chunked.setPixelXYZBByte(X - 1, Y - 1, 1, B - 1, 17);
+		assertEquals(17, chunked.getPixelByte(chunked.sizeL() - 1));
+		assertFalse(chunked.equals(image));
+
+		ChunkedByteImage empty = chunked.newInstance(X, Y, Z, T, B);
+		assertEquals(128, empty.getPixelByte(123456L));
+		assertTrue(empty.isEmpty());
+		empty.fill(1.0);
+		assertEquals(255, empty.getPixelByte(empty.sizeL() - 1));
+	}
+
+	@Test
+	public void chunkedIntegerImageTest() {
+		Random random = new Random(2);
+		IntegerImage image = new IntegerImage(X, Y, Z, T, B);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelInt(p, random.nextInt());
+		ChunkedIntegerImage chunked = new ChunkedIntegerImage(image);
+		assertTrue(chunked.equals(image));
+		assertEquals(image.minimum(), chunked.minimum());
+		assertEquals(image.maximum(1), chunked.maximum(1));
+		for (int y = 0; y < Y; y += 5)
+			assertEquals(image.getPixelXYZInt(X - 1, y, 1), chunked
+					.getPixelXYZInt(X - 1, y, 1));
+
+		ChunkedIntegerImage copy = chunked.copyImage(true);
+		assertTrue(copy.equals(chunked));
+		copy.setPixelXYZTInt(3, 4, 1, 0, -5);
+		assertEquals(-5, copy.getPixelInt(copy.getLinearIndexXYZT_(3, 4, 1, 0)));
+		assertFalse(copy.equals(chunked));
+	}
+
+	@Test
+	public void chunkedDoubleImageTest() {
+		Random random = new Random(3);
+		DoubleImage image = new DoubleImage(X, Y, Z, T, B);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelDouble(p, random.nextDouble());
+		ChunkedDoubleImage chunked = new ChunkedDoubleImage(image, true);
+		assertTrue(chunked.equals(image));
+		assertEquals(image.volume(), chunked.volume(), 1e-6);
+		assertEquals(image.maximum(), chunked.maximum(), 0);
+		assertFalse(RawPixels.hasRawPixels(chunked));
+		double[] values = RawPixels.getDoubles(chunked);
+		for (int p = 0; p < values.length; p += 101)
+			assertEquals(image.getPixelDouble(p), values[p], 0);
+		for (int x = 0; x < X; x += 11)
+			assertEquals(image.getPixelXYTBDouble(x, Y / 2, 0, 1), chunked
+					.getPixelXYTBDouble(x, Y / 2, 0, 1), 0);
+
+		chunked.fill(2, 0.5);
+		for (long p = 2; p < chunked.sizeL(); p += B)
+			assertEquals(0.5, chunked.getPixelDouble(p), 0);
+		try {
+			chunked.getPixels();
+			fail();
+		} catch (PelicanException ex) {
+		}
+	}
+
+	@Test
+	public void pixelArrayCopyTest() {
+		Random random = new Random(4);
+		ByteImage bytes = new ByteImage(X, Y, Z, T, B);
+		IntegerImage ints = new IntegerImage(X, Y, Z, T, B);
+		DoubleImage doubles = new DoubleImage(X, Y, Z, T, B);
+		for (int p = 0; p < bytes.size(); p++) {
+			bytes.setPixelByte(p, random.nextInt(256));
+			ints.setPixelInt(p, random.nextInt());
+			doubles.setPixelDouble(p, random.nextDouble());
+		}
+		ChunkedByteImage chunkedBytes = new ChunkedByteImage(bytes);
+		ChunkedIntegerImage chunkedInts = new ChunkedIntegerImage(ints);
+		ChunkedDoubleImage chunkedDoubles = new ChunkedDoubleImage(doubles, true);
+
+		int last = bytes.size() - B;
+		for (int p = 0; p <= last; p += 997 * B) {
+			assertArrayEquals(bytes.getVectorPixelByte(p), chunkedBytes
+					.getVectorPixelByte(p));
+			assertArrayEquals(ints.getVectorPixelByte(p), chunkedInts
+					.getVectorPixelByte(p));
+		}
+		assertArrayEquals(bytes.getVectorPixelByte(last), chunkedBytes
+				.getVectorPixelByte(last));
+		assertArrayEquals(ints.getVectorPixelInt(last), chunkedInts
+				.getVectorPixelInt(last));
+
+		// copies of chunked images into pixel arrays
+		assertTrue(new ByteImage(chunkedBytes).equals(bytes));
+		assertTrue(new ByteImage(chunkedBytes, true).equals(bytes));
+		assertTrue(new ByteImage(chunkedBytes, false).isEmpty());
+		assertTrue(new IntegerImage(chunkedInts).equals(ints));
+		assertTrue(new IntegerImage(chunkedInts, true).equals(ints));
+		assertTrue(new DoubleImage(chunkedDoubles).equals(doubles));
+		assertTrue(new DoubleImage(chunkedDoubles, true).equals(doubles));
+		assertEquals(bytes.size(), new DoubleImage(chunkedDoubles, false).size());
+	}
+}
@@ -1,6 +1,9 @@
 package fr.unistra.pelican;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 import org.junit.Test;
@@ -11,7 +14,9 @@ import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.UnitPrefetcher;
 
 import fr.unistra.pelican.LargeBooleanImage;
 import fr.unistra.pelican.LargeByteImage;
@@ -113,6 +118,113 @@ public class LargeImageUtilTest {
 		
 	}
 	
+	@Test
+	public void mappedStorageTest(){
+		DoubleImage doubleImage = new DoubleImage(512,512,1,1,3);
+		for (int i =0;i<doubleImage.size();i++){
+			doubleImage.setPixelDouble(i,Math.random());
+		}
+		
+		LargeImageUtil.setDefaultStorageMode(LargeImageUtil.MAPPED_STORAGE);
+		try{
+			LargeDoubleImage largeIm = new LargeDoubleImage(doubleImage,true,1);
+			assertEquals(LargeImageUtil.MAPPED_STORAGE,largeIm.getStorageMode());
+			assertEquals((long)largeIm.getUnitSize()*LargeImageUtil.DOUBLE_DATALENGTH,largeIm.getUnitLength());
+			assertEquals(6,largeIm.getUnitDim());
+			
+			// units are written in the file then read back from it
+			largeIm.saveData();
+			for (int u=0;u<largeIm.getUnitDim();u++){
+				largeIm.loadAnUnit(u);
+			}
+			for (int i =0;i<doubleImage.size();i++){
+				assertEquals(doubleImage.getPixelDouble(i),largeIm.getPixelDouble(i),0.0);
+			}
+			
+			// a new mapped image is filled with zeros
+			LargeBooleanImage boolIm = new LargeBooleanImage(100,100,1,1,1,1);
+			boolIm.loadAnUnit(0);
+			for (int i =0;i<boolIm.size();i++){
+				assertEquals(false,boolIm.getPixelBoolean(i));
+			}
+			boolIm.setPixelBoolean(42,true);
+			boolIm.saveData();
+			boolIm.loadAnUnit(0);
+			assertEquals(true,boolIm.getPixelBoolean(42));
+			assertEquals(false,boolIm.getPixelBoolean(43));
+			
+			// the working file stays open until the image is closed
+			assertNotNull(largeIm.getMappedFile());
+			largeIm.close();
+			assertNull(largeIm.getMappedFile());
+		}finally{
+			LargeImageUtil.setDefaultStorageMode(LargeImageUtil.SERIALIZED_STORAGE);
+		}
+	}
+	
+	@Test
+	public void memoryBudgetTest(){
+		DoubleImage doubleImage = new DoubleImage(512,512,1,1,3);
+		for (int i =0;i<doubleImage.size();i++){
+			doubleImage.setPixelDouble(i,Math.random());
+		}
+		
+		LargeImageMemoryManager manager = LargeImageMemoryManager.getInstance();
+		long budget = 3L<<20;
+		manager.setMemoryBudget(budget);
+		try{
+			assertEquals(budget,manager.getMemoryBudget());
+			manager.resetStatistics();
+			LargeDoubleImage largeIm = new LargeDoubleImage(doubleImage,true,1);
+			assertEquals(6,largeIm.getUnitDim());
+			assertTrue(manager.getResidentBytes()<=budget);
+			assertTrue(manager.getEvictionCount()>=3);
+			
+			for (int i =0;i<doubleImage.size();i++){
+				assertEquals(doubleImage.getPixelDouble(i),largeIm.getPixelDouble(i),0.0);
+				assertTrue(manager.getResidentBytes()<=budget);
+			}
+			assertTrue(manager.getMissCount()>=3);
+			assertTrue(manager.getHitCount()>=doubleImage.size()-manager.getMissCount());
+		}finally{
+			manager.setMemoryBudget(0);
+		}
+	}
+	
+	@Test
+	public void prefetchTest(){
+		DoubleImage doubleImage = new DoubleImage(512,512,1,1,3);
+		for (int i =0;i<doubleImage.size();i++){
+			doubleImage.setPixelDouble(i,Math.random());
+		}
+		
+		LargeImageMemoryManager manager = LargeImageMemoryManager.getInstance();
+		UnitPrefetcher prefetcher = UnitPrefetcher.getInstance();
+		manager.setMemoryBudget(4L<<20);
+		prefetcher.setReadAhead(2);
+		prefetcher.setWriteBehind(true);
+		try{
+			LargeDoubleImage largeIm = new LargeDoubleImage(512,512,1,1,3,1);
+			assertEquals(6,largeIm.getUnitDim());
+			// modified units are written behind when they are discarded
+			for (int i =0;i<doubleImage.size();i++){
+				largeIm.setPixelDouble(i,doubleImage.getPixelDouble(i));
+			}
+			long prefetched = prefetcher.getPrefetchCount();
+			for (int pass=0;pass<2;pass++){
+				for (int i =0;i<doubleImage.size();i++){
+					assertEquals(doubleImage.getPixelDouble(i),largeIm.getPixelDouble(i),0.0);
+				}
+			}
+			assertTrue(prefetcher.getWriteBehindCount()>0);
+			assertTrue(prefetcher.getPrefetchCount()>prefetched);
+		}finally{
+			prefetcher.setReadAhead(0);
+			prefetcher.setWriteBehind(false);
+			manager.setMemoryBudget(0);
+		}
+	}
+	
 	/*
 	@Test
 	public void fillTest(){
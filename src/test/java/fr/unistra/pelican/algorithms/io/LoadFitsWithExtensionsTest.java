@@ -0,0 +1,107 @@
+package fr.unistra.pelican.algorithms.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.jFits.Fits;
+
+public class LoadFitsWithExtensionsTest {
+
+	private static final int X = 301, Y = 1201, B = 2;
+
+	private static int value(int x, int y, int b) {
+		return (x * 7 + y * 3 + b * 50) % 120;
+	}
+
+	private static File tempFile() throws IOException {
+		File file = File.createTempFile("pelican", ".fits");
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static void assertRegion(Image image, DoubleImage region, int x0,
+			int y0, double scale, double zero) {
+		for (int b = 0; b < region.getBDim(); b++)
+			for (int y = 0; y < region.getYDim(); y += 7)
+				for (int x = 0; x < region.getXDim(); x += 3)
+					assertEquals(image.getPixelXYBInt(x0 + x, y0 + y, b) * scale + zero,
+							region.getPixelXYBDouble(x, y, b), 1e-9);
+	}
+
+	@Test
+	public void extensionsTest() throws IOException {
+		IntegerImage integers = new IntegerImage(X, Y, 1, 1, B);
+		DoubleImage doubles = new DoubleImage(X, Y, 1, 1, B);
+		for (int b = 0; b < B; b++)
+			for (int y = 0; y < Y; y++)
+				for (int x = 0; x < X; x++) {
+					integers.setPixelXYBInt(x, y, b, value(x, y, b));
+					doubles.setPixelXYBDouble(x, y, b, value(x, y, b));
+				}
+		File file = tempFile();
+
+		for (int bitPix : new int[] { Fits.SHORT, Fits.INT, Fits.FLOAT,
+				Fits.DOUBLE }) {
+			file.delete();
+			FitsImageSave.exec(file.getPath(), bitPix > 0 ? integers : doubles,
+					bitPix);
+
+			DoubleImage full = LoadFitsWithExtensions.exec(file.getPath());
+			assertEquals(X, full.getXDim());
+			assertEquals(Y, full.getYDim());
+			assertEquals(B, full.getBDim());
+			for (int p = 0; p < integers.size(); p++)
+				assertEquals(integers.getPixelInt(p), full.getPixelDouble(p), 0);
+
+			DoubleImage region = LoadFitsWithExtensions.exec(file.getPath(), 10,
+					20, 100, 300);
+			assertEquals(100, region.getXDim());
+			assertEquals(300, region.getYDim());
+			assertRegion(integers, region, 10, 20, 1, 0);
+		}
+	}
+
+	@Test
+	public void scaledBytesTest() throws IOException {
+		// single 8 bits HDU with BSCALE and BZERO, written by hand
+		StringBuilder header = new StringBuilder();
+		for (String card : new String[] { "SIMPLE  =                    T",
+				"BITPIX  =                    8", "NAXIS   =                    2",
+				"NAXIS1  =                  " + X, "NAXIS2  =                 " + Y,
+				"BSCALE  =                  0.5", "BZERO   =                -10.0",
+				"END" }) {
+			header.append(card);
+			for (int i = card.length(); i < 80; i++)
+				header.append(' ');
+		}
+		while (header.length() % 2880 != 0)
+			header.append(' ');
+		ByteBuffer data = ByteBuffer.allocate((X * Y / 2880 + 1) * 2880);
+		for (int y = 0; y < Y; y++)
+			for (int x = 0; x < X; x++)
+				data.put((byte) (value(x, Y - 1 - y, 0) + 130));
+		File file = tempFile();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(header.toString().getBytes("US-ASCII"));
+		out.write(data.array());
+		out.close();
+
+		IntegerImage image = new IntegerImage(X, Y, 1, 1, 1);
+		for (int y = 0; y < Y; y++)
+			for (int x = 0; x < X; x++)
+				image.setPixelXYBInt(x, y, 0, value(x, y, 0) + 130);
+		assertRegion(image, LoadFitsWithExtensions.exec(file.getPath()), 0, 0,
+				0.5, -10);
+		assertRegion(image, LoadFitsWithExtensions.exec(file.getPath(), 250,
+				1000, 51, 201), 250, 1000, 0.5, -10);
+	}
+}
@@ -0,0 +1,72 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+
+public class EuclideanDistanceTransformTest {
+
+	private static BooleanImage random(int xdim, int ydim, int zdim, int bdim,
+			double density, Random random) {
+		BooleanImage image = new BooleanImage(xdim, ydim, zdim, 1, bdim);
+		for (int i = 0; i < image.size(); i++)
+			image.setPixelBoolean(i, random.nextDouble() < density);
+		return image;
+	}
+
+	/**
+	 * Checks the distances and the nearest features against a brute force
+	 * search.
+	 */
+	private static void check(Image image) {
+		IntegerImage distances = EuclideanDistanceTransform.exec(image);
+		IntegerImage features = EuclideanDistanceTransform.execNearestFeature(image);
+		for (int b = 0; b < image.getBDim(); b++)
+			for (int z = 0; z < image.getZDim(); z++)
+				for (int y = 0; y < image.getYDim(); y++)
+					for (int x = 0; x < image.getXDim(); x++) {
+						int expected = Integer.MAX_VALUE;
+						for (int k = 0; k < image.getZDim(); k++)
+							for (int j = 0; j < image.getYDim(); j++)
+								for (int i = 0; i < image.getXDim(); i++)
+									if (image.getPixelXYZBBoolean(i, j, k, b))
+										expected = Math.min(expected, (x - i) * (x - i)
+												+ (y - j) * (y - j) + (z - k) * (z - k));
+						assertEquals(expected, distances.getPixelXYZBInt(x, y, z, b));
+
+						int feature = features.getPixelXYZBInt(x, y, z, b);
+						if (expected == Integer.MAX_VALUE) {
+							assertEquals(-1, feature);
+							continue;
+						}
+						assertEquals(true, image.getPixelBoolean(feature));
+						int v = feature / image.getBDim();
+						int fx = v % image.getXDim() - x;
+						int fy = v / image.getXDim() % image.getYDim() - y;
+						int fz = v / (image.getXDim() * image.getYDim()) - z;
+						assertEquals(b, feature % image.getBDim());
+						assertEquals(expected, fx * fx + fy * fy + fz * fz);
+					}
+	}
+
+	@Test
+	public void planarTest() {
+		Random random = new Random(0);
+		check(random(37, 23, 1, 2, 0.02, random));
+		check(random(150, 140, 1, 1, 0.0005, random));
+		// a band without any true pixel
+		check(random(11, 9, 1, 2, 0.0, random));
+	}
+
+	@Test
+	public void volumeTest() {
+		Random random = new Random(1);
+		check(random(13, 11, 9, 1, 0.01, random));
+	}
+}
@@ -0,0 +1,101 @@
+package fr.unistra.pelican.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Point;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.spatial.Convolution;
+import fr.unistra.pelican.algorithms.spatial.GaussianFilter;
+import fr.unistra.pelican.util.morphology.GrayStructuringElement;
+
+public class ConvolutionEngineTest {
+
+	private static final double EPSILON = 1e-9;
+
+	private static ConvolutionEngine engine(double[][] kernel, int cx, int cy) {
+		int n = kernel.length * kernel[0].length;
+		int[] dx = new int[n];
+		int[] dy = new int[n];
+		double[] w = new double[n];
+		int i = 0;
+		for (int y = 0; y < kernel.length; y++)
+			for (int x = 0; x < kernel[0].length; x++, i++) {
+				dx[i] = x - cx;
+				dy[i] = y - cy;
+				w[i] = kernel[y][x];
+			}
+		return new ConvolutionEngine(dx, dy, w);
+	}
+
+	private static void assertSame(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], actual[i], EPSILON);
+	}
+
+	@Test
+	public void methodsTest() {
+		Random random = new Random(0);
+		int xdim = 29, ydim = 17, bdim = 2;
+		double[] in = new double[xdim * ydim * bdim];
+		for (int i = 0; i < in.length; i++)
+			in[i] = random.nextDouble();
+
+		// gaussian, off-center box, and a cone which is not separable
+		double[][] gaussian = new double[7][9];
+		for (int y = 0; y < 7; y++)
+			for (int x = 0; x < 9; x++)
+				gaussian[y][x] = Tools.Gaussian2D(x - 4, y - 3, 2.0);
+		double[][] box = new double[4][6];
+		for (double[] row : box)
+			java.util.Arrays.fill(row, 0.5);
+		double[][] cone = new double[5][5];
+		for (int y = 0; y < 5; y++)
+			for (int x = 0; x < 5; x++)
+				cone[y][x] = 3 - Math.sqrt((x - 2) * (x - 2) + (y - 2) * (y - 2));
+
+		ConvolutionEngine[] engines = { engine(gaussian, 4, 3), engine(box, 1, 3),
+				engine(cone, 2, 2) };
+		boolean[] separable = { true, true, false };
+		for (int e = 0; e < engines.length; e++) {
+			ConvolutionEngine engine = engines[e];
+			assertEquals(separable[e], engine.isSeparable());
+			assertEquals(true, engine.isPositive());
+			double[] expected = engine.convolve(in, xdim, ydim, bdim,
+					ConvolutionEngine.DIRECT);
+			if (engine.isSeparable())
+				assertSame(expected, engine.convolve(in, xdim, ydim, bdim,
+						ConvolutionEngine.SEPARABLE));
+			assertSame(expected, engine.convolve(in, xdim, ydim, bdim,
+					ConvolutionEngine.FFT));
+		}
+
+		// a kernel with negative weights only allows the direct method
+		cone[0][0] = -1;
+		assertEquals(false, engine(cone, 2, 2).isPositive());
+		assertEquals(ConvolutionEngine.DIRECT, engine(cone, 2, 2).chooseMethod(xdim,
+				ydim, bdim));
+	}
+
+	@Test
+	public void convolutionTest() {
+		Random random = new Random(1);
+		Image image = new DoubleImage(40, 30, 1, 1, 3);
+		for (int i = 0; i < image.size(); i++)
+			image.setPixelDouble(i, random.nextDouble());
+		Image expected = GaussianFilter.exec(image, 3.0, 15);
+
+		GrayStructuringElement kernel = new GrayStructuringElement(15, 15, new Point(7, 7));
+		for (int y = 0; y < 15; y++)
+			for (int x = 0; x < 15; x++)
+				kernel.setPixelXYDouble(x, y, Tools.Gaussian2D(x - 7, y - 7, 3.0));
+		Image direct = Convolution.exec(image, kernel, ConvolutionEngine.DIRECT);
+		for (int i = 0; i < image.size(); i++)
+			assertEquals(direct.getPixelDouble(i), expected.getPixelDouble(i), EPSILON);
+	}
+}
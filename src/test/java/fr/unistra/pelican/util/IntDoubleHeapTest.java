@@ -0,0 +1,95 @@
+package fr.unistra.pelican.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.util.PriorityQueue.PriorityPolicy;
+
+public class IntDoubleHeapTest {
+
+	/**
+	 * Reference queue ordered by priority, then by arrival.
+	 */
+	private static java.util.PriorityQueue<double[]> reference(final boolean highest) {
+		return new java.util.PriorityQueue<double[]>(11, new Comparator<double[]>() {
+			public int compare(double[] a, double[] b) {
+				int c = Double.compare(a[0], b[0]);
+				if (c == 0)
+					c = Double.compare(a[1], b[1]);
+				return highest ? -c : c;
+			}
+		});
+	}
+
+	@Test
+	public void heapTest() {
+		Random random = new Random(1);
+		IntDoubleHeap heap = new IntDoubleHeap(2);
+		java.util.PriorityQueue<double[]> expected = reference(false);
+		for (int i = 0; i < 20000; i++) {
+			if (!expected.isEmpty() && random.nextInt(3) == 0) {
+				double[] e = expected.poll();
+				assertEquals(e[0], heap.peekPriority(), 0);
+				assertEquals((int) e[2], heap.peek());
+				assertEquals((int) e[2], heap.pop());
+			} else {
+				// few distinct priorities to check the FIFO order
+				double priority = random.nextInt(50) / 7.;
+				expected.add(new double[] { priority, i, i });
+				heap.add(i, priority);
+			}
+			assertEquals(expected.size(), heap.size());
+		}
+		int sum = 0;
+		for (int i = 0; i < heap.size(); i++)
+			sum += heap.get(i);
+		int expectedSum = 0;
+		for (double[] e : expected)
+			expectedSum += (int) e[2];
+		assertEquals(expectedSum, sum);
+		heap.clear();
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void facadeTest() {
+		for (PriorityPolicy policy : PriorityPolicy.values()) {
+			Random random = new Random(2);
+			PriorityQueue<String, Integer> queue = new PriorityQueue<String, Integer>(
+					policy);
+			java.util.PriorityQueue<double[]> expected = reference(policy == PriorityPolicy.HighestHasPriority);
+			for (int i = 0; i < 5000; i++) {
+				if (!expected.isEmpty() && random.nextInt(3) == 0) {
+					double[] e = expected.poll();
+					assertEquals((int) e[0], (int) queue.peek().getPriority());
+					if (i % 2 == 0)
+						assertEquals("" + (int) e[2], queue.popElement());
+					else
+						assertEquals("" + (int) e[2], queue.pop().getElement());
+				} else {
+					int priority = random.nextInt(20);
+					expected.add(new double[] { priority, i, i });
+					queue.add("" + i, priority);
+				}
+				assertEquals(expected.size(), queue.size());
+			}
+			double[] first = expected.peek();
+			assertTrue(queue.contains("" + (int) first[2]));
+			assertFalse(queue.contains("none"));
+			int n = 0;
+			for (PriorityQueue.PrioritizedElement<String, Integer> e : queue) {
+				assertTrue(e.getElement() != null);
+				n++;
+			}
+			assertEquals(expected.size(), n);
+			queue.clear();
+			assertTrue(queue.isEmpty());
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package fr.unistra.pelican.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.ChunkedIntegerImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.algorithms.io.PelicanImageLoad;
+import fr.unistra.pelican.algorithms.io.PelicanImageSave;
+
+public class PelicanImageFileTest {
+
+	/**
+	 * Images of each type, spanning several blocks
+	 */
+	private static Image[] images() {
+		Random random = new Random(1);
+		Image[] images = { new BooleanImage(97, 61, 2, 5, 3),
+				new ByteImage(300, 211, 1, 2, 3), new IntegerImage(97, 61, 2, 5, 3),
+				new DoubleImage(97, 61, 2, 5, 3) };
+		for (Image image : images)
+			for (int p = 0; p < image.size(); p++)
+				if (image instanceof IntegerImage)
+					image.setPixelInt(p, random.nextInt());
+				else
+					image.setPixelDouble(p, random.nextDouble());
+		images[1].setColor(true);
+		images[2].setName("labels");
+		images[2].setProperty("origin", "test");
+		return images;
+	}
+
+	private static File tempFile() throws IOException {
+		File file = File.createTempFile("pelican", ".pel");
+		file.deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void fileTest() throws IOException {
+		File file = tempFile();
+		for (Image image : images())
+			for (int compression : new int[] { PelicanImageFile.NONE,
+					PelicanImageFile.DEFLATE }) {
+				PelicanImageFile.write(image, file, compression);
+				assertTrue(PelicanImageFile.isPelicanImageFile(file));
+				Image read = PelicanImageFile.read(file);
+				assertEquals(image.getClass(), read.getClass());
+				assertTrue(image.equals(read));
+				assertEquals(image.isColor(), read.isColor());
+				assertEquals(image.getName(), read.getName());
+				assertEquals(image.getProperty("origin"), read.getProperty("origin"));
+
+				Image frame = PelicanImageFile.readFrame(file, 3 % image.getTDim());
+				assertTrue(frame.equals(image.getImage4D(3 % image.getTDim(),
+						Image.T)));
+				Image band = PelicanImageFile.readBand(file, 2);
+				assertEquals(1, band.getBDim());
+				for (int t = 0; t < image.getTDim(); t++)
+					for (int y = 0; y < image.getYDim(); y += 3)
+						for (int x = 0; x < image.getXDim(); x += 2)
+							assertEquals(image.getPixelDouble(x, y, 0, t, 2), band
+									.getPixelDouble(x, y, 0, t, 0), 0);
+			}
+	}
+
+	@Test
+	public void chunkedTest() throws IOException {
+		IntegerImage image = (IntegerImage) images()[2];
+		ChunkedIntegerImage chunked = new ChunkedIntegerImage(image);
+		File file = tempFile();
+		PelicanImageFile.write(chunked, file, PelicanImageFile.DEFLATE);
+		assertTrue(image.equals(PelicanImageFile.read(file)));
+		Image band = PelicanImageFile.readBand(file, 1);
+		for (long p = 0; p < band.sizeL(); p += 7)
+			assertEquals(image.getPixelInt(3 * p + 1), band.getPixelInt(p));
+	}
+
+	@Test
+	public void streamTest() throws IOException, ClassNotFoundException {
+		Image[] images = images();
+		ArrayList<Object> parameters = new ArrayList<Object>();
+		parameters.add(images[0]);
+		parameters.add("text");
+		parameters.add(images[3]);
+		parameters.add(12);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new PelicanImageFile.ImageOutputStream(bytes);
+		out.writeObject(parameters);
+		out.writeObject(images[1]);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		ArrayList<?> read = (ArrayList<?>) in.readObject();
+		assertEquals(4, read.size());
+		assertTrue(images[0].equals((Image) read.get(0)));
+		assertEquals("text", read.get(1));
+		assertTrue(images[3].equals((Image) read.get(2)));
+		assertEquals(12, read.get(3));
+		assertTrue(images[1].equals((Image) in.readObject()));
+		in.close();
+	}
+
+	@Test
+	public void corruptedTest() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PelicanImageFile.write(images()[1], bytes, PelicanImageFile.DEFLATE);
+		// negative and oversized lengths of the attributes
+		for (int length : new int[] { -1, Integer.MAX_VALUE, 1 << 30 }) {
+			byte[] data = bytes.toByteArray();
+			ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(40, length);
+			File file = tempFile();
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(data);
+			out.close();
+			try {
+				PelicanImageFile.read(file);
+				fail();
+			} catch (PelicanException ex) {
+			}
+			try {
+				PelicanImageFile.read(new ByteArrayInputStream(data));
+				fail();
+			} catch (PelicanException ex) {
+			} catch (EOFException ex) {
+				// a stream gives no length, it is read until its end
+			}
+		}
+	}
+
+	@Test
+	public void loadSaveTest() throws IOException {
+		Image image = images()[3];
+		File file = tempFile();
+		PelicanImageSave.exec(image, file.getPath());
+		assertTrue(PelicanImageFile.isPelicanImageFile(file));
+		assertTrue(image.equals(PelicanImageLoad.exec(file.getPath())));
+
+		// former serialized format
+		new PelicanImageSave().process(image, file.getPath(), true, true);
+		assertFalse(PelicanImageFile.isPelicanImageFile(file));
+		assertTrue(image.equals(PelicanImageLoad.exec(file.getPath())));
+	}
+}
@@ -0,0 +1,135 @@
+package fr.unistra.pelican.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.algorithms.arithmetic.AbsoluteDifference;
+import fr.unistra.pelican.algorithms.arithmetic.Addition;
+import fr.unistra.pelican.algorithms.arithmetic.Difference;
+import fr.unistra.pelican.algorithms.arithmetic.Inversion;
+import fr.unistra.pelican.algorithms.arithmetic.Maximum;
+import fr.unistra.pelican.algorithms.arithmetic.Minimum;
+import fr.unistra.pelican.algorithms.arithmetic.Multiplication;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayDilation;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayErosion;
+import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+
+public class RawPixelsTest {
+
+	private static Image fill(Image image, Random random) {
+		for (int i = 0; i < image.size(); i++)
+			image.setPixelDouble(i, random.nextDouble());
+		return image;
+	}
+
+	@Test
+	public void strideTest() {
+		Image image = new ByteImage(5, 4, 3, 2, 3);
+		assertEquals(image.getLinearIndexXYZTB(1, 0, 0, 0, 0), image.getXStride());
+		assertEquals(image.getLinearIndexXYZTB(0, 1, 0, 0, 0), image.getYStride());
+		assertEquals(image.getLinearIndexXYZTB(0, 0, 1, 0, 0), image.getZStride());
+		assertEquals(image.getLinearIndexXYZTB(0, 0, 0, 1, 0), image.getTStride());
+		assertEquals(image.getLinearIndexXYZT_(0, 1, 0, 0)
+				- image.getLinearIndexXYZT_(0, 0, 0, 0), image.getRowLength());
+	}
+
+	@Test
+	public void conversionTest() {
+		// the conversions must match the per-pixel accessors
+		Random random = new Random(0);
+		Image[] images = { fill(new ByteImage(7, 5, 1, 1, 3), random),
+				fill(new IntegerImage(7, 5, 1, 1, 3), random),
+				fill(new DoubleImage(7, 5, 1, 1, 3), random),
+				fill(new BooleanImage(7, 5, 1, 1, 3), random) };
+		for (Image image : images) {
+			double[] doubles = RawPixels.getDoubles(image);
+			int[] bytes = RawPixels.getBytes(image);
+			for (int i = 0; i < image.size(); i++) {
+				assertEquals(image.getPixelDouble(i), doubles[i], 0.0);
+				assertEquals(image.getPixelByte(i), bytes[i]);
+			}
+			Image copy = image.copyImage(false);
+			Image expected = image.copyImage(false);
+			RawPixels.setDoubles(copy, doubles);
+			for (int i = 0; i < image.size(); i++)
+				expected.setPixelDouble(i, doubles[i]);
+			assertEquals(true, copy.equals(expected));
+			copy = image.copyImage(false);
+			RawPixels.setBytes(copy, bytes);
+			for (int i = 0; i < image.size(); i++)
+				expected.setPixelByte(i, bytes[i]);
+			assertEquals(true, copy.equals(expected));
+		}
+	}
+
+	@Test
+	public void operatorsTest() {
+		Random random = new Random(1);
+		Image image1 = fill(new ByteImage(23, 17, 1, 1, 3), random);
+		Image image2 = fill(new ByteImage(23, 17, 1, 1, 3), random);
+
+		Image sum = Addition.exec(image1, image2);
+		Image inverted = Inversion.exec(image1);
+		for (int i = 0; i < image1.size(); i++) {
+			assertEquals(Image.doubleToSignedByte(image1.getPixelDouble(i)
+					+ image2.getPixelDouble(i)), Image.doubleToSignedByte(sum
+					.getPixelDouble(i)));
+			assertEquals(255 - image1.getPixelByte(i), inverted.getPixelByte(i));
+		}
+
+		// a full mask goes through the per-pixel path with the same result
+		BooleanImage se = FlatStructuringElement2D.createCrossFlatStructuringElement(2);
+		BooleanImage mask = new BooleanImage(image1, false);
+		mask.fill(true);
+		assertArrayEquals(RawPixels.getBytes(GrayErosion.exec(image1, se, mask)),
+				RawPixels.getBytes(GrayErosion.exec(image1, se)));
+		assertArrayEquals(RawPixels.getBytes(GrayDilation.exec(image1, se, mask)),
+				RawPixels.getBytes(GrayDilation.exec(image1, se)));
+	}
+
+	@Test
+	public void typedOperatorsTest() {
+		// the loops on the byte and integer arrays give the same result as the
+		// per-pixel path, taken when the images have a full mask
+		Random random = new Random(2);
+		Image[][] pairs = {
+				{ fill(new ByteImage(31, 29, 1, 1, 3), random),
+						fill(new ByteImage(31, 29, 1, 1, 3), random) },
+				{ fill(new IntegerImage(31, 29, 1, 1, 3), random),
+						fill(new IntegerImage(31, 29, 1, 1, 3), random) } };
+		for (Image[] pair : pairs) {
+			Image masked1 = pair[0].copyImage(true);
+			Image masked2 = pair[1].copyImage(true);
+			BooleanImage mask = new BooleanImage(pair[0], false);
+			mask.fill(true);
+			masked1.pushMask(mask);
+			masked2.pushMask(mask);
+			assertArrayEquals(RawPixels.getDoubles(Addition.exec(masked1, masked2)),
+					RawPixels.getDoubles(Addition.exec(pair[0], pair[1])), 0.0);
+			assertArrayEquals(RawPixels.getDoubles(Difference.exec(masked1, masked2)),
+					RawPixels.getDoubles(Difference.exec(pair[0], pair[1])), 0.0);
+			assertArrayEquals(RawPixels.getDoubles(Difference.exec(masked1, masked2,
+					false)), RawPixels.getDoubles(Difference.exec(pair[0], pair[1],
+					false)), 0.0);
+			assertArrayEquals(RawPixels.getDoubles(AbsoluteDifference.exec(masked1,
+					masked2)), RawPixels.getDoubles(AbsoluteDifference.exec(pair[0],
+					pair[1])), 0.0);
+			assertArrayEquals(RawPixels.getDoubles(Multiplication.exec(masked1,
+					masked2)), RawPixels.getDoubles(Multiplication.exec(pair[0],
+					pair[1])), 0.0);
+			assertArrayEquals(RawPixels.getDoubles(Minimum.exec(masked1, masked2)),
+					RawPixels.getDoubles(Minimum.exec(pair[0], pair[1])), 0.0);
+			assertArrayEquals(RawPixels.getDoubles(Maximum.exec(masked1, masked2)),
+					RawPixels.getDoubles(Maximum.exec(pair[0], pair[1])), 0.0);
+		}
+	}
+}
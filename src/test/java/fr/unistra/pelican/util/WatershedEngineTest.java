@@ -0,0 +1,202 @@
+package fr.unistra.pelican.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.segmentation.GeodesicDistanceBasedWatershed;
+import fr.unistra.pelican.algorithms.segmentation.MarkerBasedWatershed;
+import fr.unistra.pelican.algorithms.segmentation.MarkerBasedWatershedND;
+import fr.unistra.pelican.algorithms.segmentation.Watershed;
+import fr.unistra.pelican.algorithms.segmentation.WatershedND;
+
+public class WatershedEngineTest {
+
+	private static ByteImage random(int xdim, int ydim, int zdim, Random random,
+			int levels) {
+		ByteImage image = new ByteImage(xdim, ydim, zdim, 1, 1);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, random.nextInt(levels) * (255 / (levels - 1)));
+		return image;
+	}
+
+	@Test
+	public void queueTest() {
+		Random random = new Random(1);
+		IntHierarchicalQueue queue = new IntHierarchicalQueue(4);
+		TreeMap<Integer, ArrayDeque<Integer>> expected = new TreeMap<Integer, ArrayDeque<Integer>>();
+		int current = 0, number = 0;
+		for (int i = 0; i < 20000; i++) {
+			if (number > 0 && random.nextInt(3) == 0) {
+				current = expected.firstKey();
+				ArrayDeque<Integer> fifo = expected.get(current);
+				int e = fifo.removeFirst();
+				if (fifo.isEmpty())
+					expected.remove(current);
+				assertEquals(e, queue.get());
+				assertEquals(current, queue.getCurrent());
+				number--;
+			} else {
+				int level = current - 5 + random.nextInt(i % 1000 == 0 ? 5000 : 40);
+				int clamped = Math.max(level, current);
+				if (!expected.containsKey(clamped))
+					expected.put(clamped, new ArrayDeque<Integer>());
+				expected.get(clamped).addLast(i);
+				queue.add(i, level);
+				number++;
+			}
+			assertEquals(number, queue.getNumber());
+		}
+		queue.clear();
+		assertTrue(queue.isEmpty());
+		assertEquals(-1, queue.get());
+	}
+
+	@Test
+	public void immersionTest() {
+		Random random = new Random(2);
+		ByteImage image = random(40, 30, 1, random, 6);
+		Image expected = Watershed.exec(image);
+		Image nd = WatershedND.exec(image);
+		for (int p = 0; p < image.size(); p++)
+			assertEquals(expected.getPixelInt(p), nd.getPixelInt(p));
+
+		// exact values keep the order of the levels
+		DoubleImage doubles = new DoubleImage(image, false);
+		for (int p = 0; p < image.size(); p++)
+			doubles.setPixelDouble(p, image.getPixelByte(p) / 1000.);
+		Image exact = WatershedND.exec(doubles, 0);
+		for (int p = 0; p < image.size(); p++)
+			assertEquals(expected.getPixelInt(p), exact.getPixelInt(p));
+
+		// labels and lines
+		int labels = 0;
+		for (int p = 0; p < image.size(); p++)
+			labels = Math.max(labels, expected.getPixelInt(p));
+		boolean[] seen = new boolean[labels + 1];
+		for (int p = 0; p < image.size(); p++)
+			seen[expected.getPixelInt(p)] = true;
+		for (int l = 1; l <= labels; l++)
+			assertTrue(seen[l]);
+	}
+
+	/**
+	 * Flooding from the markers (0 values) with a priority queue ordered by
+	 * level and arrival.
+	 */
+	private static int[] meyer(ByteImage image, int[] labels,
+			boolean connexity4) {
+		int xdim = image.getXDim(), ydim = image.getYDim();
+		PriorityQueue<long[]> queue = new PriorityQueue<long[]>(11,
+				new java.util.Comparator<long[]>() {
+					public int compare(long[] a, long[] b) {
+						return a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(
+								a[1], b[1]);
+					}
+				});
+		long seq = 0;
+		for (int p = 0; p < labels.length; p++)
+			if (labels[p] > 0)
+				queue.add(new long[] { 0, seq++, p });
+		long current = 0;
+		while (!queue.isEmpty()) {
+			long[] e = queue.poll();
+			current = e[0];
+			int p = (int) e[2];
+			int x = p % xdim, y = p / xdim;
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dx = -1; dx <= 1; dx++) {
+					if (dx == 0 && dy == 0 || connexity4 && dx != 0 && dy != 0)
+						continue;
+					int nx = x + dx, ny = y + dy;
+					if (nx < 0 || ny < 0 || nx >= xdim || ny >= ydim)
+						continue;
+					int q = nx + xdim * ny;
+					if (labels[q] == 0) {
+						labels[q] = labels[p];
+						queue.add(new long[] {
+								Math.max(current, image.getPixelByte(q)), seq++, q });
+					}
+				}
+		}
+		return labels;
+	}
+
+	@Test
+	public void markerTest() {
+		Random random = new Random(3);
+		for (boolean connexity4 : new boolean[] { false, true }) {
+			ByteImage image = random(37, 23, 1, random, 8);
+			Image result = MarkerBasedWatershed.exec(image, connexity4);
+			Image nd = MarkerBasedWatershedND.exec(image, connexity4);
+			// markers as labelled by the algorithm
+			int[] labels = new int[image.size()];
+			for (int p = 0; p < labels.length; p++)
+				if (image.getPixelByte(p) == 0)
+					labels[p] = result.getPixelInt(p);
+			meyer(image, labels, connexity4);
+			for (int p = 0; p < labels.length; p++) {
+				assertEquals(labels[p], result.getPixelInt(p));
+				assertEquals(labels[p], nd.getPixelInt(p));
+			}
+		}
+	}
+
+	@Test
+	public void geodesicTest() {
+		Random random = new Random(4);
+		int xdim = 25, ydim = 19;
+		ByteImage image = random(xdim, ydim, 1, random, 5);
+		// sorted centers, labelled in this order
+		Point4D[] centers = { new Point4D(3, 4, 0, 0), new Point4D(12, 15, 0, 0),
+				new Point4D(20, 2, 0, 0) };
+		Image result = GeodesicDistanceBasedWatershed.exec(image, centers, false);
+
+		// Dijkstra from the centers
+		int size = xdim * ydim;
+		long[] dist = new long[size];
+		java.util.Arrays.fill(dist, Long.MAX_VALUE);
+		boolean[] done = new boolean[size];
+		for (Point4D c : centers)
+			dist[c.x + xdim * c.y] = 0;
+		for (int i = 0; i < size; i++) {
+			int p = -1;
+			for (int q = 0; q < size; q++)
+				if (!done[q] && (p < 0 || dist[q] < dist[p]))
+					p = q;
+			done[p] = true;
+			int x = p % xdim, y = p / xdim;
+			for (int dy = -1; dy <= 1; dy++)
+				for (int dx = -1; dx <= 1; dx++) {
+					int nx = x + dx, ny = y + dy;
+					if (dx == 0 && dy == 0 || nx < 0 || ny < 0 || nx >= xdim
+							|| ny >= ydim)
+						continue;
+					int q = nx + xdim * ny;
+					double diff = image.getPixelDouble(q) - image.getPixelDouble(p);
+					long d = dist[p] + (int) (Math.sqrt(diff * diff) * 255);
+					if (d < dist[q])
+						dist[q] = d;
+				}
+		}
+		for (int i = 0; i < centers.length; i++) {
+			int p = centers[i].x + xdim * centers[i].y;
+			assertEquals(i + 1, result.getPixelXYBInt(centers[i].x, centers[i].y, 0));
+			assertEquals(1, result.getPixelXYBInt(centers[i].x, centers[i].y, 1));
+			dist[p] = 1;
+		}
+		for (int p = 0; p < size; p++) {
+			assertTrue(result.getPixelXYBInt(p % xdim, p / xdim, 0) > 0);
+			assertEquals(dist[p], result.getPixelXYBInt(p % xdim, p / xdim, 1));
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package fr.unistra.pelican.util.connectivityTrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.algorithms.morphology.binary.BinaryAreaOpening;
+import fr.unistra.pelican.algorithms.morphology.connected.AreaFilter;
+import fr.unistra.pelican.algorithms.morphology.connected.AttributeOpening;
+import fr.unistra.pelican.algorithms.morphology.connected.BuildComponentTree;
+import fr.unistra.pelican.algorithms.morphology.connected.FilterComponentTree;
+import fr.unistra.pelican.algorithms.morphology.connected.FilterComponentTree.FilterStrategy;
+import fr.unistra.pelican.algorithms.morphology.connected.OpeningByReconstruction;
+import fr.unistra.pelican.algorithms.morphology.connected.ReconstructImageFromTree;
+import fr.unistra.pelican.algorithms.morphology.connected.TopHatConnected;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayAreaClosing;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayAreaOpening;
+import fr.unistra.pelican.algorithms.segmentation.ManualThresholding;
+import fr.unistra.pelican.util.Point3D;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
+import fr.unistra.pelican.util.connectivityTrees.MaxTree.Attribute;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AreaAttributFilter;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivity;
+
+public class MaxTreeTest {
+
+	private static final int[][] FOUR = MaxTree.offsets(TrivialConnectivity
+			.getFourNeighbourhood());
+
+	/**
+	 * Fills an image with a few levels, so that level sets have several
+	 * connected components of various sizes.
+	 */
+	private static Image fill(Image image, Random random, int levels, double scale) {
+		for (int i = 0; i < image.size(); i++) {
+			int value = random.nextInt(levels);
+			if (image instanceof ByteImage)
+				image.setPixelByte(i, value * 255 / (levels - 1));
+			else if (image instanceof IntegerImage)
+				image.setPixelInt(i, (int) (value * scale));
+			else
+				image.setPixelDouble(i, value * scale);
+		}
+		return image;
+	}
+
+	/**
+	 * Area opening of a byte image by stack decomposition, with integer
+	 * thresholds.
+	 */
+	private static Image stackOpening(Image image, int thresh) {
+		Image result = image.copyImage(false);
+		for (int t = 0; t < 256; t++) {
+			BooleanImage stack = BinaryAreaOpening.exec(ManualThresholding.exec(image,
+					t), thresh);
+			for (int p = 0; p < stack.size(); p++)
+				if (stack.getPixelBoolean(p))
+					result.setPixelByte(p, t);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the 4-connected component of the pixels of values at least (at most
+	 * for a min-tree) level containing pixel p, in a 2D array of values.
+	 */
+	private static boolean[] component(double[] f, int xdim, int p, double level,
+			boolean max) {
+		boolean[] in = new boolean[f.length];
+		int[] stack = new int[f.length];
+		int top = 0;
+		stack[top++] = p;
+		in[p] = true;
+		while (top > 0) {
+			int q = stack[--top];
+			int x = q % xdim;
+			int[] n = { x > 0 ? q - 1 : -1, x < xdim - 1 ? q + 1 : -1, q - xdim, q + xdim };
+			for (int r : n)
+				if (r >= 0 && r < f.length && !in[r]
+						&& (max ? f[r] >= level : f[r] <= level)) {
+					in[r] = true;
+					stack[top++] = r;
+				}
+		}
+		return in;
+	}
+
+	@Test
+	public void attributesTest() {
+		Random random = new Random(0);
+		Image[] images = { fill(new IntegerImage(13, 9, 1, 1, 1), random, 6, 9000),
+				fill(new DoubleImage(13, 9, 1, 1, 1), random, 5, -0.37) };
+		for (Image image : images)
+			for (TreeType type : TreeType.values()) {
+				boolean max = type == TreeType.Max;
+				int xdim = image.getXDim();
+				double[] f = new double[image.size()];
+				for (int p = 0; p < f.length; p++)
+					f[p] = image instanceof IntegerImage ? image.getPixelInt(p) : image
+							.getPixelDouble(p);
+				MaxTree tree = new MaxTree(image, 0, 0, FOUR, type);
+				assertEquals(true, tree.isRoot(0));
+				for (int n = 0; n < tree.getNodeCount(); n++) {
+					int q = tree.getParent(n);
+					assertEquals(true, q < n || q == 0 && n == 0);
+					int c = tree.getCanonicalPixel(n);
+					assertEquals(f[c], tree.getLevel(n), 0);
+					boolean[] in = component(f, xdim, c, tree.getLevel(n), max);
+					int area = 0, xmin = xdim, xmax = -1, ymin = 100, ymax = -1;
+					double extremum = tree.getLevel(n), volume = 0;
+					double base = n == 0 ? tree.getLevel(0) : tree.getLevel(q);
+					for (int p = 0; p < f.length; p++)
+						if (in[p]) {
+							area++;
+							xmin = Math.min(xmin, p % xdim);
+							xmax = Math.max(xmax, p % xdim);
+							ymin = Math.min(ymin, p / xdim);
+							ymax = Math.max(ymax, p / xdim);
+							extremum = max ? Math.max(extremum, f[p]) : Math.min(extremum,
+									f[p]);
+							volume += Math.abs(f[p] - base);
+							// the smallest node of a pixel of the component is n or
+							// one of its descendants
+							int m = tree.getNode(p % xdim, p / xdim, 0);
+							while (m > n)
+								m = tree.getParent(m);
+							assertEquals(n, m);
+						}
+					assertEquals(area, tree.getArea(n));
+					if (n == 0)
+						volume += area * Math.abs(tree.getLevel(0));
+					assertEquals(volume, tree.getAttribute(Attribute.VOLUME, n), 1e-6);
+					assertEquals(Math.abs(extremum - tree.getLevel(n)), tree
+							.getAttribute(Attribute.HEIGHT, n), 1e-9);
+					assertEquals(xmax - xmin + 1, tree.getAttribute(Attribute.X_EXTENT, n), 0);
+					assertEquals(ymax - ymin + 1, tree.getAttribute(Attribute.Y_EXTENT, n), 0);
+					assertEquals(1, tree.getAttribute(Attribute.Z_EXTENT, n), 0);
+				}
+
+				// each pixel gets the level of its largest component passing
+				// the threshold
+				Image result = AttributeOpening.exec(image, Attribute.AREA, 7, type,
+						TrivialConnectivity.getFourNeighbourhood());
+				assertEquals(image.getClass(), result.getClass());
+				for (int p = 0; p < f.length; p++) {
+					double expected = tree.getLevel(0);
+					for (int v = 0; v < f.length; v++) {
+						if (max ? f[v] > f[p] || f[v] <= expected : f[v] < f[p]
+								|| f[v] >= expected)
+							continue;
+						int area = 0;
+						for (boolean b : component(f, xdim, p, f[v], max))
+							area += b ? 1 : 0;
+						if (area >= 7)
+							expected = f[v];
+					}
+					assertEquals(expected, image instanceof IntegerImage ? result
+							.getPixelInt(p) : result.getPixelDouble(p), 0);
+				}
+			}
+	}
+
+	@Test
+	public void grayAreaTest() {
+		Random random = new Random(1);
+		Image image = fill(new ByteImage(37, 23, 1, 1, 1), random, 8, 0);
+		Image inverse = image.copyImage(false);
+		for (int p = 0; p < image.size(); p++)
+			inverse.setPixelByte(p, 255 - image.getPixelByte(p));
+		for (int thresh : new int[] { 1, 5, 30 }) {
+			Image opening = GrayAreaOpening.exec(image, thresh);
+			Image expected = stackOpening(image, thresh);
+			for (int p = 0; p < image.size(); p++)
+				assertEquals(expected.getPixelByte(p), opening.getPixelByte(p));
+			// closing by duality
+			Image closing = GrayAreaClosing.exec(image, thresh);
+			expected = stackOpening(inverse, thresh);
+			for (int p = 0; p < image.size(); p++)
+				assertEquals(255 - expected.getPixelByte(p), closing.getPixelByte(p));
+		}
+	}
+
+	@Test
+	public void areaFilterTest() {
+		Random random = new Random(2);
+		Image image = fill(new ByteImage(29, 21, 1, 1, 1), random, 6, 0);
+		for (TreeType type : TreeType.values()) {
+			Image result = AreaFilter.exec(image, 6, type);
+			ComponentTree<Double> tree = BuildComponentTree.exec(image,
+					TrivialConnectivity.getHeightNeighbourhood(), type);
+			tree = FilterComponentTree.exec(tree,
+					new AttributeFilter[] { new AreaAttributFilter(6) }, FilterStrategy.Min);
+			Image expected = ReconstructImageFromTree.exec(tree);
+			assertEquals(expected.getClass(), result.getClass());
+			for (int p = 0; p < image.size(); p++)
+				assertEquals(expected.getPixelDouble(p), result.getPixelDouble(p), 0);
+		}
+	}
+
+	@Test
+	public void compactTreeTest() {
+		Random random = new Random(3);
+		Image image = fill(new ByteImage(31, 17, 1, 1, 1), random, 7, 0);
+		// a rule which is not increasing, so that the strategies differ
+		AttributeFilter rule = new AttributeFilter() {
+			public boolean filter(ComponentNode node) {
+				return node.getArea() % 3 != 0;
+			}
+		};
+		for (TreeType type : TreeType.values())
+			for (FilterStrategy strategy : FilterStrategy.values()) {
+				ComponentTree<Double> tree = BuildComponentTree.exec(image,
+						TrivialConnectivity.getHeightNeighbourhood(), type);
+				MaxTree compact = new MaxTree(image, TrivialConnectivity
+						.getHeightNeighbourhood(), type);
+				assertEquals(tree.countNodes(), compact.countNodes());
+				assertEquals(tree.countLeaf(), compact.countLeaf());
+				tree = FilterComponentTree.exec(tree, rule, strategy);
+				FilterComponentTree.exec(compact, rule, strategy);
+				assertEquals(tree.countNodes(), compact.countNodes());
+				assertEquals(tree.countLeaf(), compact.countLeaf());
+				Image expected = ReconstructImageFromTree.exec(tree);
+				Image result = ReconstructImageFromTree.exec(compact);
+				for (int p = 0; p < image.size(); p++)
+					assertEquals(expected.getPixelDouble(p), result.getPixelDouble(p), 0);
+
+				// children come before their parents, and each node after the
+				// descendants given by its children
+				int[] rank = new int[compact.getNodeCount()];
+				int i = 0;
+				for (int n : compact.iterateFromLeafToRoot()) {
+					rank[n] = ++i;
+					int descendants = 0;
+					for (int m : compact.iterateFromLeafToNode(n))
+						descendants++;
+					int sum = 1;
+					for (int c : compact.getChildren(n)) {
+						assertEquals(true, rank[c] > 0 && rank[c] < rank[n]);
+						for (int m : compact.iterateFromLeafToNode(c))
+							sum++;
+					}
+					assertEquals(sum, descendants);
+				}
+				assertEquals(compact.countNodes(), i);
+				for (int n : compact.iterateFromRootToLeaf())
+					assertEquals(false, compact.isDeleted(n));
+				int x = 3, y = 5;
+				assertEquals(tree.findNodeAt(x, y).getArea(), compact.getArea(compact
+						.findNodeAt(x, y, 0)));
+			}
+	}
+
+	private static void assertSameTree(MaxTree expected, MaxTree tree, Image image) {
+		assertEquals(expected.getNodeCount(), tree.getNodeCount());
+		for (int n = 0; n < expected.getNodeCount(); n++) {
+			assertEquals(expected.getParent(n), tree.getParent(n));
+			assertEquals(expected.getCanonicalPixel(n), tree.getCanonicalPixel(n));
+			assertEquals(expected.getArea(n), tree.getArea(n));
+		}
+		for (int z = 0; z < image.getZDim(); z++)
+			for (int y = 0; y < image.getYDim(); y++)
+				for (int x = 0; x < image.getXDim(); x++)
+					assertEquals(expected.getNode(x, y, z), tree.getNode(x, y, z));
+	}
+
+	@Test
+	public void parallelTest() {
+		Random random = new Random(4);
+		// connectivity reaching two rows
+		TrivialConnectivity far = new TrivialConnectivity(new Point3D[] {
+				new Point3D(1, 0, 0), new Point3D(0, 2, 0), new Point3D(1, 1, 0) });
+		TrivialConnectivity six = new TrivialConnectivity(new Point3D[] {
+				new Point3D(1, 0, 0), new Point3D(0, 1, 0), new Point3D(0, 0, 1) });
+		Image[] images = { fill(new ByteImage(23, 41, 1, 1, 2), random, 5, 0),
+				fill(new DoubleImage(17, 30, 1, 1, 1), random, 9, 0.1),
+				fill(new ByteImage(9, 7, 12, 1, 1), random, 4, 0) };
+		TrivialConnectivity[][] connectivities = {
+				{ TrivialConnectivity.getHeightNeighbourhood(), far },
+				{ TrivialConnectivity.getFourNeighbourhood() },
+				{ TrivialConnectivity.getHeightNeighbourhood(), six } };
+		for (int i = 0; i < images.length; i++)
+			for (TrivialConnectivity con : connectivities[i])
+				for (TreeType type : TreeType.values()) {
+					int[][] offsets = MaxTree.offsets(con);
+					int b = images[i].getBDim() - 1;
+					MaxTree expected = new MaxTree(images[i], 0, b, offsets, type, 1);
+					for (int bands : new int[] { 2, 3, 5, 64 })
+						assertSameTree(expected, new MaxTree(images[i], 0, b, offsets,
+								type, bands), images[i]);
+				}
+	}
+
+	@Test
+	public void reconstructionTest() {
+		Random random = new Random(5);
+		Image image = fill(new ByteImage(27, 19, 1, 1, 1), random, 6, 0);
+		BooleanImage mask = new BooleanImage(27, 19, 1, 1, 1);
+		for (int p = 0; p < mask.size(); p += 37)
+			mask.setPixelBoolean(p, true);
+		for (int op = 0; op < 2; op++) {
+			ComponentTree<Double> tree = BuildComponentTree.exec(image,
+					TrivialConnectivity.getHeightNeighbourhood(), TreeType.Max);
+			MaxTree compact = new MaxTree(image, TrivialConnectivity
+					.getHeightNeighbourhood(), TreeType.Max);
+			if (op == 0) {
+				tree = OpeningByReconstruction.exec(tree, mask);
+				OpeningByReconstruction.exec(compact, mask);
+			} else {
+				tree = TopHatConnected.exec(tree, mask);
+				TopHatConnected.exec(compact, mask);
+			}
+			assertEquals(tree.countNodes(), compact.countNodes());
+			Image expected = ReconstructImageFromTree.exec(tree);
+			Image result = ReconstructImageFromTree.exec(compact);
+			for (int p = 0; p < image.size(); p++)
+				assertEquals(expected.getPixelDouble(p), result.getPixelDouble(p), 0);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package fr.unistra.pelican.util.data.distances;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.util.Keypoint;
+import fr.unistra.pelican.util.data.DoubleArrayData;
+import fr.unistra.pelican.util.data.KeypointArrayData;
+
+public class KeypointIndexTest {
+
+	private static final int LENGTH = 3 + 32;
+
+	private static Keypoint keypoint(Random random, Double[] values) {
+		DoubleArrayData data = new DoubleArrayData();
+		data.setValues(values);
+		return new Keypoint(random.nextInt(640), random.nextInt(480), data);
+	}
+
+	private static Keypoint random(Random random) {
+		Double[] values = new Double[LENGTH];
+		values[0] = 1.0;
+		values[1] = random.nextBoolean() ? 1.0 : -1.0;
+		values[2] = 0.0;
+		for (int i = 3; i < LENGTH; i++)
+			values[i] = random.nextDouble();
+		return keypoint(random, values);
+	}
+
+	private static Keypoint noisy(Random random, Keypoint point) {
+		Double[] values = ((Double[]) point.data.getValues()).clone();
+		for (int i = 3; i < LENGTH; i++)
+			values[i] += random.nextGaussian() * 0.02;
+		return keypoint(random, values);
+	}
+
+	/**
+	 * Keypoints of a second image: noisy copies of half the first keypoints,
+	 * and unrelated keypoints
+	 */
+	private static ArrayList<Keypoint> matching(Random random,
+			ArrayList<Keypoint> points) {
+		ArrayList<Keypoint> result = new ArrayList<Keypoint>();
+		for (int i = 0; i < points.size(); i++) {
+			result.add(random(random));
+			if (i % 2 == 0)
+				result.add(noisy(random, points.get(i)));
+		}
+		return result;
+	}
+
+	@Test
+	public void exactTest() {
+		Random random = new Random(1);
+		ArrayList<Keypoint> points = new ArrayList<Keypoint>();
+		for (int i = 0; i < 1000; i++)
+			points.add(random(random));
+		ArrayList<Keypoint> keys = matching(random, points);
+		// descriptors of another length are never matched
+		DoubleArrayData shorter = new DoubleArrayData();
+		shorter.setValues(new Double[] { 1.0, 1.0, 0.0, 0.5 });
+		points.add(new Keypoint(0, 0, shorter));
+
+		int[] expected = new int[points.size()];
+		int found = 0;
+		for (int i = 0; i < points.size(); i++) {
+			expected[i] = KeypointArraySURFDistance.match(points.get(i), keys);
+			if (expected[i] > -1)
+				found++;
+		}
+		assertTrue(found > 400);
+
+		KeypointIndex index = new KeypointIndex(keys);
+		assertEquals(keys.size(), index.size());
+		for (int i = 0; i < points.size(); i += 7)
+			assertEquals(expected[i], index.match(points.get(i)));
+		assertArrayEquals(expected, index.match(points));
+		assertArrayEquals(expected, KeypointArraySURFDistance.match(points, keys));
+		assertEquals(found, index.countMatches(points));
+
+		KeypointArrayData d1 = new KeypointArrayData(), d2 = new KeypointArrayData();
+		d1.setValues(points);
+		d2.setValues(keys);
+		HashMap<Keypoint, Keypoint> map = new KeypointArraySURFDistance()
+				.getMatches(d1, d2);
+		assertEquals(found, map.size());
+		assertEquals(1 - (double) found / points.size(),
+				new KeypointArraySURFDistance().distance(d1, d2), 1e-12);
+	}
+
+	@Test
+	public void approximateTest() {
+		Random random = new Random(2);
+		ArrayList<Keypoint> points = new ArrayList<Keypoint>();
+		for (int i = 0; i < 2000; i++)
+			points.add(random(random));
+		ArrayList<Keypoint> keys = matching(random, points);
+
+		int[] matches = new KeypointIndex(keys, 64).match(points);
+		int correct = 0;
+		for (int i = 0; i < points.size(); i++) {
+			if (matches[i] < 0)
+				continue;
+			Keypoint key = keys.get(matches[i]);
+			assertEquals(((Double[]) points.get(i).data.getValues())[1],
+					((Double[]) key.data.getValues())[1]);
+			if (i % 2 == 0 && matches[i] == 3 * i / 2 + 1)
+				correct++;
+		}
+		// most noisy copies are still found
+		assertTrue(correct > 800);
+	}
+}
@@ -0,0 +1,198 @@
+package fr.unistra.pelican.util.data.retrieval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.data.Data;
+import fr.unistra.pelican.util.data.DataArrayData;
+import fr.unistra.pelican.util.data.HistogramData;
+import fr.unistra.pelican.util.data.distances.DoubleArrayCorrelogramDistance;
+import fr.unistra.pelican.util.data.distances.DoubleArrayEuclideanDistance;
+import fr.unistra.pelican.util.data.distances.DoubleArrayWeightedEuclideanDistance;
+import fr.unistra.pelican.util.data.distances.HistogramMeanAbsoluteDistance;
+import fr.unistra.pelican.util.data.distances.VectorDistance;
+
+public class DescriptorCollectionTest {
+
+	private static final int BINS = 12, PARTS = 2;
+
+	/**
+	 * Data shaped as the output of AutoCorrelogram: an array of normalized
+	 * histograms, drawn around a few centres
+	 */
+	private static Data data(Random random, double[][] centres) {
+		double[] centre = centres[random.nextInt(centres.length)];
+		Data[] histograms = new Data[PARTS];
+		for (int p = 0; p < PARTS; p++) {
+			Double[] values = new Double[BINS];
+			for (int i = 0; i < BINS; i++)
+				values[i] = Math.abs(centre[p * BINS + i] + random.nextGaussian()
+						* 0.02);
+			histograms[p] = new HistogramData();
+			histograms[p].setValues(values);
+		}
+		DataArrayData data = new DataArrayData();
+		data.setValues(histograms);
+		return data;
+	}
+
+	private static Data[] dataset(Random random, int size) {
+		double[][] centres = new double[20][PARTS * BINS];
+		for (double[] centre : centres)
+			for (int i = 0; i < centre.length; i++)
+				centre[i] = random.nextDouble() / BINS;
+		Data[] data = new Data[size];
+		for (int i = 0; i < size; i++)
+			data[i] = data(random, centres);
+		return data;
+	}
+
+	private static DescriptorCollection collection(Data[] data) {
+		DescriptorCollection collection = new DescriptorCollection(PARTS * BINS);
+		for (int i = 0; i < data.length; i++)
+			assertEquals(i, collection.add("image" + i, data[i]));
+		return collection;
+	}
+
+	/**
+	 * Positions of the k nearest data, computed with the distance of the data
+	 */
+	private static int[] nearest(Data[] data, Data query, int k) {
+		final double[] distances = new double[data.length];
+		Integer[] order = new Integer[data.length];
+		for (int i = 0; i < data.length; i++) {
+			distances[i] = query.distanceTo(data[i]);
+			order[i] = i;
+		}
+		Arrays.sort(order, new java.util.Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int c = Double.compare(distances[a], distances[b]);
+				return c != 0 ? c : a.compareTo(b);
+			}
+		});
+		int[] result = new int[k];
+		for (int i = 0; i < k; i++)
+			result[i] = order[i];
+		return result;
+	}
+
+	private static int[] indexes(Neighbour[] neighbours) {
+		int[] result = new int[neighbours.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = neighbours[i].index;
+		return result;
+	}
+
+	@Test
+	public void searchTest() {
+		Random random = new Random(1);
+		Data[] data = dataset(random, 10000);
+		DescriptorCollection collection = collection(data);
+		VectorDistance distance = new HistogramMeanAbsoluteDistance();
+		VPTree tree = new VPTree(collection, distance);
+		assertEquals(data.length, tree.size());
+
+		for (int q = 0; q < 20; q++) {
+			Data query = data[random.nextInt(data.length)];
+			int[] expected = nearest(data, query, 10);
+			Neighbour[] neighbours = collection.search(query, 10, distance);
+			assertArrayEquals(expected, indexes(neighbours));
+			assertEquals(query.distanceTo(data[expected[3]]),
+					neighbours[3].distance, 1e-12);
+			assertEquals("image" + expected[0], neighbours[0].id);
+			assertArrayEquals(expected, indexes(tree.search(query, 10)));
+		}
+
+		double[][] queries = new double[30][];
+		for (int q = 0; q < queries.length; q++)
+			queries[q] = collection.getValues(random.nextInt(data.length));
+		Neighbour[][] results = tree.search(queries, 5);
+		for (int q = 0; q < queries.length; q++)
+			assertArrayEquals(indexes(collection.search(queries[q], 5, distance)),
+					indexes(results[q]));
+
+		// all the descriptors of a small collection
+		DescriptorCollection small = collection(Arrays.copyOf(data, 7));
+		assertEquals(7, new VPTree(small, new DoubleArrayEuclideanDistance())
+				.search(data[0], 10).length);
+	}
+
+	@Test
+	public void saveTest() throws IOException {
+		Random random = new Random(2);
+		DescriptorCollection collection = collection(dataset(random, 5000));
+		File file = File.createTempFile("pelican", ".desc");
+		file.deleteOnExit();
+		collection.save(file);
+		DescriptorCollection loaded = DescriptorCollection.load(file);
+		assertEquals(collection.size(), loaded.size());
+		assertEquals(collection.getDimension(), loaded.getDimension());
+		for (int i = 0; i < collection.size(); i += 13) {
+			assertEquals(collection.getId(i), loaded.getId(i));
+			assertArrayEquals(collection.getValues(i), loaded.getValues(i), 0);
+		}
+		assertArrayEquals(collection.getValues(4999), loaded.getValues(4999), 0);
+
+		// corrupted length and number of descriptors
+		int[][] corruptions = { { 12, -1 }, { 12, 0 }, { 16, -1 },
+				{ 16, Integer.MAX_VALUE }, { 12, 1 << 30 } };
+		for (int[] corruption : corruptions) {
+			collection.save(file);
+			RandomAccessFile access = new RandomAccessFile(file, "rw");
+			try {
+				access.seek(corruption[0]);
+				access.writeInt(Integer.reverseBytes(corruption[1]));
+			} finally {
+				access.close();
+			}
+			try {
+				DescriptorCollection.load(file);
+				fail();
+			} catch (PelicanException e) {
+			}
+		}
+	}
+
+	@Test
+	public void errorTest() {
+		DescriptorCollection collection = new DescriptorCollection(3);
+		try {
+			collection.add("a", new double[2]);
+			fail();
+		} catch (PelicanException e) {
+		}
+		try {
+			new VPTree(collection, new DoubleArrayCorrelogramDistance());
+			fail();
+		} catch (PelicanException e) {
+		}
+		collection.add("b", new double[3]);
+		DoubleArrayWeightedEuclideanDistance weighted = new DoubleArrayWeightedEuclideanDistance(
+				new Double[] { 1., 2. });
+		try {
+			collection.search(new double[3], 1, weighted);
+			fail();
+		} catch (PelicanException e) {
+		}
+		try {
+			new VPTree(collection, weighted);
+			fail();
+		} catch (PelicanException e) {
+		}
+		try {
+			weighted.distance(new double[3], 0, new double[3], 0, 3);
+			fail();
+		} catch (PelicanException e) {
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package fr.unistra.pelican.util.largeImages;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EvictionListTest {
+
+	@Test
+	public void keyTest() {
+		long key = EvictionList.key(12, 345);
+		assertEquals(12, EvictionList.imageId(key));
+		assertEquals(345, EvictionList.unitId(key));
+		assertEquals(Integer.MAX_VALUE, EvictionList.unitId(EvictionList.key(0, Integer.MAX_VALUE)));
+	}
+
+	@Test
+	public void orderTest() {
+		EvictionList list = new EvictionList();
+		list.touch(EvictionList.key(0, 1));
+		list.touch(EvictionList.key(0, 2));
+		list.touch(EvictionList.key(1, 1));
+		list.touch(EvictionList.key(0, 1));
+		assertEquals(3, list.size());
+		assertEquals(EvictionList.key(0, 2), list.pollFirst());
+		assertEquals(EvictionList.key(1, 1), list.pollFirst());
+		assertEquals(EvictionList.key(0, 1), list.pollFirst());
+		assertEquals(EvictionList.NO_KEY, list.pollFirst());
+	}
+
+	@Test
+	public void randomOperationsTest() {
+		// compares with an insertion ordered set, moving touched keys to the end
+		Random random = new Random(0);
+		EvictionList list = new EvictionList(1);
+		LinkedHashSet<Long> reference = new LinkedHashSet<Long>();
+		for (int i = 0; i < 100000; i++) {
+			long key = EvictionList.key(random.nextInt(4), random.nextInt(300));
+			int op = random.nextInt(10);
+			if (op < 6) {
+				list.touch(key);
+				reference.remove(key);
+				reference.add(key);
+			} else if (op < 8) {
+				assertEquals(reference.remove(key), list.remove(key));
+			} else if (op < 9) {
+				Iterator<Long> it = reference.iterator();
+				long expected = EvictionList.NO_KEY;
+				if (it.hasNext()) {
+					expected = it.next();
+					it.remove();
+				}
+				assertEquals(expected, list.pollFirst());
+			} else {
+				assertEquals(reference.contains(key), list.contains(key));
+			}
+			assertEquals(reference.size(), list.size());
+		}
+		for (long key : reference) {
+			assertEquals(key, list.pollFirst());
+		}
+		assertEquals(true, list.isEmpty());
+	}
+}
@@ -0,0 +1,113 @@
+package fr.unistra.pelican.util.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.algorithms.arithmetic.Addition;
+import fr.unistra.pelican.algorithms.conversion.RGBToGray;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayErosion;
+import fr.unistra.pelican.algorithms.segmentation.ManualThresholding;
+import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+
+public class LazyImageTest {
+
+	/**
+	 * Dimensions spanning several blocks, the last one being incomplete
+	 */
+	private static final int X = 301, Y = 157;
+
+	private static ByteImage rgb() {
+		Random random = new Random(1);
+		ByteImage image = new ByteImage(X, Y, 1, 1, 3);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, random.nextInt(256));
+		image.setColor(true);
+		return image;
+	}
+
+	@Test
+	public void fusionTest() {
+		ByteImage rgb = rgb();
+		DoubleImage offset = new DoubleImage(X, Y, 1, 1, 1);
+		offset.fill(0.1);
+
+		LazyImage lazy = LazyImage.of(rgb).gray();
+		Image result = LazyImage.of(offset).add(lazy).threshold(0.6).materialize();
+		assertEquals(BooleanImage.class, result.getClass());
+		// the grey levels are not rounded to bytes before the addition
+		for (int p = 0; p < result.size(); p++)
+			assertEquals(0.1 + 0.299 * rgb.getPixelDouble(3 * p) + 0.587
+					* rgb.getPixelDouble(3 * p + 1) + 0.114
+					* rgb.getPixelDouble(3 * p + 2) >= 0.6, result.getPixelBoolean(p));
+
+		// same result as the chain of algorithms when the gray image is materialized
+		Image gray = RGBToGray.exec(rgb);
+		assertTrue(gray.equals(lazy.materialize()));
+		Image expected = ManualThresholding.exec(Addition.exec(offset, gray), 0.6);
+		assertTrue(expected.equals(LazyImage.of(offset).add(lazy).threshold(0.6)
+				.materialize()));
+		assertSame(lazy.materialize(), lazy.materialize());
+	}
+
+	@Test
+	public void bandMathTest() {
+		ByteImage rgb = rgb();
+		LazyImage image = LazyImage.of(rgb);
+		LazyImage red = image.band(0), green = image.band(1);
+		LazyImage ndi = green.subtract(red).divide(green.add(red));
+		assertEquals(1, ndi.getBDim());
+		Image result = ndi.multiply(0.5).add(0.5).materialize();
+		assertEquals(ByteImage.class, result.getClass());
+		for (int y = 0; y < Y; y += 3)
+			for (int x = 0; x < X; x += 5) {
+				double r = rgb.getPixelXYBDouble(x, y, 0);
+				double g = rgb.getPixelXYBDouble(x, y, 1);
+				double value = r + g == 0 ? Double.NaN : (g - r) / (g + r) * 0.5 + 0.5;
+				if (!Double.isNaN(value))
+					assertEquals(Image.doubleToSignedByte(value), Image
+							.doubleToSignedByte(result.getPixelXYDouble(x, y)));
+			}
+	}
+
+	@Test
+	public void applyTest() {
+		ByteImage rgb = rgb();
+		BooleanImage se = FlatStructuringElement2D.createSquareFlatStructuringElement(3);
+		LazyImage eroded = LazyImage.of(rgb).gray().apply(new GrayErosion(), se);
+		Image expected = GrayErosion.exec(RGBToGray.exec(rgb), se);
+		Image inverted = eroded.map(new PointFunction() {
+			public double apply(double value) {
+				return 1 - value;
+			}
+		}).materialize();
+		for (int p = 0; p < expected.size(); p++)
+			assertEquals(255 - expected.getPixelByte(p), inverted.getPixelByte(p));
+	}
+
+	@Test
+	public void dimensionsTest() {
+		LazyImage a = LazyImage.of(new DoubleImage(3, 4, 1, 1, 1));
+		LazyImage b = LazyImage.of(new DoubleImage(4, 3, 1, 1, 1));
+		try {
+			a.add(b).materialize();
+			fail();
+		} catch (PelicanException ex) {
+		}
+		try {
+			a.band(1).materialize();
+			fail();
+		} catch (PelicanException ex) {
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package fr.unistra.pelican.util.morphology;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayDilation;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayErosion;
+import fr.unistra.pelican.util.Point4D;
+
+public class RunningMinMaxTest {
+
+	private static Image fill(Image image, Random random, int range) {
+		for (int i = 0; i < image.size(); i++)
+			if (image instanceof DoubleImage)
+				image.setPixelDouble(i, random.nextDouble());
+			else
+				image.setPixelInt(i, random.nextInt(range));
+		return image;
+	}
+
+	private static BooleanImage box(int xdim, int ydim, int zdim, Point4D center) {
+		BooleanImage se = new BooleanImage(xdim, ydim, zdim, 1, 1);
+		se.fill(true);
+		se.setCenter(center);
+		return se;
+	}
+
+	private static void assertSame(Image expected, Image actual) {
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.getPixelDouble(i), actual.getPixelDouble(i), 0.0);
+	}
+
+	@Test
+	public void boxTest() {
+		// sizes which are not multiples of the se dimensions
+		// (the naive algorithm rounds IntegerImage values through doubles, see
+		// periodicLineTest for integer values)
+		Random random = new Random(0);
+		Image[] images = { fill(new ByteImage(37, 23, 1, 1, 3), random, 256),
+				fill(new DoubleImage(13, 11, 7, 1, 2), random, 0) };
+		BooleanImage[] ses = { box(7, 5, 1, new Point4D(2, 4, 0, 0)),
+				box(1, 9, 1, new Point4D(0, 3, 0, 0)), box(40, 1, 1, new Point4D(20, 0, 0, 0)),
+				box(3, 3, 3, new Point4D(1, 1, 1, 0)) };
+		for (Image image : images)
+			for (BooleanImage se : ses) {
+				if (se.getZDim() > image.getZDim())
+					continue;
+				assertEquals(true, GrayErosion.isBox(se));
+				// the line optimizations use the naive algorithm whatever the se
+				assertSame(GrayErosion.exec(image, se, null, GrayErosion.HLINE_OPTIMIZATION),
+						GrayErosion.exec(image, se));
+				assertSame(GrayDilation.exec(image, se, null, GrayErosion.HLINE_OPTIMIZATION),
+						GrayDilation.exec(image, se));
+			}
+	}
+
+	@Test
+	public void periodicLineTest() {
+		Random random = new Random(1);
+		Image image = fill(new IntegerImage(17, 19, 1, 1, 2), random, 65536);
+		int[][] steps = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 }, { 2, 1 }, { -3, 2 } };
+		int length = 4;
+		int origin = 1;
+		for (int[] d : steps)
+			for (int m = 0; m < 2; m++) {
+				boolean max = m == 1;
+				Image result = RunningMinMax.line(image, length, origin, d[0], d[1], 0, 0,
+						max);
+				for (int y = 0; y < image.getYDim(); y++)
+					for (int x = 0; x < image.getXDim(); x++)
+						for (int b = 0; b < image.getBDim(); b++) {
+							int expected = image.getPixelXYBInt(x, y, b);
+							for (int i = 0; i < length; i++) {
+								int px = x + (i - origin) * d[0];
+								int py = y + (i - origin) * d[1];
+								if (px < 0 || px >= image.getXDim() || py < 0
+										|| py >= image.getYDim())
+									continue;
+								int v = image.getPixelXYBInt(px, py, b);
+								expected = max ? Math.max(expected, v) : Math.min(expected, v);
+							}
+							assertEquals(expected, result.getPixelXYBInt(x, y, b));
+						}
+			}
+	}
+}
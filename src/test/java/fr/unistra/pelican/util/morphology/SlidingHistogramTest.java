@@ -0,0 +1,120 @@
+package fr.unistra.pelican.util.morphology;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayMedian;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayRankFilter;
+import fr.unistra.pelican.algorithms.spatial.MedianFilter;
+import fr.unistra.pelican.util.Point4D;
+
+public class SlidingHistogramTest {
+
+	private static Image fill(Image image, Random random, int min, int range) {
+		for (int i = 0; i < image.size(); i++)
+			if (image instanceof ByteImage)
+				image.setPixelByte(i, min + random.nextInt(range));
+			else
+				image.setPixelInt(i, min + random.nextInt(range));
+		return image;
+	}
+
+	/**
+	 * Gets a copy of an image with a full mask, processed by the per-pixel
+	 * algorithms.
+	 */
+	private static Image masked(Image image) {
+		Image copy = image.copyImage(true);
+		BooleanImage mask = new BooleanImage(image, false);
+		mask.fill(true);
+		copy.pushMask(mask);
+		return copy;
+	}
+
+	private static void assertSame(Image expected, Image actual) {
+		assertEquals(expected.getClass(), actual.getClass());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.getPixelByte(i), actual.getPixelByte(i));
+	}
+
+	@Test
+	public void byteTest() {
+		Random random = new Random(0);
+		Image image = fill(new ByteImage(31, 19, 1, 1, 2), random, 0, 256);
+		BooleanImage[] ses = {
+				FlatStructuringElement2D.createSquareFlatStructuringElement(5),
+				FlatStructuringElement2D.createCrossFlatStructuringElement(3),
+				FlatStructuringElement2D.createCircleFlatStructuringElement(4),
+				FlatStructuringElement2D.createRectangularFlatStructuringElement(6, 3) };
+		for (BooleanImage se : ses) {
+			assertEquals(true, SlidingHistogram.canFilter(image));
+			assertSame(GrayMedian.exec(masked(image), se), GrayMedian.exec(image, se));
+			for (int rank = 1; rank <= se.getSum(); rank += 4)
+				assertSame(GrayRankFilter.exec(masked(image), se, rank), GrayRankFilter
+						.exec(image, se, rank));
+		}
+	}
+
+	@Test
+	public void medianFilterTest() {
+		// 3D image and se, even numbers of values near the borders
+		Random random = new Random(1);
+		Image image = fill(new ByteImage(13, 11, 5, 1, 2), random, 0, 256);
+		BooleanImage se = new BooleanImage(3, 4, 2, 1, 1);
+		se.fill(true);
+		se.setPixelXYZBoolean(0, 0, 1, false);
+		se.setCenter(new Point4D(1, 2, 1, 0));
+		Image result = MedianFilter.exec(image, se);
+		int[][] offsets = SlidingHistogram.offsets(se.foreground(), se.getCenter(), false);
+		int[] values = new int[offsets.length];
+		for (int z = 0; z < image.getZDim(); z++)
+			for (int y = 0; y < image.getYDim(); y++)
+				for (int x = 0; x < image.getXDim(); x++)
+					for (int b = 0; b < image.getBDim(); b++) {
+						int n = 0;
+						for (int[] o : offsets)
+							if (x + o[0] >= 0 && x + o[0] < image.getXDim() && y + o[1] >= 0
+									&& y + o[1] < image.getYDim() && z + o[2] >= 0
+									&& z + o[2] < image.getZDim())
+								values[n++] = image.getPixelXYZBByte(x + o[0], y + o[1],
+										z + o[2], b);
+						Arrays.sort(values, 0, n);
+						assertEquals((values[n / 2] + values[(n - 1) / 2]) / 2, result
+								.getPixelXYZBByte(x, y, z, b));
+					}
+	}
+
+	@Test
+	public void integerTest() {
+		// 16-bit values, and a range which does not fit in 16 bits
+		Random random = new Random(2);
+		Image image = fill(new IntegerImage(23, 17, 1, 1, 1), random, -1000, 65536);
+		assertEquals(true, SlidingHistogram.canFilter(image));
+		Image wide = fill(new IntegerImage(23, 17, 1, 1, 1), random, 0, 1 << 20);
+		assertEquals(false, SlidingHistogram.canFilter(wide));
+
+		BooleanImage se = FlatStructuringElement2D.createSquareFlatStructuringElement(7);
+		int rank = 10;
+		Image result = GrayRankFilter.exec(image, se, rank);
+		int[][] offsets = SlidingHistogram.offsets(se.foreground(), se.getCenter(), true);
+		int[] values = new int[offsets.length];
+		for (int y = 0; y < image.getYDim(); y++)
+			for (int x = 0; x < image.getXDim(); x++) {
+				int n = 0;
+				for (int[] o : offsets)
+					if (x + o[0] >= 0 && x + o[0] < image.getXDim() && y + o[1] >= 0
+							&& y + o[1] < image.getYDim())
+						values[n++] = image.getPixelXYInt(x + o[0], y + o[1]);
+				Arrays.sort(values, 0, n);
+				assertEquals(values[n - Math.min(rank, n)], result.getPixelXYInt(x, y));
+			}
+	}
+}
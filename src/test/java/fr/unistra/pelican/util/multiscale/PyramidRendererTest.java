@@ -0,0 +1,269 @@
+package fr.unistra.pelican.util.multiscale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.PelicanImageToBufferedImage;
+
+public class PyramidRendererTest {
+
+	private static ByteImage image(int xdim, int ydim) {
+		Random random = new Random(1);
+		ByteImage image = new ByteImage(xdim, ydim, 1, 1, 3);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, random.nextInt(256));
+		image.setColor(true);
+		return image;
+	}
+
+	private static void assertPixel(Image image, int x, int y, int rgb) {
+		assertEquals(image.getPixelXYBByte(x, y, 0), (rgb >> 16) & 255);
+		assertEquals(image.getPixelXYBByte(x, y, 1), (rgb >> 8) & 255);
+		assertEquals(image.getPixelXYBByte(x, y, 2), rgb & 255);
+	}
+
+	@Test
+	public void pyramidTest() {
+		ByteImage image = image(301, 203);
+		Pyramid pyramid = new Pyramid(image, 3, true);
+		for (int d = 1; d < 3; d++) {
+			Image previous = pyramid.getScale(d - 1), scale = pyramid.getScale(d);
+			assertEquals(301 >> d, scale.getXDim());
+			ByteImage expected = new ByteImage(scale, false);
+			for (int b = 0; b < 3; b++)
+				for (int y = 0; y < scale.getYDim(); y++)
+					for (int x = 0; x < scale.getXDim(); x++)
+						expected.setPixelXYBDouble(x, y, b, (previous.getPixelXYBDouble(
+								2 * x, 2 * y, b)
+								+ previous.getPixelXYBDouble(2 * x + 1, 2 * y, b)
+								+ previous.getPixelXYBDouble(2 * x, 2 * y + 1, b) + previous
+								.getPixelXYBDouble(2 * x + 1, 2 * y + 1, b)) / 4);
+			assertTrue(expected.equals(scale));
+		}
+	}
+
+	@Test
+	public void convertTest() {
+		ByteImage image = image(120, 80);
+		BooleanImage mask = new BooleanImage(120, 80, 1, 1, 1);
+		mask.fill(true);
+		mask.setPixelXYBoolean(13, 23, false);
+		image.pushMask(mask);
+		BufferedImage region = PelicanImageToBufferedImage.convert(image,
+				new int[] { 0, 1, 2 }, 10, 20, 50, 31, 3);
+		assertEquals(17, region.getWidth());
+		assertEquals(11, region.getHeight());
+		for (int y = 0; y < 11; y++)
+			for (int x = 0; x < 17; x++) {
+				int rgb = region.getRGB(x, y);
+				assertPixel(image, 10 + 3 * x, 20 + 3 * y, rgb);
+				assertEquals(x == 1 && y == 1 ? 10 : 255, rgb >>> 24);
+			}
+
+		// grey levels, as the conversion of the whole image
+		BufferedImage grey = PelicanImageToBufferedImage.exec(image, 1);
+		assertEquals(120, grey.getWidth());
+		assertEquals(image.getPixelXYBByte(57, 33, 1), grey.getRGB(57, 33) & 255);
+		assertEquals(image.getPixelXYBByte(57, 33, 1), (grey.getRGB(57, 33) >> 16) & 255);
+	}
+
+	/**
+	 * Paints until the display matches the expected scale, the tiles being
+	 * converted in the background
+	 */
+	private static void paint(PyramidRenderer renderer, BufferedImage screen,
+			double zoom, int shift, Image expected) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			Graphics2D g = screen.createGraphics();
+			renderer.paint(g, zoom, -shift, -shift, screen.getWidth(), screen
+					.getHeight());
+			g.dispose();
+			boolean done = true;
+			int w = Math.min(screen.getWidth(), expected.getXDim() - shift);
+			int h = Math.min(screen.getHeight(), expected.getYDim() - shift);
+			for (int y = 0; y < h && done; y += 7)
+				for (int x = 0; x < w && done; x += 5) {
+					int rgb = screen.getRGB(x, y);
+					done = ((rgb >> 16) & 255) == expected.getPixelXYBByte(x + shift,
+							y + shift, 0)
+							&& (rgb & 255) == expected.getPixelXYBByte(x + shift, y
+									+ shift, 2);
+				}
+			if (done)
+				return;
+			Thread.sleep(20);
+		}
+		throw new AssertionError("tiles not rendered");
+	}
+
+	@Test
+	public void renderTest() throws InterruptedException {
+		ByteImage image = image(1500, 1000);
+		PyramidRenderer renderer = new PyramidRenderer(image, 0, 1, 2);
+		assertEquals(4, renderer.getDepth());
+		assertEquals(0, renderer.getLevel(1.5));
+		assertEquals(2, renderer.getLevel(0.25));
+		assertEquals(3, renderer.getLevel(0.01));
+
+		BufferedImage screen = new BufferedImage(600, 400,
+				BufferedImage.TYPE_INT_ARGB);
+		paint(renderer, screen, 1, 300, image);
+		// a screen pixel is a pixel of the third scale
+		paint(renderer, screen, 0.25, 10, new Pyramid(image, 3, true).getScale(2));
+
+		BufferedImage overview = renderer.getOverview();
+		assertEquals(500, overview.getWidth());
+		assertPixel(image, 9, 6, overview.getRGB(3, 2));
+	}
+
+	@Test
+	public void bandsTest() throws InterruptedException {
+		ByteImage image = image(1500, 1000);
+		ByteImage swapped = new ByteImage(image, false);
+		for (int p = 0; p < image.size(); p += 3)
+			for (int b = 0; b < 3; b++)
+				swapped.setPixelByte(p + b, image.getPixelByte(p + 2 - b));
+		PyramidRenderer renderer = new PyramidRenderer(image, 0, 1, 2);
+		renderer.setBands(2, 1, 0);
+		BufferedImage screen = new BufferedImage(600, 400,
+				BufferedImage.TYPE_INT_ARGB);
+		paint(renderer, screen, 1, 300, swapped);
+		paint(renderer, screen, 0.25, 10, new Pyramid(swapped, 3, true).getScale(2));
+		renderer.dispose();
+	}
+
+	/**
+	 * Image of more than 2^31 values, whose pixels are computed from their
+	 * long index instead of being stored
+	 */
+	private static class IndexImage extends ByteImage {
+
+		private static final long serialVersionUID = 1L;
+
+		IndexImage(int xdim, int ydim, int bdim) {
+			super();
+			setDim(xdim, ydim, 1, 1, bdim);
+		}
+
+		public long sizeL() {
+			return (long) getXDim() * getYDim() * getBDim();
+		}
+
+		static int value(long loc) {
+			return (int) (loc % 251);
+		}
+
+		public int getPixelByte(long loc) {
+			return value(loc);
+		}
+
+		public double getPixelDouble(long loc) {
+			return Image.unsignedByteToDouble(value(loc));
+		}
+
+		public int getPixelByte(int loc) {
+			throw new AssertionError("pixel " + loc + " addressed by an int");
+		}
+
+		public double getPixelDouble(int loc) {
+			throw new AssertionError("pixel " + loc + " addressed by an int");
+		}
+	}
+
+	/**
+	 * Average of 4 values stored in a ByteImage, as a scale of a pyramid
+	 */
+	private static double average(double v1, double v2, double v3, double v4) {
+		ByteImage pixel = new ByteImage(1, 1, 1, 1, 1);
+		pixel.setPixelDouble(0, (v1 + v2 + v3 + v4) / 4);
+		return pixel.getPixelDouble(0);
+	}
+
+	private static double scale1(IndexImage image, int x, int y, int b) {
+		long row = (long) image.getXDim() * 3;
+		long p = (2 * y) * row + 2 * x * 3L + b;
+		return average(image.getPixelDouble(p), image.getPixelDouble(p + 3), image
+				.getPixelDouble(p + row), image.getPixelDouble(p + row + 3));
+	}
+
+	private static int scale2(IndexImage image, int x, int y, int b) {
+		return (int) Math.round(255 * average(scale1(image, 2 * x, 2 * y, b), scale1(
+				image, 2 * x + 1, 2 * y, b), scale1(image, 2 * x, 2 * y + 1, b), scale1(
+				image, 2 * x + 1, 2 * y + 1, b)));
+	}
+
+	@Test
+	public void longIndexTest() throws InterruptedException {
+		IndexImage image = new IndexImage(27000, 27000, 3);
+		assertTrue(image.sizeL() > Integer.MAX_VALUE);
+
+		// the build of the pyramid stops with the renderer
+		PyramidRenderer renderer = new PyramidRenderer(image, 0, 1, 2);
+		Thread.sleep(200);
+		renderer.dispose();
+		for (int i = 0; i < 500 && builds(); i++)
+			Thread.sleep(20);
+		assertFalse(builds());
+
+		renderer = new PyramidRenderer(image, 0, 1, 2);
+		BufferedImage screen = new BufferedImage(600, 400,
+				BufferedImage.TYPE_INT_ARGB);
+		// last rows of the image, beyond the index 2^31
+		int shiftX = -26400, shiftY = -26600;
+		boolean done = false;
+		for (int i = 0; i < 500 && !done; i++) {
+			Graphics2D g = screen.createGraphics();
+			renderer.paint(g, 1, shiftX, shiftY, 600, 400);
+			g.dispose();
+			done = true;
+			for (int y = 0; y < 400 && done; y += 7)
+				for (int x = 0; x < 600 && done; x += 5) {
+					long p = ((long) (y - shiftY) * 27000 + x - shiftX) * 3;
+					done = screen.getRGB(x, y) == (0xff000000
+							| IndexImage.value(p) << 16 | IndexImage.value(p + 1) << 8 | IndexImage
+							.value(p + 2));
+				}
+			if (!done)
+				Thread.sleep(20);
+		}
+		assertTrue("tiles not rendered", done);
+
+		// a screen pixel is a pixel of the third scale, averaged by the pyramid
+		shiftX = -6250;
+		shiftY = -6450;
+		done = false;
+		for (int i = 0; i < 3000 && !done; i++) {
+			Graphics2D g = screen.createGraphics();
+			renderer.paint(g, 0.25, shiftX, shiftY, 600, 400);
+			g.dispose();
+			done = true;
+			for (int y = 0; y < 300 && done; y += 13)
+				for (int x = 0; x < 500 && done; x += 11)
+					done = screen.getRGB(x, y) == (0xff000000
+							| scale2(image, x - shiftX, y - shiftY, 0) << 16
+							| scale2(image, x - shiftX, y - shiftY, 1) << 8 | scale2(image,
+							x - shiftX, y - shiftY, 2));
+			if (!done)
+				Thread.sleep(40);
+		}
+		renderer.dispose();
+		assertTrue("pyramid not rendered", done);
+	}
+
+	private static boolean builds() {
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if (thread.getName().equals("PyramidRenderer build"))
+				return true;
+		return false;
+	}
+}
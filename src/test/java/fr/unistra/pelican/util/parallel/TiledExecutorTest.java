@@ -0,0 +1,53 @@
+package fr.unistra.pelican.util.parallel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayDilation;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayErosion;
+import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+
+public class TiledExecutorTest {
+
+	private ByteImage randomImage(int xdim, int ydim, int bdim) {
+		ByteImage image = new ByteImage(xdim, ydim, 1, 1, bdim);
+		Random random = new Random(42);
+		for (int i = 0; i < image.size(); i++)
+			image.setPixelByte(i, random.nextInt(256));
+		return image;
+	}
+
+	@Test
+	public void tiledErosionTest() {
+		Image image = randomImage(203, 157, 3);
+		BooleanImage se = FlatStructuringElement2D.createSquareFlatStructuringElement(7);
+		Image truth = GrayErosion.exec(image, se);
+		Image tiled = (Image) new TiledExecutor(32).process(new GrayErosion(), image, se);
+
+		assertEquals(truth.getClass(), tiled.getClass());
+		assertEquals(truth.size(), tiled.size());
+		for (int i = 0; i < truth.size(); i++)
+			assertEquals(truth.getPixelByte(i), tiled.getPixelByte(i));
+	}
+
+	@Test
+	public void tiledDilationWithMaskTest() {
+		Image image = randomImage(150, 130, 1);
+		BooleanImage se = FlatStructuringElement2D.createCircleFlatStructuringElement(4);
+		BooleanImage mask = new BooleanImage(150, 130, 1, 1, 1);
+		for (int i = 0; i < mask.size(); i++)
+			mask.setPixelBoolean(i, i % 3 != 0);
+		Image truth = GrayDilation.exec(image, se, mask);
+		Image tiled = (Image) new TiledExecutor(40).process(new GrayDilation(), image, se, mask);
+
+		assertEquals(truth.size(), tiled.size());
+		for (int i = 0; i < truth.size(); i++)
+			assertEquals(truth.getPixelByte(i), tiled.getPixelByte(i));
+	}
+}
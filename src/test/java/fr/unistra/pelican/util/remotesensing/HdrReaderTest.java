@@ -0,0 +1,120 @@
+package fr.unistra.pelican.util.remotesensing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.algorithms.io.HdrImageLoad;
+
+public class HdrReaderTest {
+
+	private static final int COLS = 23, LINES = 17, BANDS = 4;
+
+	private static int value(int x, int y, int b) {
+		return (b * 1000 + y * 50 + x) * (b % 2 == 0 ? 1 : -1);
+	}
+
+	/**
+	 * Writes a synthetic image of 16 bits signed values in the given layout
+	 */
+	private static String write(String interleave, boolean bigEndian)
+			throws IOException {
+		File dir = File.createTempFile("pelican", "hdr");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		File header = new File(dir, "image.hdr");
+		header.deleteOnExit();
+		FileWriter writer = new FileWriter(header);
+		writer.write("ENVI\ndescription = {synthetic}\nsamples = " + COLS
+				+ "\nlines = " + LINES + "\nbands = " + BANDS
+				+ "\nheader offset = 0\ndata type = 2\ninterleave = "
+				+ interleave + "\nbyte order = " + (bigEndian ? 1 : 0)
+				+ "\nwavelength = {400, 500, 600, 700}\n");
+		writer.close();
+
+		ByteBuffer data = ByteBuffer.allocate(COLS * LINES * BANDS * 2);
+		data.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < COLS * LINES * BANDS; i++) {
+			int x, y, b;
+			if (interleave.equals("bsq")) {
+				x = i % COLS;
+				y = i / COLS % LINES;
+				b = i / COLS / LINES;
+			} else if (interleave.equals("bil")) {
+				x = i % COLS;
+				b = i / COLS % BANDS;
+				y = i / COLS / BANDS;
+			} else {
+				b = i % BANDS;
+				x = i / BANDS % COLS;
+				y = i / BANDS / COLS;
+			}
+			data.putShort((short) value(x, y, b));
+		}
+		File binary = new File(dir, "image." + interleave);
+		binary.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(binary);
+		out.write(data.array());
+		out.close();
+		return header.getPath();
+	}
+
+	@Test
+	public void windowTest() throws IOException {
+		for (String interleave : new String[] { "bsq", "bil", "bip" })
+			for (boolean bigEndian : new boolean[] { true, false }) {
+				String path = write(interleave, bigEndian);
+
+				Image full = new HdrReader().getPelicanImage(path);
+				assertEquals(IntegerImage.class, full.getClass());
+				assertEquals(COLS, full.getXDim());
+				assertEquals(LINES, full.getYDim());
+				assertEquals(BANDS, full.getBDim());
+				for (int b = 0; b < BANDS; b++)
+					for (int y = 0; y < LINES; y++)
+						for (int x = 0; x < COLS; x++)
+							assertEquals(value(x, y, b), full.getPixelXYBInt(x, y, b));
+
+				Image window = HdrImageLoad.exec(path, 3, 2, 15, 10,
+						new int[] { 1, 3 }, 4);
+				assertEquals(4, window.getXDim());
+				assertEquals(3, window.getYDim());
+				assertEquals(2, window.getBDim());
+				for (int y = 0; y < 3; y++)
+					for (int x = 0; x < 4; x++) {
+						assertEquals(value(3 + 4 * x, 2 + 4 * y, 1), window
+								.getPixelXYBInt(x, y, 0));
+						assertEquals(value(3 + 4 * x, 2 + 4 * y, 3), window
+								.getPixelXYBInt(x, y, 1));
+					}
+				assertEquals(700.0, window.getProperty(HdrReader.WAVELENGTH_ENVI + 1));
+				assertEquals(3.0, window.getProperty(HdrReader.X_START_ENVI));
+
+				Image corner = new HdrReader().getPelicanImage(path, 20, 15, 22, 16);
+				assertEquals(3, corner.getXDim());
+				assertEquals(value(22, 16, 2), corner.getPixelXYBInt(2, 1, 2));
+			}
+	}
+
+	@Test
+	public void outsideTest() throws IOException {
+		String path = write("bip", true);
+		try {
+			HdrImageLoad.exec(path, 10, 10, COLS, 1);
+			fail();
+		} catch (PelicanException ex) {
+		}
+	}
+}
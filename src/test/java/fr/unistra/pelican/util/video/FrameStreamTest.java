@@ -0,0 +1,165 @@
+package fr.unistra.pelican.util.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.algorithms.applied.video.caption.EdgeDensityDetector;
+import fr.unistra.pelican.algorithms.applied.video.shot.AdaptiveShotChangeDetection;
+import fr.unistra.pelican.algorithms.applied.video.shot.ClassicalShotChangeDetection;
+import fr.unistra.pelican.algorithms.applied.video.shot.HistogramBasedInterframeDifference;
+import fr.unistra.pelican.algorithms.applied.video.shot.PixelBasedInterframeDifference;
+
+public class FrameStreamTest {
+
+	/**
+	 * Color sequence made of two shots of noisy flat frames.
+	 */
+	private static ByteImage sequence(int tdim) {
+		Random random = new Random(1);
+		ByteImage video = new ByteImage(32, 24, 1, tdim, 3);
+		for (int t = 0; t < tdim; t++)
+			for (int y = 0; y < 24; y++)
+				for (int x = 0; x < 32; x++)
+					for (int b = 0; b < 3; b++)
+						video.setPixelByte(x, y, 0, t, b, (t < tdim / 2 ? 40 : 200)
+								+ 30 * b + random.nextInt(20));
+		video.setColor(true);
+		return video;
+	}
+
+	/**
+	 * Stream decoding the frames of a sequence in a background thread.
+	 */
+	private static class Decoder extends BufferedFrameStream {
+		final Image sequence;
+		final AtomicInteger decoded = new AtomicInteger();
+		int failAt = -1;
+		volatile Thread thread;
+
+		Decoder(Image sequence, int capacity) {
+			super(sequence.isColor(), capacity);
+			this.sequence = sequence;
+		}
+
+		protected void decode() {
+			thread = Thread.currentThread();
+			for (int t = 0; t < sequence.getTDim(); t++) {
+				if (t == failAt)
+					throw new IllegalStateException("corrupted frame");
+				if (!push(sequence.getImage4D(t, Image.T)))
+					return;
+				decoded.incrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void streamTest() throws InterruptedException {
+		ByteImage video = sequence(20);
+		Decoder frames = new Decoder(video, 3);
+		assertTrue(frames.isColor());
+		int t = 0;
+		while (frames.hasNext()) {
+			Image frame = frames.next();
+			assertEquals(t, frames.getIndex());
+			assertEquals(1, frame.getTDim());
+			for (int p = 0; p < frame.size(); p++)
+				assertEquals(video.getPixelByte(p + t * frame.size()), frame
+						.getPixelByte(p));
+			// the decoder stays at most a buffer ahead
+			Thread.sleep(2);
+			assertTrue(frames.decoded.get() <= t + 1 + 3 + 1);
+			t++;
+		}
+		assertEquals(20, t);
+		assertFalse(frames.hasNext());
+
+		// errors reach the consumer after the frames decoded before them
+		frames = new Decoder(video, 2);
+		frames.failAt = 5;
+		t = 0;
+		try {
+			while (frames.hasNext()) {
+				frames.next();
+				t++;
+			}
+			fail();
+		} catch (PelicanException ex) {
+			assertEquals(5, t);
+		}
+
+		// closing stops the decoder
+		frames = new Decoder(video, 2);
+		frames.next();
+		frames.close();
+		assertFalse(frames.hasNext());
+		Thread.sleep(300);
+		int decoded = frames.decoded.get();
+		assertTrue(decoded < 20);
+
+		// interrupting the decoder stops it and ends the stream with an error
+		frames = new Decoder(video, 2);
+		frames.next();
+		frames.thread.interrupt();
+		try {
+			while (frames.hasNext())
+				frames.next();
+			fail();
+		} catch (PelicanException ex) {
+		}
+		assertTrue(frames.decoded.get() < 20);
+		frames.thread.join(1000);
+		assertFalse(frames.thread.isAlive());
+	}
+
+	@Test
+	public void shotTest() {
+		ByteImage video = sequence(12);
+		assertArrayEquals(PixelBasedInterframeDifference.exec(video),
+				PixelBasedInterframeDifference.exec(new Decoder(video, 2)));
+		assertArrayEquals(HistogramBasedInterframeDifference.exec(video),
+				HistogramBasedInterframeDifference.exec(new Decoder(video, 2)));
+		Integer[] cuts = AdaptiveShotChangeDetection.exec(video, 8);
+		assertArrayEquals(cuts, AdaptiveShotChangeDetection.exec(new Decoder(
+				video, 2), 8));
+		boolean cut = false;
+		for (int t = 0; t < cuts.length; t++)
+			cut |= cuts[t] == 2;
+		assertTrue(cut);
+		assertArrayEquals(ClassicalShotChangeDetection.exec(video,
+				ClassicalShotChangeDetection.HISTOGRAM, 50),
+				ClassicalShotChangeDetection.exec(FrameStream.of(video),
+						ClassicalShotChangeDetection.HISTOGRAM, 50));
+	}
+
+	@Test
+	public void captionTest() {
+		ByteImage video = sequence(4);
+		ByteImage gray = new ByteImage(32, 24, 1, 4, 1);
+		for (int p = 0; p < gray.size(); p++)
+			gray.setPixelByte(p, video.getPixelByte(p * 3));
+		BooleanImage expected = EdgeDensityDetector.exec(gray);
+		FrameStream labels = EdgeDensityDetector.exec(FrameStream.of(gray));
+		for (int t = 0; t < 4; t++) {
+			Image frame = labels.next();
+			assertEquals(expected.getXDim(), frame.getXDim());
+			for (int x = 0; x < frame.getXDim(); x++)
+				for (int y = 0; y < frame.getYDim(); y++)
+					assertEquals(expected.getPixelBoolean(x, y, 0, t, 0),
+							frame.getPixelBoolean(x, y, 0, 0, 0));
+		}
+		assertFalse(labels.hasNext());
+	}
+}